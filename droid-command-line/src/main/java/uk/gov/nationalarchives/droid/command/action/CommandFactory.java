@@ -132,6 +132,13 @@ public interface CommandFactory {
     DroidCommand getListAllSignatureVersionsCommand();
 
 
+    /**
+     * @param cli the command line
+     * @throws CommandLineSyntaxException command parse exception.
+     * @return a command to re-identify profiles
+     */
+    DroidCommand getReidentifyCommand(CommandLine cli) throws CommandLineSyntaxException;
+
     /**
      * @return command to list reports and output formats.
      */
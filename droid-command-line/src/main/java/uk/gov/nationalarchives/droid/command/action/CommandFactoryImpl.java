@@ -174,6 +174,21 @@ public class CommandFactoryImpl implements CommandFactory {
         return cmd;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DroidCommand getReidentifyCommand(final CommandLine cli) throws CommandLineSyntaxException {
+
+        if (!cli.hasOption(CommandLineParam.PROFILES.toString())) {
+            throw new CommandLineSyntaxException("No profiles specified for re-identification.");
+        }
+
+        final ReidentifyProfileCommand cmd = context.getReidentifyProfileCommand();
+        cmd.setProfiles(cli.getOptionValues(CommandLineParam.PROFILES.toString()));
+        return cmd;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -218,6 +233,8 @@ public class CommandFactoryImpl implements CommandFactory {
         command.setResources(resources);
 
         command.setRecursive(cli.hasOption(CommandLineParam.RECURSIVE.toString()));
+        command.setMaxThreads(getInteger(cli, CommandLineParam.MAX_THREADS));
+        command.setTargetUtilisation(getInteger(cli, CommandLineParam.TARGET_UTILISATION));
 
         return command;
     }
@@ -322,4 +339,18 @@ public class CommandFactoryImpl implements CommandFactory {
         command.setPrintWriter(printWriter);
         return command;
     }
+
+    private static Integer getInteger(final CommandLine cli, final CommandLineParam param)
+        throws CommandLineSyntaxException {
+        Integer value = null;
+        final String option = cli.getOptionValue(param.toString());
+        if (option != null) {
+            try {
+                value = Integer.valueOf(StringUtils.trimToEmpty(option));
+            } catch (NumberFormatException e) {
+                throw new CommandLineSyntaxException("Invalid number for -" + param + ": " + option);
+            }
+        }
+        return value;
+    }
 }
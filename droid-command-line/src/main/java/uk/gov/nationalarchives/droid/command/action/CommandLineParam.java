@@ -177,6 +177,15 @@ public enum CommandLineParam {
         }
     },
     
+    /** Re-identifies profiles against the default signature files. */
+    REIDENTIFY("i", "reidentify", I18N.REIDENTIFY_HELP) {
+        @Override
+        public DroidCommand getCommand(CommandFactory commandFactory, CommandLine cli)
+            throws CommandLineSyntaxException {
+            return commandFactory.getReidentifyCommand(cli);
+        }
+    },
+    
     /** Signature file. */
     SIGNATURE_FILE("Ns", "signature-file", true, 1, I18N.SIGNATURE_FILE_HELP, filename()) {
         @Override
@@ -233,6 +242,22 @@ public enum CommandLineParam {
         }
     },
     
+    /** Maximum number of identification threads. */
+    MAX_THREADS("T", "max-threads", true, 1, I18N.MAX_THREADS_HELP, "threads") {
+        @Override
+        public DroidCommand getCommand(CommandFactory commandFactory, CommandLine cli) {
+            return null;
+        }
+    },
+
+    /** Target CPU utilisation used to size the identification threads. */
+    TARGET_UTILISATION("U", "target-utilisation", true, 1, I18N.TARGET_UTILISATION_HELP, "percent") {
+        @Override
+        public DroidCommand getCommand(CommandFactory commandFactory, CommandLine cli) {
+            return null;
+        }
+    },
+
     /** Check for signature updates. */
     CHECK_SIGNATURE_UPDATE("c", "check-signature-update", I18N.CHECK_SIGNATURE_UPDATE_HELP) {
         @Override
@@ -290,6 +315,7 @@ public enum CommandLineParam {
         addTopLevelCommand(LIST_FILTER_FIELD);
         addTopLevelCommand(RUN_PROFILE);
         addTopLevelCommand(RUN_NO_PROFILE);
+        addTopLevelCommand(REIDENTIFY);
         addTopLevelCommand(CHECK_SIGNATURE_UPDATE);
         addTopLevelCommand(DOWNLOAD_SIGNATURE_UPDATE);
         addTopLevelCommand(DEFAULT_SIGNATURE_VERSION);
@@ -392,6 +418,8 @@ public enum CommandLineParam {
         options.addOption(RECURSIVE.newOption());
         options.addOption(QUIET.newOption());
         options.addOption(BOM.newOption());
+        options.addOption(MAX_THREADS.newOption());
+        options.addOption(TARGET_UTILISATION.newOption());
         
         OptionGroup filterOptions = new OptionGroup();
         filterOptions.addOption(ALL_FILTER.newOption());
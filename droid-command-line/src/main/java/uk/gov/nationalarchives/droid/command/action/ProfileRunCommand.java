@@ -37,6 +37,8 @@ import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
+import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalConfig;
+import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalProperty;
 import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureFileException;
 import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureFileInfo;
 import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureManager;
@@ -58,7 +60,10 @@ public class ProfileRunCommand implements DroidCommand {
     private String destination;
     private String[] resources;
     private boolean recursive;
+    private Integer maxThreads;
+    private Integer targetUtilisation;
     
+    private DroidGlobalConfig globalConfig;
     private ProfileManager profileManager;
     private SignatureManager signatureManager;
     private LocationResolver locationResolver;
@@ -69,6 +74,7 @@ public class ProfileRunCommand implements DroidCommand {
     @Override
     public void execute() throws CommandExecutionException {
         try {
+            setThreadProperties();
             Map<SignatureType, SignatureFileInfo> sigs = signatureManager.getDefaultSignatures();
             ProfileInstance profile = profileManager.createProfile(sigs);
             profile.changeState(ProfileState.VIRGIN);
@@ -104,6 +110,17 @@ public class ProfileRunCommand implements DroidCommand {
         
     }
 
+    private void setThreadProperties() {
+        if (maxThreads != null) {
+            globalConfig.getProperties().setProperty(DroidGlobalProperty.MAX_THREADS.getName(),
+                    maxThreads.toString());
+        }
+        if (targetUtilisation != null) {
+            globalConfig.getProperties().setProperty(
+                    DroidGlobalProperty.TARGET_UTILISATION.getName(), targetUtilisation.toString());
+        }
+    }
+
     /**
      * @param destination the destination to set
      */
@@ -132,6 +149,29 @@ public class ProfileRunCommand implements DroidCommand {
         this.signatureManager = signatureManager;
     }
 
+    /**
+     * @param maxThreads the maximum number of threads of each identification stage,
+     *        or null to use the configured value
+     */
+    public void setMaxThreads(Integer maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * @param targetUtilisation the CPU utilisation percentage to size the identification
+     *        threads for, or null to use the configured value
+     */
+    public void setTargetUtilisation(Integer targetUtilisation) {
+        this.targetUtilisation = targetUtilisation;
+    }
+
+    /**
+     * @param globalConfig the global configuration to set
+     */
+    public void setGlobalConfig(DroidGlobalConfig globalConfig) {
+        this.globalConfig = globalConfig;
+    }
+
     /**
      * @param recursive the recursive to set
      */
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.command.action;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureFileException;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureFileInfo;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureManager;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureType;
+import uk.gov.nationalarchives.droid.profile.ProfileInstance;
+import uk.gov.nationalarchives.droid.profile.ProfileManager;
+import uk.gov.nationalarchives.droid.profile.ProfileManagerException;
+import uk.gov.nationalarchives.droid.results.handlers.ProgressObserver;
+
+/**
+ * Moves saved profiles on to the default signature files, re-identifying the resources
+ * whose identification may have changed, and saves each profile back to where it came from.
+ */
+public class ReidentifyProfileCommand implements DroidCommand {
+
+    private static final int SLEEP_TIME = 1000;
+
+    private String[] profiles;
+    private ProfileManager profileManager;
+    private SignatureManager signatureManager;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute() throws CommandExecutionException {
+        final ProgressObserver progressCallback = new ProgressObserver() {
+            @Override
+            public void onProgress(Integer progress) {
+            }
+        };
+
+        try {
+            final Map<SignatureType, SignatureFileInfo> sigs = signatureManager.getDefaultSignatures();
+            for (String profileLocation : profiles) {
+                final Path profileFile = Paths.get(profileLocation);
+                final ProfileInstance profile = profileManager.open(profileFile, progressCallback);
+                try {
+                    final Future<?> future = profileManager.reidentify(profile.getUuid(), sigs);
+                    future.get();
+                    Thread.sleep(SLEEP_TIME);
+                    profileManager.save(profile.getUuid(), profileFile, progressCallback);
+                } finally {
+                    profileManager.closeProfile(profile.getUuid());
+                }
+            }
+        } catch (ProfileManagerException e) {
+            throw new CommandExecutionException(e);
+        } catch (InterruptedException e) {
+            throw new CommandExecutionException(e);
+        } catch (ExecutionException e) {
+            throw new CommandExecutionException(e.getCause());
+        } catch (IOException e) {
+            throw new CommandExecutionException(e);
+        } catch (SignatureFileException e) {
+            throw new CommandExecutionException(e);
+        }
+    }
+
+    /**
+     * @param profileList the list of profiles to re-identify.
+     */
+    public void setProfiles(String[] profileList) {
+        this.profiles = profileList;
+    }
+
+    /**
+     * @return the profiles
+     */
+    String[] getProfiles() {
+        return profiles;
+    }
+
+    /**
+     * @param profileManager the profileManager to set
+     */
+    public void setProfileManager(ProfileManager profileManager) {
+        this.profileManager = profileManager;
+    }
+
+    /**
+     * @param signatureManager the signatureManager to set
+     */
+    public void setSignatureManager(SignatureManager signatureManager) {
+        this.signatureManager = signatureManager;
+    }
+}
@@ -39,8 +39,8 @@ import java.util.Map;
 
 import uk.gov.nationalarchives.droid.container.ContainerFileIdentificationRequest;
 import uk.gov.nationalarchives.droid.container.ContainerIdentifierInit;
+import uk.gov.nationalarchives.droid.container.ContainerSignature;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureDefinitions;
-import uk.gov.nationalarchives.droid.container.ContainerSignatureMatch;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureMatchCollection;
 import uk.gov.nationalarchives.droid.container.FileFormatMapping;
 import uk.gov.nationalarchives.droid.container.IdentifierEngine;
@@ -119,25 +119,22 @@ public abstract class AbstractContainerContentIdentifier implements ContainerCon
             
             int maxBytesToScan = -1;
             ContainerSignatureMatchCollection matches =
-                new ContainerSignatureMatchCollection(getContainerIdentifierInit().getContainerSignatures(),
-                    getContainerIdentifierInit().getUniqueFileEntries(), maxBytesToScan);
+                new ContainerSignatureMatchCollection(getContainerIdentifierInit().getIndex(), maxBytesToScan);
         
             getIdentifierEngine().process(request, matches);
         
             final Map<String, String> puidMap = new HashMap<String, String>();      
-            for (ContainerSignatureMatch match : matches.getContainerSignatureMatches()) {
-                if (match.isMatch()) {
-                    List<FileFormatMapping> mappings = getFormats().get(match.getSignature().getId());
-                    for (FileFormatMapping mapping : mappings) {
-                        IdentificationResultImpl result = new IdentificationResultImpl();
-                        result.setMethod(IdentificationMethod.CONTAINER);
-                        result.setRequestMetaData(request.getRequestMetaData());
-                        String puid = mapping.getPuid();
-                        result.setPuid(mapping.getPuid());
-                        if (!puidMap.containsKey(puid)) {
-                            puidMap.put(puid, "");
-                            containerResults.addResult(result);
-                        }
+            for (ContainerSignature signature : matches.getMatchedSignatures()) {
+                List<FileFormatMapping> mappings = getFormats().get(signature.getId());
+                for (FileFormatMapping mapping : mappings) {
+                    IdentificationResultImpl result = new IdentificationResultImpl();
+                    result.setMethod(IdentificationMethod.CONTAINER);
+                    result.setRequestMetaData(request.getRequestMetaData());
+                    String puid = mapping.getPuid();
+                    result.setPuid(mapping.getPuid());
+                    if (!puidMap.containsKey(puid)) {
+                        puidMap.put(puid, "");
+                        containerResults.addResult(result);
                     }
                 }
             }
@@ -40,6 +40,7 @@ import uk.gov.nationalarchives.droid.command.action.ListAllSignatureFilesCommand
 import uk.gov.nationalarchives.droid.command.action.ListReportsCommand;
 import uk.gov.nationalarchives.droid.command.action.NoProfileRunCommand;
 import uk.gov.nationalarchives.droid.command.action.ProfileRunCommand;
+import uk.gov.nationalarchives.droid.command.action.ReidentifyProfileCommand;
 import uk.gov.nationalarchives.droid.command.action.ReportCommand;
 import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalConfig;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
@@ -78,6 +79,11 @@ public interface GlobalContext extends AutoCloseable {
      */
     ReportCommand getReportCommand();
 
+    /**
+     * @return a command to re-identify profiles
+     */
+    ReidentifyProfileCommand getReidentifyProfileCommand();
+
     /**
      * 
      */
@@ -43,6 +43,7 @@ import uk.gov.nationalarchives.droid.command.action.ListAllSignatureFilesCommand
 import uk.gov.nationalarchives.droid.command.action.ListReportsCommand;
 import uk.gov.nationalarchives.droid.command.action.NoProfileRunCommand;
 import uk.gov.nationalarchives.droid.command.action.ProfileRunCommand;
+import uk.gov.nationalarchives.droid.command.action.ReidentifyProfileCommand;
 import uk.gov.nationalarchives.droid.command.action.ReportCommand;
 import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalConfig;
 import uk.gov.nationalarchives.droid.export.interfaces.ExportOptions;
@@ -116,6 +117,14 @@ public final class SpringUiContext implements GlobalContext {
         return context.getBean("reportCommand", ReportCommand.class);
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ReidentifyProfileCommand getReidentifyProfileCommand() {
+        return context.getBean("reidentifyProfileCommand", ReidentifyProfileCommand.class);
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -81,6 +81,9 @@ public final class I18N {
     /** Run a profile. */
     public static final String RUN_PROFILE_HELP = "profile.run.help";
     
+    /** Re-identify profiles. */
+    public static final String REIDENTIFY_HELP = "profile.reidentify.help";
+    
     /** Run without a profile. */
     public static final String RUN_NO_PROFILE_HELP = "no_profile.run.help";
     
@@ -105,6 +108,12 @@ public final class I18N {
     /** Only log at ERROR and above to the console. */
     public static final String QUIET_HELP = "quiet.help";
     
+    /** Maximum number of identification threads. */
+    public static final String MAX_THREADS_HELP = "max_threads.help";
+
+    /** Target CPU utilisation of the identification threads. */
+    public static final String TARGET_UTILISATION_HELP = "target_utilisation.help";
+    
     /** Check for signature update. */
     public static final String CHECK_SIGNATURE_UPDATE_HELP = "signature_update.check.help";
     
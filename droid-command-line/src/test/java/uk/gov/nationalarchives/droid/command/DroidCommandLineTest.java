@@ -415,6 +415,50 @@ public class DroidCommandLineTest {
         verify(command).setRecursive(true);
     }
 
+    @Test
+    public void testRunAndSaveProfileWithThreadLimits() throws CommandLineException {
+        String[] args = new String[] {
+            "-a",
+            "file1.txt",
+            "-p",
+            "test",
+            "-T",
+            "16",
+            "-U",
+            "75"
+        };
+        
+        ProfileRunCommand command = mock(ProfileRunCommand.class);
+        
+        when(context.getProfileRunCommand()).thenReturn(command);
+        
+        DroidCommandLine commandLine = new DroidCommandLine(args);
+        commandLine.setContext(context);
+        
+        commandLine.processExecution();
+        
+        verify(command).setMaxThreads(16);
+        verify(command).setTargetUtilisation(75);
+    }
+
+    @Test(expected = CommandLineException.class)
+    public void testRunAndSaveProfileWithInvalidMaxThreads() throws CommandLineException {
+        String[] args = new String[] {
+            "-a",
+            "file1.txt",
+            "-p",
+            "test",
+            "-T",
+            "many"
+        };
+        
+        when(context.getProfileRunCommand()).thenReturn(mock(ProfileRunCommand.class));
+        
+        DroidCommandLine commandLine = new DroidCommandLine(args);
+        commandLine.setContext(context);
+        commandLine.processExecution();
+    }
+
     @Test(expected = CommandLineException.class)
     public void testRunAndSaveProfileWithNoProfileName() throws CommandLineException {
         String[] args = new String[] {
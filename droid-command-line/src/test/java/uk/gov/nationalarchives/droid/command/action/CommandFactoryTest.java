@@ -183,4 +183,34 @@ public class CommandFactoryTest {
         
     }
     
+    @Test
+    public void testReidentifyCommand() throws Exception {
+        
+        ReidentifyProfileCommand reidentifyCommand = new ReidentifyProfileCommand();
+        when(context.getReidentifyProfileCommand()).thenReturn(reidentifyCommand);
+        
+        String[] args = new String[] {
+            "-i",
+            "-p",
+            "tmp/profile 1.droid",
+            "tmp/profile-2.droid",
+        };
+        
+        CommandLineParser parser = new GnuParser();
+        CommandLine cli = parser.parse(CommandLineParam.options(), args);
+        
+        assertTrue(factory.getReidentifyCommand(cli) == reidentifyCommand);
+        assertArrayEquals(new String[] {"tmp/profile 1.droid", "tmp/profile-2.droid"},
+                reidentifyCommand.getProfiles());
+    }
+    
+    @Test (expected = CommandLineSyntaxException.class)
+    public void testReidentifyCommandWithNoProfiles() throws Exception {
+        
+        CommandLineParser parser = new GnuParser();
+        CommandLine cli = parser.parse(CommandLineParam.options(), new String[] {"-i"});
+        
+        factory.getReidentifyCommand(cli);
+    }
+    
 }
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.command.action;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureFileInfo;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureManager;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureType;
+import uk.gov.nationalarchives.droid.profile.ProfileInstance;
+import uk.gov.nationalarchives.droid.profile.ProfileManager;
+import uk.gov.nationalarchives.droid.profile.ProfileManagerException;
+import uk.gov.nationalarchives.droid.results.handlers.ProgressObserver;
+
+public class ReidentifyProfileCommandTest {
+
+    private ProfileManager profileManager;
+    private Map<SignatureType, SignatureFileInfo> sigs;
+    private ReidentifyProfileCommand command;
+
+    @Before
+    public void setup() throws Exception {
+        profileManager = mock(ProfileManager.class);
+        SignatureManager signatureManager = mock(SignatureManager.class);
+        sigs = new HashMap<SignatureType, SignatureFileInfo>();
+        when(signatureManager.getDefaultSignatures()).thenReturn(sigs);
+
+        command = new ReidentifyProfileCommand();
+        command.setProfileManager(profileManager);
+        command.setSignatureManager(signatureManager);
+    }
+
+    @Test
+    public void testReidentifiesEachProfileAndSavesItBackToItsFile() throws Exception {
+        final Path file1 = Paths.get("foo1.droid");
+        final Path file2 = Paths.get("foo2.droid");
+        openProfile(file1, "profile1");
+        openProfile(file2, "profile2");
+        when(profileManager.reidentify("profile1", sigs)).thenReturn(mock(Future.class));
+        when(profileManager.reidentify("profile2", sigs)).thenReturn(mock(Future.class));
+
+        command.setProfiles(new String[] {"foo1.droid", "foo2.droid"});
+        command.execute();
+
+        verify(profileManager).save(eq("profile1"), eq(file1), any(ProgressObserver.class));
+        verify(profileManager).save(eq("profile2"), eq(file2), any(ProgressObserver.class));
+        verify(profileManager).closeProfile("profile1");
+        verify(profileManager).closeProfile("profile2");
+    }
+
+    @Test
+    public void testProfileIsClosedWhenItCannotBeReidentified() throws Exception {
+        openProfile(Paths.get("foo1.droid"), "profile1");
+        when(profileManager.reidentify("profile1", sigs)).thenThrow(new ProfileManagerException("running"));
+
+        command.setProfiles(new String[] {"foo1.droid"});
+        try {
+            command.execute();
+            fail("Expected a CommandExecutionException");
+        } catch (CommandExecutionException e) {
+            // expected
+        }
+        verify(profileManager).closeProfile("profile1");
+    }
+
+    private void openProfile(Path file, String uuid) throws Exception {
+        final ProfileInstance profile = mock(ProfileInstance.class);
+        when(profile.getUuid()).thenReturn(uuid);
+        when(profileManager.open(eq(file), any(ProgressObserver.class))).thenReturn(profile);
+    }
+}
@@ -86,27 +86,22 @@ public abstract class AbstractContainerIdentifier implements ContainerIdentifier
      */
     @Override
     public final IdentificationResultCollection submit(IdentificationRequest request) throws IOException {
-        final ContainerSignatureMatchCollection matches = new ContainerSignatureMatchCollection(
-            getContainerSignatures(),
-            init.getUniqueFileEntries(),
-            maxBytesToScan);
+        final ContainerSignatureMatchCollection matches =
+            new ContainerSignatureMatchCollection(init.getIndex(), maxBytesToScan);
 
         process(request, matches);
         final IdentificationResultCollection results = new IdentificationResultCollection(request);
-        final List<ContainerSignatureMatch> matchList = matches.getContainerSignatureMatches();
+        final List<ContainerSignature> matched = matches.getMatchedSignatures();
         // garbage reduction: use an indexed loop rather than allocating an iterator.
-        final int numMatches = matchList.size();
+        final int numMatches = matched.size();
         for (int i = 0; i < numMatches; i++) {
-            final ContainerSignatureMatch match = matchList.get(i);
-            if (match.isMatch()) {
-                List<FileFormatMapping> mappings = formats.get(match.getSignature().getId());
-                for (final FileFormatMapping mapping : mappings) {
-                    final IdentificationResultImpl result = new IdentificationResultImpl();
-                    result.setMethod(IdentificationMethod.CONTAINER);
-                    result.setRequestMetaData(request.getRequestMetaData());
-                    result.setPuid(mapping.getPuid());
-                    results.addResult(result);
-                }
+            List<FileFormatMapping> mappings = formats.get(matched.get(i).getId());
+            for (final FileFormatMapping mapping : mappings) {
+                final IdentificationResultImpl result = new IdentificationResultImpl();
+                result.setMethod(IdentificationMethod.CONTAINER);
+                result.setRequestMetaData(request.getRequestMetaData());
+                result.setPuid(mapping.getPuid());
+                results.addResult(result);
             }
         }
         
@@ -47,6 +47,7 @@ public class ContainerIdentifierInit {
     
     private List<String> uniqueFileEntries;
     private List<ContainerSignature> containerSignatures = new ArrayList<ContainerSignature>();
+    private volatile ContainerSignatureIndex index;
     
     /**
      * @param defs The definitions from the container signature
@@ -66,6 +67,7 @@ public class ContainerIdentifierInit {
             }
         }
         uniqueFileEntries = new ArrayList<String>(uniqueFileSet); 
+        index = new ContainerSignatureIndex(containerSignatures);
         
         for (final FileFormatMapping fmt : defs.getFormats()) {
             List<FileFormatMapping> mappings = formats.get(fmt.getSignatureId());
@@ -88,6 +90,27 @@ public class ContainerIdentifierInit {
      */
     public void addContainerSignature(final ContainerSignature containerSignature) {
         containerSignatures.add(containerSignature);
+        index = null;
+    }
+
+    /**
+     * Get the container signatures compiled for matching.  The index is compiled
+     * once, and again only if more signatures are added.
+     *
+     * @return the index of the container signatures
+     */
+    public ContainerSignatureIndex getIndex() {
+        ContainerSignatureIndex result = index;
+        if (result == null) {
+            synchronized (this) {
+                result = index;
+                if (result == null) {
+                    result = new ContainerSignatureIndex(containerSignatures);
+                    index = result;
+                }
+            }
+        }
+        return result;
     }
 
     /**
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignatureCollection;
+
+/**
+ * Container signatures compiled once for matching, indexed by the names of the entries they look for.
+ * <p>
+ * Each file of each signature is given a numbered slot, so that the state of a match can be held
+ * in bit sets by each {@link ContainerSignatureMatchCollection}, rather than in a set of names per signature.
+ * The binary signatures of the files are compiled when the index is built.
+ */
+public final class ContainerSignatureIndex {
+
+    private static final Slot[] NO_SLOTS = new Slot[0];
+
+    private final List<ContainerSignature> signatures;
+    private final int[] fileCounts;
+    private final int numSlots;
+    private final Map<String, Slot[]> slotsByEntry;
+    private final List<String> entries;
+
+    /**
+     * Compiles an index of container signatures.
+     * @param signatures the container signatures to index.
+     */
+    public ContainerSignatureIndex(final List<ContainerSignature> signatures) {
+        this.signatures = Collections.unmodifiableList(new ArrayList<ContainerSignature>(signatures));
+        this.fileCounts = new int[signatures.size()];
+        final Map<String, List<Slot>> slots = new HashMap<String, List<Slot>>();
+        int slot = 0;
+        for (int signature = 0; signature < signatures.size(); signature++) {
+            for (final Map.Entry<String, ContainerFile> file : signatures.get(signature).getFiles().entrySet()) {
+                List<Slot> entrySlots = slots.get(file.getKey());
+                if (entrySlots == null) {
+                    entrySlots = new ArrayList<Slot>();
+                    slots.put(file.getKey(), entrySlots);
+                }
+                entrySlots.add(new Slot(signature, slot++, file.getValue().getCompiledBinarySignatures()));
+                fileCounts[signature]++;
+            }
+        }
+        this.numSlots = slot;
+        this.slotsByEntry = new HashMap<String, Slot[]>(slots.size() * 2);
+        for (final Map.Entry<String, List<Slot>> entry : slots.entrySet()) {
+            slotsByEntry.put(entry.getKey(), entry.getValue().toArray(NO_SLOTS));
+        }
+
+        // Entries which more signatures look for are matched first, so that most signatures are
+        // resolved by the first few entries, and matching can stop as early as possible.
+        final List<String> names = new ArrayList<String>(slots.keySet());
+        Collections.sort(names, (first, second) -> {
+            final int bySignatures = slots.get(second).size() - slots.get(first).size();
+            return bySignatures != 0 ? bySignatures : first.compareTo(second);
+        });
+        this.entries = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @return the signatures in the index, in the order they were given.
+     */
+    public List<ContainerSignature> getSignatures() {
+        return signatures;
+    }
+
+    /**
+     * @return the unique entry names the signatures look for, the most widely used first.
+     */
+    public List<String> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @param signature the index of a signature.
+     * @return the number of files the signature looks for.
+     */
+    int getFileCount(final int signature) {
+        return fileCounts[signature];
+    }
+
+    /**
+     * @return the total number of files looked for by all the signatures.
+     */
+    int getNumSlots() {
+        return numSlots;
+    }
+
+    /**
+     * @param entryName the name of a container entry.
+     * @return the files of the signatures which look for the entry, or an empty array if none do.
+     */
+    Slot[] getSlots(final String entryName) {
+        final Slot[] slots = slotsByEntry.get(entryName);
+        return slots == null ? NO_SLOTS : slots;
+    }
+
+    /**
+     * A file looked for by a signature.
+     */
+    static final class Slot {
+
+        private final int signature;
+        private final int slot;
+        private final InternalSignatureCollection binarySignatures;
+
+        /**
+         * @param signature the index of the signature.
+         * @param slot the number of this file among all the files of all the signatures.
+         * @param binarySignatures the binary signatures the file must match, or null if its name is enough.
+         */
+        Slot(final int signature, final int slot, final InternalSignatureCollection binarySignatures) {
+            this.signature = signature;
+            this.slot = slot;
+            this.binarySignatures = binarySignatures;
+        }
+
+        /**
+         * @return the index of the signature.
+         */
+        int getSignature() {
+            return signature;
+        }
+
+        /**
+         * @return the number of this file among all the files of all the signatures.
+         */
+        int getSlot() {
+            return slot;
+        }
+
+        /**
+         * @return the binary signatures the file must match, or null if its name is enough.
+         */
+        InternalSignatureCollection getBinarySignatures() {
+            return binarySignatures;
+        }
+    }
+}
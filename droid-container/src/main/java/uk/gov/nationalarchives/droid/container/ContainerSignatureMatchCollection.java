@@ -32,17 +32,33 @@
 package uk.gov.nationalarchives.droid.container;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignatureCollection;
+
 /**
+ * Tracks the matching of a container against an index of container signatures.
+ * <p>
+ * A signature is resolved once all its files have matched, or once one of them cannot match.
+ * Engines should stop reading the container once every signature is resolved, and need only
+ * read the entries which an unresolved signature still looks for.
+ *
  * @author a-mpalmer
  *
  */
 public class ContainerSignatureMatchCollection {
 
-    private final List<ContainerSignatureMatch> matches = new ArrayList<ContainerSignatureMatch>();
-    private final List<String> allFileEntries; 
-    
+    private final ContainerSignatureIndex index;
+    private final List<String> allFileEntries;
+    private final long maxBytesToScan;
+    private final BitSet matchedFiles;
+    private final BitSet matched;
+    private final BitSet failed;
+    private final int[] unmatchedFileCounts;
+    private int unresolved;
+
     /**
      * 
      * @param signatures     The signatures from which to contruct our match objects.
@@ -51,11 +67,35 @@ public class ContainerSignatureMatchCollection {
      */
     public ContainerSignatureMatchCollection(final List<ContainerSignature> signatures, 
         final List<String> allFileEntries, final long maxBytesToScan) {
-        for (ContainerSignature sig : signatures) {
-            ContainerSignatureMatch match = new ContainerSignatureMatch(sig, maxBytesToScan);
-            matches.add(match);
-        }
+        this(new ContainerSignatureIndex(signatures), allFileEntries, maxBytesToScan);
+    }
+
+    /**
+     * @param index          The compiled container signatures to match against.
+     * @param maxBytesToScan - the max bytes to binary match on, or negative meaning unlimited.
+     */
+    public ContainerSignatureMatchCollection(final ContainerSignatureIndex index, final long maxBytesToScan) {
+        this(index, index.getEntries(), maxBytesToScan);
+    }
+
+    private ContainerSignatureMatchCollection(final ContainerSignatureIndex index,
+            final List<String> allFileEntries, final long maxBytesToScan) {
+        this.index = index;
         this.allFileEntries = allFileEntries;
+        this.maxBytesToScan = maxBytesToScan;
+        final int numSignatures = index.getSignatures().size();
+        this.matchedFiles = new BitSet(index.getNumSlots());
+        this.matched = new BitSet(numSignatures);
+        this.failed = new BitSet(numSignatures);
+        this.unmatchedFileCounts = new int[numSignatures];
+        for (int signature = 0; signature < numSignatures; signature++) {
+            unmatchedFileCounts[signature] = index.getFileCount(signature);
+            if (unmatchedFileCounts[signature] == 0) {
+                matched.set(signature);
+            } else {
+                unresolved++;
+            }
+        }
     }
     
     /**
@@ -65,13 +105,112 @@ public class ContainerSignatureMatchCollection {
     public List<String> getAllFileEntries() {
         return allFileEntries;
     }
-    
+
     /**
-     * 
-     * @return A list of all the container signature match objects.
+     * @return true if every signature has either matched or failed, so no more entries need to be read.
      */
-    public List<ContainerSignatureMatch> getContainerSignatureMatches() {
-        return matches;
+    public boolean isResolved() {
+        return unresolved == 0;
+    }
+
+    /**
+     * @param entryName the name of a container entry.
+     * @return true if an unresolved signature still looks for the entry.
+     */
+    public boolean needsEntry(final String entryName) {
+        for (final ContainerSignatureIndex.Slot slot : index.getSlots(entryName)) {
+            if (isUnmatched(slot)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param entryName the name of a container entry.
+     * @return true if an unresolved signature must match the content of the entry.
+     */
+    public boolean needsBinaryMatch(final String entryName) {
+        for (final ContainerSignatureIndex.Slot slot : index.getSlots(entryName)) {
+            if (slot.getBinarySignatures() != null && isUnmatched(slot)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches the files of unresolved signatures which only look for the name of the entry.
+     * @param entryName the name of a container entry which exists.
+     */
+    public void matchFileEntry(final String entryName) {
+        for (final ContainerSignatureIndex.Slot slot : index.getSlots(entryName)) {
+            if (slot.getBinarySignatures() == null && isUnmatched(slot)) {
+                matchFile(slot);
+            }
+        }
+    }
+
+    /**
+     * Matches the content of an entry against the files of unresolved signatures which look for it.
+     * Signatures whose binary signatures do not match the content fail.
+     * @param entryName the name of a container entry.
+     * @param content the content of the entry.
+     */
+    public void matchBinaryContent(final String entryName, final ByteReader content) {
+        for (final ContainerSignatureIndex.Slot slot : index.getSlots(entryName)) {
+            if (isUnmatched(slot)) {
+                final InternalSignatureCollection binarySignatures = slot.getBinarySignatures();
+                if (binarySignatures == null
+                        || !binarySignatures.getMatchingSignatures(content, maxBytesToScan).isEmpty()) {
+                    matchFile(slot);
+                } else {
+                    fail(slot.getSignature());
+                }
+            }
+        }
+    }
+
+    /**
+     * Fails the unresolved signatures which look for an entry the container does not have.
+     * @param entryName the name of a container entry which does not exist.
+     */
+    public void entryNotFound(final String entryName) {
+        for (final ContainerSignatureIndex.Slot slot : index.getSlots(entryName)) {
+            if (isUnmatched(slot)) {
+                fail(slot.getSignature());
+            }
+        }
+    }
+
+    /**
+     * @return The signatures which have matched completely, in the order of the index.
+     */
+    public List<ContainerSignature> getMatchedSignatures() {
+        final List<ContainerSignature> signatures = index.getSignatures();
+        final List<ContainerSignature> result = new ArrayList<ContainerSignature>(matched.cardinality());
+        for (int signature = matched.nextSetBit(0); signature >= 0; signature = matched.nextSetBit(signature + 1)) {
+            result.add(signatures.get(signature));
+        }
+        return result;
+    }
+
+    private boolean isUnmatched(final ContainerSignatureIndex.Slot slot) {
+        final int signature = slot.getSignature();
+        return !matchedFiles.get(slot.getSlot()) && !failed.get(signature) && !matched.get(signature);
+    }
+
+    private void matchFile(final ContainerSignatureIndex.Slot slot) {
+        matchedFiles.set(slot.getSlot());
+        final int signature = slot.getSignature();
+        if (--unmatchedFileCounts[signature] == 0) {
+            matched.set(signature);
+            unresolved--;
+        }
+    }
+
+    private void fail(final int signature) {
+        failed.set(signature);
+        unresolved--;
     }
-    
 }
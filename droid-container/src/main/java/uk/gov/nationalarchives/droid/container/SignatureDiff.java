@@ -0,0 +1,264 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.bind.JAXBException;
+
+import uk.gov.nationalarchives.droid.core.BinarySignatureIdentifier;
+import uk.gov.nationalarchives.droid.core.SignatureParseException;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureChanges;
+import uk.gov.nationalarchives.droid.core.signature.FileFormat;
+import uk.gov.nationalarchives.droid.core.signature.droid6.FFSignatureFile;
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignature;
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignatureCollection;
+
+/**
+ * The differences between two releases of the binary and container signature files
+ * which can affect the identification of a resource.
+ * <p>
+ * A PUID is considered changed if it was added or removed, or if its internal signatures,
+ * extensions, priorities, container signatures or container trigger changed.
+ * The extensions of changed formats (both old and new) are also collected, so that resources
+ * which may now match (or no longer match) on extension can be found.
+ */
+public final class SignatureDiff implements SignatureChanges {
+
+    private static final String SEPARATOR = "|";
+
+    private final Set<String> changedPuids;
+    private final Set<String> changedExtensions;
+
+    private SignatureDiff(Set<String> changedPuids, Set<String> changedExtensions) {
+        this.changedPuids = Collections.unmodifiableSet(changedPuids);
+        this.changedExtensions = Collections.unmodifiableSet(changedExtensions);
+    }
+
+    /**
+     * Compares two binary signature files.
+     *
+     * @param oldBinarySigFile The binary signature file previously in use.
+     * @param newBinarySigFile The binary signature file now in use.
+     * @return The differences between the two signature files.
+     * @throws SignatureParseException If either signature file could not be parsed.
+     */
+    public static SignatureDiff compare(Path oldBinarySigFile, Path newBinarySigFile)
+        throws SignatureParseException {
+        return compare(oldBinarySigFile, newBinarySigFile, null, null);
+    }
+
+    /**
+     * Compares two binary signature files, and optionally two container signature files.
+     *
+     * @param oldBinarySigFile The binary signature file previously in use.
+     * @param newBinarySigFile The binary signature file now in use.
+     * @param oldContainerSigFile The container signature file previously in use, or null.
+     * @param newContainerSigFile The container signature file now in use, or null.
+     * @return The differences between the signature files.
+     * @throws SignatureParseException If any signature file could not be parsed.
+     */
+    public static SignatureDiff compare(Path oldBinarySigFile, Path newBinarySigFile,
+            Path oldContainerSigFile, Path newContainerSigFile) throws SignatureParseException {
+
+        final FFSignatureFile oldSigFile = parseBinary(oldBinarySigFile);
+        final FFSignatureFile newSigFile = parseBinary(newBinarySigFile);
+        final Map<String, String> oldPrints = binaryFingerprints(oldSigFile);
+        final Map<String, String> newPrints = binaryFingerprints(newSigFile);
+
+        final Set<String> changedPuids = new TreeSet<>();
+        addDifferences(oldPrints, newPrints, changedPuids);
+
+        if (oldContainerSigFile != null && newContainerSigFile != null) {
+            addDifferences(containerFingerprints(parseContainer(oldContainerSigFile)),
+                    containerFingerprints(parseContainer(newContainerSigFile)), changedPuids);
+        }
+
+        final Set<String> changedExtensions = new TreeSet<>();
+        addExtensions(oldSigFile, changedPuids, changedExtensions);
+        addExtensions(newSigFile, changedPuids, changedExtensions);
+
+        return new SignatureDiff(changedPuids, changedExtensions);
+    }
+
+    /**
+     * @return The PUIDs whose identification may have changed between the signature files.
+     */
+    @Override
+    public Set<String> getChangedPuids() {
+        return changedPuids;
+    }
+
+    /**
+     * @return The upper-cased extensions of all changed formats, old and new.
+     */
+    @Override
+    public Set<String> getChangedExtensions() {
+        return changedExtensions;
+    }
+
+    /**
+     * @return true if there are no differences between the signature files.
+     */
+    @Override
+    public boolean isEmpty() {
+        return changedPuids.isEmpty();
+    }
+
+    private static FFSignatureFile parseBinary(Path sigFile) throws SignatureParseException {
+        final BinarySignatureIdentifier identifier = new BinarySignatureIdentifier();
+        identifier.setSignatureFile(sigFile.toString());
+        identifier.init();
+        return identifier.getSigFile();
+    }
+
+    private static ContainerSignatureDefinitions parseContainer(Path sigFile) throws SignatureParseException {
+        try (InputStream in = Files.newInputStream(sigFile)) {
+            return new ContainerSignatureSaxParser().parse(in);
+        } catch (IOException | JAXBException e) {
+            throw new SignatureParseException("Could not parse container signature file " + sigFile, e);
+        }
+    }
+
+    private static void addDifferences(Map<String, String> oldPrints, Map<String, String> newPrints,
+            Set<String> changedPuids) {
+        final Set<String> puids = new HashSet<>(oldPrints.keySet());
+        puids.addAll(newPrints.keySet());
+        for (final String puid : puids) {
+            final String oldPrint = oldPrints.get(puid);
+            if (oldPrint == null || !oldPrint.equals(newPrints.get(puid))) {
+                changedPuids.add(puid);
+            }
+        }
+    }
+
+    private static void addExtensions(FFSignatureFile sigFile, Set<String> puids, Set<String> extensions) {
+        final int numFormats = sigFile.getNumFileFormats();
+        for (int i = 0; i < numFormats; i++) {
+            final FileFormat format = sigFile.getFileFormat(i);
+            if (puids.contains(format.getPUID())) {
+                for (final String extension : format.getExtensions()) {
+                    extensions.add(extension.toUpperCase(Locale.ROOT));
+                }
+            }
+        }
+    }
+
+    private static Map<String, String> binaryFingerprints(FFSignatureFile sigFile) {
+        final Map<Integer, InternalSignature> signatures = new HashMap<>();
+        for (final InternalSignature signature : sigFile.getSignatures()) {
+            signatures.put(signature.getID(), signature);
+        }
+        final int numFormats = sigFile.getNumFileFormats();
+        final Map<Integer, String> puidsById = new HashMap<>(numFormats * 2);
+        for (int i = 0; i < numFormats; i++) {
+            final FileFormat format = sigFile.getFileFormat(i);
+            puidsById.put(format.getID(), format.getPUID());
+        }
+
+        final Map<String, String> fingerprints = new HashMap<>(numFormats * 2);
+        for (int i = 0; i < numFormats; i++) {
+            final FileFormat format = sigFile.getFileFormat(i);
+            final Set<String> sigExpressions = new TreeSet<>();
+            for (int s = 0; s < format.getNumInternalSignatures(); s++) {
+                final InternalSignature signature = signatures.get(format.getInternalSignatureID(s));
+                if (signature != null) {
+                    sigExpressions.add(signature.toRegularExpressions().toString());
+                }
+            }
+            final Set<String> extensions = new TreeSet<>();
+            for (final String extension : format.getExtensions()) {
+                extensions.add(extension.toUpperCase(Locale.ROOT));
+            }
+            final Set<String> priorities = new TreeSet<>();
+            for (final Integer formatId : format.getFormatIdsHasPriorityOver()) {
+                priorities.add(puidsById.get(formatId));
+            }
+            fingerprints.put(format.getPUID(), sigExpressions + SEPARATOR + extensions + SEPARATOR + priorities);
+        }
+        return fingerprints;
+    }
+
+    private static Map<String, String> containerFingerprints(ContainerSignatureDefinitions definitions) {
+        final Map<Integer, String> signatureFingerprints = new HashMap<>();
+        for (final ContainerSignature signature : definitions.getContainerSignatures()) {
+            final Set<String> files = new TreeSet<>();
+            for (final ContainerFile file : signature.getFiles().values()) {
+                final InternalSignatureCollection compiled = file.getCompiledBinarySignatures();
+                final List<String> expressions = new ArrayList<>();
+                if (compiled != null) {
+                    for (final InternalSignature internal : compiled.getInternalSignatures()) {
+                        expressions.add(internal.toRegularExpressions().toString());
+                    }
+                }
+                files.add(file.getPath() + "=" + expressions);
+            }
+            signatureFingerprints.put(signature.getId(), signature.getContainerType() + files);
+        }
+
+        final Map<String, Set<String>> puidSignatures = new HashMap<>();
+        for (final FileFormatMapping mapping : definitions.getFormats()) {
+            addTo(puidSignatures, mapping.getPuid(), signatureFingerprints.get(mapping.getSignatureId()));
+        }
+        for (final TriggerPuid trigger : definitions.getTiggerPuids()) {
+            addTo(puidSignatures, trigger.getPuid(), "trigger:" + trigger.getContainerType());
+        }
+
+        final Map<String, String> fingerprints = new HashMap<>(puidSignatures.size() * 2);
+        for (final Map.Entry<String, Set<String>> entry : puidSignatures.entrySet()) {
+            fingerprints.put(entry.getKey(), entry.getValue().toString());
+        }
+        return fingerprints;
+    }
+
+    private static void addTo(Map<String, Set<String>> map, String puid, String value) {
+        Set<String> values = map.get(puid);
+        if (values == null) {
+            values = new TreeSet<>();
+            map.put(puid, values);
+        }
+        values.add(String.valueOf(value));
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container;
+
+import java.nio.file.Path;
+
+import uk.gov.nationalarchives.droid.core.SignatureParseException;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.ErrorCode;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureChanges;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureComparator;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureFileException;
+
+/**
+ * Compares signature files using a {@link SignatureDiff}.
+ */
+public class SignatureDiffComparator implements SignatureComparator {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SignatureChanges compare(Path oldBinarySigFile, Path newBinarySigFile,
+            Path oldContainerSigFile, Path newContainerSigFile) throws SignatureFileException {
+        try {
+            return SignatureDiff.compare(oldBinarySigFile, newBinarySigFile, oldContainerSigFile, newContainerSigFile);
+        } catch (SignatureParseException e) {
+            throw new SignatureFileException(e.getMessage(), e, ErrorCode.INVALID_SIGNATURE_FILE);
+        }
+    }
+
+}
@@ -37,16 +37,10 @@ import java.util.Iterator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.apache.poi.poifs.filesystem.DirectoryEntry;
-import org.apache.poi.poifs.filesystem.DocumentInputStream;
-import org.apache.poi.poifs.filesystem.Entry;
-import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 
 import uk.gov.nationalarchives.droid.container.AbstractIdentifierEngine;
-import uk.gov.nationalarchives.droid.container.ContainerSignatureMatch;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureMatchCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
-import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
 
 /**
@@ -55,60 +49,36 @@ import uk.gov.nationalarchives.droid.core.signature.ByteReader;
  */
 public class Ole2IdentifierEngine extends AbstractIdentifierEngine {
 
-    private static final String NO_READER_ERROR =
-            "No reader was obtained for %s. This may be due to low memory conditions. "
-                    + "Try running with a larger heap size!";
     private final Logger log = LoggerFactory.getLogger(Ole2IdentifierEngine.class);
 
-    //CHECKSTYLE:OFF - cyclomatic complexity too high.
+    /**
+     * Matches the entries of the root storage of an OLE2 compound document.
+     * The document is read straight from the request's window reader, a sector at a time,
+     * so large documents are identified without loading them into memory.
+     *
+     * @param request the request for the compound document.
+     * @param matches the container signature matches to update.
+     * @throws IOException if a stream of the document could not be closed.
+     */
     @Override
     public void process(IdentificationRequest request, ContainerSignatureMatchCollection matches) throws IOException {
-        //CHECKSTYLE:ON
-        final InputStream in = request.getSourceInputStream();
-        POIFSFileSystem reader = null;
         try {
-            try {
-                if (FileSystemIdentificationRequest.class.isAssignableFrom(request.getClass())) {
-                    FileSystemIdentificationRequest req = FileSystemIdentificationRequest.class.cast(request);
-                    reader = new POIFSFileSystem(req.getFile().toFile());
-                } else {
-                    reader = new POIFSFileSystem(in);
-                }
-            } finally {
-                // We can get Out Of Memory errors when attempting to instantiate the POIFSFileSystem.  However, these
-                // are handled internally by POIFS and not propogated to the calling code.  Therefore we check here
-                // whether the reader has been assigned - if not, this is probably due to an Out Of Memory error,
-                // possibly caused by a low heap size.
-                if (reader == null) {
-                    //request.getIdentifier() is null when running in command line 'no profile' mode.
-                    String identifier = request.getIdentifier() != null
-                            ? request.getIdentifier().getUri().toString() : "the current container file";
-                    throw new IOException(String.format(NO_READER_ERROR, identifier));
-                }
-            }
-            DirectoryEntry root = reader.getRoot();
-            for (Iterator<Entry> it = root.getEntries(); it.hasNext();) {
-                Entry entry = it.next();
+            final Ole2Reader reader = new Ole2Reader(request.getWindowReader());
+            // Stop as soon as every signature has matched or failed:
+            for (Iterator<Ole2Reader.Entry> it = reader.getRootEntries().iterator();
+                    it.hasNext() && !matches.isResolved();) {
+                Ole2Reader.Entry entry = it.next();
                 String entryName = entry.getName().trim();
 
-                boolean needsBinaryMatch = false;
-
-                for (ContainerSignatureMatch match : matches.getContainerSignatureMatches()) {
-                    match.matchFileEntry(entryName);
-                    if (match.needsBinaryMatch(entryName)) {
-                        needsBinaryMatch = true;
-                    }
-                }
+                matches.matchFileEntry(entryName);
 
-                if (needsBinaryMatch) {
-                    DocumentInputStream docIn = null;
+                if (entry.isStream() && matches.needsBinaryMatch(entryName)) {
+                    InputStream docIn = null;
                     ByteReader byteReader = null;
                     try {
-                        docIn = reader.createDocumentInputStream(entry.getName());
+                        docIn = reader.getInputStream(entry);
                         byteReader = newByteReader(docIn);
-                        for (ContainerSignatureMatch match : matches.getContainerSignatureMatches()) {
-                            match.matchBinaryContent(entryName, byteReader);
-                        }
+                        matches.matchBinaryContent(entryName, byteReader);
                     } finally {
                         if (byteReader != null) {
                             byteReader.close();
@@ -120,16 +90,7 @@ public class Ole2IdentifierEngine extends AbstractIdentifierEngine {
                 }
             }
         } catch (IOException e) {
-            //System.out.println(e.getMessage());
             log.error(e.getMessage());
-        } finally {
-            if (reader != null) {
-                reader.close();
-            }
-
-            if (in != null) {
-                in.close();
-            }
         }
     }
 }
@@ -0,0 +1,407 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container.ole2;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * Reads the entries of an OLE2 compound document straight from a WindowReader.
+ * <p>
+ * Unlike POIFS reading an InputStream, the document is never loaded into memory.  Only the
+ * locations of the FAT sectors are held; the FAT, mini FAT and directory are read as they are needed,
+ * and streams are read a sector at a time.  Only the entries of the root storage are listed,
+ * as they are all that container signatures look for.  Not thread-safe.
+ */
+final class Ole2Reader {
+
+    private static final long SIGNATURE = 0xE11AB1A1E011CFD0L;
+    private static final int SMALL_SECTOR_SHIFT = 9;
+    private static final int LARGE_SECTOR_SHIFT = 12;
+    private static final int HEADER_DIFAT_ENTRIES = 109;
+    private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int INITIAL_CHAIN_LENGTH = 16;
+    private static final String CHAIN_DOES_NOT_END = "Sector chain does not end in OLE2 compound document: ";
+
+    // offsets of fields in the header:
+    private static final int HEADER_SECTOR_SHIFT = 30;
+    private static final int HEADER_MINI_SECTOR_SHIFT = 32;
+    private static final int HEADER_NUM_FAT_SECTORS = 44;
+    private static final int HEADER_FIRST_DIRECTORY_SECTOR = 48;
+    private static final int HEADER_MINI_STREAM_CUTOFF = 56;
+    private static final int HEADER_FIRST_MINI_FAT_SECTOR = 60;
+    private static final int HEADER_FIRST_DIFAT_SECTOR = 68;
+    private static final int HEADER_DIFAT = 76;
+
+    // offsets of fields in a directory entry:
+    private static final int DIRECTORY_ENTRY_LENGTH = 128;
+    private static final int ENTRY_NAME_LENGTH = 64;
+    private static final int ENTRY_TYPE = 66;
+    private static final int ENTRY_LEFT_SIBLING = 68;
+    private static final int ENTRY_RIGHT_SIBLING = 72;
+    private static final int ENTRY_CHILD = 76;
+    private static final int ENTRY_START_SECTOR = 116;
+    private static final int ENTRY_SIZE = 120;
+    private static final int MAX_NAME_BYTES = 64;
+    private static final int STREAM_TYPE = 2;
+
+    private static final int BYTE_BITS = 8;
+    private static final int SHORT_BYTES = 2;
+    private static final int INT_BYTES = 4;
+    private static final int LONG_BYTES = 8;
+
+    private final WindowReader reader;
+    private final int sectorShift;
+    private final int sectorSize;
+    private final int miniSectorShift;
+    private final long miniStreamCutoff;
+    private final int maxSectors;
+    private final int[] fatSectors;
+    private final int[] directorySectors;
+    private int[] miniFatSectors;
+    private int[] miniStreamSectors;
+
+    /**
+     * Reads the header, the locations of the FAT sectors and the chain of directory sectors.
+     *
+     * @param reader the reader over the compound document.
+     * @throws IOException if the document could not be read, or is not an OLE2 compound document.
+     */
+    Ole2Reader(final WindowReader reader) throws IOException {
+        this.reader = reader;
+        if (readLittleEndian(0, LONG_BYTES) != SIGNATURE) {
+            throw new IOException("Not an OLE2 compound document: " + reader);
+        }
+        sectorShift = readShort(HEADER_SECTOR_SHIFT);
+        miniSectorShift = readShort(HEADER_MINI_SECTOR_SHIFT);
+        if (sectorShift != SMALL_SECTOR_SHIFT && sectorShift != LARGE_SECTOR_SHIFT
+                || miniSectorShift <= 0 || miniSectorShift >= sectorShift) {
+            throw new IOException("Unsupported sector size in OLE2 compound document: " + reader);
+        }
+        sectorSize = 1 << sectorShift;
+        miniStreamCutoff = readInt(HEADER_MINI_STREAM_CUTOFF) & UNSIGNED_INT_MASK;
+        maxSectors = (int) Math.min(Integer.MAX_VALUE, reader.length() >> sectorShift);
+        fatSectors = readFatSectors();
+        directorySectors = readChain(readInt(HEADER_FIRST_DIRECTORY_SECTOR), false);
+    }
+
+    /**
+     * @return the entries of the root storage of the document.
+     * @throws IOException if the directory could not be read.
+     */
+    List<Entry> getRootEntries() throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+        final BitSet visited = new BitSet();
+        final Deque<Integer> toVisit = new ArrayDeque<>();
+        toVisit.push(readInt(entryPosition(0) + ENTRY_CHILD));
+        while (!toVisit.isEmpty()) {
+            final int id = toVisit.pop();
+            // ignore missing siblings, and any loops in a corrupt directory:
+            if (id >= 0 && id < directorySectors.length * (sectorSize / DIRECTORY_ENTRY_LENGTH) && !visited.get(id)) {
+                visited.set(id);
+                final long position = entryPosition(id);
+                entries.add(readEntry(position));
+                toVisit.push(readInt(position + ENTRY_RIGHT_SIBLING));
+                toVisit.push(readInt(position + ENTRY_LEFT_SIBLING));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param entry a stream entry of the document.
+     * @return a stream over the contents of the entry, which reads the document a sector at a time.
+     * @throws IOException if the mini stream could not be located.
+     */
+    InputStream getInputStream(final Entry entry) throws IOException {
+        final boolean mini = entry.size < miniStreamCutoff;
+        if (mini && miniStreamSectors == null) {
+            miniFatSectors = readChain(readInt(HEADER_FIRST_MINI_FAT_SECTOR), false);
+            miniStreamSectors = readChain(readInt(entryPosition(0) + ENTRY_START_SECTOR), false);
+        }
+        return new SectorInputStream(entry.startSector, entry.size, mini);
+    }
+
+    private int[] readFatSectors() throws IOException {
+        final int numFatSectors = readInt(HEADER_NUM_FAT_SECTORS);
+        if (numFatSectors < 0 || numFatSectors > maxSectors + 1) {
+            throw new IOException("Invalid number of FAT sectors in OLE2 compound document: " + reader);
+        }
+        final int[] sectors = new int[numFatSectors];
+        final int headerEntries = Math.min(numFatSectors, HEADER_DIFAT_ENTRIES);
+        for (int i = 0; i < headerEntries; i++) {
+            sectors[i] = readInt(HEADER_DIFAT + i * INT_BYTES);
+        }
+        // The remaining FAT sector locations are in a chain of DIFAT sectors, whose last int points to the next:
+        final int entriesPerDifatSector = sectorSize / INT_BYTES - 1;
+        int difatSector = readInt(HEADER_FIRST_DIFAT_SECTOR);
+        int index = headerEntries;
+        for (int count = 0; index < numFatSectors && difatSector >= 0 && count <= maxSectors; count++) {
+            final long position = sectorPosition(difatSector);
+            for (int i = 0; i < entriesPerDifatSector && index < numFatSectors; i++) {
+                sectors[index++] = readInt(position + i * INT_BYTES);
+            }
+            difatSector = readInt(position + entriesPerDifatSector * INT_BYTES);
+        }
+        return index == numFatSectors ? sectors : Arrays.copyOf(sectors, index);
+    }
+
+    private int[] readChain(final int firstSector, final boolean mini) throws IOException {
+        int[] chain = new int[INITIAL_CHAIN_LENGTH];
+        int length = 0;
+        for (int sector = firstSector; sector >= 0; sector = nextSector(sector, mini)) {
+            if (length > maxSectors) {
+                throw new IOException(CHAIN_DOES_NOT_END + reader);
+            }
+            if (length == chain.length) {
+                chain = Arrays.copyOf(chain, length * 2);
+            }
+            chain[length++] = sector;
+        }
+        return Arrays.copyOf(chain, length);
+    }
+
+    private int nextSector(final int sector, final boolean mini) throws IOException {
+        final int intsPerSector = sectorSize / INT_BYTES;
+        final int[] table = mini ? miniFatSectors : fatSectors;
+        final int tableIndex = sector / intsPerSector;
+        if (sector < 0 || tableIndex >= table.length) {
+            throw new IOException("Sector " + sector + " is not in the allocation table of OLE2 compound document: "
+                    + reader);
+        }
+        return readInt(sectorPosition(table[tableIndex]) + (sector % intsPerSector) * INT_BYTES);
+    }
+
+    private long sectorPosition(final int sector) {
+        return (long) (sector + 1) << sectorShift;
+    }
+
+    private long miniSectorPosition(final int miniSector) throws IOException {
+        final long offset = (long) miniSector << miniSectorShift;
+        final long index = offset >> sectorShift;
+        if (index >= miniStreamSectors.length) {
+            throw new IOException("Mini sector " + miniSector + " is not in the mini stream of OLE2 compound document: "
+                    + reader);
+        }
+        return sectorPosition(miniStreamSectors[(int) index]) + (offset & (sectorSize - 1));
+    }
+
+    private long entryPosition(final int id) throws IOException {
+        final int entriesPerSector = sectorSize / DIRECTORY_ENTRY_LENGTH;
+        final int index = id / entriesPerSector;
+        if (index >= directorySectors.length) {
+            throw new IOException("Directory entry " + id + " is missing from OLE2 compound document: " + reader);
+        }
+        return sectorPosition(directorySectors[index]) + (id % entriesPerSector) * DIRECTORY_ENTRY_LENGTH;
+    }
+
+    private Entry readEntry(final long position) throws IOException {
+        // the name length includes the terminating null character:
+        final int nameLength =
+                Math.max(0, Math.min(readShort(position + ENTRY_NAME_LENGTH), MAX_NAME_BYTES) - SHORT_BYTES);
+        final byte[] name = new byte[nameLength];
+        readFully(position, name, 0, nameLength);
+        long size = readLittleEndian(position + ENTRY_SIZE, LONG_BYTES);
+        if (sectorShift == SMALL_SECTOR_SHIFT) {
+            // the high part of the size is undefined in documents with 512 byte sectors:
+            size &= UNSIGNED_INT_MASK;
+        }
+        final boolean stream = reader.readByte(position + ENTRY_TYPE) == STREAM_TYPE;
+        return new Entry(new String(name, StandardCharsets.UTF_16LE), stream, readInt(position + ENTRY_START_SECTOR), size);
+    }
+
+    private void readFully(final long position, final byte[] into, final int offset, final int length)
+        throws IOException {
+        int copied = 0;
+        while (copied < length) {
+            final long readPosition = position + copied;
+            final Window window = reader.getWindow(readPosition);
+            if (window == null) {
+                throw noByteAt(readPosition);
+            }
+            final int windowOffset = (int) (readPosition - window.getWindowPosition());
+            final int toCopy = Math.min(length - copied, window.length() - windowOffset);
+            System.arraycopy(window.getArray(), windowOffset, into, offset + copied, toCopy);
+            copied += toCopy;
+        }
+    }
+
+    private int readShort(final long position) throws IOException {
+        return (int) readLittleEndian(position, SHORT_BYTES);
+    }
+
+    private int readInt(final long position) throws IOException {
+        return (int) readLittleEndian(position, INT_BYTES);
+    }
+
+    private long readLittleEndian(final long position, final int numBytes) throws IOException {
+        long value = 0;
+        for (int i = numBytes - 1; i >= 0; i--) {
+            final int b = reader.readByte(position + i);
+            if (b < 0) {
+                throw noByteAt(position + i);
+            }
+            value = (value << BYTE_BITS) | b;
+        }
+        return value;
+    }
+
+    private EOFException noByteAt(final long position) {
+        return new EOFException("No byte at position " + position + " in " + reader);
+    }
+
+    /**
+     * An entry of the root storage of a compound document.
+     */
+    static final class Entry {
+
+        private final String name;
+        private final boolean stream;
+        private final int startSector;
+        private final long size;
+
+        private Entry(final String name, final boolean stream, final int startSector, final long size) {
+            this.name = name;
+            this.stream = stream;
+            this.startSector = startSector;
+            this.size = size;
+        }
+
+        /**
+         * @return the name of the entry.
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * @return true if the entry is a stream, false if it is a storage.
+         */
+        boolean isStream() {
+            return stream;
+        }
+
+        /**
+         * @return the size of the entry in bytes.
+         */
+        long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * Reads a stream of the document by following its chain of sectors or mini sectors.
+     * A corrupt size or chain cannot make it read more than the document, or the mini stream, holds.
+     */
+    private final class SectorInputStream extends InputStream {
+
+        private final boolean mini;
+        private final int blockSize;
+        private final long maxBlocks;
+        private int sector;
+        private int blockOffset;
+        private long blocksRead;
+        private long remaining;
+
+        SectorInputStream(final int firstSector, final long size, final boolean mini) throws IOException {
+            this.mini = mini;
+            this.blockSize = mini ? 1 << miniSectorShift : sectorSize;
+            this.maxBlocks = mini ? (long) miniStreamSectors.length << (sectorShift - miniSectorShift) : maxSectors;
+            this.sector = firstSector;
+            this.remaining = Math.min(size, mini ? (long) miniStreamSectors.length << sectorShift : reader.length());
+            this.blocksRead = 1;
+        }
+
+        private void nextBlock() throws IOException {
+            if (++blocksRead > maxBlocks) {
+                throw new IOException(CHAIN_DOES_NOT_END + reader);
+            }
+            sector = nextSector(sector, mini);
+            blockOffset = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & BYTE_MASK;
+        }
+
+        @Override
+        public int read(final byte[] into, final int offset, final int length) throws IOException {
+            int result = -1;
+            if (length == 0) {
+                result = 0;
+            } else if (remaining > 0) {
+                if (blockOffset == blockSize) {
+                    nextBlock();
+                }
+                if (sector < 0) {
+                    throw new EOFException("Stream ends before its size in OLE2 compound document: " + reader);
+                }
+                final long position = mini ? miniSectorPosition(sector) : sectorPosition(sector);
+                result = (int) Math.min(Math.min(length, blockSize - blockOffset), remaining);
+                readFully(position + blockOffset, into, offset, result);
+                blockOffset += result;
+                remaining -= result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long toSkip = Math.min(Math.max(n, 0), remaining);
+            long skipped = 0;
+            while (skipped < toSkip) {
+                if (blockOffset == blockSize) {
+                    nextBlock();
+                }
+                final int step = (int) Math.min(blockSize - blockOffset, toSkip - skipped);
+                blockOffset += step;
+                remaining -= step;
+                skipped += step;
+            }
+            return skipped;
+        }
+    }
+}
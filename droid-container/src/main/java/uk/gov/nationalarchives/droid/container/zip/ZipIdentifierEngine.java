@@ -33,16 +33,15 @@ package uk.gov.nationalarchives.droid.container.zip;
 
 import java.io.InputStream;
 import java.io.IOException;
-import java.util.List;
+import java.util.Iterator;
 
 
 import de.schlichtherle.truezip.zip.ZipEntry;
 import de.schlichtherle.truezip.zip.ZipFile;
 import uk.gov.nationalarchives.droid.container.AbstractIdentifierEngine;
-import uk.gov.nationalarchives.droid.container.ContainerSignatureMatch;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureMatchCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
-import uk.gov.nationalarchives.droid.core.interfaces.archive.TrueZipReader;
+import uk.gov.nationalarchives.droid.core.interfaces.archive.RequestZipFiles;
 import uk.gov.nationalarchives.droid.core.signature.ByteReader;
 
 /**
@@ -76,35 +75,43 @@ public class ZipIdentifierEngine extends AbstractIdentifierEngine {
 
     @Override
     public void process(IdentificationRequest request, ContainerSignatureMatchCollection matches) throws IOException {
-        //rof, DEFAULT_CHARSET, true, false
-        ZipFile zipFile = new ZipFile(new TrueZipReader(request.getWindowReader()), ZipFile.DEFAULT_CHARSET, true, false);
-        try {
-            // For each entry:
-            for (String entryName : matches.getAllFileEntries()) {
-                final ZipEntry entry = zipFile.getEntry(entryName);
-                if (entry != null) {
-                    // Get a stream for the entry and a byte reader over the stream:
-                    InputStream stream = zipFile.getInputStream(entry);
-                    ByteReader reader = null;
-                    try {
-                        reader = newByteReader(stream);
-                        // For each signature to match:
-                        List<ContainerSignatureMatch> matchList = matches.getContainerSignatureMatches();
-                        for (ContainerSignatureMatch match : matchList) {
-                            match.matchBinaryContent(entryName, reader);
-                        }
-                    } finally {
-                        if (reader != null) {
-                            reader.close();
-                        }
-                        if (stream != null) {
-                            stream.close();
-                        }
+        // The zip file is kept for the request, so that expanding it as an archive
+        // does not parse its central directory again.  It is closed when the request is released.
+        final ZipFile zipFile = RequestZipFiles.get(request);
+        // For each entry still looked for, until every signature has matched or failed:
+        final Iterator<String> entries = matches.getAllFileEntries().iterator();
+        while (!matches.isResolved() && entries.hasNext()) {
+            final String entryName = entries.next();
+            if (matches.needsEntry(entryName)) {
+                matchEntry(zipFile, entryName, matches);
+            }
+        }
+    }
+
+    private void matchEntry(ZipFile zipFile, String entryName, ContainerSignatureMatchCollection matches)
+        throws IOException {
+        final ZipEntry entry = zipFile.getEntry(entryName);
+        if (entry == null) {
+            matches.entryNotFound(entryName);
+        } else {
+            matches.matchFileEntry(entryName);
+            // Only entries with binary signatures left to match need to be decompressed:
+            if (matches.needsBinaryMatch(entryName)) {
+                // Get a stream for the entry and a byte reader over the stream:
+                InputStream stream = zipFile.getInputStream(entry);
+                ByteReader reader = null;
+                try {
+                    reader = newByteReader(stream);
+                    matches.matchBinaryContent(entryName, reader);
+                } finally {
+                    if (reader != null) {
+                        reader.close();
+                    }
+                    if (stream != null) {
+                        stream.close();
                     }
                 }
             }
-        } finally {
-            zipFile.close();
         }
     }
 
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.signature.ByteReader;
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignature;
+import uk.gov.nationalarchives.droid.core.signature.droid6.InternalSignatureCollection;
+
+public class ContainerSignatureMatchCollectionTest {
+
+    private static ContainerSignature signature(int id, Map<String, ContainerFile> files) {
+        ContainerSignature sig = mock(ContainerSignature.class);
+        when(sig.getId()).thenReturn(id);
+        when(sig.getFiles()).thenReturn(files);
+        return sig;
+    }
+
+    private static ContainerFile binaryFile(boolean matches) {
+        InternalSignatureCollection binarySigs = mock(InternalSignatureCollection.class);
+        when(binarySigs.getMatchingSignatures(any(ByteReader.class), anyLong())).thenReturn(matches
+            ? Collections.singletonList(mock(InternalSignature.class)) : Collections.<InternalSignature>emptyList());
+        ContainerFile file = mock(ContainerFile.class);
+        when(file.getCompiledBinarySignatures()).thenReturn(binarySigs);
+        return file;
+    }
+
+    @Test
+    public void testEntriesLookedForByMostSignaturesComeFirst() {
+        Map<String, ContainerFile> files1 = new HashMap<String, ContainerFile>();
+        files1.put("a", new ContainerFile());
+        files1.put("common", new ContainerFile());
+        Map<String, ContainerFile> files2 = new HashMap<String, ContainerFile>();
+        files2.put("common", new ContainerFile());
+
+        ContainerSignatureIndex index = new ContainerSignatureIndex(
+            Arrays.asList(signature(1, files1), signature(2, files2)));
+        assertEquals(Arrays.asList("common", "a"), index.getEntries());
+    }
+
+    @Test
+    public void testMatchingIsResolvedOnceEverySignatureHasMatchedOrFailed() {
+        Map<String, ContainerFile> files1 = new HashMap<String, ContainerFile>();
+        files1.put("name", new ContainerFile());
+        files1.put("content", binaryFile(true));
+        Map<String, ContainerFile> files2 = new HashMap<String, ContainerFile>();
+        files2.put("content", binaryFile(false));
+        Map<String, ContainerFile> files3 = new HashMap<String, ContainerFile>();
+        files3.put("missing", new ContainerFile());
+
+        ContainerSignature sig1 = signature(1, files1);
+        ContainerSignatureMatchCollection matches = new ContainerSignatureMatchCollection(
+            new ContainerSignatureIndex(Arrays.asList(sig1, signature(2, files2), signature(3, files3))), -1L);
+
+        matches.matchFileEntry("name");
+        assertFalse(matches.needsEntry("name"));
+        assertTrue(matches.needsBinaryMatch("content"));
+
+        matches.matchBinaryContent("content", mock(ByteReader.class));
+        assertFalse(matches.needsEntry("content"));
+        assertFalse(matches.isResolved());
+
+        matches.entryNotFound("missing");
+        assertTrue(matches.isResolved());
+        List<ContainerSignature> matched = matches.getMatchedSignatures();
+        assertEquals(Collections.singletonList(sig1), matched);
+    }
+
+    @Test
+    public void testSignaturesWithoutFilesMatchStraightAway() {
+        ContainerSignature empty = signature(1, new HashMap<String, ContainerFile>());
+        ContainerSignatureMatchCollection matches = new ContainerSignatureMatchCollection(
+            new ContainerSignatureIndex(Collections.singletonList(empty)), -1L);
+        assertTrue(matches.isResolved());
+        assertEquals(Collections.singletonList(empty), matches.getMatchedSignatures());
+    }
+}
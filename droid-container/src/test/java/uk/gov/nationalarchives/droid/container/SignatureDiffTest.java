@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SignatureDiffTest {
+
+    private static final Path V16 = Paths.get("../droid-core/test_sig_files/DROID_SignatureFile_V16.xml");
+    private static final Path V26 = Paths.get("../droid-core/test_sig_files/DROID_SignatureFile_V26.xml");
+    private static final Path CONTAINER = Paths.get("src/main/resources/container-signature-20170330.xml");
+
+    @Test
+    public void testSameSignatureFilesHaveNoDifferences() throws Exception {
+        SignatureDiff diff = SignatureDiff.compare(V26, V26, CONTAINER, CONTAINER);
+        assertTrue(diff.isEmpty());
+        assertTrue(diff.getChangedPuids().isEmpty());
+        assertTrue(diff.getChangedExtensions().isEmpty());
+    }
+
+    @Test
+    public void testDifferentSignatureFilesReportChangedPuidsAndExtensions() throws Exception {
+        SignatureDiff diff = SignatureDiff.compare(V16, V26);
+        assertFalse(diff.isEmpty());
+        assertFalse(diff.getChangedExtensions().isEmpty());
+        for (String extension : diff.getChangedExtensions()) {
+            assertTrue(extension.equals(extension.toUpperCase()));
+        }
+    }
+
+    @Test
+    public void testFormatsOnlyInOneSignatureFileAreChanged() throws Exception {
+        SignatureDiff forward = SignatureDiff.compare(V16, V26);
+        SignatureDiff backward = SignatureDiff.compare(V26, V16);
+        assertTrue(forward.getChangedPuids().equals(backward.getChangedPuids()));
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.container.ole2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.byteseek.io.reader.ByteArrayReader;
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.poifs.filesystem.DirectoryEntry;
+import org.apache.poi.poifs.filesystem.Entry;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.junit.Before;
+import org.junit.Test;
+
+public class Ole2ReaderTest {
+
+    private byte[] small;
+    private byte[] large;
+    private byte[] document;
+
+    @Before
+    public void setup() throws IOException {
+        small = bytes(100);
+        large = bytes(100000);
+        try (POIFSFileSystem fs = new POIFSFileSystem()) {
+            fs.createDocument(new ByteArrayInputStream(small), "Small");
+            fs.createDocument(new ByteArrayInputStream(large), "WordDocument");
+            DirectoryEntry storage = fs.createDirectory("ObjectPool");
+            storage.createDocument("Nested", new ByteArrayInputStream(small));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            fs.writeFilesystem(out);
+            document = out.toByteArray();
+        }
+    }
+
+    @Test
+    public void testRootEntriesAreListed() throws IOException {
+        Map<String, Ole2Reader.Entry> entries = rootEntries(new Ole2Reader(new ByteArrayReader(document)));
+        assertEquals(3, entries.size());
+        assertTrue(entries.get("Small").isStream());
+        assertEquals(100, entries.get("Small").getSize());
+        assertTrue(entries.get("WordDocument").isStream());
+        assertEquals(100000, entries.get("WordDocument").getSize());
+        assertFalse(entries.get("ObjectPool").isStream());
+    }
+
+    @Test
+    public void testStreamsInTheMiniStreamAndInSectorsAreRead() throws IOException {
+        Ole2Reader reader = new Ole2Reader(new ByteArrayReader(document));
+        Map<String, Ole2Reader.Entry> entries = rootEntries(reader);
+        try (InputStream in = reader.getInputStream(entries.get("Small"))) {
+            assertArrayEquals(small, IOUtils.toByteArray(in));
+        }
+        try (InputStream in = reader.getInputStream(entries.get("WordDocument"))) {
+            assertEquals(1000, in.skip(1000));
+            byte[] rest = IOUtils.toByteArray(in);
+            assertEquals(large.length - 1000, rest.length);
+            assertEquals(large[1000], rest[0]);
+            assertEquals(large[large.length - 1], rest[rest.length - 1]);
+        }
+    }
+
+    @Test
+    public void testSameEntriesAsPoifsAreListed() throws IOException {
+        byte[] word97 = IOUtils.toByteArray(getClass().getResource("/word97.doc"));
+        Set<String> poifsNames = new HashSet<>();
+        try (POIFSFileSystem fs = new POIFSFileSystem(new ByteArrayInputStream(word97))) {
+            for (Iterator<Entry> it = fs.getRoot().getEntries(); it.hasNext();) {
+                poifsNames.add(it.next().getName());
+            }
+        }
+        assertEquals(poifsNames, rootEntries(new Ole2Reader(new ByteArrayReader(word97))).keySet());
+    }
+
+    @Test
+    public void testAStreamWhoseChainLoopsOnlyReadsAsMuchAsTheDocumentHolds() throws IOException {
+        // point the first sector of WordDocument back at itself, and claim it is 2 GB long:
+        byte[] corrupt = document.clone();
+        int directory = (readInt(corrupt, 48) + 1) * 512;
+        int entry = directory;
+        while (!"WordDocument".equals(new String(corrupt, entry, 24, StandardCharsets.UTF_16LE))) {
+            entry += 128;
+        }
+        int start = readInt(corrupt, entry + 116);
+        writeInt(corrupt, entry + 120, Integer.MAX_VALUE);
+        writeInt(corrupt, (readInt(corrupt, 76) + 1) * 512 + start * 4, start);
+
+        Ole2Reader reader = new Ole2Reader(new ByteArrayReader(corrupt));
+        Ole2Reader.Entry wordDocument = rootEntries(reader).get("WordDocument");
+        try (InputStream in = reader.getInputStream(wordDocument)) {
+            assertTrue(IOUtils.toByteArray(in).length <= corrupt.length);
+        }
+        try (InputStream in = reader.getInputStream(wordDocument)) {
+            assertTrue(in.skip(Integer.MAX_VALUE) <= corrupt.length);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testAnythingElseIsNotRead() throws IOException {
+        new Ole2Reader(new ByteArrayReader(large));
+    }
+
+    private static Map<String, Ole2Reader.Entry> rootEntries(Ole2Reader reader) throws IOException {
+        List<Ole2Reader.Entry> list = reader.getRootEntries();
+        Map<String, Ole2Reader.Entry> entries = new HashMap<>();
+        for (Ole2Reader.Entry entry : list) {
+            entries.put(entry.getName(), entry);
+        }
+        return entries;
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return (bytes[position] & 0xFF) | (bytes[position + 1] & 0xFF) << 8
+                | (bytes[position + 2] & 0xFF) << 16 | (bytes[position + 3] & 0xFF) << 24;
+    }
+
+    private static void writeInt(byte[] bytes, int position, int value) {
+        for (int i = 0; i < 4; i++) {
+            bytes[position + i] = (byte) (value >> (8 * i));
+        }
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31 + i / 256);
+        }
+        return bytes;
+    }
+}
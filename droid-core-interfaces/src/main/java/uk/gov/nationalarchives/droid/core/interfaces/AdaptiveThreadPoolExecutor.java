@@ -0,0 +1,321 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread pool with a bounded work queue, which resizes itself to hold a target CPU utilisation.
+ * <p>
+ * The pool measures how long its tasks spend waiting (for I/O, locks, etc.) compared to the
+ * CPU time they use, and sizes itself as:
+ * <pre>  threads = allowed cores * (1 + wait time / cpu time)</pre>
+ * between one thread and its maximum.  On its own, a pool is allowed cores * targetUtilisation.
+ * Pools which share a {@link UtilisationBudget} are allowed a share of it instead, so that
+ * together they aim for the target utilisation.  It only grows while tasks are waiting in the queue,
+ * and shrinks back when its threads are idle.  If the maximum is the same as the initial
+ * size, or the JVM cannot measure thread CPU time, the pool keeps its initial size.
+ * <p>
+ * A thread submitting a task while the queue is full blocks until there is space, rather than
+ * running the task itself.  Only a thread of the pool which submits to its own pool runs the
+ * task itself, as blocking there could deadlock.
+ */
+public class AdaptiveThreadPoolExecutor extends ThreadPoolExecutor {
+
+    /** The default target CPU utilisation, as a percentage. */
+    public static final int DEFAULT_TARGET_UTILISATION = 90;
+
+    /** The maximum number of threads per core used when no maximum is configured. */
+    public static final int AUTO_MAX_THREADS_PER_CORE = 4;
+
+    private static final long ADJUST_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int MIN_SAMPLES = 8;
+    private static final long OFFER_WAIT_MILLIS = 100;
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+    // the pool whose task the current thread is running, if any.
+    private static final ThreadLocal<ThreadPoolExecutor> RUNNING_TASK_OF = new ThreadLocal<>();
+
+    private final int maxThreads;
+    private final UtilisationBudget budget;
+    private final boolean adaptive;
+    private final ThreadLocal<long[]> taskStart = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    // measurements since the last time the pool was resized:
+    private final AtomicLong sampleCount = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong cpuNanos = new AtomicLong();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final AtomicLong lastAdjusted = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param name the name of the pool, used to name its threads.
+     * @param initialThreads the number of threads to start with.
+     * @param maxThreads the maximum number of threads, or zero or less to allow
+     *        {@link #AUTO_MAX_THREADS_PER_CORE} threads per core.
+     * @param queueSize the maximum number of tasks waiting for a thread.
+     * @param targetUtilisation the CPU utilisation to aim for, as a percentage.
+     *        If not between 1 and 100, the {@link #DEFAULT_TARGET_UTILISATION} is used.
+     */
+    public AdaptiveThreadPoolExecutor(String name, int initialThreads, int maxThreads, int queueSize,
+            int targetUtilisation) {
+        this(name, initialThreads, maxThreads, queueSize, targetUtilisation, new PoolThreadFactory(name));
+    }
+
+    /**
+     * @param name the name of the pool.
+     * @param initialThreads the number of threads to start with.
+     * @param maxThreads the maximum number of threads, or zero or less to allow
+     *        {@link #AUTO_MAX_THREADS_PER_CORE} threads per core.
+     * @param queueSize the maximum number of tasks waiting for a thread.
+     * @param targetUtilisation the CPU utilisation to aim for, as a percentage.
+     *        If not between 1 and 100, the {@link #DEFAULT_TARGET_UTILISATION} is used.
+     * @param threadFactory the factory creating threads for the pool.
+     */
+    public AdaptiveThreadPoolExecutor(String name, int initialThreads, int maxThreads, int queueSize,
+            int targetUtilisation, ThreadFactory threadFactory) {
+        this(initialThreads, maxThreads, new ArrayBlockingQueue<Runnable>(queueSize), targetUtilisation,
+                threadFactory);
+    }
+
+    /**
+     * @param initialThreads the number of threads to start with.
+     * @param maxThreads the maximum number of threads, or zero or less to allow
+     *        {@link #AUTO_MAX_THREADS_PER_CORE} threads per core.
+     * @param queueSize the maximum number of tasks waiting for a thread.
+     * @param budget the CPU utilisation budget the pool shares with other pools.
+     * @param threadFactory the factory creating threads for the pool.
+     */
+    public AdaptiveThreadPoolExecutor(int initialThreads, int maxThreads, int queueSize, UtilisationBudget budget,
+            ThreadFactory threadFactory) {
+        this(initialThreads, maxThreads, new ArrayBlockingQueue<Runnable>(queueSize), budget, threadFactory);
+    }
+
+    /**
+     * @param initialThreads the number of threads to start with.
+     * @param maxThreads the maximum number of threads, or zero or less to allow
+     *        {@link #AUTO_MAX_THREADS_PER_CORE} threads per core.
+     * @param workQueue the bounded queue of tasks waiting for a thread, which decides their order.
+     * @param targetUtilisation the CPU utilisation to aim for, as a percentage.
+     *        If not between 1 and 100, the {@link #DEFAULT_TARGET_UTILISATION} is used.
+     * @param threadFactory the factory creating threads for the pool.
+     */
+    public AdaptiveThreadPoolExecutor(int initialThreads, int maxThreads, BlockingQueue<Runnable> workQueue,
+            int targetUtilisation, ThreadFactory threadFactory) {
+        this(initialThreads, maxThreads, workQueue, new UtilisationBudget(targetUtilisation), threadFactory);
+    }
+
+    /**
+     * @param initialThreads the number of threads to start with.
+     * @param maxThreads the maximum number of threads, or zero or less to allow
+     *        {@link #AUTO_MAX_THREADS_PER_CORE} threads per core.
+     * @param workQueue the bounded queue of tasks waiting for a thread, which decides their order.
+     * @param budget the CPU utilisation budget the pool shares with other pools.
+     * @param threadFactory the factory creating threads for the pool.
+     */
+    public AdaptiveThreadPoolExecutor(int initialThreads, int maxThreads, BlockingQueue<Runnable> workQueue,
+            UtilisationBudget budget, ThreadFactory threadFactory) {
+        super(clampedInitial(initialThreads, maxThreads), clampedInitial(initialThreads, maxThreads),
+                0L, TimeUnit.MILLISECONDS, workQueue, threadFactory, new BlockingUnlessOwnThreadPolicy());
+        this.maxThreads = maxThreadsFor(maxThreads);
+        this.budget = budget;
+        this.adaptive = this.maxThreads != getCorePoolSize() && THREAD_BEAN.isCurrentThreadCpuTimeSupported()
+                && THREAD_BEAN.isThreadCpuTimeEnabled();
+        if (adaptive) {
+            budget.join(this);
+        }
+        prestartAllCoreThreads();
+    }
+
+    private static int maxThreadsFor(int maxThreads) {
+        return maxThreads > 0 ? maxThreads : Runtime.getRuntime().availableProcessors() * AUTO_MAX_THREADS_PER_CORE;
+    }
+
+    private static int clampedInitial(int initialThreads, int maxThreads) {
+        return Math.max(1, Math.min(initialThreads, maxThreadsFor(maxThreads)));
+    }
+
+    /**
+     * @return the maximum number of threads the pool can grow to.
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * @return true if the pool resizes itself.
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        RUNNING_TASK_OF.set(this);
+        if (adaptive) {
+            final long[] start = taskStart.get();
+            start[0] = System.nanoTime();
+            start[1] = THREAD_BEAN.getCurrentThreadCpuTime();
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        RUNNING_TASK_OF.remove();
+        if (adaptive) {
+            final long[] start = taskStart.get();
+            final long now = System.nanoTime();
+            final long cpu = Math.max(0, THREAD_BEAN.getCurrentThreadCpuTime() - start[1]);
+            cpuNanos.addAndGet(cpu);
+            waitNanos.addAndGet(Math.max(0, now - start[0] - cpu));
+            sampleCount.incrementAndGet();
+            final int active = getActiveCount();
+            int peak = peakActive.get();
+            while (active > peak && !peakActive.compareAndSet(peak, active)) {
+                peak = peakActive.get();
+            }
+            final long last = lastAdjusted.get();
+            if (now - last >= ADJUST_INTERVAL_NANOS && sampleCount.get() >= MIN_SAMPLES
+                    && lastAdjusted.compareAndSet(last, now)) {
+                adjust(now - last);
+            }
+        }
+    }
+
+    @Override
+    protected void terminated() {
+        super.terminated();
+        budget.leave(this);
+    }
+
+    private void adjust(long intervalNanos) {
+        final long cpu = cpuNanos.getAndSet(0);
+        final long wait = waitNanos.getAndSet(0);
+        sampleCount.set(0);
+        final int busy = peakActive.getAndSet(0);
+
+        final int current = getCorePoolSize();
+        int target = current;
+        final double allowedCores = budget.allowance(this, (double) cpu / intervalNanos);
+        if (cpu > 0) {
+            target = (int) Math.round(allowedCores * (1 + (double) wait / cpu));
+        }
+        if (getQueue().isEmpty()) {
+            target = Math.min(target, busy); // no backlog - don't keep threads which are not used.
+        }
+        // move gradually, to avoid over-reacting to a single interval:
+        target = Math.max(target, (current + 1) / 2);
+        target = Math.min(target, current * 2);
+        setPoolSize(Math.max(1, Math.min(target, maxThreads)));
+    }
+
+    /**
+     * Sets the number of threads in the pool.
+     * @param threads the number of threads.
+     */
+    void setPoolSize(int threads) {
+        if (threads > getMaximumPoolSize()) {
+            setMaximumPoolSize(threads);
+            setCorePoolSize(threads);
+        } else if (threads < getCorePoolSize()) {
+            setCorePoolSize(threads);
+            setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * Blocks the submitting thread until there is space in the queue, unless it is a thread
+     * of the pool itself, in which case it runs the task.
+     */
+    private static final class BlockingUnlessOwnThreadPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            try {
+                while (!executor.isShutdown()) {
+                    if (RUNNING_TASK_OF.get() == executor) {
+                        r.run();
+                        return;
+                    }
+                    if (executor.getQueue().offer(r, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        // as in execute(), take the task back if the pool was shut down meanwhile:
+                        if (!executor.isShutdown() || !executor.remove(r)) {
+                            return;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting to queue a task.", e);
+            }
+            throw new RejectedExecutionException("Executor has been shut down.");
+        }
+    }
+
+    private static final class PoolThreadFactory implements ThreadFactory {
+
+        private final ThreadGroup group;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String namePrefix;
+
+        private PoolThreadFactory(String name) {
+            SecurityManager s = System.getSecurityManager();
+            group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
+            namePrefix = name + "-thread-";
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(group, r, namePrefix + threadNumber.getAndIncrement());
+            t.setDaemon(false);
+            t.setPriority(Thread.NORM_PRIORITY);
+            return t;
+        }
+    }
+}
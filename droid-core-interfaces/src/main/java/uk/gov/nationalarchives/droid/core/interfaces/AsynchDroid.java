@@ -32,6 +32,8 @@
 package uk.gov.nationalarchives.droid.core.interfaces;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Future;
 
 
@@ -48,6 +50,36 @@ public interface AsynchDroid {
      */
     Future<IdentificationResultCollection> submit(final IdentificationRequest request);
 
+    /**
+     * Opens a request from its source and submits it asynchronously.
+     * Implementations may open the request on another thread, in which case they
+     * report any failure to open it themselves.
+     * @param request the request to submit
+     * @param source the source to open the request from
+     * @param <T> the type of the source
+     * @return future task
+     * @throws IOException if the request could not be opened
+     */
+    default <T> Future<IdentificationResultCollection> submit(final IdentificationRequest<T> request, final T source)
+        throws IOException {
+        request.open(source);
+        return submit(request);
+    }
+
+    /**
+     * Opens and identifies a batch of small requests asynchronously, as a single task.
+     * The requests are identified back to back on the same thread, and their results are
+     * reported to the result handler together.  Failures to open a request are reported
+     * to the result handler.
+     * @param requests the requests to submit
+     * @param sources the source to open each request from, in the same order as the requests
+     * @param <T> the type of the sources
+     * @return the results of each request, in the same order as the requests
+     *         (null for requests which could not be identified)
+     */
+    <T> Future<List<IdentificationResultCollection>> submitBatch(List<IdentificationRequest<T>> requests,
+            List<T> sources);
+
     /**
      * Waits until in-flight jobs have finished.
      * @throws InterruptedException if the calling thread was interrupted.
@@ -72,6 +104,14 @@ public interface AsynchDroid {
      */
     void replay() throws IOException;
 
+    /**
+     * @return the throughput of each device read from so far, or an empty list if
+     *         throughput is not measured for each device.
+     */
+    default List<DeviceThroughput> getDeviceThroughput() {
+        return Collections.emptyList();
+    }
+
     
     /**
      * Sets the maximum number of bytes to scan.
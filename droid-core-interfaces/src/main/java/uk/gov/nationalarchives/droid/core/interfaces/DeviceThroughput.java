@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+
+/**
+ * The throughput of a device (file store) that files were read from during a run.
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class DeviceThroughput {
+
+    @XmlAttribute(name = "Name")
+    private String name;
+
+    @XmlElement(name = "Completed")
+    private long completedCount;
+
+    @XmlElement(name = "Bytes")
+    private long bytes;
+
+    @XmlElement(name = "MegabytesPerSecond")
+    private double megabytesPerSecond;
+
+    @XmlElement(name = "MeanLatencyMillis")
+    private double meanLatencyMillis;
+
+    /**
+     * Default Constructor.
+     */
+    DeviceThroughput() { }
+
+    /**
+     * @param name the name of the device.
+     * @param completedCount the number of files read from the device.
+     * @param bytes the number of bytes in the files read from the device.
+     * @param megabytesPerSecond the rate the files were read from the device.
+     * @param meanLatencyMillis the mean time taken to identify a file read from the device.
+     */
+    public DeviceThroughput(String name, long completedCount, long bytes, double megabytesPerSecond,
+            double meanLatencyMillis) {
+        this.name = name;
+        this.completedCount = completedCount;
+        this.bytes = bytes;
+        this.megabytesPerSecond = megabytesPerSecond;
+        this.meanLatencyMillis = meanLatencyMillis;
+    }
+
+    /**
+     * @return the name of the device.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of files read from the device.
+     */
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * @return the number of bytes in the files read from the device.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the rate the files were read from the device, in megabytes per second.
+     */
+    public double getMegabytesPerSecond() {
+        return megabytesPerSecond;
+    }
+
+    /**
+     * @return the mean time taken to identify a file read from the device, in milliseconds.
+     */
+    public double getMeanLatencyMillis() {
+        return meanLatencyMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d files, %d bytes, %.1f MB/s, mean latency %.1f ms",
+                name, completedCount, bytes, megabytesPerSecond, meanLatencyMillis);
+    }
+}
@@ -51,6 +51,7 @@ public class IdentificationResultCollection {
     private URI resourceUri;
     private Long fileLength;
     private ResourceId correlationId;
+    private ResourceId resourceId;
     private boolean archive;
     private RequestMetaData requestMetaData;
     private Boolean fileExtensionMismatch = false;
@@ -61,6 +62,7 @@ public class IdentificationResultCollection {
      */
     public IdentificationResultCollection(IdentificationRequest request) {
         correlationId = request.getIdentifier().getParentResourceId();
+        resourceId = request.getIdentifier().getResourceId();
         resourceUri = request.getIdentifier().getUri();
     }
 
@@ -104,6 +106,13 @@ public class IdentificationResultCollection {
         return correlationId;
     }
 
+    /**
+     * @return the id of an existing node being re-identified, or null for a new resource.
+     */
+    public ResourceId getResourceId() {
+        return resourceId;
+    }
+
     /**
      * The URI of the request.
      * @param uri the uri of the request
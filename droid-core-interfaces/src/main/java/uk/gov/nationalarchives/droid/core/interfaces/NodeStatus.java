@@ -53,7 +53,10 @@ public enum NodeStatus {
     ERROR("Error", "An unexpected error has occurred while processing the resource."),
 
     /** Folder nodes which don't have any child. */
-    EMPTY("Empty", "Folder or container is empty");
+    EMPTY("Empty", "Folder or container is empty"),
+
+    /** Resources which have been listed, but whose identification has been deferred. */
+    PENDING("Pending", "The resource has been listed, but not identified yet.");
     
     
     private String status;
@@ -31,10 +31,7 @@
  */
 package uk.gov.nationalarchives.droid.core.interfaces;
 
-
-
-
-
+import java.util.List;
 
 /**
  * Handles identification results.
@@ -50,6 +47,21 @@ public interface ResultHandler {
      */
     ResourceId handle(IdentificationResultCollection result);
 
+    /**
+     * Invoked when DROID completes the identification of a batch of requests.
+     * @param results the results of each identification.
+     * @return the allocated IDs of the handled results, in the same order as the results.
+     */
+    List<ResourceId> handleBatch(List<IdentificationResultCollection> results);
+
+    /**
+     * Invoked when a resource is listed but its identification is deferred,
+     * to record it as pending without opening it.
+     * @param request the request for the resource, which has not been opened.
+     * @return the allocated ID of the pending resource.
+     */
+    ResourceId handlePending(IdentificationRequest request);
+
     /**
      * Invoked whenever DROID completes an identification.
      * @param result the result of the identification.
@@ -59,6 +71,14 @@ public interface ResultHandler {
      */
     ResourceId handleDirectory(IdentificationResult result, ResourceId parentId, boolean restricted);
 
+    /**
+     * Invoked whenever a directory cannot be listed for a reason other than access being denied.
+     * @param result the directory, with no identification.
+     * @param parentId the directory's parent's ID
+     * @return the allocated ID of the directory.
+     */
+    ResourceId handleDirectoryError(IdentificationResult result, ResourceId parentId);
+
     /**
      * Invoked whenever DROID cannot complete an identification.
      * @param e the error which prevented the job from completing
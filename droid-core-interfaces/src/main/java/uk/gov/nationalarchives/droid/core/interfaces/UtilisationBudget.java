@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A CPU utilisation budget shared by adaptive thread pools, so that together they aim for the
+ * target utilisation of the machine, rather than each of them sizing itself to use all of it.
+ * <p>
+ * Each pool reports the CPU it used in its last interval, measured in cores, and is allowed to use
+ * as much again, plus an equal share of what the pools together left unused.  If the pools together
+ * used more than the budget, each is allowed a share of the budget in proportion to what it used.
+ * A pool which has not reported for a while is taken to be idle.
+ */
+public final class UtilisationBudget {
+
+    private static final int PERCENT = 100;
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final double capacity;
+    private final Map<Object, Usage> usage = new ConcurrentHashMap<>();
+
+    /**
+     * @param targetUtilisation the CPU utilisation to aim for, as a percentage of all the cores.
+     *        If not between 1 and 100, the {@link AdaptiveThreadPoolExecutor#DEFAULT_TARGET_UTILISATION} is used.
+     */
+    public UtilisationBudget(int targetUtilisation) {
+        this(Runtime.getRuntime().availableProcessors(), targetUtilisation);
+    }
+
+    /**
+     * @param cores the number of cores to share.
+     * @param targetUtilisation the CPU utilisation to aim for, as a percentage of the cores.
+     *        If not between 1 and 100, the {@link AdaptiveThreadPoolExecutor#DEFAULT_TARGET_UTILISATION} is used.
+     */
+    public UtilisationBudget(int cores, int targetUtilisation) {
+        this.capacity = cores * (targetUtilisation > 0 && targetUtilisation <= PERCENT
+                ? targetUtilisation : AdaptiveThreadPoolExecutor.DEFAULT_TARGET_UTILISATION) / (double) PERCENT;
+    }
+
+    /**
+     * @return the CPU the pools sharing the budget aim to use together, in cores.
+     */
+    public double getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Adds a pool to the pools sharing the budget.
+     * @param pool the pool.
+     */
+    public void join(Object pool) {
+        usage.putIfAbsent(pool, new Usage(0, System.nanoTime()));
+    }
+
+    /**
+     * Removes a pool from the pools sharing the budget.
+     * @param pool the pool.
+     */
+    public void leave(Object pool) {
+        usage.remove(pool);
+    }
+
+    /**
+     * Records the CPU a pool used in its last interval, and works out how much it may use in the next one.
+     * @param pool a pool sharing the budget.
+     * @param used the CPU the pool used, in cores.
+     * @return the CPU the pool may use, in cores.
+     */
+    public double allowance(Object pool, double used) {
+        final long now = System.nanoTime();
+        usage.put(pool, new Usage(used, now));
+        double total = 0;
+        for (final Usage poolUsage : usage.values()) {
+            if (now - poolUsage.reported < IDLE_NANOS) {
+                total += poolUsage.cores;
+            }
+        }
+        return total > capacity ? capacity * used / total : used + (capacity - total) / usage.size();
+    }
+
+    /**
+     * The CPU a pool used in its last interval.
+     */
+    private static final class Usage {
+        private final double cores;
+        private final long reported;
+
+        private Usage(double cores, long reported) {
+            this.cores = cores;
+            this.reported = reported;
+        }
+    }
+}
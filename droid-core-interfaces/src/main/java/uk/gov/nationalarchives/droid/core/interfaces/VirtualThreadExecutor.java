@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An executor which runs each task on its own virtual thread, with at most a fixed number
+ * of tasks running at once.
+ * <p>
+ * Virtual threads are cheap to block, so thousands of tasks waiting on slow storage
+ * do not need thousands of operating system threads.  They are only available on Java 21
+ * or later, which DROID does not require, so they are created through reflection:
+ * {@link #isSupported()} tells whether this JVM can run the executor at all.
+ */
+public final class VirtualThreadExecutor extends AbstractExecutorService {
+
+    private static final String SHUT_DOWN = "Executor %s has been shut down.";
+
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+    private static final Class<?> BUILDER = findClass("java.lang.Thread$Builder");
+    private static final Method NAME = findMethod(BUILDER, "name", String.class, long.class);
+    private static final Method FACTORY = findMethod(BUILDER, "factory");
+    private static final boolean SUPPORTED = newFactory("probe-") != null;
+
+    private final String name;
+    private final int maxConcurrency;
+    private final ThreadFactory threadFactory;
+    private final Semaphore permits;
+    private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+    private final AtomicLong completed = new AtomicLong();
+    private final Object terminationLock = new Object();
+    private volatile boolean shutdown;
+
+    /**
+     * @param name the name of the executor, used to name its threads.
+     * @param maxConcurrency the maximum number of tasks running at once.
+     * @throws UnsupportedOperationException if the JVM does not support virtual threads.
+     */
+    public VirtualThreadExecutor(String name, int maxConcurrency) {
+        if (!SUPPORTED) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM.");
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("The maximum concurrency must be at least one.");
+        }
+        this.name = name;
+        this.maxConcurrency = maxConcurrency;
+        this.threadFactory = newFactory(name + "-virtual-");
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * @return true if this JVM can run virtual threads.
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * Runs a task on a new virtual thread, blocking while the maximum number of tasks are running.
+     * @param task the task to run.
+     * @throws RejectedExecutionException if the executor has been shut down, or the calling
+     *         thread was interrupted while waiting (its interrupt status is set again).
+     */
+    @Override
+    public void execute(Runnable task) {
+        checkNotShutdown();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting to run a task.", e);
+        }
+        start(task);
+    }
+
+    /**
+     * Runs a task on a new virtual thread if fewer than the maximum number of tasks are running.
+     * @param task the task to run.
+     * @return true if the task was started, false if the maximum number of tasks are running.
+     * @throws RejectedExecutionException if the executor has been shut down.
+     */
+    public boolean tryExecute(Runnable task) {
+        checkNotShutdown();
+        final boolean acquired = permits.tryAcquire();
+        if (acquired) {
+            start(task);
+        }
+        return acquired;
+    }
+
+    private void start(final Runnable task) {
+        final Thread thread = threadFactory.newThread(() -> {
+            try {
+                task.run();
+            } finally {
+                completed.incrementAndGet();
+                finished(Thread.currentThread());
+            }
+        });
+        running.add(thread);
+        if (shutdown) {
+            finished(thread);
+            throw new RejectedExecutionException(String.format(SHUT_DOWN, name));
+        }
+        thread.start();
+    }
+
+    private void finished(final Thread thread) {
+        running.remove(thread);
+        permits.release();
+        if (shutdown) {
+            synchronized (terminationLock) {
+                terminationLock.notifyAll();
+            }
+        }
+    }
+
+    private void checkNotShutdown() {
+        if (shutdown) {
+            throw new RejectedExecutionException(String.format(SHUT_DOWN, name));
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        synchronized (terminationLock) {
+            terminationLock.notifyAll();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        for (Thread thread : running) {
+            thread.interrupt();
+        }
+        return new ArrayList<>();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && running.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (terminationLock) {
+            long remaining = deadline - System.nanoTime();
+            while (!isTerminated() && remaining > 0) {
+                TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        }
+        return isTerminated();
+    }
+
+    /**
+     * @return the maximum number of tasks running at once.
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return the number of tasks currently running.
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * @return the number of tasks which have finished.
+     */
+    public long getCompletedTaskCount() {
+        return completed.get();
+    }
+
+    private static ThreadFactory newFactory(final String namePrefix) {
+        ThreadFactory factory = null;
+        if (OF_VIRTUAL != null && NAME != null && FACTORY != null) {
+            try {
+                final Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 1L);
+                factory = (ThreadFactory) FACTORY.invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                // e.g. the preview feature is not enabled on Java 19 or 20.
+                factory = null;
+            }
+        }
+        return factory;
+    }
+
+    private static Class<?> findClass(final String className) {
+        Class<?> found = null;
+        try {
+            found = Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            found = null;
+        }
+        return found;
+    }
+
+    private static Method findMethod(final Class<?> type, final String methodName, final Class<?>... parameters) {
+        Method found = null;
+        if (type != null) {
+            try {
+                found = type.getMethod(methodName, parameters);
+            } catch (NoSuchMethodException e) {
+                found = null;
+            }
+        }
+        return found;
+    }
+}
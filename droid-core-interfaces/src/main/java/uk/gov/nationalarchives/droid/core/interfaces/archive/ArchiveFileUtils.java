@@ -48,8 +48,11 @@ import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarUtils;
 import org.apache.commons.compress.compressors.gzip.GzipUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 
 import de.waldheinz.fs.FsDirectoryEntry;
@@ -71,6 +74,7 @@ public final class ArchiveFileUtils {
     private static final String COLON = ":";
     private static final int WRITE_BUFFER_CAPACITY = 8192;
     private static final int FS_READ_BYTE_BUFFER_SIZE = 1048576;
+    private static final int TAR_HEADER_LENGTH = 512;
 
     private ArchiveFileUtils() {
     }
@@ -351,6 +355,28 @@ public final class ArchiveFileUtils {
         }
     }
 
+    /**
+     * Reports whether a stream starts with a TAR header, leaving the stream where it was.
+     * Old tars without the ustar magic are recognised by the checksum of their header.
+     * @param in a stream which supports mark and reset.
+     * @return true if the stream starts with a TAR header.
+     * @throws IOException if the stream could not be read.
+     */
+    public static boolean startsWithTar(InputStream in) throws IOException {
+        final byte[] header = new byte[TAR_HEADER_LENGTH];
+        in.mark(TAR_HEADER_LENGTH);
+        try {
+            final int read = IOUtils.read(in, header);
+            return TarArchiveInputStream.matches(header, read)
+                    || read == TAR_HEADER_LENGTH && TarUtils.verifyCheckSum(header);
+        } catch (IllegalArgumentException e) {
+            // the checksum field is not an octal number, so this is not a tar.
+            return false;
+        } finally {
+            in.reset();
+        }
+    }
+
     /**
      * @param requestUri a uri
      * @return the URI needed to replay this uri.
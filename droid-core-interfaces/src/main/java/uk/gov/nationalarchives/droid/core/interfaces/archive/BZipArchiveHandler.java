@@ -32,6 +32,7 @@
 
 package uk.gov.nationalarchives.droid.core.interfaces.archive;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -45,6 +46,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.StreamedIdentificationRequest;
 
 /**
  *
@@ -54,11 +56,13 @@ public class BZipArchiveHandler implements ArchiveHandler {
     private AsynchDroid droidCore;
     private IdentificationRequestFactory<InputStream> factory;
     private ResultHandler resultHandler;
+    private boolean streamTar;
 
 
     @Override
     public final void handle(IdentificationRequest request) throws IOException {
         IdentificationRequest<InputStream> archiveRequest = null;
+        boolean streamed = false;
         InputStream in = request.getSourceInputStream();
         try {
             URI parent = request.getIdentifier().getUri();
@@ -72,18 +76,28 @@ public class BZipArchiveHandler implements ArchiveHandler {
             RequestIdentifier identifier = new RequestIdentifier(uri);
             identifier.setAncestorId(request.getIdentifier().getAncestorId());
             identifier.setParentId(correlationId);
+            identifier.setParentPrefix(request.getIdentifier().getPrefix());
 
-            archiveRequest = factory.newRequest(metaData, identifier);
-            final InputStream bzin = new BZip2CompressorInputStream(in);
+            final InputStream bzin = streamTar ? new BufferedInputStream(new BZip2CompressorInputStream(in)) : new BZip2CompressorInputStream(in);
             try {
-                archiveRequest.open(bzin);
+                if (streamTar && ArchiveFileUtils.startsWithTar(bzin)) {
+                    // The tar can be walked again from a fresh stream, so it is not copied.
+                    // The streamed request now owns the decompressing stream:
+                    archiveRequest = new StreamedIdentificationRequest(metaData, identifier,
+                        () -> new BZip2CompressorInputStream(request.getSourceInputStream()));
+                    archiveRequest.open(bzin);
+                    streamed = true;
+                } else {
+                    archiveRequest = factory.newRequest(metaData, identifier);
+                    archiveRequest.open(bzin);
+                }
             } finally {
-                if (bzin != null) {
+                if (!streamed) {
                     bzin.close();
                 }
             }
         } finally {
-            if (in != null) {
+            if (in != null && !streamed) {
                 in.close();
             }
         }
@@ -113,6 +127,14 @@ public class BZipArchiveHandler implements ArchiveHandler {
         this.resultHandler = resultHandler;
     }
 
+    /**
+     * @param streamTar whether a compressed tar is identified and expanded from streams,
+     * rather than being decompressed to memory or a temp file first.
+     */
+    public final void setStreamTar(boolean streamTar) {
+        this.streamTar = streamTar;
+    }
+
 
 }
 
@@ -35,9 +35,7 @@ package uk.gov.nationalarchives.droid.core.interfaces.archive;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.FileInputStream;
 import java.net.URI;
-import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -134,11 +132,8 @@ public final class FatArchiveHandler implements ArchiveHandler {
 
             IdentificationRequest<InputStream> req = factory.newRequest(requestMetaData, identifier);
 
-            Path tempFile = ArchiveFileUtils.writeFsFileToTemp(entry, ((FatFileIdentificationRequest) req).getTempDir());
-
-            InputStream is = new FileInputStream(tempFile.toFile());
-
-            req.open(is);
+            // read the file straight from the image, which stays open until its entries are done:
+            ((FatFileIdentificationRequest) req).open(file);
 
             droid.submit(req);
 
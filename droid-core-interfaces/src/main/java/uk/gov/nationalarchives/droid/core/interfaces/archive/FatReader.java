@@ -50,6 +50,9 @@ import net.byteseek.io.reader.WindowReader;
  * <p>
  * This adapter follows the pattern set by the {@link de.waldheinz.fs.util.FileDisk} class, but
  * using a WindowReader as its backing store rather than a file.
+ * <p>
+ * The WindowReader is read under its own lock, as files in the image are read from it
+ * by other threads, through {@link uk.gov.nationalarchives.droid.core.interfaces.resource.FatFileReader}.
  */
 public class FatReader implements BlockDevice {
 
@@ -70,17 +73,22 @@ public class FatReader implements BlockDevice {
     @Override
     public long getSize() throws IOException {
         ensureOpen();
-        return reader.length();
+        synchronized (reader) {
+            return reader.length();
+        }
     }
 
     @Override
     public void read(final long devOffset, final ByteBuffer dest) throws IOException {
         ensureOpen();
         final int bytesRequested = dest.remaining();
-        if (devOffset + bytesRequested > reader.length()) {
-            throw new EOFException("Reading past end of device");
+        // files in the image are read from several threads while the image is still being walked:
+        synchronized (reader) {
+            if (devOffset + bytesRequested > reader.length()) {
+                throw new EOFException("Reading past end of device");
+            }
+            ArchiveFileUtils.copyToBuffer(reader, devOffset, dest);
         }
-        ArchiveFileUtils.copyToBuffer(reader, devOffset, dest);
     }
 
     @Override
@@ -31,6 +31,7 @@
  */
 package uk.gov.nationalarchives.droid.core.interfaces.archive;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -42,6 +43,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.StreamedIdentificationRequest;
 
 /**
  * @author rflitcroft, mpalmer
@@ -51,6 +53,7 @@ public class GZipArchiveHandler implements ArchiveHandler {
 
     private IdentificationRequestFactory factory;
     private AsynchDroid droid;
+    private boolean streamTar;
     
     /**
      * {@inheritDoc}
@@ -58,6 +61,7 @@ public class GZipArchiveHandler implements ArchiveHandler {
     @Override
     public final void handle(IdentificationRequest request) throws IOException {
         IdentificationRequest<InputStream> archiveRequest = null;
+        boolean streamed = false;
         InputStream in = request.getSourceInputStream(); 
         try {
             URI parent = request.getIdentifier().getUri(); 
@@ -71,18 +75,28 @@ public class GZipArchiveHandler implements ArchiveHandler {
             RequestIdentifier identifier = new RequestIdentifier(uri);
             identifier.setAncestorId(request.getIdentifier().getAncestorId());
             identifier.setParentId(correlationId);
+            identifier.setParentPrefix(request.getIdentifier().getPrefix());
 
-            archiveRequest = factory.newRequest(metaData, identifier);
-            final InputStream gzin = new GZIPInputStream(in);
+            final InputStream gzin = streamTar ? new BufferedInputStream(new GZIPInputStream(in)) : new GZIPInputStream(in);
             try {
-                archiveRequest.open(gzin);
+                if (streamTar && ArchiveFileUtils.startsWithTar(gzin)) {
+                    // The tar can be walked again from a fresh stream, so it is not copied.
+                    // The streamed request now owns the decompressing stream:
+                    archiveRequest = new StreamedIdentificationRequest(metaData, identifier,
+                        () -> new GZIPInputStream(request.getSourceInputStream()));
+                    archiveRequest.open(gzin);
+                    streamed = true;
+                } else {
+                    archiveRequest = factory.newRequest(metaData, identifier);
+                    archiveRequest.open(gzin);
+                }
             } finally {
-                if (gzin != null) {
+                if (!streamed) {
                     gzin.close();
                 }
             }
         } finally {
-            if (in != null) {
+            if (in != null && !streamed) {
                 in.close();
             }
         }
@@ -104,4 +118,12 @@ public class GZipArchiveHandler implements ArchiveHandler {
     public final void setDroidCore(AsynchDroid droidCore) {
         droid = droidCore;
     }
+
+    /**
+     * @param streamTar whether a compressed tar is identified and expanded from streams,
+     * rather than being decompressed to memory or a temp file first.
+     */
+    public final void setStreamTar(boolean streamTar) {
+        this.streamTar = streamTar;
+    }
 }
@@ -43,8 +43,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.stephenc.javaisotools.loopfs.iso9660.Iso9660FileEntry;
-import com.github.stephenc.javaisotools.loopfs.iso9660.Iso9660FileSystem;
+import net.byteseek.io.reader.WindowReader;
 
 import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
@@ -52,8 +51,8 @@ import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultImpl;
-import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.SliceIdentificationRequest;
 
 
 /**
@@ -72,38 +71,30 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
     @Override
     public void handle(IdentificationRequest request) throws IOException {
 
-        // TODO: upgrade to 2.0.2 version of java-iso-tools once released and adapt WindowReader to SeekableInput.
-        // ISO images can only be instantiated from files right now, as the 2.0.1 code only supports File as
-        // an input source.  The 2.0.2-SNAPSHOT code in GitHub supports a "SeekableInput" interface,
-        // which we could easily adapt a WindowReader to once the 2.0.2 code is released.
-        // This would allow us to process ISO files no matter where they came from (e.g. in a zip file).
-        // TODO: alternatively - DROID could fork the ISO code if the project has stopped making new releases.
-        // The last release was back in 2015, so it may be that the project is now basically inactive.
-        if (request.getClass().isAssignableFrom(FileSystemIdentificationRequest.class)) {
-
-            FileSystemIdentificationRequest req = (FileSystemIdentificationRequest) request;
-
-            Iso9660FileSystem fileSystem = new Iso9660FileSystem(req.getFile().toFile(), true);
+        // ISO images are read through the request's reader, wherever they came from (e.g. in a zip file):
+        final WindowReader reader = request.getWindowReader();
+        if (reader != null) {
+            Iso9660Reader image = new Iso9660Reader(reader);
 
             ISOImageArchiveWalker walker = new ISOImageArchiveWalker(droid, factory, resultHandler,
-                    fileSystem, request.getIdentifier());
-            walker.walk(fileSystem);
+                    image, request.getIdentifier());
+            walker.walk(image);
         } else {
-            log.info("Identification request for ISO image ignored due to limited support.");
+            log.info("Identification request for ISO image ignored as it has not been opened.");
         }
     }
 
     /**
      * Internal walker implementation.
      */
-    public static class ISOImageArchiveWalker extends ArchiveFileWalker<Iso9660FileEntry> {
+    public static class ISOImageArchiveWalker extends ArchiveFileWalker<Iso9660Reader.Entry> {
 
         private final AsynchDroid droid;
         private final IdentificationRequestFactory<InputStream> factory;
         private final ResultHandler resultHandler;
 
 
-        private final Iso9660FileSystem fileSystem;
+        private final Iso9660Reader image;
         private final ResourceId rootParentId;
         private final URI isoFileUri;
         private final long originatorNodeId;
@@ -117,17 +108,17 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
          * @param droid async droid.
          * @param factory factory for identification requests.
          * @param resultHandler result handler(used for directory handling).
-         * @param fileSystem Original iso file system.
+         * @param image reader over the iso image.
          * @param requestIdentifier ReqIdentifier.
          */
         public ISOImageArchiveWalker(AsynchDroid droid, IdentificationRequestFactory<InputStream> factory,
                                      ResultHandler resultHandler,
-                                     Iso9660FileSystem fileSystem, RequestIdentifier requestIdentifier) {
+                                     Iso9660Reader image, RequestIdentifier requestIdentifier) {
 
             this.droid = droid;
             this.factory = factory;
             this.resultHandler = resultHandler;
-            this.fileSystem = fileSystem;
+            this.image = image;
             this.rootParentId = requestIdentifier.getResourceId();
             this.isoFileUri = requestIdentifier.getUri();
             this.originatorNodeId = requestIdentifier.getNodeId();
@@ -135,7 +126,7 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
         }
 
 
-        private void submitFile(Iso9660FileEntry entry) throws IOException, URISyntaxException {
+        private void submitFile(Iso9660Reader.Entry entry) throws IOException, URISyntaxException {
             String path = FilenameUtils.getPath(entry.getPath());
             String name = entry.getName();
 
@@ -146,26 +137,34 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
             }
 
 
-            InputStream entryInputStream = fileSystem.getInputStream(entry);
-            try {
-                RequestIdentifier identifier = new RequestIdentifier(ArchiveFileUtils.toIsoImageUri(isoFileUri, path + name));
-                identifier.setAncestorId(originatorNodeId);
-                identifier.setParentResourceId(correlationId);
-
-                RequestMetaData metaData = new RequestMetaData(entry.getSize(),
-                        entry.getLastModifiedTime(), name);
+            RequestIdentifier identifier = new RequestIdentifier(ArchiveFileUtils.toIsoImageUri(isoFileUri, path + name));
+            identifier.setAncestorId(originatorNodeId);
+            identifier.setParentResourceId(correlationId);
 
-                IdentificationRequest<InputStream> request = factory.newRequest(metaData, identifier);
-                request.open(entryInputStream);
+            RequestMetaData metaData = new RequestMetaData(entry.getSize(),
+                    entry.getLastModifiedTime(), name);
 
+            // files held in a single extent are read where they are, from a slice of the image:
+            WindowReader slice = image.getSlice(entry);
+            if (slice != null) {
+                SliceIdentificationRequest request = new SliceIdentificationRequest(metaData, identifier);
+                request.open(slice);
                 droid.submit(request);
-            } finally {
+            } else {
+                InputStream entryInputStream = image.getInputStream(entry);
                 try {
-                    if (entryInputStream != null) {
-                        entryInputStream.close();
+                    IdentificationRequest<InputStream> request = factory.newRequest(metaData, identifier);
+                    request.open(entryInputStream);
+
+                    droid.submit(request);
+                } finally {
+                    try {
+                        if (entryInputStream != null) {
+                            entryInputStream.close();
+                        }
+                    } catch (IOException ex) {
+                        log.warn("failed to close entryInputStream", ex);
                     }
-                } catch (IOException ex) {
-                    log.warn("failed to close entryInputStream", ex);
                 }
             }
         }
@@ -204,7 +203,7 @@ public class ISOImageArchiveHandler implements ArchiveHandler {
         }
 
         @Override
-        protected void handleEntry(Iso9660FileEntry entry) throws IOException {
+        protected void handleEntry(Iso9660Reader.Entry entry) throws IOException {
             try {
                 if (entry.isDirectory()) {
                     if (!"".equals(entry.getPath())) {   //NOT for root directory
@@ -0,0 +1,436 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TimeZone;
+
+import net.byteseek.io.reader.ReaderInputStream;
+import net.byteseek.io.reader.WindowReader;
+
+import uk.gov.nationalarchives.droid.core.interfaces.resource.SliceReader;
+
+/**
+ * Reads the directories of an ISO 9660 image from any WindowReader, such as the reader of an
+ * image found inside another archive.
+ * <p>
+ * The data of a file is held in one contiguous extent of the image (or, rarely, several), so files
+ * are read from slices of the image's reader, without copying them anywhere.  Joliet names are used
+ * if the image has them.  Iterating the reader lists the directories breadth first, reading each
+ * directory as it is reached.  The image is read under the lock of its reader, as slices of it are.
+ */
+public final class Iso9660Reader implements Iterable<Iso9660Reader.Entry> {
+
+    private static final int FIRST_DESCRIPTOR_SECTOR = 16;
+    private static final int DEFAULT_BLOCK_SIZE = 2048;
+    private static final int PRIMARY_DESCRIPTOR = 1;
+    private static final int SUPPLEMENTARY_DESCRIPTOR = 2;
+    private static final int TERMINATOR_DESCRIPTOR = 255;
+    private static final int MAX_DESCRIPTORS = 64;
+    private static final byte[] STANDARD_ID = "CD001".getBytes(StandardCharsets.US_ASCII);
+    private static final String[] JOLIET_ESCAPES = {"%/@", "%/C", "%/E"};
+
+    // offsets of fields in a volume descriptor:
+    private static final int DESCRIPTOR_STANDARD_ID = 1;
+    private static final int DESCRIPTOR_ESCAPE_SEQUENCES = 88;
+    private static final int DESCRIPTOR_BLOCK_SIZE = 128;
+    private static final int DESCRIPTOR_ROOT_RECORD = 156;
+
+    // offsets of fields in a directory record:
+    private static final int RECORD_EXTENT = 2;
+    private static final int RECORD_DATA_LENGTH = 10;
+    private static final int RECORD_DATE = 18;
+    private static final int RECORD_FLAGS = 25;
+    private static final int RECORD_NAME_LENGTH = 32;
+    private static final int RECORD_NAME = 33;
+    private static final int MIN_RECORD_LENGTH = 34;
+
+    private static final int DIRECTORY_FLAG = 0x02;
+    private static final int MULTI_EXTENT_FLAG = 0x80;
+    private static final int BASE_YEAR = 1900;
+    private static final int MILLIS_PER_QUARTER_HOUR = 15 * 60 * 1000;
+    private static final char VERSION_SEPARATOR = ';';
+    private static final String PATH_SEPARATOR = "/";
+    private static final int BYTE_BITS = 8;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int INT_BYTES = 4;
+    private static final int SHORT_BYTES = 2;
+
+    private final WindowReader reader;
+    private final Entry root;
+    private final int blockSize;
+    private final Charset charset;
+
+    /**
+     * Reads the volume descriptors of the image.
+     *
+     * @param reader the reader over the image, which must stay open while entries are read from it.
+     * @throws IOException if the image could not be read, or has no primary volume descriptor.
+     */
+    public Iso9660Reader(final WindowReader reader) throws IOException {
+        this.reader = reader;
+        final byte[] volume = readVolumeDescriptor();
+        if (volume == null || getShort(volume, DESCRIPTOR_BLOCK_SIZE) <= 0) {
+            throw new IOException("No primary volume descriptor found in ISO image " + reader);
+        }
+        this.blockSize = getShort(volume, DESCRIPTOR_BLOCK_SIZE);
+        this.charset = volume[0] == SUPPLEMENTARY_DESCRIPTOR ? StandardCharsets.UTF_16BE : StandardCharsets.US_ASCII;
+        this.root = new Entry("", "", true, getDate(volume, DESCRIPTOR_ROOT_RECORD + RECORD_DATE),
+                Collections.singletonList(getExtent(volume, DESCRIPTOR_ROOT_RECORD)));
+    }
+
+    /**
+     * @return an iterator over all the entries of the image, starting with its root directory.
+     */
+    @Override
+    public Iterator<Entry> iterator() {
+        return new EntryIterator();
+    }
+
+    /**
+     * @param entry a file in the image.
+     * @return a slice of the image holding the data of the file, or null if its data is not
+     *         held in a single extent which lies within the image.
+     * @throws IOException if the length of the image could not be read.
+     */
+    public WindowReader getSlice(final Entry entry) throws IOException {
+        WindowReader slice = null;
+        if (entry.extents.size() == 1) {
+            final Extent extent = entry.extents.get(0);
+            // an extent running past the end of a corrupt image is left to the stream, which ends with the image:
+            if (isWithinImage(extent)) {
+                slice = new SliceReader(reader, extent.position, extent.length);
+            }
+        }
+        return slice;
+    }
+
+    /**
+     * @param entry a file in the image.
+     * @return a stream over the data of the file, read from all its extents in turn.
+     * @throws IOException if the image could not be read.
+     */
+    public InputStream getInputStream(final Entry entry) throws IOException {
+        final List<InputStream> streams = new ArrayList<>(entry.extents.size());
+        for (final Extent extent : entry.extents) {
+            streams.add(new ReaderInputStream(new SliceReader(reader, extent.position, extent.length), false));
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    private boolean isWithinImage(final Extent extent) throws IOException {
+        synchronized (reader) {
+            return extent.position >= 0 && extent.length <= reader.length() - extent.position;
+        }
+    }
+
+    /**
+     * Reads the records of a directory a block at a time, so a corrupt directory length costs no
+     * more memory than a single block.
+     *
+     * @param directory the directory to read.
+     * @return the files and directories in the directory.
+     * @throws IOException if the directory could not be read, or lies beyond the end of the image.
+     */
+    private List<Entry> readDirectory(final Entry directory) throws IOException {
+        final Extent extent = directory.extents.get(0);
+        if (!isWithinImage(extent)) {
+            throw new EOFException("Directory " + directory + " is beyond the end of ISO image " + reader);
+        }
+        final List<Entry> entries = new ArrayList<>();
+        final List<Extent> extents = new ArrayList<>();
+        final byte[] block = new byte[blockSize];
+        for (long offset = 0; offset < extent.length; offset += blockSize) {
+            final int length = (int) Math.min(blockSize, extent.length - offset);
+            // the last block of a directory may be short; clear what is left of the one before:
+            Arrays.fill(block, length, blockSize, (byte) 0);
+            read(extent.position + offset, block, length);
+            readRecords(block, directory.path, entries, extents);
+        }
+        return entries;
+    }
+
+    private void readRecords(final byte[] records, final String parentPath, final List<Entry> entries,
+            final List<Extent> extents) {
+        // records do not cross blocks; the rest of a block after its last record is padded with zeros:
+        int position = 0;
+        int length = records[position] & BYTE_MASK;
+        while (length >= MIN_RECORD_LENGTH && position + length <= records.length) {
+            extents.add(getExtent(records, position));
+            // the extents of a file too large for one extent are in consecutive records:
+            if ((records[position + RECORD_FLAGS] & MULTI_EXTENT_FLAG) == 0) {
+                final Entry entry = newEntry(records, position, parentPath, new ArrayList<>(extents));
+                if (entry != null) {
+                    entries.add(entry);
+                }
+                extents.clear();
+            }
+            position += length;
+            length = position < records.length ? records[position] & BYTE_MASK : 0;
+        }
+    }
+
+    private Entry newEntry(final byte[] records, final int position, final String parentPath,
+            final List<Extent> extents) {
+        Entry entry = null;
+        final int nameLength = Math.min(records[position + RECORD_NAME_LENGTH] & BYTE_MASK,
+                records.length - position - RECORD_NAME);
+        // a single byte name of 0 or 1 is the record for the directory itself or its parent:
+        if (nameLength > 1 || nameLength == 1 && (records[position + RECORD_NAME] & BYTE_MASK) > 1) {
+            final boolean directory = (records[position + RECORD_FLAGS] & DIRECTORY_FLAG) != 0;
+            String name = new String(records, position + RECORD_NAME, nameLength, charset).trim();
+            final int version = name.indexOf(VERSION_SEPARATOR);
+            if (version >= 0) {
+                name = name.substring(0, version);
+            }
+            final String path = parentPath + name + (directory ? PATH_SEPARATOR : "");
+            entry = new Entry(name, path, directory, getDate(records, position + RECORD_DATE), extents);
+        }
+        return entry;
+    }
+
+    private Extent getExtent(final byte[] records, final int position) {
+        return new Extent(getInt(records, position + RECORD_EXTENT) * blockSize,
+                getInt(records, position + RECORD_DATA_LENGTH));
+    }
+
+    private void read(final long position, final byte[] into, final int length) throws IOException {
+        synchronized (reader) {
+            if (ArchiveFileUtils.copyToBuffer(reader, position, into, 0, length) < length) {
+                throw new EOFException("ISO image " + reader + " ends before position " + (position + length));
+            }
+        }
+    }
+
+    /**
+     * @return the Joliet supplementary volume descriptor if there is one, otherwise the primary
+     *         volume descriptor, or null if neither is found.
+     * @throws IOException if the descriptors could not be read.
+     */
+    private byte[] readVolumeDescriptor() throws IOException {
+        byte[] volume = null;
+        final byte[] descriptor = new byte[DEFAULT_BLOCK_SIZE];
+        for (int sector = FIRST_DESCRIPTOR_SECTOR; sector < FIRST_DESCRIPTOR_SECTOR + MAX_DESCRIPTORS
+                && readDescriptor(sector, descriptor); sector++) {
+            final int type = descriptor[0] & BYTE_MASK;
+            if (type == TERMINATOR_DESCRIPTOR) {
+                break;
+            }
+            if (type == PRIMARY_DESCRIPTOR && volume == null || type == SUPPLEMENTARY_DESCRIPTOR && isJoliet(descriptor)) {
+                volume = descriptor.clone();
+            }
+        }
+        return volume;
+    }
+
+    private boolean readDescriptor(final int sector, final byte[] descriptor) throws IOException {
+        read((long) sector * DEFAULT_BLOCK_SIZE, descriptor, descriptor.length);
+        return startsWith(descriptor, DESCRIPTOR_STANDARD_ID, STANDARD_ID);
+    }
+
+    private static boolean isJoliet(final byte[] descriptor) {
+        boolean joliet = false;
+        for (final String escape : JOLIET_ESCAPES) {
+            joliet |= startsWith(descriptor, DESCRIPTOR_ESCAPE_SEQUENCES, escape.getBytes(StandardCharsets.US_ASCII));
+        }
+        return joliet;
+    }
+
+    private static boolean startsWith(final byte[] bytes, final int offset, final byte[] prefix) {
+        boolean matches = true;
+        for (int i = 0; i < prefix.length && matches; i++) {
+            matches = bytes[offset + i] == prefix[i];
+        }
+        return matches;
+    }
+
+    private static long getDate(final byte[] bytes, final int offset) {
+        final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        int field = offset;
+        calendar.set(BASE_YEAR + (bytes[field++] & BYTE_MASK), (bytes[field++] & BYTE_MASK) - 1,
+                bytes[field++] & BYTE_MASK, bytes[field++] & BYTE_MASK, bytes[field++] & BYTE_MASK,
+                bytes[field++] & BYTE_MASK);
+        // the last byte is the offset from GMT the time was recorded in, in quarter hours:
+        return calendar.getTimeInMillis() - (long) bytes[field] * MILLIS_PER_QUARTER_HOUR;
+    }
+
+    private static int getShort(final byte[] bytes, final int offset) {
+        return (int) getLittleEndian(bytes, offset, SHORT_BYTES);
+    }
+
+    private static long getInt(final byte[] bytes, final int offset) {
+        return getLittleEndian(bytes, offset, INT_BYTES);
+    }
+
+    private static long getLittleEndian(final byte[] bytes, final int offset, final int numBytes) {
+        long value = 0;
+        for (int i = numBytes - 1; i >= 0; i--) {
+            value = (value << BYTE_BITS) | (bytes[offset + i] & BYTE_MASK);
+        }
+        return value;
+    }
+
+    /**
+     * A file or directory in an ISO image.
+     */
+    public static final class Entry {
+
+        private final String name;
+        private final String path;
+        private final boolean directory;
+        private final long lastModifiedTime;
+        private final List<Extent> extents;
+
+        private Entry(final String name, final String path, final boolean directory, final long lastModifiedTime,
+                final List<Extent> extents) {
+            this.name = name;
+            this.path = path;
+            this.directory = directory;
+            this.lastModifiedTime = lastModifiedTime;
+            this.extents = extents;
+        }
+
+        /**
+         * @return the name of the entry, without any version number.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the path of the entry in the image; directories end with a slash, and the root is empty.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return true if the entry is a directory.
+         */
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        /**
+         * @return the time the entry was last modified, in milliseconds since the epoch.
+         */
+        public long getLastModifiedTime() {
+            return lastModifiedTime;
+        }
+
+        /**
+         * @return the size of the data of the entry.
+         */
+        public long getSize() {
+            long size = 0;
+            for (final Extent extent : extents) {
+                size += extent.length;
+            }
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "[" + path + ']';
+        }
+    }
+
+    /**
+     * A contiguous range of bytes of the image.
+     */
+    private static final class Extent {
+        private final long position;
+        private final long length;
+
+        Extent(final long position, final long length) {
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Lists the entries of the image breadth first, reading each directory when it is reached.
+     */
+    private final class EntryIterator implements Iterator<Entry> {
+
+        private final Deque<Entry> queue = new ArrayDeque<>();
+        private final Set<Long> directoriesRead = new HashSet<>();
+
+        EntryIterator() {
+            queue.add(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Entry entry = queue.remove();
+            // a corrupt image could link a directory back to one already read:
+            if (entry.directory && directoriesRead.add(entry.extents.get(0).position)) {
+                try {
+                    queue.addAll(readDirectory(entry));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            }
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
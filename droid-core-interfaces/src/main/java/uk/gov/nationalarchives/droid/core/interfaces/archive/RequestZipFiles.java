@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import de.schlichtherle.truezip.zip.ZipFile;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+
+/**
+ * Holds the zip file parsed from each request read as a zip file, so that its central directory
+ * is only parsed once, however many stages read the request as a zip file: container identification
+ * and archive expansion share it.
+ * <p>
+ * A zip file reads through the window reader of its request, which it does not close, so it holds
+ * no resources of its own.  It is held no longer than its request, and is closed when the request
+ * is released.
+ */
+public final class RequestZipFiles {
+
+    private static final Map<IdentificationRequest<?>, ZipFile> ZIP_FILES = new WeakHashMap<>();
+
+    private RequestZipFiles() {
+    }
+
+    /**
+     * @param request a request to read as a zip file.
+     * @return the zip file of the request, parsed from its window reader the first time it is asked for.
+     * @throws IOException if the request could not be read as a zip file.
+     */
+    public static ZipFile get(final IdentificationRequest<?> request) throws IOException {
+        synchronized (ZIP_FILES) {
+            ZipFile zipFile = ZIP_FILES.get(request);
+            if (zipFile == null) {
+                zipFile = new ZipFile(new TrueZipReader(request.getWindowReader()));
+                ZIP_FILES.put(request, zipFile);
+            }
+            return zipFile;
+        }
+    }
+
+    /**
+     * Closes the zip file of a request, if it has one, once nothing more will read the request as a zip file.
+     * @param request the request.
+     * @throws IOException if the zip file could not be closed.
+     */
+    public static void release(final IdentificationRequest<?> request) throws IOException {
+        final ZipFile zipFile;
+        synchronized (ZIP_FILES) {
+            zipFile = ZIP_FILES.remove(request);
+        }
+        if (zipFile != null) {
+            zipFile.close();
+        }
+    }
+}
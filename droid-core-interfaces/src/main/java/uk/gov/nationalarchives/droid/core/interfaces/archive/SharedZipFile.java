@@ -0,0 +1,388 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import de.schlichtherle.truezip.zip.ZipEntry;
+import de.schlichtherle.truezip.zip.ZipFile;
+import net.byteseek.io.reader.ReaderInputStream;
+import net.byteseek.io.reader.WindowReader;
+
+import uk.gov.nationalarchives.droid.core.interfaces.resource.SliceReader;
+
+/**
+ * A zip file whose entries are read lazily, as they are identified, rather than when they are submitted.
+ * <p>
+ * Entries may still be read after the handler which opened the zip file has finished with it,
+ * so the zip file is only closed once the handler and every entry stream have released it.
+ * <p>
+ * The central directory is parsed once by TrueZip, which lists the entries, and its offsets once more by
+ * a {@link StoredEntryLocator}, as TrueZip does not expose them.  Entries stored without compression are
+ * read directly from slices of the reader behind the zip file, and deflated entries are inflated from
+ * such slices, so entries are decompressed in parallel without another zip file over the reader.
+ * An inflated entry is checked against the size and CRC-32 of the entry once its data ends, as TrueZip does.
+ * Slices only hold the lock of the reader while bytes are copied from it, as {@link SliceReader} does.
+ * <p>
+ * Any other entry, such as an encrypted one, is read by TrueZip.  A TrueZip zip file is not thread-safe,
+ * so such entries are spread round-robin over several lanes, each with its own zip file over the shared
+ * reader, and an entry is read under the lock of its lane.  The first lane uses the zip file which lists
+ * the entries, and the zip files of the others are opened when they are first read from.
+ */
+final class SharedZipFile {
+
+    private static final int BYTE_MASK = 0xFF;
+    private static final String ZIP_FILE_CLOSED = "The zip file has been closed.";
+
+    private final WindowReader reader;
+    private final Lane[] lanes;
+    private final StoredEntryLocator storedEntries;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicInteger nextLane = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * Opens a zip file with a single lane, held by the caller until it is released.
+     * @param reader the reader over the zip file, which must stay open until the zip file has been closed.
+     * @throws IOException if the zip file could not be read.
+     */
+    SharedZipFile(final WindowReader reader) throws IOException {
+        this(reader, null, 1);
+    }
+
+    /**
+     * Opens a zip file, held by the caller until it is released.
+     * @param reader the reader over the zip file, which must stay open until the zip file has been closed.
+     * @param parsed a zip file already parsed from the reader, which is used without closing it,
+     *               or null to parse a new one.
+     * @param lanes the number of zip files the entries which are read by TrueZip are spread over.
+     * @throws IOException if the zip file could not be read.
+     */
+    SharedZipFile(final WindowReader reader, final ZipFile parsed, final int lanes) throws IOException {
+        this.reader = reader;
+        this.lanes = new Lane[Math.max(1, lanes)];
+        this.lanes[0] = new Lane(parsed == null ? new ZipFile(new TrueZipReader(reader)) : parsed, parsed == null);
+        for (int lane = 1; lane < this.lanes.length; lane++) {
+            this.lanes[lane] = new Lane(null, true);
+        }
+        this.storedEntries = new StoredEntryLocator(reader);
+    }
+
+    /**
+     * @return the zip file of the first lane, which lists the entries.
+     */
+    ZipFile getZipFile() {
+        return lanes[0].laneZipFile;
+    }
+
+    /**
+     * Returns a stream over an entry, which is opened on the first read, and which
+     * holds the zip file open until it is closed.
+     *
+     * @param entry the entry to read.
+     * @return a stream over the decompressed entry.
+     */
+    InputStream newEntryStream(final ZipEntry entry) {
+        references.incrementAndGet();
+        return new EntryInputStream(entry);
+    }
+
+    /**
+     * Returns a slice of the zip file over an entry which is stored without compression,
+     * or null if the entry is compressed or encrypted, or its data could not be located.
+     *
+     * @param entry the entry to read.
+     * @return a reader over the entry where it is stored in the zip file, or null.
+     * @throws IOException if the zip file could not be read.
+     */
+    WindowReader newStoredEntryReader(final ZipEntry entry) throws IOException {
+        final long size = entry.getSize();
+        return entry.getMethod() == ZipEntry.STORED && size >= 0 && entry.getCompressedSize() == size
+                ? slice(entry) : null;
+    }
+
+    /**
+     * @param entry an entry of the zip file.
+     * @return a reader over the data of the entry as it is held in the zip file, or null if the
+     *         entry is encrypted, or its data could not be located.
+     * @throws IOException if the zip file could not be read.
+     */
+    private WindowReader slice(final ZipEntry entry) throws IOException {
+        WindowReader slice = null;
+        final long size = entry.getCompressedSize();
+        if (!entry.isEncrypted() && size >= 0) {
+            synchronized (reader) {
+                final long offset = storedEntries.dataOffset(entry.getName());
+                if (offset != StoredEntryLocator.NOT_FOUND && offset + size <= reader.length()) {
+                    slice = new SliceReader(reader, offset, size);
+                }
+            }
+        }
+        return slice;
+    }
+
+    /**
+     * @return the lane the next entry read by TrueZip is given to.
+     */
+    private Lane nextLane() {
+        return lanes[Math.floorMod(nextLane.getAndIncrement(), lanes.length)];
+    }
+
+    /**
+     * Releases a hold on the zip file, closing it if nothing else holds it.
+     * @throws IOException if the zip file could not be closed.
+     */
+    void release() throws IOException {
+        if (references.decrementAndGet() == 0) {
+            closed = true;
+            for (final Lane lane : lanes) {
+                lane.close();
+            }
+        }
+    }
+
+    /**
+     * A TrueZip zip file over the shared reader, which is opened when it is first read from.
+     */
+    private final class Lane {
+
+        private final boolean opened;
+        private ZipFile laneZipFile;
+
+        /**
+         * @param zipFile the zip file of the lane, or null to open one when it is first read from.
+         * @param opened whether the lane closes its zip file when the shared zip file is closed.
+         */
+        Lane(final ZipFile zipFile, final boolean opened) {
+            this.laneZipFile = zipFile;
+            this.opened = opened;
+        }
+
+        /**
+         * Opens an entry from the zip file of this lane, which must be read under the lock of the lane.
+         * @param entry the entry to open.
+         * @return a stream over the decompressed entry.
+         * @throws IOException if the zip file has been closed, or the entry could not be read.
+         */
+        synchronized InputStream open(final ZipEntry entry) throws IOException {
+            if (closed) {
+                throw new IOException(ZIP_FILE_CLOSED);
+            }
+            if (laneZipFile == null) {
+                laneZipFile = new ZipFile(new TrueZipReader(reader));
+            }
+            final InputStream in = laneZipFile.getInputStream(entry);
+            if (in == null) {
+                throw new IOException("No zip entry named " + entry.getName());
+            }
+            return in;
+        }
+
+        /**
+         * Closes the zip file of this lane, if the lane opened it.
+         * @throws IOException if the zip file could not be closed.
+         */
+        synchronized void close() throws IOException {
+            if (opened && laneZipFile != null) {
+                laneZipFile.close();
+            }
+        }
+    }
+
+    /**
+     * Opens the entry when it is first read: deflated entries are inflated from a slice of the
+     * reader, and any other entry is read by TrueZip under the lock of its lane.
+     */
+    private final class EntryInputStream extends InputStream {
+
+        private final ZipEntry entry;
+        private InputStream in;
+        private Inflater inflater;
+        private Object lock;
+        private boolean streamClosed;
+
+        EntryInputStream(final ZipEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            final InputStream stream = stream();
+            synchronized (lock) {
+                return stream.read();
+            }
+        }
+
+        @Override
+        public synchronized int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final InputStream stream = stream();
+            synchronized (lock) {
+                return stream.read(buffer, offset, length);
+            }
+        }
+
+        @Override
+        public synchronized long skip(final long toSkip) throws IOException {
+            final InputStream stream = stream();
+            synchronized (lock) {
+                return stream.skip(toSkip);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            boolean release = false;
+            synchronized (this) {
+                if (!streamClosed) {
+                    streamClosed = true;
+                    release = true;
+                    closeStream();
+                }
+            }
+            if (release) {
+                release();
+            }
+        }
+
+        private void closeStream() throws IOException {
+            try {
+                if (in != null) {
+                    synchronized (lock) {
+                        in.close();
+                    }
+                }
+            } finally {
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        }
+
+        private InputStream stream() throws IOException {
+            if (streamClosed) {
+                throw new IOException("The stream for zip entry " + entry.getName() + " is closed.");
+            }
+            if (closed) {
+                throw new IOException(ZIP_FILE_CLOSED);
+            }
+            if (in == null) {
+                final WindowReader deflated = entry.getMethod() == ZipEntry.DEFLATED ? slice(entry) : null;
+                if (deflated == null) {
+                    final Lane lane = nextLane();
+                    in = lane.open(entry);
+                    lock = lane;
+                } else {
+                    inflater = new Inflater(true);
+                    // an inflater without the zlib wrapper may need a byte after the end of the deflated data:
+                    in = new CheckedEntryStream(entry, new InflaterInputStream(new SequenceInputStream(
+                            new ReaderInputStream(deflated, false), new ByteArrayInputStream(new byte[1])), inflater));
+                    lock = this;
+                }
+            }
+            return in;
+        }
+    }
+
+    /**
+     * Reads no more of an inflated entry than its declared size, and checks once its data ends
+     * that it had the size and CRC-32 declared for the entry.
+     */
+    private static final class CheckedEntryStream extends InputStream {
+
+        private final ZipEntry entry;
+        private final CheckedInputStream in;
+        private final byte[] single = new byte[1];
+        private long remaining;
+
+        /**
+         * @param entry the entry being read.
+         * @param inflated a stream over the inflated data of the entry.
+         */
+        CheckedEntryStream(final ZipEntry entry, final InputStream inflated) {
+            this.entry = entry;
+            this.in = new CheckedInputStream(inflated, new CRC32());
+            this.remaining = entry.getSize() < 0 ? Long.MAX_VALUE : entry.getSize();
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = read(single, 0, 1);
+            return read < 0 ? -1 : single[0] & BYTE_MASK;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            int read = -1;
+            if (length == 0) {
+                read = 0;
+            } else if (remaining > 0) {
+                read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            } else if (in.read() >= 0) {
+                throw sizeMismatch("longer");
+            }
+            if (read < 0) {
+                verify();
+            } else {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void verify() throws ZipException {
+            if (entry.getSize() >= 0 && remaining != 0) {
+                throw sizeMismatch("shorter");
+            }
+            if (entry.getCrc() >= 0 && entry.getCrc() != in.getChecksum().getValue()) {
+                throw new ZipException("Bad CRC-32 for zip entry " + entry.getName() + ".");
+            }
+        }
+
+        private ZipException sizeMismatch(final String longerOrShorter) {
+            return new ZipException("Zip entry " + entry.getName() + " is " + longerOrShorter
+                    + " than its declared size of " + entry.getSize() + " bytes.");
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.byteseek.io.reader.WindowReader;
+
+/**
+ * Finds where the data of an entry starts in a zip file, so entries stored without
+ * compression can be read where they are, and deflated entries inflated from there.
+ * <p>
+ * TrueZip does not expose the offsets of the local file headers, so the central directory is read
+ * again here, the first time an entry is looked up.  Zip64 archives are not handled, and an entry
+ * which cannot be located is simply read through TrueZip instead.  Not thread-safe.
+ */
+final class StoredEntryLocator {
+
+    /**
+     * Returned when the data of an entry could not be located.
+     */
+    static final long NOT_FOUND = -1;
+
+    private static final long END_SIGNATURE = 0x06054b50L;
+    private static final long CENTRAL_HEADER_SIGNATURE = 0x02014b50L;
+    private static final long LOCAL_HEADER_SIGNATURE = 0x04034b50L;
+    private static final int END_LENGTH = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+    private static final int ZIP64_ENTRIES_MARKER = 0xFFFF;
+
+    // offsets of fields in the end of central directory record:
+    private static final int END_ENTRIES = 10;
+    private static final int END_DIRECTORY_SIZE = 12;
+    private static final int END_DIRECTORY_OFFSET = 16;
+
+    // offsets of fields in a central directory header:
+    private static final int CENTRAL_NAME_LENGTH = 28;
+    private static final int CENTRAL_EXTRA_LENGTH = 30;
+    private static final int CENTRAL_COMMENT_LENGTH = 32;
+    private static final int CENTRAL_LOCAL_HEADER_OFFSET = 42;
+
+    // offsets of fields in a local file header:
+    private static final int LOCAL_NAME_LENGTH = 26;
+    private static final int LOCAL_EXTRA_LENGTH = 28;
+
+    private static final int BYTE_BITS = 8;
+    private static final int SHORT_BYTES = 2;
+    private static final int INT_BYTES = 4;
+
+    private final WindowReader reader;
+    private Map<String, Long> localHeaderOffsets;
+
+    /**
+     * @param reader the reader over the zip file.
+     */
+    StoredEntryLocator(final WindowReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @param name the name of the entry.
+     * @return the position of the first byte of data of the entry, or NOT_FOUND if it could not be located.
+     * @throws IOException if the zip file could not be read.
+     */
+    long dataOffset(final String name) throws IOException {
+        if (localHeaderOffsets == null) {
+            localHeaderOffsets = readCentralDirectory();
+        }
+        long result = NOT_FOUND;
+        final Long headerOffset = localHeaderOffsets.get(name);
+        try {
+            if (headerOffset != null && readInt(headerOffset) == LOCAL_HEADER_SIGNATURE) {
+                result = headerOffset + LOCAL_HEADER_LENGTH
+                        + readShort(headerOffset + LOCAL_NAME_LENGTH) + readShort(headerOffset + LOCAL_EXTRA_LENGTH);
+            }
+        } catch (EOFException e) {
+            result = NOT_FOUND;
+        }
+        return result;
+    }
+
+    private Map<String, Long> readCentralDirectory() throws IOException {
+        final Map<String, Long> offsets = new HashMap<>();
+        try {
+            final long end = findEndOfCentralDirectory();
+            if (end >= 0) {
+                final int entries = readShort(end + END_ENTRIES);
+                final long directorySize = readInt(end + END_DIRECTORY_SIZE);
+                final long directoryOffset = readInt(end + END_DIRECTORY_OFFSET);
+                // any bytes which precede the zip file, e.g. a self-extractor, shift all its offsets:
+                final long shift = end - directorySize - directoryOffset;
+                if (entries != ZIP64_ENTRIES_MARKER && directoryOffset != ZIP64_MARKER && shift >= 0) {
+                    readCentralHeaders(directoryOffset + shift, entries, shift, offsets);
+                }
+            }
+        } catch (EOFException e) {
+            // use whatever was read before the zip file turned out to be truncated.
+        }
+        return offsets;
+    }
+
+    private void readCentralHeaders(final long start, final int entries, final long shift,
+            final Map<String, Long> offsets) throws IOException {
+        long position = start;
+        for (int entry = 0; entry < entries && readInt(position) == CENTRAL_HEADER_SIGNATURE; entry++) {
+            final int nameLength = readShort(position + CENTRAL_NAME_LENGTH);
+            final long headerOffset = readInt(position + CENTRAL_LOCAL_HEADER_OFFSET);
+            if (headerOffset != ZIP64_MARKER) {
+                offsets.put(readName(position + CENTRAL_HEADER_LENGTH, nameLength), headerOffset + shift);
+            }
+            position += CENTRAL_HEADER_LENGTH + nameLength
+                    + readShort(position + CENTRAL_EXTRA_LENGTH) + readShort(position + CENTRAL_COMMENT_LENGTH);
+        }
+    }
+
+    private long findEndOfCentralDirectory() throws IOException {
+        final long earliest = Math.max(0, reader.length() - END_LENGTH - MAX_COMMENT_LENGTH);
+        long position = reader.length() - END_LENGTH;
+        while (position >= earliest && readInt(position) != END_SIGNATURE) {
+            position--;
+        }
+        return position >= earliest ? position : NOT_FOUND;
+    }
+
+    private String readName(final long position, final int length) throws IOException {
+        final byte[] name = new byte[length];
+        for (int i = 0; i < length; i++) {
+            name[i] = (byte) readByte(position + i);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private int readShort(final long position) throws IOException {
+        return (int) readLittleEndian(position, SHORT_BYTES);
+    }
+
+    private long readInt(final long position) throws IOException {
+        return readLittleEndian(position, INT_BYTES);
+    }
+
+    private long readLittleEndian(final long position, final int numBytes) throws IOException {
+        long value = 0;
+        for (int i = numBytes - 1; i >= 0; i--) {
+            value = (value << BYTE_BITS) | readByte(position + i);
+        }
+        return value;
+    }
+
+    private int readByte(final long position) throws IOException {
+        final int value = reader.readByte(position);
+        if (value < 0) {
+            throw new EOFException("No byte at position " + position);
+        }
+        return value;
+    }
+}
@@ -31,6 +31,7 @@
  */
 package uk.gov.nationalarchives.droid.core.interfaces.archive;
 
+import java.io.FilterInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.net.URI;
@@ -45,6 +46,8 @@ import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.io.FilenameUtils;
 
+import net.byteseek.io.reader.WindowReader;
+
 import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultImpl;
@@ -52,6 +55,9 @@ import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.SliceIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.SliceReader;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.StreamedIdentificationRequest;
 
 /**
  * @author rflitcroft, mpalmer
@@ -69,7 +75,13 @@ public class TarArchiveHandler implements ArchiveHandler {
     @Override
     public final void handle(IdentificationRequest request) throws IOException {
 
-        InputStream tarIn = request.getSourceInputStream(); 
+        // Entries are identified from slices of the reader while the tar is still being walked,
+        // so the tar must be read under the lock of the reader too.  A streamed tar only keeps
+        // its top and tail, so its entries are copied from the stream instead.
+        final WindowReader reader = request instanceof StreamedIdentificationRequest
+                ? null : request.getWindowReader();
+        InputStream tarIn = reader == null ? request.getSourceInputStream()
+                : LockedInputStream.lock(request.getSourceInputStream(), reader);
         try {
             final TarArchiveInputStream in = new TarArchiveInputStream(tarIn);
             try {                
@@ -80,7 +92,7 @@ public class TarArchiveHandler implements ArchiveHandler {
                     }
                 };
                 
-                TarArchiveWalker walker = new TarArchiveWalker(request.getIdentifier(), in);
+                TarArchiveWalker walker = new TarArchiveWalker(request.getIdentifier(), in, reader);
                 walker.walk(iterable);
             } finally {
                 if (in != null) {
@@ -116,18 +128,61 @@ public class TarArchiveHandler implements ArchiveHandler {
         
     }
     
+    /**
+     * Reads a stream under the lock of the reader it reads from.
+     */
+    private static final class LockedInputStream extends FilterInputStream {
+
+        private final Object lock;
+
+        private LockedInputStream(InputStream in, Object lock) {
+            super(in);
+            this.lock = lock;
+        }
+
+        static InputStream lock(InputStream in, Object lock) {
+            return new LockedInputStream(in, lock);
+        }
+
+        @Override
+        public int read() throws IOException {
+            synchronized (lock) {
+                return super.read();
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            synchronized (lock) {
+                return super.read(buffer, offset, length);
+            }
+        }
+
+        @Override
+        public long skip(long toSkip) throws IOException {
+            synchronized (lock) {
+                return super.skip(toSkip);
+            }
+        }
+    }
+
     /**
      * Submits a request to droid.
+     * <p>
+     * Regular files are read where they are in the tar, from a slice of its reader.
+     * Anything else, or any tar without a reader, is read from the archive input stream.
+     *
      * @param entry the tar entry to submit
      * @param entryName the name of the entry
      * @param parentName the name of the parent file
      * @param in the archive input stream
+     * @param reader the reader over the tar, or null if there is none
      * @param correlationId the correlation iod for the request
      * @param originatorNodeId the ID of the originator node
      * @throws IOException if the input stream could not be read
      */
-    final void submit(TarArchiveEntry entry, String entryName, URI parentName, 
-            ArchiveInputStream in, ResourceId correlationId, long originatorNodeId) throws IOException {
+    final void submit(TarArchiveEntry entry, String entryName, URI parentName, ArchiveInputStream in,
+            WindowReader reader, ResourceId correlationId, long originatorNodeId) throws IOException {
         long size = entry.getSize();
         Date time = entry.getModTime();
 
@@ -140,9 +195,16 @@ public class TarArchiveHandler implements ArchiveHandler {
             new RequestIdentifier(ArchiveFileUtils.toTarUri(parentName, entry.getName()));
         identifier.setAncestorId(originatorNodeId);
         identifier.setParentResourceId(correlationId);
-        IdentificationRequest<InputStream> request = factory.newRequest(metaData, identifier);
-        request.open(in);
-        droidCore.submit(request);
+        if (reader != null && entry.isFile() && !entry.isSparse() && size >= 0) {
+            // the archive stream has just read the header of the entry, so is positioned at its data:
+            final SliceIdentificationRequest request = new SliceIdentificationRequest(metaData, identifier);
+            request.open(new SliceReader(reader, in.getBytesRead(), size));
+            droidCore.submit(request);
+        } else {
+            IdentificationRequest<InputStream> request = factory.newRequest(metaData, identifier);
+            request.open(in);
+            droidCore.submit(request);
+        }
     }
     
     /**
@@ -206,10 +268,12 @@ public class TarArchiveHandler implements ArchiveHandler {
         private final long originatorNodeId;
         private final URI parentName;
         private final ArchiveInputStream in;
+        private final WindowReader reader;
         private final Map<String, ResourceId> directories = new HashMap<String, ResourceId>();
         
-        TarArchiveWalker(RequestIdentifier parent, ArchiveInputStream in) {
+        TarArchiveWalker(RequestIdentifier parent, ArchiveInputStream in, WindowReader reader) {
             this.in = in;
+            this.reader = reader;
             this.parentId = parent.getResourceId();
             this.parentName = parent.getUri();
             this.originatorNodeId = parent.getAncestorId();
@@ -233,7 +297,7 @@ public class TarArchiveHandler implements ArchiveHandler {
             // If there is a file, submit the file:
             entryName = FilenameUtils.getName(entryName);
             if (!entryName.isEmpty()) {
-                submit(entry, entryName, parentName, in, correlationId, originatorNodeId);
+                submit(entry, entryName, parentName, in, reader, correlationId, originatorNodeId);
             }
         }
         
@@ -44,6 +44,7 @@ import org.apache.commons.io.FilenameUtils;
 
 import de.schlichtherle.truezip.zip.ZipEntry;
 import de.schlichtherle.truezip.zip.ZipFile;
+import net.byteseek.io.reader.WindowReader;
 
 import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
@@ -52,6 +53,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.SliceIdentificationRequest;
 /**
  * @author a-mpalmer
  *
@@ -60,28 +62,30 @@ public class TrueZipArchiveHandler implements ArchiveHandler {
 
     private AsynchDroid droidCore;
     private IdentificationRequestFactory<InputStream> factory;
-    private ResultHandler resultHandler;    
+    private ResultHandler resultHandler;
+    private int readers = 1;
     
     /**
      * {@inheritDoc}
      */
     @Override
     public void handle(IdentificationRequest request) throws IOException {
-        final ZipFile zipFile = new ZipFile(new TrueZipReader(request.getWindowReader()));
+        // Entries are decompressed as they are identified, so the zip file outlives this method
+        // until the last entry has been closed.  The request must stay open until then too.
+        // The central directory was usually parsed by container identification already.
+        final SharedZipFile zipFile = new SharedZipFile(request.getWindowReader(), RequestZipFiles.get(request), readers);
         try {
             Iterable<ZipEntry> iterable = new Iterable<ZipEntry>() {
                 @Override
                 public final Iterator<ZipEntry> iterator() {
-                    return new ZipFileIterator(zipFile);
+                    return new ZipFileIterator(zipFile.getZipFile());
                 }
             };
     
             ZipArchiveWalker walker = new ZipArchiveWalker(request.getIdentifier(), zipFile);  
             walker.walk(iterable);
         } finally {
-            if (zipFile != null) {
-                zipFile.close();
-            }
+            zipFile.release();
         }
     }
 
@@ -117,13 +121,13 @@ public class TrueZipArchiveHandler implements ArchiveHandler {
      * @param entry the zip entry to submit
      * @param parentName the name of the parent file
      * @param entryName the name of the Zip entry
-     * @param file the Truezip zipFile
+     * @param file the shared zipFile the entry is read from
      * @param correlationId an ID to correlate this submission to
      * @param originatorNodeId the ID of the originator node
      * @throws IOException if there was an error accessing the input stream 'in'
      */
     final void submit(ZipEntry entry, String entryName, URI parentName, 
-            ZipFile file, ResourceId correlationId, long originatorNodeId)
+            SharedZipFile file, ResourceId correlationId, long originatorNodeId)
         throws IOException {
         
         long size = entry.getSize();
@@ -138,17 +142,23 @@ public class TrueZipArchiveHandler implements ArchiveHandler {
         identifier.setAncestorId(originatorNodeId);
         identifier.setParentResourceId(correlationId);
 
-        IdentificationRequest request = factory.newRequest(metaData, identifier);
-        InputStream in = null;
-        try {
-            in = file.getInputStream(entry);
-            request.open(in);
-        } finally {
-            if (in != null) {
+        final WindowReader storedEntry = file.newStoredEntryReader(entry);
+        if (storedEntry != null) {
+            final SliceIdentificationRequest request = new SliceIdentificationRequest(metaData, identifier);
+            request.open(storedEntry);
+            droidCore.submit(request);
+        } else {
+            IdentificationRequest request = factory.newRequest(metaData, identifier);
+            // the request closes the entry stream when it is closed itself.
+            final InputStream in = file.newEntryStream(entry);
+            try {
+                request.open(in);
+            } catch (IOException e) {
                 in.close();
+                throw e;
             }
+            droidCore.submit(request);
         }
-        droidCore.submit(request);
     }
     
     /**
@@ -164,6 +174,14 @@ public class TrueZipArchiveHandler implements ArchiveHandler {
     public final void setDroidCore(AsynchDroid droidCore) {
         this.droidCore = droidCore;
     }
+
+    /**
+     * @param readers the number of zip files its entries are spread over, for entries of an archive
+     * which are read by TrueZip rather than inflated from the archive directly.
+     */
+    public final void setReaders(int readers) {
+        this.readers = readers;
+    }
     
     /**
      * Adapts an enumeration to the Iterator interface.
@@ -212,13 +230,13 @@ public class TrueZipArchiveHandler implements ArchiveHandler {
      */
     private final class ZipArchiveWalker extends ArchiveFileWalker<ZipEntry> {
         
-        private final ZipFile zipFile;
+        private final SharedZipFile zipFile;
         private final ResourceId parentId;
         private final long originatorNodeId;
         private final URI parentName;
         private final Map<String, ResourceId> directories = new HashMap<String, ResourceId>();
         
-        ZipArchiveWalker(RequestIdentifier identifier, ZipFile zipFile) {
+        ZipArchiveWalker(RequestIdentifier identifier, SharedZipFile zipFile) {
             this.zipFile = zipFile;
             this.parentId = identifier.getResourceId();
             this.parentName = identifier.getUri();
@@ -42,6 +42,9 @@ import net.byteseek.io.reader.WindowReader;
  * This allows us to use an existing WindowReader, which will already have cached much of the underlying
  * file to supply the data for TrueZip to process a zip file, without having to write the entire
  * WindowReader back out to a normal temporary file.
+ * <p>
+ * Each instance has its own file pointer, and reads from the WindowReader under its lock,
+ * so several instances can share one WindowReader across threads.
  *
  * Created by matt on 30/05/15.
  */
@@ -80,7 +83,9 @@ public final class TrueZipReader extends AbstractReadOnlyFile {
 
     @Override
     public long length() throws IOException {
-        return reader.length();
+        synchronized (reader) {
+            return reader.length();
+        }
     }
 
     @Override
@@ -92,7 +97,10 @@ public final class TrueZipReader extends AbstractReadOnlyFile {
     @Override
     public int read() throws IOException {
         ensureOpen();
-        final int result = reader.readByte(filePointer);
+        final int result;
+        synchronized (reader) {
+            result = reader.readByte(filePointer);
+        }
         if (result >= 0) {
             filePointer++;
         }
@@ -105,9 +113,10 @@ public final class TrueZipReader extends AbstractReadOnlyFile {
         if (position < 0) {
             throw new IOException("Cannot seek to a negative position: " + position);
         }
-        if (position >= reader.length()) {
+        final long length = length();
+        if (position >= length) {
             throw new IOException("Cannot seek past the end of data with length "
-                    + reader.length() + ".  Seek position was " + position);
+                    + length + ".  Seek position was " + position);
         }
         filePointer = position;
     }
@@ -121,7 +130,10 @@ public final class TrueZipReader extends AbstractReadOnlyFile {
         if (filePointer >= length() || length == 0) {
             return -1;
         }
-        final int bytesCopied = ArchiveFileUtils.copyToBuffer(reader, filePointer, bytes, offset, length);
+        final int bytesCopied;
+        synchronized (reader) {
+            bytesCopied = ArchiveFileUtils.copyToBuffer(reader, filePointer, bytes, offset, length);
+        }
         filePointer += bytesCopied;
         return bytesCopied;
     }
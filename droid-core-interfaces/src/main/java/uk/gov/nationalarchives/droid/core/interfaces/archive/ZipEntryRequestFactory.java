@@ -40,6 +40,8 @@ import uk.gov.nationalarchives.droid.core.interfaces.resource.ZipEntryIdentifica
 /**
  * Generates requests for entries in a specific zip file.
  * An instance of this class is valid for one, and one only, zip file.
+ * <p>
+ * The entries are read lazily from streams which stay readable until the requests are closed.
  * @author rflitcroft
  *
  */
@@ -52,7 +54,7 @@ public class ZipEntryRequestFactory extends AbstractArchiveRequestFactory<InputS
     public final ZipEntryIdentificationRequest newRequest(RequestMetaData metaData,
                                                           RequestIdentifier identifier) {
         
-        return new ZipEntryIdentificationRequest(metaData, identifier, getTempDirLocation());
+        return new ZipEntryIdentificationRequest(metaData, identifier, getTempDirLocation(), true, true);
     }
     
 }
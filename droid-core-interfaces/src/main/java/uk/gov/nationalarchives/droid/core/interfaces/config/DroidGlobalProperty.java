@@ -121,6 +121,57 @@ public enum DroidGlobalProperty {
     
     /** Whether to match all extensions, or just ones without another signature attached. */
     EXTENSION_ALL("profile.matchAllExtensions", PropertyType.BOOLEAN, true),
+
+    /** The number of threads used to list directories while profiling. */
+    WALKER_THREADS("profile.walkerThreads", PropertyType.INTEGER, true),
+
+    /** Whether to walk the files in each directory in inode order rather than by name. */
+    FILE_KEY_ORDER("profile.fileKeyOrder", PropertyType.BOOLEAN, true),
+
+    /** The maximum number of threads of each identification stage, or zero to choose it from the number of cores. */
+    MAX_THREADS("profile.maxThreads", PropertyType.INTEGER, true),
+
+    /** The CPU utilisation, as a percentage, which the identification threads are sized to hold. */
+    TARGET_UTILISATION("profile.targetUtilisation", PropertyType.INTEGER, true),
+
+    /** The number of requests which can wait for each identification stage. */
+    QUEUE_SIZE("profile.queueSize", PropertyType.INTEGER, true),
+
+    /** Whether to identify files on virtual threads, where the JVM supports them. */
+    VIRTUAL_THREADS("profile.virtualThreads", PropertyType.BOOLEAN, true),
+
+    /** The maximum number of files each identification stage works on at once using virtual threads. */
+    VIRTUAL_THREAD_LIMIT("profile.virtualThreadLimit", PropertyType.INTEGER, true),
+
+    /** The size in bytes from which files are identified in the large file lane. */
+    LARGE_FILE_THRESHOLD("profile.largeFileThreshold", PropertyType.LONG, true),
+
+    /** The maximum number of large files identified at once, or zero for a quarter of the processors. */
+    LARGE_FILE_LIMIT("profile.largeFileLimit", PropertyType.INTEGER, true),
+
+    /** The maximum number of files read from each device (file store) at once, or zero for no limit. */
+    DEVICE_LIMIT("profile.deviceLimit", PropertyType.INTEGER, true),
+
+    /** The size in bytes up to which files in the same directory are identified together in batches. */
+    BATCH_FILE_SIZE("profile.batchFileSize", PropertyType.LONG, true),
+
+    /** The maximum number of small files in a batch, or 1 to identify every file on its own. */
+    BATCH_SIZE("profile.batchSize", PropertyType.INTEGER, true),
+
+    /** The mean time in milliseconds to read a file which the adaptive throttle aims for, or 0 for none. */
+    THROTTLE_TARGET_LATENCY("profile.throttleTargetLatency", PropertyType.INTEGER, true),
+
+    /** The rate in megabytes per second which the adaptive throttle keeps reads below, or 0 for none. */
+    THROTTLE_MAX_MBPS("profile.throttleMaxMBps", PropertyType.INTEGER, true),
+
+    /** Whether to list all the files of a profile first, and identify them once the walk has finished. */
+    DEFER_IDENTIFICATION("profile.deferIdentification", PropertyType.BOOLEAN, true),
+
+    /** Whether a compressed tar is identified and expanded from streams, without decompressing it to a temp file. */
+    STREAM_COMPRESSED_TAR("profile.streamCompressedTar", PropertyType.BOOLEAN, true),
+
+    /** The number of zip files opened over each zip archive, to read the entries TrueZip decompresses in parallel. */
+    ZIP_READERS("profile.zipReaders", PropertyType.INTEGER, true),
     
     /** Whether the database plays safe (=true), or gains performance
      * but loses resilience in the face of failures (=false).
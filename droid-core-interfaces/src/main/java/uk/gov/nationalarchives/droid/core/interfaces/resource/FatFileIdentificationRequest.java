@@ -37,7 +37,9 @@ import java.nio.file.Path;
 
 import org.apache.commons.lang.NotImplementedException;
 
+import de.waldheinz.fs.FsFile;
 import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.TopAndTailFixedLengthCache;
 
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
@@ -83,6 +85,17 @@ public class FatFileIdentificationRequest implements IdentificationRequest<Input
         size = reader.length(); // getting the size of a reader backed by a stream forces a stream read.
     }
 
+    /**
+     * Opens the request to read a file directly from its FAT image, without copying it anywhere first.
+     * The image must stay readable until this request has been closed.
+     *
+     * @param file the file in the FAT image.
+     */
+    public void open(FsFile file) {
+        reader = new FatFileReader(file, new TopAndTailFixedLengthCache(file.getLength(), TOP_TAIL_CAPACITY));
+        size = file.getLength();
+    }
+
 
     @Override
     public byte getByte(long position) throws IOException {
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import de.waldheinz.fs.FsFile;
+import net.byteseek.io.reader.AbstractReader;
+import net.byteseek.io.reader.cache.WindowCache;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * A WindowReader over a file in a FAT file system image.
+ * <p>
+ * Windows are read on demand by following the cluster chain of the file, through the
+ * block device of the image, so files are identified where they are in the image rather
+ * than being copied out to temporary files first.  The block device must stay open
+ * until the reader is no longer used.
+ */
+public final class FatFileReader extends AbstractReader {
+
+    private final FsFile file;
+    private final long length;
+
+    /**
+     * @param file the file in the FAT image to read.
+     * @param cache the cache of windows to use.
+     */
+    public FatFileReader(final FsFile file, final WindowCache cache) {
+        super(cache);
+        this.file = file;
+        this.length = file.getLength();
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    protected Window createWindow(final long windowStart) throws IOException {
+        Window window = null;
+        if (windowStart >= 0 && windowStart < length) {
+            final int windowLength = (int) Math.min(windowSize, length - windowStart);
+            final byte[] bytes = new byte[windowLength];
+            file.read(windowStart, ByteBuffer.wrap(bytes));
+            window = new HardWindow(bytes, windowStart, windowLength);
+        }
+        return window;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[file=" + file + ", length=" + length + ']';
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.byteseek.io.reader.ReaderInputStream;
+import net.byteseek.io.reader.WindowReader;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+
+/**
+ * Identification request for a resource which is a contiguous range of bytes of its parent,
+ * such as an uncompressed entry of an archive.  It is opened from a {@link SliceReader}
+ * over the parent's reader, so its bytes are read where they are, with no copy made.
+ * <p>
+ * The parent request must stay open until this request has been closed.
+ */
+public class SliceIdentificationRequest implements IdentificationRequest<WindowReader> {
+
+    private final String extension;
+    private final String fileName;
+    private final RequestMetaData requestMetaData;
+    private final RequestIdentifier identifier;
+
+    private WindowReader reader;
+    private long size;
+
+    /**
+     * Constructs a new slice request.
+     * @param metaData meta data about the request
+     * @param identifier request identifier
+     */
+    public SliceIdentificationRequest(final RequestMetaData metaData, final RequestIdentifier identifier) {
+        this.identifier = identifier;
+        this.fileName = metaData.getName();
+        this.extension = ResourceUtils.getExtension(fileName);
+        this.requestMetaData = metaData;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void open(final WindowReader slice) throws IOException {
+        this.reader = slice;
+        this.size = slice.length();
+    }
+
+    /**
+     * Releases resources for this resource.
+     * @throws IOException if the resource could not be closed
+     */
+    @Override
+    public final void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getExtension() {
+        return extension;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final long size() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws IOException
+     */
+    @Override
+    public final InputStream getSourceInputStream() throws IOException {
+        return new ReaderInputStream(reader, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final RequestMetaData getRequestMetaData() {
+        return requestMetaData;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final RequestIdentifier getIdentifier() {
+        return identifier;
+    }
+
+    @Override
+    public byte getByte(final long position) throws IOException {
+        final int result = reader.readByte(position);
+        if (result < 0) {
+            throw new IOException("No byte at position " + position);
+        }
+        return (byte) result;
+    }
+
+    @Override
+    public WindowReader getWindowReader() {
+        return reader;
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+
+/**
+ * A view over a range of bytes of another WindowReader, such as an uncompressed entry of an archive.
+ * <p>
+ * No bytes are copied, other than those of the first window of the slice, which need moving to the
+ * start of a window when the slice does not start on a window boundary of the parent reader.
+ * Every other window shares the array of the parent reader's window.
+ * <p>
+ * The parent reader is not thread-safe, and is likely to be shared with other slices, so it is read
+ * under its own lock.  Anything else reading the parent while slices of it are in use must lock it too.
+ * Closing a slice does not close the parent reader.
+ */
+public final class SliceReader implements WindowReader {
+
+    private final WindowReader parent;
+    private final long offset;
+    private final long length;
+    private volatile Window firstWindow;
+
+    /**
+     * @param parent the reader to read a slice of.
+     * @param offset the position in the parent reader the slice starts at.
+     * @param length the number of bytes in the slice.
+     */
+    public SliceReader(final WindowReader parent, final long offset, final long length) {
+        this.parent = parent;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int readByte(final long position) throws IOException {
+        int result = -1;
+        if (position >= 0 && position < length) {
+            synchronized (parent) {
+                result = parent.readByte(offset + position);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Window getWindow(final long position) throws IOException {
+        Window window = null;
+        if (position >= 0 && position < length) {
+            final Window parentWindow;
+            synchronized (parent) {
+                parentWindow = parent.getWindow(offset + position);
+            }
+            if (parentWindow != null) {
+                final long windowStart = parentWindow.getWindowPosition();
+                window = windowStart < offset ? getFirstWindow(parentWindow)
+                        : new HardWindow(parentWindow.getArray(), windowStart - offset,
+                                (int) Math.min(parentWindow.length(), offset + length - windowStart));
+            }
+        }
+        return window;
+    }
+
+    @Override
+    public int getWindowOffset(final long position) {
+        final long parentPosition = offset + position;
+        final int parentOffset = parent.getWindowOffset(parentPosition);
+        return parentPosition - parentOffset < offset ? (int) position : parentOffset;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Releases the copy of the first window.  The parent reader is not closed,
+     * as it belongs to whatever the slice was taken from.
+     */
+    @Override
+    public void close() {
+        firstWindow = null;
+    }
+
+    @Override
+    public Iterator<Window> iterator() {
+        return new WindowIterator();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[offset=" + offset + ", length=" + length + ", parent=" + parent + ']';
+    }
+
+    private Window getFirstWindow(final Window parentWindow) throws IOException {
+        Window window = firstWindow;
+        if (window == null) {
+            final int start = (int) (offset - parentWindow.getWindowPosition());
+            final int windowLength = (int) Math.min(parentWindow.length() - start, length);
+            final byte[] bytes = new byte[windowLength];
+            System.arraycopy(parentWindow.getArray(), start, bytes, 0, windowLength);
+            window = new HardWindow(bytes, 0, windowLength);
+            firstWindow = window;
+        }
+        return window;
+    }
+
+    /**
+     * Iterates over the windows of the slice.
+     */
+    private final class WindowIterator implements Iterator<Window> {
+
+        private long position;
+
+        @Override
+        public boolean hasNext() {
+            return position < length;
+        }
+
+        @Override
+        public Window next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Window window;
+            try {
+                window = getWindow(position);
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            if (window == null) {
+                throw new NoSuchElementException("No window at position " + position);
+            }
+            position = window.getNextWindowPosition();
+            return window;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.FilenameUtils;
+
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.TopAndTailStreamCache;
+
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+
+/**
+ * Identification request for a resource which is decompressed from its parent as a stream,
+ * and never copied in full to memory or a temp file.
+ * <p>
+ * Its reader only keeps the top and tail of the stream, which is enough to identify it from
+ * its signatures.  Bytes in the middle are lost once they have been read past.  Its source
+ * input stream is decompressed afresh from the parent each time it is asked for, so an archive
+ * which can be walked as a stream, such as a TAR, can still be expanded.  The parent request
+ * must stay open until this request has been closed.
+ */
+public class StreamedIdentificationRequest implements IdentificationRequest<InputStream> {
+
+    private static final int TOP_TAIL_CAPACITY = 2 * 1024 * 1024; // hold 2Mb cache on either end of the stream.
+
+    /**
+     * Opens a new stream over the resource, from its start.
+     */
+    public interface StreamSource {
+
+        /**
+         * @return a new stream over the resource.
+         * @throws IOException if the stream could not be opened.
+         */
+        InputStream open() throws IOException;
+    }
+
+    private final String extension;
+    private final String fileName;
+    private final RequestMetaData requestMetaData;
+    private final RequestIdentifier identifier;
+    private final StreamSource source;
+    private WindowReader reader;
+
+    /**
+     * Constructs a new streamed resource.
+     * @param metaData meta data about the request
+     * @param identifier request identifier
+     * @param source opens new streams over the resource.
+     */
+    public StreamedIdentificationRequest(final RequestMetaData metaData, final RequestIdentifier identifier,
+            final StreamSource source) {
+        this.identifier = identifier;
+        final String path = identifier.getUri().getSchemeSpecificPart();
+        this.extension = ResourceUtils.getExtension(path);
+        this.fileName = FilenameUtils.getName(path);
+        this.requestMetaData = metaData;
+        this.source = source;
+    }
+
+    /**
+     * Opens the reader the resource is identified from, which closes the stream when it is closed.
+     * @param in a stream over the resource, which need not have been opened from its source.
+     */
+    @Override
+    public final void open(final InputStream in) {
+        reader = new InputStreamReader(in, new TopAndTailStreamCache(TOP_TAIL_CAPACITY), true);
+    }
+
+    /**
+     * Releases resources for this resource.
+     * @throws IOException if the resource could not be closed
+     */
+    @Override
+    public final void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getExtension() {
+        return extension;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * The size is only known once the whole stream has been read, so asking for it reads the
+     * rest of the stream, if it has not been read already.
+     * {@inheritDoc}
+     */
+    @Override
+    public final long size() {
+        try {
+            return reader.length();
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decompresses the resource afresh from its parent.
+     * {@inheritDoc}
+     */
+    @Override
+    public final InputStream getSourceInputStream() throws IOException {
+        return source.open();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final RequestMetaData getRequestMetaData() {
+        return requestMetaData;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final RequestIdentifier getIdentifier() {
+        return identifier;
+    }
+
+    @Override
+    public byte getByte(final long position) throws IOException {
+        final int result = reader.readByte(position);
+        if (result < 0) {
+            throw new IOException("No byte at position " + position);
+        }
+        return (byte) result;
+    }
+
+    @Override
+    public WindowReader getWindowReader() {
+        return reader;
+    }
+}
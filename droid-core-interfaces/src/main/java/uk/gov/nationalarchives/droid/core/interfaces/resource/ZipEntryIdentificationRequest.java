@@ -63,6 +63,7 @@ public class ZipEntryIdentificationRequest implements IdentificationRequest<Inpu
     private WindowReader reader;
 
     private boolean closeStream = true;
+    private boolean lazy;
 
 
     private Logger log = LoggerFactory.getLogger(this.getClass());
@@ -96,6 +97,22 @@ public class ZipEntryIdentificationRequest implements IdentificationRequest<Inpu
         this.closeStream = closeStream;
 
     }
+
+    /**
+     * Constructs a new Zip file resource.
+     * @param metaData meta data about the request
+     * @param identifier request identifier
+     * @param tempDir the location to write temp files.
+     * @param closeStream Whether to close the underlying input stream when the reader created in [open] is closed.
+     * @param lazy Whether the entry is only decompressed as far as it is read, rather than in full when opened.
+     *             The input stream must remain readable until the request is closed, and the size of the
+     *             entry must be known in advance, or the entry is still read in full.
+     */
+    public ZipEntryIdentificationRequest(final RequestMetaData metaData, final RequestIdentifier identifier,
+            final Path tempDir, final boolean closeStream, final boolean lazy) {
+        this(metaData, identifier, tempDir, closeStream);
+        this.lazy = lazy;
+    }
     
     /**
      * {@inheritDoc}
@@ -103,6 +120,12 @@ public class ZipEntryIdentificationRequest implements IdentificationRequest<Inpu
     @Override
     public final void open(final InputStream in) throws IOException {
         reader = ResourceUtils.getStreamReader(in, tempDir, TOP_TAIL_CAPACITY, closeStream);
+        if (!lazy || size == null || size < 0) {
+            readFully();
+        }
+    }
+
+    private void readFully() throws IOException {
         // Force read of entire input stream to build reader and remove dependence on source input stream.
         final long readSize = reader.length(); // getting the size of a reader backed by a stream forces a stream read.
         if (readSize != size) {
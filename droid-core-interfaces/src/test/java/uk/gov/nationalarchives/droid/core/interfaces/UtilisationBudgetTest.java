@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class UtilisationBudgetTest {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void testAPoolOnItsOwnIsAllowedTheWholeBudget() {
+        UtilisationBudget budget = new UtilisationBudget(8, 50);
+        Object pool = new Object();
+        budget.join(pool);
+
+        assertEquals(4.0, budget.getCapacity(), DELTA);
+        assertEquals(4.0, budget.allowance(pool, 1.0), DELTA);
+        assertEquals(4.0, budget.allowance(pool, 6.0), DELTA);
+    }
+
+    @Test
+    public void testPoolsShareWhatIsLeftOfTheBudget() {
+        UtilisationBudget budget = new UtilisationBudget(8, 100);
+        Object first = new Object();
+        Object second = new Object();
+        budget.join(first);
+        budget.join(second);
+
+        // 8 cores, 2 used by the first pool: the 6 left are shared by both pools.
+        assertEquals(2.0 + 3.0, budget.allowance(first, 2.0), DELTA);
+        // 2 + 4 used, the 2 left are shared by both pools.
+        assertEquals(4.0 + 1.0, budget.allowance(second, 4.0), DELTA);
+    }
+
+    @Test
+    public void testPoolsOverTheBudgetShareItInProportionToTheirUse() {
+        UtilisationBudget budget = new UtilisationBudget(8, 100);
+        Object first = new Object();
+        Object second = new Object();
+        budget.join(first);
+        budget.join(second);
+
+        budget.allowance(first, 12.0);
+        assertEquals(2.0, budget.allowance(second, 4.0), DELTA);
+        assertEquals(6.0, budget.allowance(first, 12.0), DELTA);
+    }
+
+    @Test
+    public void testAPoolWhichLeavesNoLongerSharesTheBudget() {
+        UtilisationBudget budget = new UtilisationBudget(8, 100);
+        Object first = new Object();
+        Object second = new Object();
+        budget.join(first);
+        budget.join(second);
+        budget.allowance(second, 4.0);
+
+        budget.leave(second);
+        assertEquals(8.0, budget.allowance(first, 2.0), DELTA);
+    }
+
+    @Test
+    public void testInvalidTargetUsesTheDefault() {
+        UtilisationBudget budget = new UtilisationBudget(10, 0);
+        assertEquals(10 * AdaptiveThreadPoolExecutor.DEFAULT_TARGET_UTILISATION / 100.0, budget.getCapacity(), DELTA);
+    }
+}
@@ -71,10 +71,12 @@ public class BZipArchiveHandlerTest  {
         identifier.setAncestorId(10L);
         identifier.setParentId(20L);
         identifier.setNodeId(30L);
+        identifier.setPrefix("!!!!#");
 
         RequestIdentifier expectedIdentifier = new RequestIdentifier(expectedUri);
         expectedIdentifier.setAncestorId(10L);
         expectedIdentifier.setParentId(30L);
+        expectedIdentifier.setParentPrefix("!!!!#");
 
         when(factory.newRequest(any(RequestMetaData.class), eq(expectedIdentifier)))
                 .thenReturn(request);
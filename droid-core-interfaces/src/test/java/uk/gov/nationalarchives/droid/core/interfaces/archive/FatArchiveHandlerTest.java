@@ -32,16 +32,27 @@
 package uk.gov.nationalarchives.droid.core.interfaces.archive;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.waldheinz.fs.FsDirectoryEntry;
+import de.waldheinz.fs.fat.FatFileSystem;
+import de.waldheinz.fs.util.FileDisk;
+import net.byteseek.io.reader.ReaderInputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import uk.gov.nationalarchives.droid.core.interfaces.*;
@@ -55,6 +66,8 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 
 public class FatArchiveHandlerTest {
 
@@ -108,6 +121,60 @@ public class FatArchiveHandlerTest {
 
     }
 
+    @Test
+    public void testFilesAreReadStraightFromTheImage() throws Exception {
+        FatEntryRequestFactory factory = mock(FatEntryRequestFactory.class);
+        when(factory.newRequest(any(RequestMetaData.class), any(RequestIdentifier.class))).thenAnswer(
+            invocation -> new FatFileIdentificationRequest(invocation.getArgument(0), invocation.getArgument(1), tmpDir));
+        AsynchDroid droid = mock(AsynchDroid.class);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean())).thenReturn(mock(ResourceId.class));
+
+        FatArchiveHandler fatArchiveHandler = new FatArchiveHandler();
+        fatArchiveHandler.setDroid(droid);
+        fatArchiveHandler.setFactory(factory);
+        fatArchiveHandler.setResultHandler(resultHandler);
+
+        RequestIdentifier identifier = new RequestIdentifier(new URI("file://fat12.img"));
+        identifier.setNodeId(1L);
+        FileSystemIdentificationRequest req = new FileSystemIdentificationRequest(new RequestMetaData(1474560L, 1L, "fat12.img"), identifier);
+        req.open(Paths.get("./src/test/resources/fat12.img"));
+        fatArchiveHandler.handle(req);
+
+        ArgumentCaptor<IdentificationRequest> submitted = ArgumentCaptor.forClass(IdentificationRequest.class);
+        verify(droid, times(7)).submit(submitted.capture());
+
+        // read the same files through fat32-lib directly:
+        Map<String, byte[]> expected = new HashMap<>();
+        FileDisk disk = new FileDisk(new File("./src/test/resources/fat12.img"), true);
+        try {
+            readFiles(FatFileSystem.read(disk, true).getRoot(), expected);
+            for (IdentificationRequest<?> entry : (List<IdentificationRequest<?>>) (List) submitted.getAllValues()) {
+                byte[] bytes = new byte[(int) entry.size()];
+                try (ReaderInputStream in = new ReaderInputStream(entry.getWindowReader(), false)) {
+                    assertEquals(bytes.length, in.read(bytes));
+                }
+                assertArrayEquals(entry.getFileName(), expected.get(entry.getFileName()), bytes);
+                entry.close();
+            }
+        } finally {
+            disk.close();
+        }
+        assertEquals(0, tmpDir.toFile().list().length);
+    }
+
+    private static void readFiles(Iterable<FsDirectoryEntry> directory, Map<String, byte[]> files) throws IOException {
+        for (FsDirectoryEntry entry : directory) {
+            if (entry.isFile() && entry.getFile().getLength() > 0) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) entry.getFile().getLength());
+                entry.getFile().read(0, buffer);
+                files.put(entry.getName(), buffer.array());
+            } else if (entry.isDirectory() && !".".equals(entry.getName()) && !"..".equals(entry.getName())) {
+                readFiles(entry.getDirectory(), files);
+            }
+        }
+    }
+
     @After
     public void tearDown(){
         FileUtils.deleteQuietly(tmpDir.toFile());
@@ -31,23 +31,33 @@
  */
 package uk.gov.nationalarchives.droid.core.interfaces.archive;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.StreamedIdentificationRequest;
 
 /**
  * @author rflitcroft
@@ -71,10 +81,12 @@ public class GZipArchiveHandlerTest {
         identifier.setAncestorId(10L);
         identifier.setParentId(20L);
         identifier.setNodeId(30L);
+        identifier.setPrefix("!!!!#");
 
         RequestIdentifier expectedIdentifier = new RequestIdentifier(expectedUri);
         expectedIdentifier.setAncestorId(10L);
         expectedIdentifier.setParentId(30L);
+        expectedIdentifier.setParentPrefix("!!!!#");
 
         when(factory.newRequest(any(RequestMetaData.class), eq(expectedIdentifier)))
             .thenReturn(request);
@@ -93,6 +105,68 @@ public class GZipArchiveHandlerTest {
         
         verify(droidCore).submit(request);
     }
+
+    @Test
+    public void testTarIsStreamedWithoutCopyingWhenStreamingIsOn() throws Exception {
+
+        final Path file = Paths.get(getClass().getResource("/saved.tar.gz").toURI());
+        final byte[] tar;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            tar = IOUtils.toByteArray(in);
+        }
+
+        IdentificationRequestFactory factory = mock(IdentificationRequestFactory.class);
+        AsynchDroid droidCore = mock(AsynchDroid.class);
+        GZipArchiveHandler handler = new GZipArchiveHandler();
+        handler.setFactory(factory);
+        handler.setDroidCore(droidCore);
+        handler.setStreamTar(true);
+
+        IdentificationRequest originalRequest = mock(IdentificationRequest.class);
+        RequestIdentifier identifier = new RequestIdentifier(file.toUri());
+        identifier.setNodeId(30L);
+        when(originalRequest.getIdentifier()).thenReturn(identifier);
+        when(originalRequest.getSourceInputStream())
+            .thenReturn(Files.newInputStream(file), Files.newInputStream(file));
+
+        handler.handle(originalRequest);
+
+        ArgumentCaptor<IdentificationRequest> submitted = ArgumentCaptor.forClass(IdentificationRequest.class);
+        verify(droidCore).submit(submitted.capture());
+        verify(factory, never()).newRequest(any(RequestMetaData.class), any(RequestIdentifier.class));
+        IdentificationRequest<?> streamed = submitted.getValue();
+        assertTrue(streamed instanceof StreamedIdentificationRequest);
+        assertEquals(tar[0], streamed.getByte(0));
+        assertEquals(tar.length, streamed.size());
+        try (InputStream in = streamed.getSourceInputStream()) {
+            assertArrayEquals(tar, IOUtils.toByteArray(in));
+        }
+        streamed.close();
+    }
+
+    @Test
+    public void testOtherFilesAreNotStreamedWhenStreamingIsOn() throws Exception {
+
+        final Path file = Paths.get(getClass().getResource("/testXmlFile.xml.gz").toURI());
+        IdentificationRequest request = mock(IdentificationRequest.class);
+        IdentificationRequestFactory factory = mock(IdentificationRequestFactory.class);
+        when(factory.newRequest(any(RequestMetaData.class), any(RequestIdentifier.class))).thenReturn(request);
+        AsynchDroid droidCore = mock(AsynchDroid.class);
+        GZipArchiveHandler handler = new GZipArchiveHandler();
+        handler.setFactory(factory);
+        handler.setDroidCore(droidCore);
+        handler.setStreamTar(true);
+
+        IdentificationRequest originalRequest = mock(IdentificationRequest.class);
+        RequestIdentifier identifier = new RequestIdentifier(file.toUri());
+        identifier.setNodeId(30L);
+        when(originalRequest.getIdentifier()).thenReturn(identifier);
+        when(originalRequest.getSourceInputStream()).thenReturn(Files.newInputStream(file));
+
+        handler.handle(originalRequest);
+
+        verify(droidCore).submit(request);
+    }
     
 //    private static Matcher<RequestMetaData> uriMatcher(final URI uri) {
 //        
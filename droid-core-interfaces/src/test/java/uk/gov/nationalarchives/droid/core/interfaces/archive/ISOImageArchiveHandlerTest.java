@@ -32,10 +32,10 @@
 package uk.gov.nationalarchives.droid.core.interfaces.archive;
 
 
-import com.github.stephenc.javaisotools.loopfs.iso9660.Iso9660FileEntry;
-import com.github.stephenc.javaisotools.loopfs.iso9660.Iso9660FileSystem;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import net.byteseek.io.reader.FileReader;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.junit.MockitoJUnitRunner;
 import uk.gov.nationalarchives.droid.core.interfaces.*;
@@ -43,7 +43,10 @@ import uk.gov.nationalarchives.droid.core.interfaces.archive.ISOImageArchiveHand
 import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.GZipIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.SliceIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.SliceReader;
 
+import java.io.File;
 import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Paths;
@@ -70,29 +73,29 @@ public class ISOImageArchiveHandlerTest {
 
 
         ResultHandler resultHandler = mock(ResultHandler.class);
-        Iso9660FileSystem filesystem = mock(Iso9660FileSystem.class);
+        Iso9660Reader filesystem = mock(Iso9660Reader.class);
         RequestIdentifier requestIdentifier = new RequestIdentifier(new URI("mock://some/path/to/iso"));
         requestIdentifier.setNodeId(10L);
 
         ISOImageArchiveWalker walker = new ISOImageArchiveWalker(droid, factory, resultHandler, filesystem,  requestIdentifier);
 
 
-        Iso9660FileEntry rootEntry = mock(Iso9660FileEntry.class);
+        Iso9660Reader.Entry rootEntry = mock(Iso9660Reader.Entry.class);
         when(rootEntry.getPath()).thenReturn("");
         when(rootEntry.isDirectory()).thenReturn(true);
 
-        Iso9660FileEntry contentDir = mock(Iso9660FileEntry.class);
+        Iso9660Reader.Entry contentDir = mock(Iso9660Reader.Entry.class);
         when(contentDir.getName()).thenReturn("content");
         when(contentDir.getPath()).thenReturn("content/");
         when(contentDir.isDirectory()).thenReturn(true);
 
-        Iso9660FileEntry testFile = mock(Iso9660FileEntry.class);
+        Iso9660Reader.Entry testFile = mock(Iso9660Reader.Entry.class);
         when(contentDir.getName()).thenReturn("test.txt");
         when(contentDir.getPath()).thenReturn("content/text.txt");
         when(contentDir.isDirectory()).thenReturn(false);
 
 
-        List<Iso9660FileEntry> entryList = new ArrayList<>();
+        List<Iso9660Reader.Entry> entryList = new ArrayList<>();
         entryList.add(rootEntry);
         entryList.add(contentDir);
 
@@ -114,28 +117,28 @@ public class ISOImageArchiveHandlerTest {
         ResultHandler resultHandler = mock(ResultHandler.class);
         when(resultHandler.handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean())).thenReturn(mock(ResourceId.class));
 
-        Iso9660FileSystem filesystem = mock(Iso9660FileSystem.class);
+        Iso9660Reader filesystem = mock(Iso9660Reader.class);
         RequestIdentifier requestIdentifier = new RequestIdentifier(new URI("mock://some/path/to/iso"));
         requestIdentifier.setNodeId(10L);
 
         ISOImageArchiveWalker walker = new ISOImageArchiveWalker(droid, factory, resultHandler, filesystem,  requestIdentifier);
 
 
-        Iso9660FileEntry rootEntry = mock(Iso9660FileEntry.class);
+        Iso9660Reader.Entry rootEntry = mock(Iso9660Reader.Entry.class);
         when(rootEntry.getPath()).thenReturn("");
         when(rootEntry.isDirectory()).thenReturn(true);
 
-        Iso9660FileEntry contentDir = mock(Iso9660FileEntry.class);
+        Iso9660Reader.Entry contentDir = mock(Iso9660Reader.Entry.class);
         when(contentDir.getPath()).thenReturn("content/");
         when(contentDir.isDirectory()).thenReturn(true);
 
-        Iso9660FileEntry testFile = mock(Iso9660FileEntry.class);
+        Iso9660Reader.Entry testFile = mock(Iso9660Reader.Entry.class);
         when(testFile.getName()).thenReturn("test.txt");
         when(testFile.getPath()).thenReturn("content/test.txt");
         when(testFile.isDirectory()).thenReturn(false);
 
 
-        List<Iso9660FileEntry> entryList = new ArrayList<>();
+        List<Iso9660Reader.Entry> entryList = new ArrayList<>();
         entryList.add(rootEntry);
         entryList.add(contentDir);
         entryList.add(testFile);
@@ -158,28 +161,28 @@ public class ISOImageArchiveHandlerTest {
 
         ResultHandler resultHandler = mock(ResultHandler.class);
         when(resultHandler.handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean())).thenReturn(mock(ResourceId.class));
-        Iso9660FileSystem filesystem = mock(Iso9660FileSystem.class);
+        Iso9660Reader filesystem = mock(Iso9660Reader.class);
         RequestIdentifier requestIdentifier = new RequestIdentifier(new URI("mock://some/path/to/iso"));
         requestIdentifier.setNodeId(10L);
 
         ISOImageArchiveWalker walker = new ISOImageArchiveWalker(droid, factory, resultHandler, filesystem,  requestIdentifier);
 
 
-        Iso9660FileEntry rootEntry = mock(Iso9660FileEntry.class);
+        Iso9660Reader.Entry rootEntry = mock(Iso9660Reader.Entry.class);
         when(rootEntry.getPath()).thenReturn("");
         when(rootEntry.isDirectory()).thenReturn(true);
 
-        Iso9660FileEntry contentDir = mock(Iso9660FileEntry.class);
+        Iso9660Reader.Entry contentDir = mock(Iso9660Reader.Entry.class);
         when(contentDir.getPath()).thenReturn("content/");
         when(contentDir.isDirectory()).thenReturn(true);
 
-        Iso9660FileEntry testFile = mock(Iso9660FileEntry.class);
+        Iso9660Reader.Entry testFile = mock(Iso9660Reader.Entry.class);
         when(testFile.getName()).thenReturn("test.txt");
         when(testFile.getPath()).thenReturn("content/test.txt");
         when(testFile.isDirectory()).thenReturn(false);
 
 
-        List<Iso9660FileEntry> entryList = new ArrayList<>();
+        List<Iso9660Reader.Entry> entryList = new ArrayList<>();
         entryList.add(rootEntry);
         entryList.add(testFile);
         entryList.add(contentDir);
@@ -225,6 +228,39 @@ public class ISOImageArchiveHandlerTest {
 
     }
 
+    @Test
+    public void testWithIsoFileInsideAnotherArchive() throws Exception {
+
+        IdentificationRequestFactory<InputStream> factory = mock(ISOEntryRequestFactory.class);
+        AsynchDroid droid = mock(AsynchDroid.class);
+
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean())).thenReturn(mock(ResourceId.class));
+
+        ISOImageArchiveHandler isoImageArchiveHandler = new ISOImageArchiveHandler();
+        isoImageArchiveHandler.setDroid(droid);
+        isoImageArchiveHandler.setFactory(factory);
+        isoImageArchiveHandler.setResultHandler(resultHandler);
+
+        RequestMetaData requestMetaData = new RequestMetaData(393216L, 1L, "testiso.iso");
+        RequestIdentifier identifier = new RequestIdentifier(new URI("zip:file://archive.zip!/testiso.iso"));
+        identifier.setNodeId(1L);
+
+        try (FileReader archive = new FileReader(new File("./src/test/resources/testiso.iso"))) {
+            SliceIdentificationRequest req = new SliceIdentificationRequest(requestMetaData, identifier);
+            req.open(new SliceReader(archive, 0, archive.length()));
+            isoImageArchiveHandler.handle(req);
+        }
+
+        ArgumentCaptor<IdentificationRequest> submitted = ArgumentCaptor.forClass(IdentificationRequest.class);
+        verify(droid, times(6)).submit(submitted.capture());
+        for (IdentificationRequest request : submitted.getAllValues()) {
+            assertTrue(request instanceof SliceIdentificationRequest);
+        }
+        verify(resultHandler, times(3)).handleDirectory(any(IdentificationResult.class), any(ResourceId.class), anyBoolean());
+        verifyZeroInteractions(factory);
+    }
+
     @Test
     public void testIgnoreOtherIdentificationRequest() throws Exception {
 
@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import com.github.stephenc.javaisotools.loopfs.iso9660.Iso9660FileEntry;
+import com.github.stephenc.javaisotools.loopfs.iso9660.Iso9660FileSystem;
+import net.byteseek.io.reader.ByteArrayReader;
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.ReaderInputStream;
+import net.byteseek.io.reader.WindowReader;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class Iso9660ReaderTest {
+
+    private static final File ISO_FILE = new File("./src/test/resources/testiso.iso");
+
+    private WindowReader reader;
+    private Iso9660FileSystem fileSystem;
+
+    @Before
+    public void setup() throws Exception {
+        reader = new FileReader(ISO_FILE);
+        fileSystem = new Iso9660FileSystem(ISO_FILE, true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fileSystem.close();
+        reader.close();
+    }
+
+    @Test
+    public void testListsTheSameEntriesAsJavaIsoTools() throws Exception {
+        List<String> expected = new ArrayList<>();
+        for (Iso9660FileEntry entry : fileSystem) {
+            expected.add(entry.getPath() + "|" + entry.isDirectory() + "|" + (entry.isDirectory() ? "" : entry.getSize())
+                    + "|" + entry.getLastModifiedTime());
+        }
+        List<String> actual = new ArrayList<>();
+        for (Iso9660Reader.Entry entry : new Iso9660Reader(reader)) {
+            actual.add(entry.getPath() + "|" + entry.isDirectory() + "|" + (entry.isDirectory() ? "" : entry.getSize())
+                    + "|" + entry.getLastModifiedTime());
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testFilesAreReadFromSlicesOfTheImage() throws Exception {
+        Iso9660Reader image = new Iso9660Reader(reader);
+        int files = 0;
+        for (Iso9660FileEntry expected : fileSystem) {
+            if (!expected.isDirectory()) {
+                Iso9660Reader.Entry entry = find(image, expected.getPath());
+                WindowReader slice = image.getSlice(entry);
+                try (InputStream in = fileSystem.getInputStream(expected);
+                     InputStream sliceIn = new ReaderInputStream(slice, false)) {
+                    assertArrayEquals(expected.getPath(), IOUtils.toByteArray(in), IOUtils.toByteArray(sliceIn));
+                }
+                files++;
+            }
+        }
+        assertEquals(6, files);
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testAnImageWithoutVolumeDescriptorsIsNotRead() throws Exception {
+        new Iso9660Reader(new FileReader(new File("./src/test/resources/saved.zip")));
+    }
+
+    @Test
+    public void testAFileRunningPastTheEndOfTheImageIsReadFromAStreamWhichEndsWithTheImage() throws Exception {
+        // the last file in the image starts at 83968 and holds 38 bytes:
+        Iso9660Reader image = new Iso9660Reader(truncatedImage(84000));
+        Iso9660Reader.Entry entry = find(image, "LongDirWithCamelCaseName/fmt-144-signature-id-692.pdf");
+        assertNull(image.getSlice(entry));
+        try (InputStream in = image.getInputStream(entry)) {
+            assertEquals(32, IOUtils.toByteArray(in).length);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testADirectoryBeyondTheEndOfTheImageIsReportedWhenItIsReached() throws Exception {
+        // the directories of the image lie between 59392 and 65536:
+        for (Iso9660Reader.Entry entry : new Iso9660Reader(truncatedImage(60000))) {
+            assertNotNull(entry);
+        }
+    }
+
+    private static WindowReader truncatedImage(int length) throws Exception {
+        return new ByteArrayReader(Arrays.copyOf(Files.readAllBytes(ISO_FILE.toPath()), length));
+    }
+
+    private static Iso9660Reader.Entry find(Iso9660Reader image, String path) {
+        for (Iso9660Reader.Entry entry : image) {
+            if (entry.getPath().equals(path)) {
+                return entry;
+            }
+        }
+        throw new AssertionError("No entry " + path);
+    }
+}
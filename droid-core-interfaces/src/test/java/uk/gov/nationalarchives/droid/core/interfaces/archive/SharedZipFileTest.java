@@ -0,0 +1,267 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import de.schlichtherle.truezip.zip.ZipEntry;
+import de.schlichtherle.truezip.zip.ZipFile;
+import net.byteseek.io.reader.ByteArrayReader;
+import net.byteseek.io.reader.ReaderInputStream;
+import net.byteseek.io.reader.WindowReader;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SharedZipFileTest {
+
+    private SharedZipFile sharedZipFile;
+    private byte[] zipBytes;
+
+    @Before
+    public void setup() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (String name : new String[] {"one.txt", "two.txt"}) {
+                out.putNextEntry(new java.util.zip.ZipEntry(name));
+                out.write(("contents of " + name).getBytes(StandardCharsets.US_ASCII));
+                out.closeEntry();
+            }
+            final byte[] stored = "contents of stored.txt".getBytes(StandardCharsets.US_ASCII);
+            final CRC32 crc = new CRC32();
+            crc.update(stored);
+            final java.util.zip.ZipEntry storedEntry = new java.util.zip.ZipEntry("stored.txt");
+            storedEntry.setMethod(java.util.zip.ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            storedEntry.setCrc(crc.getValue());
+            out.putNextEntry(storedEntry);
+            out.write(stored);
+            out.closeEntry();
+        }
+        zipBytes = bytes.toByteArray();
+        sharedZipFile = new SharedZipFile(new ByteArrayReader(zipBytes));
+    }
+
+    @Test
+    public void testEntriesCanBeReadAfterTheHandlerHasReleasedTheZipFile() throws Exception {
+        final ZipFile zipFile = sharedZipFile.getZipFile();
+        final InputStream one = sharedZipFile.newEntryStream(zipFile.getEntry("one.txt"));
+        final InputStream two = sharedZipFile.newEntryStream(zipFile.getEntry("two.txt"));
+        sharedZipFile.release();
+
+        assertEquals("contents of two.txt", IOUtils.toString(two, StandardCharsets.US_ASCII));
+        two.close();
+        assertEquals("contents of one.txt", IOUtils.toString(one, StandardCharsets.US_ASCII));
+        one.close();
+    }
+
+    @Test
+    public void testStoredEntriesAreReadFromASliceOfTheZipFile() throws Exception {
+        final WindowReader stored = sharedZipFile.newStoredEntryReader(sharedZipFile.getZipFile().getEntry("stored.txt"));
+        assertEquals("contents of stored.txt",
+                IOUtils.toString(new ReaderInputStream(stored, false), StandardCharsets.US_ASCII));
+        assertNull(sharedZipFile.newStoredEntryReader(sharedZipFile.getZipFile().getEntry("one.txt")));
+    }
+
+    @Test
+    public void testEntriesCanBeReadAtTheSameTime() throws Exception {
+        final SharedZipFile lanes = new SharedZipFile(new ByteArrayReader(zipBytes));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> contents = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                final String name = i % 2 == 0 ? "one.txt" : "two.txt";
+                final InputStream in = lanes.newEntryStream(lanes.getZipFile().getEntry(name));
+                contents.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        try {
+                            return IOUtils.toString(in, StandardCharsets.US_ASCII);
+                        } finally {
+                            in.close();
+                        }
+                    }
+                }));
+            }
+            lanes.release();
+            for (int i = 0; i < contents.size(); i++) {
+                assertEquals(i % 2 == 0 ? "contents of one.txt" : "contents of two.txt", contents.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEntriesReadByTrueZipAreSpreadOverSeveralLanes() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (de.schlichtherle.truezip.zip.ZipOutputStream out = new de.schlichtherle.truezip.zip.ZipOutputStream(bytes)) {
+            for (String name : new String[] {"one.txt", "two.txt"}) {
+                final ZipEntry entry = new ZipEntry(name);
+                entry.setMethod(ZipEntry.BZIP2);
+                out.putNextEntry(entry);
+                out.write(("contents of " + name).getBytes(StandardCharsets.US_ASCII));
+                out.closeEntry();
+            }
+        }
+        final SharedZipFile lanes = new SharedZipFile(new ByteArrayReader(bytes.toByteArray()), null, 3);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> contents = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                final String name = i % 2 == 0 ? "one.txt" : "two.txt";
+                final InputStream in = lanes.newEntryStream(lanes.getZipFile().getEntry(name));
+                contents.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        try {
+                            return IOUtils.toString(in, StandardCharsets.US_ASCII);
+                        } finally {
+                            in.close();
+                        }
+                    }
+                }));
+            }
+            lanes.release();
+            for (int i = 0; i < contents.size(); i++) {
+                assertEquals(i % 2 == 0 ? "contents of one.txt" : "contents of two.txt", contents.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testAnInflatedEntryWithTheWrongCrcIsRejected() throws Exception {
+        // the CRC-32 of an entry is 16 bytes into its central directory header:
+        final int header = centralDirectoryHeader("one.txt");
+        zipBytes[header + 16] ^= 1;
+        assertRejected("one.txt", "CRC");
+    }
+
+    @Test
+    public void testAnInflatedEntryLongerThanItsDeclaredSizeIsRejected() throws Exception {
+        // the uncompressed size of an entry is 24 bytes into its central directory header:
+        final int header = centralDirectoryHeader("two.txt");
+        zipBytes[header + 24]--;
+        assertRejected("two.txt", "longer");
+    }
+
+    @Test
+    public void testAnInflatedEntryShorterThanItsDeclaredSizeIsRejected() throws Exception {
+        final int header = centralDirectoryHeader("two.txt");
+        zipBytes[header + 24]++;
+        assertRejected("two.txt", "shorter");
+    }
+
+    private int centralDirectoryHeader(String name) {
+        final String zip = new String(zipBytes, StandardCharsets.ISO_8859_1);
+        int header = zip.indexOf("PK\u0001\u0002");
+        while (!zip.startsWith(name, header + 46)) {
+            header = zip.indexOf("PK\u0001\u0002", header + 1);
+        }
+        return header;
+    }
+
+    private void assertRejected(String name, String reason) throws Exception {
+        final SharedZipFile shared = new SharedZipFile(new ByteArrayReader(zipBytes));
+        try (InputStream in = shared.newEntryStream(shared.getZipFile().getEntry(name))) {
+            final byte[] contents = new byte[64];
+            int read = 0;
+            for (int count = 0; count >= 0; count = in.read(contents, read, contents.length - read)) {
+                read += count;
+            }
+            fail("Expected " + name + " to be rejected, but read " + read + " bytes.");
+        } catch (ZipException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains(reason));
+        } finally {
+            shared.release();
+        }
+    }
+
+    @Test
+    public void testAZipFileParsedAlreadyIsUsedButNotClosed() throws Exception {
+        final ZipFile parsed = new ZipFile(new TrueZipReader(new ByteArrayReader(zipBytes)));
+        final SharedZipFile shared = new SharedZipFile(new ByteArrayReader(zipBytes), parsed, 1);
+        assertSame(parsed, shared.getZipFile());
+        shared.release();
+        try (InputStream in = parsed.getInputStream("one.txt")) {
+            assertEquals("contents of one.txt", IOUtils.toString(in, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void testDeflatedEntriesAreInflatedFromTheReaderWithoutTheZipFile() throws Exception {
+        final WindowReader reader = new ByteArrayReader(zipBytes);
+        final ZipFile parsed = new ZipFile(new TrueZipReader(reader));
+        final SharedZipFile shared = new SharedZipFile(reader, parsed, 1);
+        final InputStream two = shared.newEntryStream(parsed.getEntry("two.txt"));
+        parsed.close();
+        assertEquals("contents of two.txt", IOUtils.toString(two, StandardCharsets.US_ASCII));
+        two.close();
+        shared.release();
+    }
+
+    @Test
+    public void testZipFileIsClosedWhenTheLastEntryStreamIsClosed() throws Exception {
+        final ZipEntry entry = sharedZipFile.getZipFile().getEntry("one.txt");
+        final InputStream one = sharedZipFile.newEntryStream(entry);
+        sharedZipFile.release();
+        one.close();
+
+        final InputStream again = sharedZipFile.newEntryStream(entry);
+        try {
+            again.read();
+            fail("Expected the zip file to be closed.");
+        } catch (IOException expected) {
+            // the zip file was closed with the last stream.
+        }
+    }
+}
@@ -39,8 +39,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -53,10 +56,15 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.ReaderInputStream;
+
 import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
@@ -64,6 +72,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.SliceIdentificationRequest;
 
 /**
  * @author rflitcroft
@@ -164,4 +173,47 @@ public class TarArchiveHandlerTest {
         requests.get(0).getByte(52000);
     }
 
+    @Test
+    public void testRegularFilesAreReadFromSlicesOfTheTar() throws Exception {
+
+        final Path file = Paths.get(getClass().getResource("/saved.tar").toURI());
+        final Map<String, byte[]> expected = new HashMap<>();
+        try (TarArchiveInputStream tarIn = new TarArchiveInputStream(Files.newInputStream(file))) {
+            TarArchiveEntry entry;
+            while ((entry = tarIn.getNextTarEntry()) != null) {
+                if (entry.isFile()) {
+                    expected.put(ArchiveFileUtils.toTarUri(file.toUri(), entry.getName()).toString(),
+                            IOUtils.toByteArray(tarIn));
+                }
+            }
+        }
+
+        TarArchiveHandler handler = new TarArchiveHandler();
+        handler.setFactory(new TarEntryRequestFactory());
+        AsynchDroid droidCore = mock(AsynchDroid.class);
+        handler.setDroidCore(droidCore);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handleDirectory(any(IdentificationResult.class),
+                any(ResourceId.class), anyBoolean())).thenReturn(new ResourceId(99L, ""));
+        handler.setResultHandler(resultHandler);
+
+        try (FileReader reader = new FileReader(file.toFile(), 127)) {
+            IdentificationRequest originalRequest = mock(IdentificationRequest.class);
+            RequestIdentifier identifier = new RequestIdentifier(file.toUri());
+            identifier.setAncestorId(10L);
+            when(originalRequest.getIdentifier()).thenReturn(identifier);
+            when(originalRequest.getWindowReader()).thenReturn(reader);
+            when(originalRequest.getSourceInputStream()).thenReturn(new ReaderInputStream(reader, false));
+            handler.handle(originalRequest);
+
+            ArgumentCaptor<IdentificationRequest> captor = ArgumentCaptor.forClass(IdentificationRequest.class);
+            verify(droidCore, times(expected.size())).submit(captor.capture());
+            for (IdentificationRequest request : captor.getAllValues()) {
+                assertTrue(request instanceof SliceIdentificationRequest);
+                assertArrayEquals(expected.get(request.getIdentifier().getUri().toString()),
+                        IOUtils.toByteArray(request.getSourceInputStream()));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.core.interfaces.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import net.byteseek.io.reader.FileReader;
+import net.byteseek.io.reader.windows.Window;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SliceReaderTest {
+
+    private static final int OFFSET = 200;
+    private static final int LENGTH = 1000;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private byte[] data;
+    private FileReader parent;
+    private SliceReader slice;
+
+    @Before
+    public void setup() throws Exception {
+        data = new byte[2000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        final Path file = temp.newFile().toPath();
+        Files.write(file, data);
+        parent = new FileReader(file.toFile(), 127); // use a small odd window size so we cross window boundaries.
+        slice = new SliceReader(parent, OFFSET, LENGTH);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        slice.close();
+        parent.close();
+    }
+
+    @Test
+    public void testReadsOnlyTheBytesOfTheSlice() throws Exception {
+        assertEquals(LENGTH, slice.length());
+        for (int position = 0; position < LENGTH; position++) {
+            assertEquals(data[OFFSET + position] & 0xFF, slice.readByte(position));
+        }
+        assertEquals(-1, slice.readByte(-1));
+        assertEquals(-1, slice.readByte(LENGTH));
+    }
+
+    @Test
+    public void testWindowsAndWindowOffsetsAgree() throws Exception {
+        for (int position = 0; position < LENGTH; position++) {
+            final Window window = slice.getWindow(position);
+            final int windowOffset = slice.getWindowOffset(position);
+            assertEquals(position, window.getWindowPosition() + windowOffset);
+            assertEquals(data[OFFSET + position], window.getArray()[windowOffset]);
+        }
+        assertNull(slice.getWindow(LENGTH));
+    }
+
+    @Test
+    public void testIteratingTheWindowsReadsTheWholeSlice() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Window window : slice) {
+            bytes.write(window.getArray(), 0, window.length());
+        }
+        assertArrayEquals(Arrays.copyOfRange(data, OFFSET, OFFSET + LENGTH), bytes.toByteArray());
+    }
+}
@@ -37,17 +37,19 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
-import uk.gov.nationalarchives.droid.core.interfaces.BlockingThreadPoolExecutorFactory;
+import uk.gov.nationalarchives.droid.core.interfaces.AdaptiveThreadPoolExecutor;
 
 /**
  * @author rflitcroft
@@ -57,79 +59,58 @@ public class ThreadPoolExecutorTest {
 
     private CountDownLatch startLatch;
     private CountDownLatch stopLatch;
-    private BlockingThreadPoolExecutorFactory factory;
+    private AdaptiveThreadPoolExecutor executor;
 
     @Before
     public void setup() {
-        startLatch = new CountDownLatch(11);
+        startLatch = new CountDownLatch(10);
         stopLatch = new CountDownLatch(1);
-        factory = new BlockingThreadPoolExecutorFactory();
+    }
+
+    @After
+    public void tearDown() {
+        stopLatch.countDown();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
     }
     
     @Test
     public void testPoolBlocksWhenMoreThanTenTasksAreQueued() throws Exception {
-        factory.setCorePoolSize(10);
-        factory.setMaxPoolSize(10);
-        factory.setWorkQueueSize(5);
-        factory.setKeepAliveTimeMillis(1000);
-        
-        final ThreadPoolExecutor executor = factory.newInstance();
+        executor = new AdaptiveThreadPoolExecutor("test", 10, 10, 5, 90);
+        assertFalse(executor.isAdaptive());
         
         // Saturate the thread pool
         final AtomicInteger count = new AtomicInteger();
-        Thread t = new Thread() {
-            @Override
-            public void run() {
-                for (int i = 0; i < 22; i++) {
-                    Callable<Object> task = new TestTask();
-                    executor.submit(task);
-                    count.incrementAndGet();
-                }
-            }
-        };
-        t.start();
+        final Thread submitter = submitInBackground(22, count);
         
         startLatch.await();
-        assertEquals(0, executor.getQueue().size());
+        waitForQueueSize(5);
+        Thread.sleep(200);
         
-        // We expect 10 tasks running
-        assertEquals(10, count.intValue());
+        // We expect 10 tasks running and 5 queued, with the submitter blocked on the 16th.
+        assertEquals(15, count.intValue());
+        assertEquals(10, executor.getActiveCount());
         
         stopLatch.countDown();
-        executor.awaitTermination(100, TimeUnit.MILLISECONDS);
+        submitter.join(5000);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
         assertEquals(0, executor.getQueue().size());
         assertEquals(22, count.intValue());
-        
+        assertEquals(22, executor.getCompletedTaskCount());
     }
     
     @Test
     public void testPoolRejectsTasksAfterShutdown() throws Exception {
-        factory.setCorePoolSize(10);
-        factory.setMaxPoolSize(10);
-        factory.setWorkQueueSize(5);
-        factory.setKeepAliveTimeMillis(1000);
-        
-        final ThreadPoolExecutor executor = factory.newInstance();
+        executor = new AdaptiveThreadPoolExecutor("test", 10, 10, 5, 90);
         
         // Saturate the thread pool
         final AtomicInteger count = new AtomicInteger();
-        Thread t = new Thread() {
-            @Override
-            public void run() {
-                for (int i = 0; i < 22; i++) {
-                    Callable<Object> task = new TestTask();
-                    executor.submit(task);
-                    count.incrementAndGet();
-                }
-            }
-        };
-        t.start();
+        submitInBackground(22, count);
         
         startLatch.await();
-        assertEquals(0, executor.getQueue().size());
-        
-        // We expect 10 tasks running
-        assertEquals(10, count.intValue());
+        waitForQueueSize(5);
         
         executor.shutdown();
         try {
@@ -140,22 +121,16 @@ public class ThreadPoolExecutorTest {
         }
         
         stopLatch.countDown();
-        executor.awaitTermination(100, TimeUnit.MILLISECONDS);
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
         assertEquals(0, executor.getQueue().size());
-        // We expect the 10 tasks which have already been queued to have run.
-        assertEquals(11, count.intValue());
-        
+        // We expect only the tasks which were running or queued before the shutdown to have run.
+        assertEquals(15, count.intValue());
+        assertEquals(15, executor.getCompletedTaskCount());
     }
     
     @Test
     public void testExceptionHandling() throws Exception {
-        
-        factory.setCorePoolSize(10);
-        factory.setMaxPoolSize(10);
-        factory.setWorkQueueSize(5);
-        factory.setKeepAliveTimeMillis(1000);
-        
-        final ThreadPoolExecutor executor = factory.newInstance();
+        executor = new AdaptiveThreadPoolExecutor("test", 10, 10, 5, 90);
         
         Callable<Object> task = new ExceptionTask();
         Future<?> result = executor.submit(task);
@@ -168,6 +143,76 @@ public class ThreadPoolExecutorTest {
         }
     }
 
+    @Test
+    public void testPoolRunsTasksSubmittedByItsOwnThreadsWhenFull() throws Exception {
+        executor = new AdaptiveThreadPoolExecutor("test", 1, 1, 1, 90);
+        final CountDownLatch done = new CountDownLatch(1);
+        
+        // The single thread fills the queue and then submits again, which must not deadlock.
+        executor.execute(() -> {
+            executor.execute(() -> { });
+            executor.execute(done::countDown);
+        });
+        
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPoolGrowsWhenTasksWaitForIO() throws Exception {
+        executor = new AdaptiveThreadPoolExecutor("test", 1, 8, 100, 90);
+        if (!executor.isAdaptive()) {
+            return; // thread CPU time is not available on this JVM.
+        }
+        
+        final Thread submitter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 1000 && !executor.isShutdown(); i++) {
+                        executor.execute(new SleepTask());
+                    }
+                } catch (RejectedExecutionException e) {
+                    // the test has finished.
+                }
+            }
+        };
+        submitter.start();
+        
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getCorePoolSize() == 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(executor.getCorePoolSize() > 1);
+        assertTrue(executor.getCorePoolSize() <= executor.getMaxThreads());
+    }
+
+    private Thread submitInBackground(final int tasks, final AtomicInteger count) {
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < tasks; i++) {
+                        Callable<Object> task = new TestTask();
+                        executor.submit(task);
+                        count.incrementAndGet();
+                    }
+                } catch (RejectedExecutionException e) {
+                    // the pool was shut down while waiting for space in the queue.
+                }
+            }
+        };
+        t.start();
+        return t;
+    }
+
+    private void waitForQueueSize(int size) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (executor.getQueue().size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, executor.getQueue().size());
+    }
+
     private final class TestTask implements Callable<Object> {
         
         @Override
@@ -183,6 +228,18 @@ public class ThreadPoolExecutorTest {
         }
     }
 
+    private static final class SleepTask implements Runnable {
+        
+        @Override
+        public void run() {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     private final class ExceptionTask implements Callable<Object> {
         
         @Override
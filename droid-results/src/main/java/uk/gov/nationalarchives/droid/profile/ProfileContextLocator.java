@@ -146,6 +146,16 @@ public class ProfileContextLocator {
         profileInstanceLocator.thawDatabase(profileId);
     }
     
+    /**
+     * Closes the context of a profile and opens it again, so it uses the profile's current signature files.
+     * @param profile the profile to reopen.
+     * @return a profile instance manager for the reopened profile context
+     */
+    public ProfileInstanceManager reopenProfileInstanceManager(final ProfileInstance profile) {
+        profileInstanceLocator.closeProfileInstance(profile.getUuid());
+        return openProfileInstanceManager(profile);
+    }
+
     /**
      * Opens a profile instance manager for a pre-existing profile context.
      * @param profile the profile to obtain a profile manager for.
@@ -166,6 +176,7 @@ public class ProfileContextLocator {
         props.setProperty("submissionQueueFile", submissionQueueFile.toAbsolutePath().toString());
         props.setProperty("tempDirLocation", globalConfig.getTempDir().toAbsolutePath().toString());
         props.setProperty("profileHome", profileHome.toAbsolutePath().toString());
+        props.setProperty("profileUuid", profile.getUuid());
         
         props.setProperty("containerSigPath", containerSignatureFile.toAbsolutePath().toString());
         props.setProperty("processArchives", String.valueOf(profile.getProcessArchiveFiles()));
@@ -174,6 +185,40 @@ public class ProfileContextLocator {
         props.setProperty("hashAlgorithm", String.valueOf(profile.getHashAlgorithm()));
         props.setProperty("maxBytesToScan", String.valueOf(profile.getMaxBytesToScan()));
         props.setProperty("matchAllExtensions", String.valueOf(profile.getMatchAllExtensions()));
+        props.setProperty("walkerThreads",
+                globalConfig.getProperties().getString(DroidGlobalProperty.WALKER_THREADS.getName()));
+        props.setProperty("fileKeyOrder",
+                globalConfig.getProperties().getString(DroidGlobalProperty.FILE_KEY_ORDER.getName()));
+        props.setProperty("maxThreads",
+                globalConfig.getProperties().getString(DroidGlobalProperty.MAX_THREADS.getName()));
+        props.setProperty("targetUtilisation",
+                globalConfig.getProperties().getString(DroidGlobalProperty.TARGET_UTILISATION.getName()));
+        props.setProperty("queueSize",
+                globalConfig.getProperties().getString(DroidGlobalProperty.QUEUE_SIZE.getName()));
+        props.setProperty("virtualThreads",
+                globalConfig.getProperties().getString(DroidGlobalProperty.VIRTUAL_THREADS.getName()));
+        props.setProperty("virtualThreadLimit",
+                globalConfig.getProperties().getString(DroidGlobalProperty.VIRTUAL_THREAD_LIMIT.getName()));
+        props.setProperty("largeFileThreshold",
+                globalConfig.getProperties().getString(DroidGlobalProperty.LARGE_FILE_THRESHOLD.getName()));
+        props.setProperty("largeFileLimit",
+                globalConfig.getProperties().getString(DroidGlobalProperty.LARGE_FILE_LIMIT.getName()));
+        props.setProperty("deviceLimit",
+                globalConfig.getProperties().getString(DroidGlobalProperty.DEVICE_LIMIT.getName()));
+        props.setProperty("batchFileSize",
+                globalConfig.getProperties().getString(DroidGlobalProperty.BATCH_FILE_SIZE.getName()));
+        props.setProperty("batchSize",
+                globalConfig.getProperties().getString(DroidGlobalProperty.BATCH_SIZE.getName()));
+        props.setProperty("throttleTargetLatency",
+                globalConfig.getProperties().getString(DroidGlobalProperty.THROTTLE_TARGET_LATENCY.getName()));
+        props.setProperty("throttleMaxMBps",
+                globalConfig.getProperties().getString(DroidGlobalProperty.THROTTLE_MAX_MBPS.getName()));
+        props.setProperty("deferIdentification",
+                globalConfig.getProperties().getString(DroidGlobalProperty.DEFER_IDENTIFICATION.getName()));
+        props.setProperty("streamCompressedTar",
+                globalConfig.getProperties().getString(DroidGlobalProperty.STREAM_COMPRESSED_TAR.getName()));
+        props.setProperty("zipReaders",
+                globalConfig.getProperties().getString(DroidGlobalProperty.ZIP_READERS.getName()));
  
         String createUrl = globalConfig.getProperties().getString("database.createUrl");
         if (createUrl == null || createUrl.isEmpty()) {
@@ -35,18 +35,22 @@ import java.net.URI;
 import java.nio.file.Path;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
 import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.gov.nationalarchives.droid.core.interfaces.DeviceThroughput;
+
 /**
  * Base class for a profile.
  */
@@ -119,6 +123,10 @@ public class ProfileInstance {
     @XmlElement(name = "Progress")
     private ProgressState progress;
 
+    @XmlElementWrapper(name = "Devices")
+    @XmlElement(name = "Device")
+    private List<DeviceThroughput> deviceThroughput;
+
     @XmlElement(name = "GenerateHash")
     private Boolean generateHash;
 
@@ -476,6 +484,21 @@ public class ProfileInstance {
         this.progress = progress;
     }
 
+    /**
+     * @return the throughput of each device read from in the last run of the profile,
+     *         or null if it was not recorded.
+     */
+    public List<DeviceThroughput> getDeviceThroughput() {
+        return deviceThroughput;
+    }
+
+    /**
+     * @param deviceThroughput the throughput of each device read from in the last run of the profile.
+     */
+    public void setDeviceThroughput(List<DeviceThroughput> deviceThroughput) {
+        this.deviceThroughput = deviceThroughput;
+    }
+
     /**
      * @param containerSignatureFileName the containerSignatureFileName to set
      */
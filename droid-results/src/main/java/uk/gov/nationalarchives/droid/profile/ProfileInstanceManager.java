@@ -33,6 +33,7 @@ package uk.gov.nationalarchives.droid.profile;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Future;
 
@@ -62,6 +63,15 @@ public interface ProfileInstanceManager {
      */
     void initProfile(URI signatureFileUri) throws SignatureFileException;
 
+    /**
+     * Adds the formats in a signature file which the profile does not have yet.
+     * @param signatureFileUri the URI of the signature file
+     *
+     * @throws SignatureFileException
+     *             if the signature file could not be read
+     */
+    void updateFormats(URI signatureFileUri) throws SignatureFileException;
+
     /**
      * Starts a profile, which will complete in the future.
      * 
@@ -70,6 +80,19 @@ public interface ProfileInstanceManager {
      */
     Future<?> start() throws IOException;
 
+    /**
+     * Re-identifies the resources in a finished profile whose identification may have changed
+     * between the signature files the profile was run with and the ones it is now open with.
+     * Affected nodes are updated in place.  The re-identification reports its progress, and can be
+     * paused and resumed, as a profile run does.
+     *
+     * @param changedPuids the PUIDs whose signatures, priorities or extensions changed.
+     * @param changedExtensions the upper-cased extensions of the changed formats.
+     * @return a future to track the re-identification.
+     * @throws ProfileException if the profile is already running.
+     */
+    Future<?> reidentify(Collection<String> changedPuids, Collection<String> changedExtensions);
+
     /**
      * Cancels a running profile.
      */
@@ -132,6 +155,11 @@ public interface ProfileInstanceManager {
      * @param throttleValue the new Throttle value
      */
     void setThrottleValue(int throttleValue);
+
+    /**
+     * @return the number of files the throttle currently allows to be read at once, or -1 if unlimited.
+     */
+    int getThrottleWindow();
     
     /**
      * Gets a resource node item reader.
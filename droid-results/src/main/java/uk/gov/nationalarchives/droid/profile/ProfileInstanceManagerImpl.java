@@ -34,14 +34,15 @@ package uk.gov.nationalarchives.droid.profile;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
 import java.util.concurrent.Semaphore;
 
 
@@ -71,10 +72,10 @@ import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitor;
 import uk.gov.nationalarchives.droid.signature.FormatCallback;
 import uk.gov.nationalarchives.droid.signature.SaxSignatureFileParser;
 import uk.gov.nationalarchives.droid.signature.SignatureParser;
-import uk.gov.nationalarchives.droid.submitter.ProfileSpecJobCounter;
 import uk.gov.nationalarchives.droid.submitter.ProfileSpecWalker;
 import uk.gov.nationalarchives.droid.submitter.ProfileWalkState;
 import uk.gov.nationalarchives.droid.submitter.ProfileWalkerDao;
+import uk.gov.nationalarchives.droid.submitter.ReidentificationSubmitter;
 
 /**
  * @author rflitcroft
@@ -95,9 +96,12 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
     private Future<?> task;
     private AsynchDroid submissionGateway;
     private ProfileWalkerDao profileWalkerDao;
+    private ReidentificationSubmitter reidentificationSubmitter;
+    private boolean deferIdentification;
 
     private ProfileWalkState walkState;
     private boolean inError;
+    private volatile boolean reidentifying;
 
     private PauseAspect pauseControl;
 
@@ -143,6 +147,25 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
         profileDao.initialise();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateFormats(URI signatureFileUri) throws SignatureFileException {
+        final Set<String> puids = new HashSet<String>();
+        for (Format format : profileDao.getAllFormats()) {
+            puids.add(format.getPuid());
+        }
+        new SaxSignatureFileParser(signatureFileUri).formats(new FormatCallback() {
+            @Override
+            public void onFormat(Format format) {
+                if (puids.add(format.getPuid())) {
+                    profileDao.saveFormat(format);
+                }
+            }
+        });
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -172,13 +195,16 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
         try {
             submitterPermits.acquire();
             submissionGateway.awaitIdle();
+            profileInstance.setDeviceThroughput(submissionGateway.getDeviceThroughput());
             profileInstance.stop();
             submissionGateway.save();
 
             ProgressState progressState = new ProgressState(getProgressMonitor().getTargetCount(), getProgressMonitor()
                     .getIdentificationCount());
             profileInstance.setProgress(progressState);
-            profileWalkerDao.save(walkState);
+            if (walkState != null) {
+                profileWalkerDao.save(walkState);
+            }
         } catch (InterruptedException e) {
             log.debug(e.getMessage(), e);
         } finally {
@@ -204,7 +230,7 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
     @Override
     public Future<?> start() throws IOException {
 
-        if (!inError && walkState != null) {
+        if (!inError && (walkState != null || reidentifying)) {
             resume();
         } else {
             if (inError) {
@@ -222,30 +248,10 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
 
             // start walking the profile spec
             profileInstance.start();
-            // start a thread to estimate the number of jobs, and
-            // update the progress monitor when it's done.
-            final ProfileSpecJobCounter counter = new ProfileSpecJobCounter(profileInstance.getProfileSpec());
-            final FutureTask<Long> countFuture = new FutureTask<Long>(counter) {
-                @Override
-                protected void done() {
-                    if (!isCancelled()) {
-                        try {
-                            specWalker.getProgressMonitor().setTargetCount(get());
-                        } catch (InterruptedException e) {
-                            log.debug(e.getMessage(), e);
-                        } catch (ExecutionException e) {
-                            log.error(e.getMessage(), e);
-                        }
-                    }
-                }
-            };
-
-            ExecutorService executor = Executors.newSingleThreadExecutor();
-            executor.submit(countFuture);
-
+            // the walk estimates the number of jobs as it goes.
             ExecutorService mainSubmitter = Executors.newSingleThreadExecutor();
 
-            Runnable walk = new WalkerTask(countFuture, counter);
+            Runnable walk = new WalkerTask();
             task = mainSubmitter.submit(walk);
             mainSubmitter.shutdown();
         }
@@ -253,21 +259,50 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
 
     }
     
-    private final class WalkerTask implements Runnable {
-        
-        private ProfileSpecJobCounter counter;
-        private Future<Long> countFuture;
-        
-        WalkerTask(Future<Long> countFuture, ProfileSpecJobCounter counter) {
-            this.countFuture = countFuture;
-            this.counter = counter;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Future<?> reidentify(final Collection<String> changedPuids, final Collection<String> changedExtensions) {
+        if (task != null && !task.isDone()) {
+            throw new ProfileException("A profile cannot be re-identified while it is running.");
         }
+        inError = false;
+        walkState = null;
+        reidentifying = true;
+        profileInstance.start();
+
+        ExecutorService reidentifier = Executors.newSingleThreadExecutor();
+        task = reidentifier.submit(new ReidentificationTask(changedPuids, changedExtensions));
+        reidentifier.shutdown();
+        return task;
+    }
+
+    private void acquireSubmitter() throws InterruptedException {
+        submitterThreadId.set(profileInstance.getUuid());
+        submitterPermits.acquire();
+    }
+
+    private void releaseSubmitter() {
+        submitterPermits.release();
+        try {
+            submissionGateway.awaitFinished();
+        } catch (InterruptedException e) {
+            log.debug(e.getMessage(), e);
+        }
+        profileInstance.setDeviceThroughput(submissionGateway.getDeviceThroughput());
+    }
+
+    private final class WalkerTask implements Runnable {
         
         @Override
         public void run() {
             try {
                 preWalk();
                 specWalker.walk(profileInstance.getProfileSpec(), walkState);
+                if (deferIdentification && reidentificationSubmitter != null) {
+                    reidentificationSubmitter.identifyPending();
+                }
             } catch (InterruptedException e) {
                 log.debug(e.getMessage(), e);
             } catch (IOException e) {
@@ -275,9 +310,7 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
                 log.error(e.getMessage(), e);
                 throw new ProfileException(e);
             } finally {
-                postWalk();
-                counter.cancel();
-                countFuture.cancel(false);
+                releaseSubmitter();
                 if (!inError) {
                     profileInstance.finish();
                 }
@@ -287,25 +320,61 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
         }
         
         private void preWalk() throws InterruptedException {
-            submitterThreadId.set(profileInstance.getUuid());
-            submitterPermits.acquire();
+            acquireSubmitter();
             ProgressMonitor progressMonitor = specWalker.getProgressMonitor();
             final ProgressState progress = profileInstance.getProgress();
             if (progress != null) {
                 progressMonitor.initialise(progress.getTarget(), progress.getCount());
             }
         }
+    }
 
-        private void postWalk() {
-            submitterPermits.release();
+    /**
+     * Re-submits the nodes affected by changed formats.  It holds the submitter permit
+     * as a walk does, so it can be paused and resumed in the same way.
+     */
+    private final class ReidentificationTask implements Runnable {
+
+        private final Collection<String> changedPuids;
+        private final Collection<String> changedExtensions;
+
+        ReidentificationTask(Collection<String> changedPuids, Collection<String> changedExtensions) {
+            this.changedPuids = changedPuids;
+            this.changedExtensions = changedExtensions;
+        }
+
+        @Override
+        public void run() {
             try {
-                submissionGateway.awaitFinished();
+                acquireSubmitter();
+                specWalker.getProgressMonitor().initialise(ProgressMonitor.INDETERMINATE_PROGRESS, 0);
+                reidentificationSubmitter.reidentify(changedPuids, changedExtensions);
             } catch (InterruptedException e) {
                 log.debug(e.getMessage(), e);
+            } finally {
+                releaseSubmitter();
+                reidentifying = false;
+                profileInstance.finish();
+                submissionGateway.save();
             }
         }
     }
 
+    /**
+     * @param reidentificationSubmitter the reidentificationSubmitter to set
+     */
+    public void setReidentificationSubmitter(ReidentificationSubmitter reidentificationSubmitter) {
+        this.reidentificationSubmitter = reidentificationSubmitter;
+    }
+
+    /**
+     * @param deferIdentification whether files are recorded as pending by the walk, and identified
+     *            once it has finished.
+     */
+    public void setDeferIdentification(boolean deferIdentification) {
+        this.deferIdentification = deferIdentification;
+    }
+
     /**
      * @param profileDao
      *            the profileDao to set
@@ -443,6 +512,14 @@ public class ProfileInstanceManagerImpl implements ProfileInstanceManager {
         profileInstance.setThrottle(throttleValue);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getThrottleWindow() {
+        return specWalker.getFileEventHandler().getSubmissionThrottle().getWindow();
+    }
+
     /**
      * Gets a resource node item reader. Spring will provide the implementation
      * via a method lookup. 
@@ -81,6 +81,21 @@ public interface ProfileManager {
      */
     Future<?> start(String profileId) throws IOException;
 
+    /**
+     * Moves a profile on to new signature files, and re-identifies the resources whose
+     * identification may be changed by the differences between the old and new signature files.
+     * Affected resources are updated in place.
+     *
+     * @param profileId
+     *            the profile to re-identify
+     * @param sigFiles
+     *            the new signature files, or null to use the default signature files.
+     * @return future which is done when the re-identification finishes.
+     * @throws ProfileManagerException if the profile is running, or the signature files could not be read.
+     */
+    Future<?> reidentify(String profileId, Map<SignatureType, SignatureFileInfo> sigFiles)
+        throws ProfileManagerException;
+
     /**
      * Stops a profile.
      * 
@@ -198,5 +213,12 @@ public interface ProfileManager {
      * @param value the new throttle value
      */
     void setThrottleValue(String uuid, int value);
+
+    /**
+     * Gets the number of files the adaptive throttle allows to be read at once for a profile.
+     * @param uuid the profile ID
+     * @return the current throttle window, or -1 if reads are not limited
+     */
+    int getThrottleWindow(String uuid);
     
 }
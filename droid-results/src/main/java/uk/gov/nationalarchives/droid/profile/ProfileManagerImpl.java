@@ -35,6 +35,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Future;
@@ -46,6 +47,8 @@ import org.slf4j.LoggerFactory;
 
 import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalConfig;
 import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalProperty;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureChanges;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureComparator;
 import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureFileException;
 import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureFileInfo;
 import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureManager;
@@ -69,6 +72,7 @@ public class ProfileManagerImpl implements ProfileManager {
 
     private ProfileDiskAction profileSaver;
     private SignatureManager signatureManager;
+    private SignatureComparator signatureComparator;
     private DroidGlobalConfig config;
 
     /**
@@ -82,15 +86,7 @@ public class ProfileManagerImpl implements ProfileManager {
     @Override
     public ProfileInstance createProfile(Map<SignatureType, SignatureFileInfo> sigFileInfos) 
         throws ProfileManagerException {
-        Map<SignatureType, SignatureFileInfo> signatures = sigFileInfos;
-        if (sigFileInfos == null) {
-            // get the default sig file config
-            try {
-                signatures = signatureManager.getDefaultSignatures();
-            } catch (SignatureFileException e) {
-                throw new ProfileManagerException(e.getMessage());
-            }
-        }
+        Map<SignatureType, SignatureFileInfo> signatures = getSignatures(sigFileInfos);
         
         String profileId = String.valueOf(System.currentTimeMillis());
         log.info("Creating profile: " + profileId);
@@ -120,6 +116,67 @@ public class ProfileManagerImpl implements ProfileManager {
         return profile;
     }
 
+    private Map<SignatureType, SignatureFileInfo> getSignatures(Map<SignatureType, SignatureFileInfo> sigFileInfos)
+        throws ProfileManagerException {
+        Map<SignatureType, SignatureFileInfo> signatures = sigFileInfos;
+        if (sigFileInfos == null) {
+            // get the default sig file config
+            try {
+                signatures = signatureManager.getDefaultSignatures();
+            } catch (SignatureFileException e) {
+                throw new ProfileManagerException(e.getMessage());
+            }
+        }
+        return signatures;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Future<?> reidentify(String profileId, Map<SignatureType, SignatureFileInfo> sigFileInfos)
+        throws ProfileManagerException {
+        log.info("Re-identifying profile: " + profileId);
+        final Map<SignatureType, SignatureFileInfo> signatures = getSignatures(sigFileInfos);
+        final SignatureFileInfo binarySigFile = signatures.get(SignatureType.BINARY);
+        final SignatureFileInfo containerSigFile = signatures.get(SignatureType.CONTAINER);
+        final ProfileInstance profile = profileContextLocator.getProfileInstance(profileId);
+        if (profile.getState() == ProfileState.RUNNING || binarySigFile == null) {
+            throw new ProfileManagerException("Cannot re-identify profile " + profileId);
+        }
+
+        final Path profileHomeDir = getProfileHomeDir(profile);
+        final Path oldBinarySigFile = profileHomeDir.resolve(profile.getSignatureFileName());
+        final Path oldContainerSigFile = profile.getContainerSignatureFileName() == null
+                ? null : profileHomeDir.resolve(profile.getContainerSignatureFileName());
+        final SignatureChanges changes;
+        try {
+            changes = signatureComparator.compare(oldBinarySigFile, binarySigFile.getFile(), oldContainerSigFile,
+                    containerSigFile == null ? null : containerSigFile.getFile());
+            // Add new formats before the profile is reopened, so they are loaded with it:
+            getProfileInstanceManager(profileId).updateFormats(binarySigFile.getFile().toUri());
+        } catch (SignatureFileException e) {
+            throw new ProfileManagerException(e);
+        }
+
+        deleteReplacedSigFile(oldBinarySigFile, binarySigFile);
+        deleteReplacedSigFile(oldContainerSigFile, containerSigFile);
+        createProfileBinarySigFile(binarySigFile, profile, profileHomeDir);
+        createProfileContainerSigFile(containerSigFile, profile, profileHomeDir);
+        createProfileTextSigFile(signatures.get(SignatureType.TEXT), profile, profileHomeDir);
+        profileSpecDao.saveProfile(profile, profileHomeDir);
+
+        final ProfileInstanceManager profileInstanceManager = profileContextLocator.reopenProfileInstanceManager(profile);
+        return profileInstanceManager.reidentify(changes.getChangedPuids(), changes.getChangedExtensions());
+    }
+
+    private static void deleteReplacedSigFile(final Path oldSigFile, final SignatureFileInfo newSigFile) {
+        if (oldSigFile != null && newSigFile != null
+                && !oldSigFile.getFileName().equals(newSigFile.getFile().getFileName())) {
+            FileUtil.deleteQuietly(oldSigFile);
+        }
+    }
+
     private void createProfileBinarySigFile(final SignatureFileInfo binarySigFile, final ProfileInstance profile, final Path profileHomeDir) {
         if (binarySigFile != null) {
             profile.setSignatureFileVersion(binarySigFile.getVersion());
@@ -148,7 +205,7 @@ public class ProfileManagerImpl implements ProfileManager {
         try {
             Files.createDirectories(destDir);
             Path destFile = destDir.resolve(file.getFileName());
-            Files.copy(file, destFile);
+            Files.copy(file, destFile, StandardCopyOption.REPLACE_EXISTING);
         } catch (final IOException e) {
             throw new ProfileException(e.getMessage(), e);
         }    
@@ -412,6 +469,14 @@ public class ProfileManagerImpl implements ProfileManager {
     public void setThrottleValue(String uuid, int value) {
         getProfileInstanceManager(uuid).setThrottleValue(value);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getThrottleWindow(String uuid) {
+        return getProfileInstanceManager(uuid).getThrottleWindow();
+    }
     
     /**
      * @param signatureManager the signatureManager to set
@@ -420,6 +485,13 @@ public class ProfileManagerImpl implements ProfileManager {
         this.signatureManager = signatureManager;
     }
     
+    /**
+     * @param signatureComparator the comparator used to find the changes between signature files
+     */
+    public void setSignatureComparator(SignatureComparator signatureComparator) {
+        this.signatureComparator = signatureComparator;
+    }
+    
     /**
      * @param config the config to set
      */
@@ -79,7 +79,7 @@ public enum ProfileState {
 
     /** The profile has finished. */
     FINISHED(false, true) { @Override ProfileState[] nextStates() {
-            return new ProfileState[] {SAVING};
+            return new ProfileState[] {SAVING, RUNNING};
         }
     }; 
 
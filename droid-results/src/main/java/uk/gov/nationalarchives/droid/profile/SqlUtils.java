@@ -386,9 +386,12 @@ public final class SqlUtils {
     public static void addIdentifications(final ProfileResourceNode node,
                                           final ResultSet identifications,
                                           final Map<String, Format> puidFormatMap) throws SQLException {
-        //TODO: check for null formats - don't add this as an identification.
         while (identifications.next()) {
-            node.addFormatIdentification(puidFormatMap.get(identifications.getString(2)));
+            // Resources which were not identified have an empty PUID, which has no format:
+            final Format format = puidFormatMap.get(identifications.getString(2));
+            if (format != null) {
+                node.addFormatIdentification(format);
+            }
         }
     }
 
@@ -494,5 +497,20 @@ public final class SqlUtils {
             statement.setBoolean(position, (Boolean) parameter);
         }
     }
-}
 
+    /**
+     * Builds a comma separated list of statement parameters, for use in an IN clause.
+     * @param numParameters The number of parameters in the list
+     * @return A string of the form "?,?,?"
+     */
+    public static String parameterList(final int numParameters) {
+        final StringBuilder builder = new StringBuilder(numParameters * 2);
+        for (int i = 0; i < numParameters; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append('?');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile.throttle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A submission throttle which limits the number of requests in flight to a window,
+ * adjusted from the latency and throughput with which requests are read.
+ * <p>
+ * The window is adjusted at most once an interval, additively increasing while reads
+ * meet the target latency and stay under the maximum rate, and halving when they do not.
+ * It only grows while it is actually holding back submissions.  If neither a target
+ * latency nor a maximum rate is set, the number of requests in flight is not limited.
+ * The fixed wait of the simple throttle is still applied after every submission.
+ */
+public class AdaptiveSubmissionThrottle extends SimpleSubmissionThrottle implements AdaptiveSubmissionThrottleMBean {
+
+    /** The time over which latency and throughput are measured before adjusting the window. */
+    static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private static final int INITIAL_WINDOW = 8;
+    private static final int DEFAULT_MAX_WINDOW = 1024;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+
+    private final Object lock = new Object();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean adjusting = new AtomicBoolean();
+    private final LongAdder sampleCount = new LongAdder();
+    private final LongAdder sampleNanos = new LongAdder();
+    private final LongAdder sampleBytes = new LongAdder();
+    private volatile long sampleStart = System.nanoTime();
+    private volatile boolean limited;
+    private volatile int waiting;
+
+    private volatile int window = INITIAL_WINDOW;
+    private volatile int maxWindow = DEFAULT_MAX_WINDOW;
+    private volatile int targetLatencyMillis;
+    private volatile int maxMegabytesPerSecond;
+    private volatile double meanLatencyMillis;
+    private volatile double megabytesPerSecond;
+
+    /**
+     * Applies the fixed wait, then waits until fewer requests than the window are in flight.
+     * {@inheritDoc}
+     */
+    @Override
+    public void apply() throws InterruptedException {
+        super.apply();
+        if (isAdaptive() && inFlight.get() >= window) {
+            synchronized (lock) {
+                waiting++;
+                try {
+                    while (inFlight.get() >= window) {
+                        limited = true;
+                        lock.wait(TimeUnit.NANOSECONDS.toMillis(INTERVAL_NANOS));
+                    }
+                } finally {
+                    waiting--;
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void started() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void finished(long readNanos, long bytes) {
+        final int nowInFlight = inFlight.decrementAndGet();
+        sampleCount.increment();
+        sampleNanos.add(readNanos);
+        sampleBytes.add(bytes);
+        final long now = System.nanoTime();
+        if (now - sampleStart >= INTERVAL_NANOS && adjusting.compareAndSet(false, true)) {
+            try {
+                adjust(now);
+            } finally {
+                adjusting.set(false);
+            }
+        }
+        if (waiting > 0 && nowInFlight < window) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void adjust(final long now) {
+        final long count = sampleCount.sumThenReset();
+        final long nanos = sampleNanos.sumThenReset();
+        final long bytes = sampleBytes.sumThenReset();
+        final long elapsed = now - sampleStart;
+        sampleStart = now;
+        if (count > 0 && elapsed > 0) {
+            meanLatencyMillis = nanos / NANOS_PER_MILLI / count;
+            megabytesPerSecond = bytes / BYTES_PER_MEGABYTE / (elapsed / NANOS_PER_SECOND);
+            final int latencyTarget = targetLatencyMillis;
+            final int rateLimit = maxMegabytesPerSecond;
+            if (latencyTarget > 0 && meanLatencyMillis > latencyTarget
+                    || rateLimit > 0 && megabytesPerSecond > rateLimit) {
+                window = Math.max(1, window / 2);
+            } else if (limited) {
+                window = Math.min(maxWindow, window + 1);
+            }
+            limited = false;
+        }
+    }
+
+    private boolean isAdaptive() {
+        return targetLatencyMillis > 0 || maxMegabytesPerSecond > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getWindow() {
+        return isAdaptive() ? window : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMeanLatencyMillis() {
+        return meanLatencyMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMegabytesPerSecond() {
+        return megabytesPerSecond;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getTargetLatencyMillis() {
+        return targetLatencyMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setTargetLatencyMillis(int targetLatencyMillis) {
+        this.targetLatencyMillis = targetLatencyMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxMegabytesPerSecond() {
+        return maxMegabytesPerSecond;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMaxMegabytesPerSecond(int maxMegabytesPerSecond) {
+        this.maxMegabytesPerSecond = maxMegabytesPerSecond;
+    }
+
+    /**
+     * @param maxWindow the largest number of requests the window can grow to.
+     */
+    public void setMaxWindow(int maxWindow) {
+        this.maxWindow = Math.max(1, maxWindow);
+        window = Math.min(window, this.maxWindow);
+    }
+}
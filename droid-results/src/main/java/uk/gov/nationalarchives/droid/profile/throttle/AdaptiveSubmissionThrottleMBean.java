@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile.throttle;
+
+/**
+ * The management interface of the adaptive submission throttle, published over JMX.
+ */
+public interface AdaptiveSubmissionThrottleMBean {
+
+    /**
+     * @return the number of requests allowed in flight at once, or -1 if unlimited.
+     */
+    int getWindow();
+
+    /**
+     * @return the number of requests in flight.
+     */
+    int getInFlight();
+
+    /**
+     * @return the mean time taken to read a request over the last interval, in milliseconds.
+     */
+    double getMeanLatencyMillis();
+
+    /**
+     * @return the rate at which requests were read over the last interval, in megabytes per second.
+     */
+    double getMegabytesPerSecond();
+
+    /**
+     * @return the mean read latency the window is adjusted towards, in milliseconds, or 0 for none.
+     */
+    int getTargetLatencyMillis();
+
+    /**
+     * @param targetLatencyMillis the mean read latency to adjust the window towards, in milliseconds, or 0 for none.
+     */
+    void setTargetLatencyMillis(int targetLatencyMillis);
+
+    /**
+     * @return the read rate the window is kept below, in megabytes per second, or 0 for none.
+     */
+    int getMaxMegabytesPerSecond();
+
+    /**
+     * @param maxMegabytesPerSecond the read rate to keep the window below, in megabytes per second, or 0 for none.
+     */
+    void setMaxMegabytesPerSecond(int maxMegabytesPerSecond);
+}
@@ -58,4 +58,17 @@ public class SimpleSubmissionThrottle implements SubmissionThrottle {
         }
     }
 
+    @Override
+    public void started() {
+    }
+
+    @Override
+    public void finished(long readNanos, long bytes) {
+    }
+
+    @Override
+    public int getWindow() {
+        return -1;
+    }
+
 }
@@ -48,4 +48,21 @@ public interface SubmissionThrottle {
      */
     void setWaitMilliseconds(int waitMilliseconds);
 
+    /**
+     * Called when the identification of a request starts.
+     */
+    void started();
+
+    /**
+     * Called when the identification of a request has finished.
+     * @param readNanos the time spent opening and reading the request, in nanoseconds.
+     * @param bytes the size of the request in bytes.
+     */
+    void finished(long readNanos, long bytes);
+
+    /**
+     * @return the number of requests allowed in flight at once, or -1 if unlimited.
+     */
+    int getWindow();
+
 }
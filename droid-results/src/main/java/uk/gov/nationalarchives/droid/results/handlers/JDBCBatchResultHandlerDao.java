@@ -36,6 +36,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -43,6 +44,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
@@ -75,7 +78,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
 
     // A "poison-pill" node info to signal to the writing thread that
     // it should terminate and commit any results so far.
-    private static final NodeInfo COMMIT_SO_FAR = new NodeInfo(null, false);
+    private static final NodeInfo COMMIT_SO_FAR = new NodeInfo(null, false, false);
 
     private static final String INSERT_PROFILE_RESOURCE_NODE =
             "INSERT INTO PROFILE_RESOURCE_NODE " +
@@ -104,15 +107,30 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         INSERT_EIGHT_IDENTIFICATIONS, INSERT_NINE_IDENTIFICATIONS, INSERT_TEN_IDENTIFICATIONS, };
 
     private static final String UPDATE_NODE_STATUS = "UPDATE PROFILE_RESOURCE_NODE SET NODE_STATUS = ? WHERE NODE_ID = ?";
+    private static final String UPDATE_PROFILE_RESOURCE_NODE =
+            "UPDATE PROFILE_RESOURCE_NODE SET EXTENSION_MISMATCH = ?, FINISHED_TIMESTAMP = ?, IDENTIFICATION_COUNT = ?, "
+                    + "EXTENSION = ?, HASH = ?, IDENTIFICATION_METHOD = ?, LAST_MODIFIED_DATE = ?, NAME = ?, NODE_STATUS = ?, "
+                    + "RESOURCE_TYPE = ?, FILE_SIZE = ? WHERE NODE_ID = ?";
     private static final String DELETE_NODE = "DELETE FROM PROFILE_RESOURCE_NODE WHERE NODE_ID = ?";
     private static final String SELECT_FORMAT = "SELECT PUID, MIME_TYPE, NAME, VERSION FROM FORMAT WHERE PUID = ?";
 
     private static final String SELECT_FORMAT_COUNT = "SELECT COUNT('x') AS total FROM FORMAT";
     private static final String SELECT_FORMATS = "SELECT PUID, MIME_TYPE, NAME, VERSION FROM FORMAT";
-    private static final String SELECT_PROFILE_RESOURCE_NODE =
+    private static final String SELECT_PROFILE_RESOURCE_NODES =
             "SELECT NODE_ID, EXTENSION_MISMATCH, FINISHED_TIMESTAMP, IDENTIFICATION_COUNT, EXTENSION, HASH, "
             + "IDENTIFICATION_METHOD, LAST_MODIFIED_DATE, NAME, NODE_STATUS, RESOURCE_TYPE, FILE_SIZE, "
-            + "PARENT_ID, PREFIX, PREFIX_PLUS_ONE, TEXT_ENCODING, URI FROM PROFILE_RESOURCE_NODE WHERE NODE_ID = ?";
+            + "PARENT_ID, PREFIX, PREFIX_PLUS_ONE, TEXT_ENCODING, URI FROM PROFILE_RESOURCE_NODE";
+    private static final String SELECT_PROFILE_RESOURCE_NODE = SELECT_PROFILE_RESOURCE_NODES + " WHERE NODE_ID = ?";
+    private static final String SELECT_NODES_TO_REIDENTIFY = SELECT_PROFILE_RESOURCE_NODES
+            + " WHERE RESOURCE_TYPE <> " + ResourceType.FOLDER.ordinal()
+            + " AND (NODE_ID IN (SELECT NODE_ID FROM IDENTIFICATION WHERE PUID IN (%s))"
+            + " OR U_EXTENSION IN (%s)) AND NODE_ID > ? ORDER BY NODE_ID";
+    private static final String SELECT_PENDING_NODES = SELECT_PROFILE_RESOURCE_NODES
+            + " WHERE NODE_STATUS = " + NodeStatus.PENDING.ordinal() + " AND NODE_ID > ? ORDER BY NODE_ID";
+    private static final String DESCENDANTS_CLAUSE = " WHERE PREFIX > ? AND PREFIX < ?";
+    private static final String DELETE_DESCENDANT_IDENTIFICATIONS = "DELETE FROM IDENTIFICATION WHERE NODE_ID IN "
+            + "(SELECT NODE_ID FROM PROFILE_RESOURCE_NODE" + DESCENDANTS_CLAUSE + ")";
+    private static final String DELETE_DESCENDANT_NODES = "DELETE FROM PROFILE_RESOURCE_NODE" + DESCENDANTS_CLAUSE;
 
     private static final String SELECT_IDENTIFICATIONS = "SELECT NODE_ID, PUID FROM IDENTIFICATION WHERE NODE_ID = ?";
     private static final String DELETE_IDENTIFICATIONS = "DELETE FROM IDENTIFICATION WHERE NODE_ID = ?";
@@ -166,6 +184,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
     private static final int BLOCKING_QUEUE_SIZE = 256;
     private static final int MOST_RECENTLY_ADDED_NODE_CACHE_SIZE = 512;
     private static final int PUID_FORMAT_MAP_SIZE = 2500;
+    private static final int FLUSH_TIMEOUT_SECONDS = 60;
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -429,12 +448,27 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             synchronized (nodeCache) { // different threads can add nodes.
                 nodeCache.put(node.getId(), node);
             }
-            blockingQueue.put(new NodeInfo(node, insertNode));
+            blockingQueue.put(new NodeInfo(node, insertNode, false));
         } catch (InterruptedException e) {
             log.debug("Saving was interrupted while putting a new node into the queue.", e);
         }
     }
 
+    @Override
+    public void update(final ProfileResourceNode node) {
+        if (node.getId() == null) {
+            throw new IllegalArgumentException("Cannot update a node which has not been saved: " + node.getUri());
+        }
+        try {
+            synchronized (nodeCache) {
+                nodeCache.put(node.getId(), node);
+            }
+            blockingQueue.put(new NodeInfo(node, false, true));
+        } catch (InterruptedException e) {
+            log.debug("Updating was interrupted while putting a node into the queue.", e);
+        }
+    }
+
     @Override
     public void commit() {
         try {
@@ -587,6 +621,136 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         //CHECKSTYLE:ON
     }
 
+    @Override
+    public void deleteDescendants(ProfileResourceNode node) {
+        //CHECKSTYLE:OFF     Nested tries.
+        try {
+            final Connection conn = datasource.getConnection();
+            try {
+                final PreparedStatement idStatement = conn.prepareStatement(DELETE_DESCENDANT_IDENTIFICATIONS);
+                try {
+                    idStatement.setString(1, node.getPrefix());
+                    idStatement.setString(2, node.getPrefixPlusOne());
+                    idStatement.execute();
+                } finally {
+                    idStatement.close();
+                }
+                final PreparedStatement nodeStatement = conn.prepareStatement(DELETE_DESCENDANT_NODES);
+                try {
+                    nodeStatement.setString(1, node.getPrefix());
+                    nodeStatement.setString(2, node.getPrefixPlusOne());
+                    nodeStatement.execute();
+                } finally {
+                    nodeStatement.close();
+                }
+                conn.commit();
+            } finally {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            log.error("A database exception occurred deleting the descendants of node with id " + node.getId(), e);
+        }
+        //CHECKSTYLE:ON
+    }
+
+    @Override
+    public List<ProfileResourceNode> findNodesToReidentify(Collection<String> puids, Collection<String> extensions,
+            long afterNodeId, int maxNodes) {
+        //CHECKSTYLE:OFF   Nested tries
+        // Nodes with no identification have a single identification with an empty PUID:
+        final List<String> puidParameters = new ArrayList<String>(puids);
+        puidParameters.add("");
+        final List<String> extensionParameters = new ArrayList<String>(extensions);
+        if (extensionParameters.isEmpty()) {
+            extensionParameters.add("");
+        }
+        final String query = String.format(SELECT_NODES_TO_REIDENTIFY,
+                SqlUtils.parameterList(puidParameters.size()), SqlUtils.parameterList(extensionParameters.size()));
+        final List<ProfileResourceNode> nodes = new ArrayList<ProfileResourceNode>(maxNodes);
+        try {
+            final Connection conn = datasource.getConnection();
+            try {
+                final PreparedStatement findNodes = conn.prepareStatement(query);
+                try {
+                    findNodes.setMaxRows(maxNodes);
+                    int parameter = 1;
+                    for (final String puid : puidParameters) {
+                        findNodes.setString(parameter++, puid);
+                    }
+                    for (final String extension : extensionParameters) {
+                        findNodes.setString(parameter++, extension);
+                    }
+                    findNodes.setLong(parameter, afterNodeId);
+                    final ResultSet results = findNodes.executeQuery();
+                    try {
+                        while (results.next()) {
+                            nodes.add(SqlUtils.buildProfileResourceNode(results));
+                        }
+                    } finally {
+                        results.close();
+                    }
+                } finally {
+                    findNodes.close();
+                }
+            } finally {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            log.error("A database exception occurred finding nodes to re-identify.", e);
+        }
+        return nodes;
+        //CHECKSTYLE:ON
+    }
+
+    @Override
+    public List<ProfileResourceNode> findPendingNodes(long afterNodeId, int maxNodes) {
+        //CHECKSTYLE:OFF   Nested tries
+        flush();
+        final List<ProfileResourceNode> nodes = new ArrayList<ProfileResourceNode>(maxNodes);
+        try {
+            final Connection conn = datasource.getConnection();
+            try {
+                final PreparedStatement findNodes = conn.prepareStatement(SELECT_PENDING_NODES);
+                try {
+                    findNodes.setMaxRows(maxNodes);
+                    findNodes.setLong(1, afterNodeId);
+                    final ResultSet results = findNodes.executeQuery();
+                    try {
+                        while (results.next()) {
+                            nodes.add(SqlUtils.buildProfileResourceNode(results));
+                        }
+                    } finally {
+                        results.close();
+                    }
+                } finally {
+                    findNodes.close();
+                }
+            } finally {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            log.error("A database exception occurred finding pending nodes.", e);
+        }
+        return nodes;
+        //CHECKSTYLE:ON
+    }
+
+    /**
+     * Commits the nodes saved so far, and waits until the database writer has done so.
+     */
+    private void flush() {
+        final FlushRequest flush = FlushRequest.newRequest();
+        try {
+            blockingQueue.put(flush);
+            if (!flush.written.await(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Timed out waiting for saved nodes to be written to the database.");
+            }
+        } catch (InterruptedException e) {
+            log.debug("Interrupted while waiting for saved nodes to be written.", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * To allow for the datasource to be referenced from JDBCSqlItemReader when called from ExportTask.
      * @return the datasource
@@ -715,10 +879,12 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
 
         private ProfileResourceNode node;
         private boolean insertNode;
+        private boolean replaceNode;
 
-        public NodeInfo(ProfileResourceNode node, boolean insertNode) {
+        public NodeInfo(ProfileResourceNode node, boolean insertNode, boolean replaceNode) {
             this.node = node;
             this.insertNode = insertNode;
+            this.replaceNode = replaceNode;
         }
 
         public ProfileResourceNode getNode() {
@@ -728,6 +894,26 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         public boolean isInsertNode() {
             return insertNode;
         }
+
+        public boolean isReplaceNode() {
+            return replaceNode;
+        }
+    }
+
+    /**
+     * A request to the database writer to commit everything so far, which is counted down once it has.
+     */
+    private static final class FlushRequest extends NodeInfo {
+
+        private final CountDownLatch written = new CountDownLatch(1);
+
+        private FlushRequest() {
+            super(null, false, false);
+        }
+
+        static FlushRequest newRequest() {
+            return new FlushRequest();
+        }
     }
 
     /**
@@ -788,6 +974,8 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
         private Connection connection;
         private PreparedStatement insertNodeStatement;
         private PreparedStatement updateNodeStatement;
+        private PreparedStatement replaceNodeStatement;
+        private PreparedStatement deleteIdentificationsStatement;
         private Map<Integer, PreparedStatement> insertIdentifications;
         private volatile int batchCount;
         private final int batchLimit;
@@ -811,6 +999,8 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             connection = datasource.getConnection();
             insertNodeStatement = connection.prepareStatement(INSERT_PROFILE_RESOURCE_NODE);
             updateNodeStatement = connection.prepareStatement(UPDATE_NODE_STATUS);
+            replaceNodeStatement = connection.prepareStatement(UPDATE_PROFILE_RESOURCE_NODE);
+            deleteIdentificationsStatement = connection.prepareStatement(DELETE_IDENTIFICATIONS);
             final int maxStatements = 64;
 
             insertIdentifications = new HashMap<Integer, PreparedStatement>(maxStatements);
@@ -828,10 +1018,15 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                     final NodeInfo info = blockingQueue.take(); // this will block if there's nothing in the queue.
                     if (info == COMMIT_SO_FAR) {
                         commit();
+                    } else if (info instanceof FlushRequest) {
+                        commit();
+                        ((FlushRequest) info).written.countDown();
                     } else {
                         try {
                             if (info.insertNode) { // are we inserting a node, or updating one already saved?
                                 batchInsertNode(info.getNode());
+                            } else if (info.isReplaceNode()) {
+                                batchReplaceNode(info.getNode());
                             } else {
                                 updateNodeStatus(info.getNode());
                             }
@@ -861,8 +1056,10 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             }
             try {
                 insertNodeStatement.close();
+                replaceNodeStatement.close();
+                deleteIdentificationsStatement.close();
             } catch (SQLException s) {
-                log.error("A problem occurred closing a node insert prepared statement.", s);
+                log.error("A problem occurred closing a node prepared statement.", s);
             }
             try {
                 connection.close();
@@ -911,8 +1108,46 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
             insertNode.addBatch();
 
             // insert its identifications:
-            //TODO: check for NULL format weirdness...
+            batchInsertIdentifications(node);
+
+            commitBatchIfLargeEnough();
+        }
+        //CHECKSTYLE:ON
+
+        //CHECKSTYLE:OFF  Too many statements..
+        private void batchReplaceNode(final ProfileResourceNode node) throws SQLException {
+            final long nodeId = node.getId();
+            final NodeMetaData metadata = node.getMetaData();
+            final java.sql.Date finished = new java.sql.Date(new java.util.Date().getTime());
+            final PreparedStatement replaceNode = replaceNodeStatement;
+            int index = 1;
+            replaceNode.setBoolean(index++, node.getExtensionMismatch());
+            SqlUtils.setNullableTimestamp(index++, finished, replaceNode);
+            SqlUtils.setNullableInteger(index++, node.getIdentificationCount(), replaceNode);
+            SqlUtils.setNullableString(index++, metadata.getExtension(), replaceNode);
+            SqlUtils.setNullableString(index++, metadata.getHash(), replaceNode);
+            SqlUtils.setNullableEnumAsInt(index++, metadata.getIdentificationMethod(), replaceNode);
+            SqlUtils.setNullableTimestamp(index++, metadata.getLastModifiedDate(), replaceNode);
+            replaceNode.setString(index++, metadata.getName());
+            SqlUtils.setNullableEnumAsInt(index++, metadata.getNodeStatus(), replaceNode);
+            SqlUtils.setNullableEnumAsInt(index++, metadata.getResourceType(), replaceNode);
+            SqlUtils.setNullableLong(index++, metadata.getSize(), replaceNode);
+            replaceNode.setLong(index, nodeId);
+            replaceNode.addBatch();
+
+            // replace its identifications:
+            deleteIdentificationsStatement.setLong(1, nodeId);
+            deleteIdentificationsStatement.addBatch();
+            batchInsertIdentifications(node);
+
+            commitBatchIfLargeEnough();
+        }
+        //CHECKSTYLE:ON
 
+        private void batchInsertIdentifications(final ProfileResourceNode node) throws SQLException {
+            //TODO: check for NULL format weirdness...
+            final long nodeId = node.getId();
+            final Integer numIdentifications = node.getIdentificationCount();
             final int identifications = numIdentifications == null ? 0 : numIdentifications;
             final PreparedStatement statement = getIdentificationStatement(identifications);
             if (identifications == 0) {
@@ -926,10 +1161,7 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                 }
             }
             statement.addBatch();
-
-            commitBatchIfLargeEnough();
         }
-        //CHECKSTYLE:ON
 
         private void updateNodeStatus(final ProfileResourceNode node) throws SQLException {
             final Long nodeId = node.getId();
@@ -958,7 +1190,11 @@ public class JDBCBatchResultHandlerDao implements ResultHandlerDao {
                     // Insert new nodes:
                     insertNodeStatement.executeBatch();
 
-                    // Update node status:
+                    // Replace re-identified nodes, removing their old identifications:
+                    replaceNodeStatement.executeBatch();
+                    deleteIdentificationsStatement.executeBatch();
+
+                    // Update node status, after any replacement, as an error can follow re-identification:
                     updateNodeStatement.executeBatch();
 
                     // Insert identifications of new nodes:
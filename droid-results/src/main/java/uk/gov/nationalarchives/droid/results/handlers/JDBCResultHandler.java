@@ -32,6 +32,7 @@
 package uk.gov.nationalarchives.droid.results.handlers;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -114,11 +115,58 @@ public class JDBCResultHandler implements ResultHandler {
                 node.addFormatIdentification(format);
             }
         }
-        resultHandlerDao.save(node, parentId);
+        saveOrUpdate(node, parentId, results.getResourceId());
         progressMonitor.stopJob(node);
         return new ResourceId(node.getId(), node.getPrefix());
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<ResourceId> handleBatch(List<IdentificationResultCollection> results) {
+        final int numResults = results.size();
+        final List<ResourceId> ids = new ArrayList<ResourceId>(numResults);
+        for (int i = 0; i < numResults; i++) {
+            ids.add(handle(results.get(i)));
+        }
+        return ids;
+    }
+
+    /**
+     * Saves a file whose identification has been deferred, with the metadata read while listing it.
+     * The job is not stopped, as the file is only counted once it has been identified.
+     * {@inheritDoc}
+     */
+    @Override
+    public ResourceId handlePending(IdentificationRequest request) {
+        final RequestIdentifier identifier = request.getIdentifier();
+        final RequestMetaData requestMetaData = request.getRequestMetaData();
+        final ProfileResourceNode node = new ProfileResourceNode(identifier.getUri());
+        final NodeMetaData metaData = node.getMetaData();
+        metaData.setName(requestMetaData.getName());
+        metaData.setSize(requestMetaData.getSize());
+        metaData.setExtension(request.getExtension());
+        metaData.setLastModified(requestMetaData.getTime());
+        metaData.setResourceType(ResourceType.FILE);
+        metaData.setNodeStatus(NodeStatus.PENDING);
+        node.setNoFormatsIdentified();
+        node.addFormatIdentification(Format.NULL);
+        resultHandlerDao.save(node, identifier.getParentResourceId());
+        return new ResourceId(node.getId(), node.getPrefix());
+    }
+
+    private void saveOrUpdate(ProfileResourceNode node, ResourceId parentId, ResourceId existingId) {
+        if (existingId != null) { // re-identifying a node already saved: update it in place.
+            node.setId(existingId.getId());
+            node.setPrefix(existingId.getPath());
+            node.setParentId(parentId == null ? null : parentId.getId());
+            resultHandlerDao.update(node);
+        } else {
+            resultHandlerDao.save(node, parentId);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -176,6 +224,18 @@ public class JDBCResultHandler implements ResultHandler {
     @Override
     public ResourceId handleDirectory(IdentificationResult result,
                                       ResourceId parentId, boolean restricted) {
+        return saveDirectory(result, parentId, restricted ? NodeStatus.ACCESS_DENIED : NodeStatus.DONE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResourceId handleDirectoryError(IdentificationResult result, ResourceId parentId) {
+        return saveDirectory(result, parentId, NodeStatus.ERROR);
+    }
+
+    private ResourceId saveDirectory(IdentificationResult result, ResourceId parentId, NodeStatus status) {
         final URI uri = result.getIdentifier().getUri();
         //log.debug(String.format("handling directory [%s]", uri));
         ProfileResourceNode node = new ProfileResourceNode(uri);
@@ -187,7 +247,7 @@ public class JDBCResultHandler implements ResultHandler {
         metaData.setSize(null);
         metaData.setLastModified(requestMetaData.getTime());
         metaData.setIdentificationMethod(IdentificationMethod.NULL);
-        metaData.setNodeStatus(restricted ? NodeStatus.ACCESS_DENIED : NodeStatus.DONE);
+        metaData.setNodeStatus(status);
         metaData.setResourceType(ResourceType.FOLDER);
         node.setMetaData(metaData);
         node.setFinished(new Date());
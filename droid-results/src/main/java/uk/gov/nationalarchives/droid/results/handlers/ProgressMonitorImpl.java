@@ -32,14 +32,16 @@
 package uk.gov.nationalarchives.droid.results.handlers;
 
 import java.net.URI;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
 import uk.gov.nationalarchives.droid.profile.ProfileResultObserver;
 
 /**
+ * Counts identified resources without locking: a lock is only taken when
+ * the progress percentage changes, so observers are told of it in order.
  * @author rflitcroft
  * 
  */
@@ -47,11 +49,11 @@ public class ProgressMonitorImpl implements ProgressMonitor {
 
     private static final int UNITY_PERCENT = 100;
 
-    private volatile long count;
+    private final AtomicLong count = new AtomicLong();
     private volatile int progressPercentage = INDETERMINATE_PROGRESS;
-    private long target = INDETERMINATE_PROGRESS;
+    private volatile long target = INDETERMINATE_PROGRESS;
 
-    private Set<URI> jobsInProgress = Collections.synchronizedSet(new HashSet<URI>());
+    private Set<URI> jobsInProgress = ConcurrentHashMap.newKeySet();
     private ProgressObserver observer;
     private ProfileResultObserver resultObserver;
 
@@ -60,7 +62,7 @@ public class ProgressMonitorImpl implements ProgressMonitor {
      */
     @Override
     public long getIdentificationCount() {
-        return count;
+        return count.get();
     }
 
     /**
@@ -91,23 +93,27 @@ public class ProgressMonitorImpl implements ProgressMonitor {
    * Increments the internal count.
    */
  
-    synchronized void increment() {
-        count++;
-        if (target == ProgressMonitor.INDETERMINATE_PROGRESS) {
+    void increment() {
+        final long newCount = count.incrementAndGet();
+        final long currentTarget = target;
+        if (currentTarget == ProgressMonitor.INDETERMINATE_PROGRESS) {
             progressPercentage = ProgressMonitor.INDETERMINATE_PROGRESS;
-        } else {
-            calcProgress();
+        } else if (currentTarget > 0 && percentage(newCount, currentTarget) != progressPercentage) {
+            synchronized (this) {
+                calcProgress();
+            }
         }
     }
 
+    private static int percentage(long currentCount, long targetCount) {
+        return (int) Math.min(UNITY_PERCENT, UNITY_PERCENT * currentCount / targetCount);
+    }
+
     private void calcProgress() {
         if (target > 0) {
             // Avoid any / by zero problems...
             int oldProg = progressPercentage;
-            int newProg = (int) (UNITY_PERCENT * count / target);
-            if (newProg > UNITY_PERCENT) {
-                newProg = UNITY_PERCENT;
-            }
+            int newProg = percentage(count.get(), target);
             progressPercentage = newProg;
             if (observer != null && newProg != oldProg) {
                 observer.onProgress(progressPercentage);
@@ -170,9 +176,9 @@ public class ProgressMonitorImpl implements ProgressMonitor {
      * @param targetCount the target count
      * @param currentCount the actual count
      */
-    public void initialise(long targetCount, long currentCount) {
+    public synchronized void initialise(long targetCount, long currentCount) {
         this.target = targetCount;
-        this.count = currentCount;
+        this.count.set(currentCount);
         calcProgress();
     }
     
@@ -31,6 +31,7 @@
  */
 package uk.gov.nationalarchives.droid.results.handlers;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -58,6 +59,14 @@ public interface ResultHandlerDao {
      */
     void save(ProfileResourceNode node, ResourceId parentId);
 
+    /**
+     * Replaces the details and identifications of a node which has already been saved,
+     * keeping its id and position in the profile tree.
+     *
+     * @param node the re-identified node, which must already have an id.
+     */
+    void update(ProfileResourceNode node);
+
     /**
      * Ensure that all results so far are committed.
      * <p>
@@ -101,6 +110,38 @@ public interface ResultHandlerDao {
      */
     void deleteNode(Long nodeId);
 
+    /**
+     * Deletes all the nodes under a node, leaving the node itself in place.
+     * @param node the node whose descendants should be removed.
+     */
+    void deleteDescendants(ProfileResourceNode node);
+
+    /**
+     * Finds the file and container nodes whose identification may change given a set of changed formats:
+     * nodes identified as one of the PUIDs, nodes with no identification, and nodes with one of the extensions.
+     * Nodes are found in order of their ids, a page at a time, so all the affected nodes of a large profile
+     * do not have to be held at once.
+     *
+     * @param puids the PUIDs of the changed formats.
+     * @param extensions the upper-cased extensions of the changed formats.
+     * @param afterNodeId the id after which to find nodes, or zero to find them from the start.
+     * @param maxNodes the maximum number of nodes to find.
+     * @return the nodes which should be identified again, without their identifications loaded.
+     */
+    List<ProfileResourceNode> findNodesToReidentify(Collection<String> puids, Collection<String> extensions,
+            long afterNodeId, int maxNodes);
+
+    /**
+     * Finds the file nodes whose identification was deferred, in order of their ids, once the nodes
+     * saved so far have been written.  Nodes are found a page at a time, so all the pending nodes of
+     * a large profile do not have to be held at once.
+     *
+     * @param afterNodeId the id after which to find pending nodes, or zero to find them from the start.
+     * @param maxNodes the maximum number of nodes to find.
+     * @return the pending nodes, without their identifications loaded.
+     */
+    List<ProfileResourceNode> findPendingNodes(long afterNodeId, int maxNodes);
+
     /**
      * BNO: Added for new method in JDBCBatchResulthandlerDao, for customising behaviour for new vs existing
      * installations.  Haven't previously published this interface via an API etc. ASAIK so shouldn't break anything...
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A scheduling lane for each device (file store) that files are read from, so each device has
+ * its own limit on the files read from it at once and its own queue.  A slow device then only
+ * holds up requests for its own files, and each device reports its own throughput.
+ * <p>
+ * The file store of a file is looked up from its directory, and the last directory looked up is
+ * remembered, as files from the same directory are submitted one after the other.  With no limit
+ * on the files read from each device, there are no lanes and file stores are not looked up.
+ */
+final class DeviceLanes {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final boolean enabled;
+    private final int maxInFlight;
+    private final int maxWaiting;
+    private final ConcurrentMap<FileStore, SchedulingLane> lanes = new ConcurrentHashMap<>();
+    private volatile LastDirectory last;
+
+    /**
+     * @param maxInFlight the maximum number of requests for each device in the pipeline at once,
+     *        or zero or less for no limit, in which case there are no device lanes.
+     * @param maxWaiting the number of waiting requests for a device above which threads outside the pipeline block.
+     */
+    DeviceLanes(final int maxInFlight, final int maxWaiting) {
+        this.enabled = maxInFlight > 0;
+        this.maxInFlight = maxInFlight;
+        this.maxWaiting = maxWaiting;
+    }
+
+    /**
+     * @param source the source a request is opened from.
+     * @return the lane of the device the source is read from, or null if there are no device lanes,
+     *         the source is not a file or its device cannot be found.
+     */
+    SchedulingLane laneFor(final Object source) {
+        SchedulingLane lane = null;
+        if (enabled && source instanceof Path) {
+            final Path file = ((Path) source).toAbsolutePath();
+            final Path directory = file.getParent() == null ? file : file.getParent();
+            final LastDirectory cached = last;
+            if (cached != null && cached.directory.equals(directory)) {
+                lane = cached.lane;
+            } else {
+                lane = lookup(directory);
+                last = new LastDirectory(directory, lane);
+            }
+        }
+        return lane;
+    }
+
+    private SchedulingLane lookup(final Path directory) {
+        SchedulingLane lane = null;
+        try {
+            final FileStore store = Files.getFileStore(directory);
+            lane = lanes.computeIfAbsent(store,
+                s -> new SchedulingLane("device " + s, maxInFlight, maxWaiting));
+        } catch (IOException e) {
+            log.debug(String.format("Could not find the device of %s: %s", directory, e.getMessage()), e);
+        }
+        return lane;
+    }
+
+    /**
+     * @return the lanes of the devices read from so far.
+     */
+    List<SchedulingLane> lanes() {
+        return new ArrayList<>(lanes.values());
+    }
+
+    /**
+     * A directory and the lane of its device.
+     */
+    private static final class LastDirectory {
+        private final Path directory;
+        private final SchedulingLane lane;
+
+        LastDirectory(final Path directory, final SchedulingLane lane) {
+            this.directory = directory;
+            this.lane = lane;
+        }
+    }
+}
@@ -32,6 +32,7 @@
 package uk.gov.nationalarchives.droid.submitter;
 
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.util.Date;
 
@@ -63,12 +64,45 @@ public class DirectoryEventHandler {
      * @return the id of the directory
      */
     public ResourceId onEvent(final Path dir, ResourceId parentId, int depth, boolean restricted) {
+        return onEvent(dir, null, parentId, depth, restricted);
+    }
+
+    /**
+     * Handles a directory whose attributes have already been read.
+     * A directory node has no size, so none is given, rather than adding up its contents.
+     * @param dir the directory to handle
+     * @param attributes the attributes of the directory, or null to read them from the file system
+     * @param parentId the directory's parent id
+     * @param depth the depth of the directory in the tree
+     * @param restricted true if access to the directory was restricted, false otherwise
+     * @return the id of the directory
+     */
+    public ResourceId onEvent(final Path dir, final BasicFileAttributes attributes, ResourceId parentId,
+            int depth, boolean restricted) {
+        return resultHandler.handleDirectory(newResult(dir, attributes, parentId, depth), parentId, restricted);
+    }
+
+    /**
+     * Handles a directory which could not be listed.
+     * @param dir the directory to handle
+     * @param attributes the attributes of the directory, or null to read them from the file system
+     * @param parentId the directory's parent id
+     * @param depth the depth of the directory in the tree
+     * @return the id of the directory
+     */
+    public ResourceId onError(final Path dir, final BasicFileAttributes attributes, ResourceId parentId, int depth) {
+        return resultHandler.handleDirectoryError(newResult(dir, attributes, parentId, depth), parentId);
+    }
+
+    private IdentificationResultImpl newResult(final Path dir, final BasicFileAttributes attributes,
+            ResourceId parentId, int depth) {
         IdentificationResultImpl result = new IdentificationResultImpl();
         result.setMethod(IdentificationMethod.NULL);
 
-        final FileTime lastModified = FileUtil.lastModifiedQuietly(dir);
+        final FileTime lastModified = attributes == null ? FileUtil.lastModifiedQuietly(dir)
+                : attributes.lastModifiedTime();
         RequestMetaData metaData = new RequestMetaData(
-                FileUtil.sizeQuietly(dir),
+                null,
                 lastModified == null ? new Date(0).getTime() : new Date(lastModified.toMillis()).getTime(),
                 depth == 0 ? dir.toAbsolutePath().toString() : FileUtil.fileName(dir));
         
@@ -76,7 +110,7 @@ public class DirectoryEventHandler {
         identifier.setParentResourceId(parentId);
         result.setRequestMetaData(metaData);
         result.setIdentifier(identifier);
-        return resultHandler.handleDirectory(result, parentId, restricted);
+        return result;
     }
 
     /**
@@ -0,0 +1,370 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * The children of a directory, listed in a single pass over the directory and handed to the walk
+ * a listing size at a time, in the order they are walked.
+ * <p>
+ * Children are walked in name order, or in the order of their inode numbers and then their names.
+ * Up to a listing size of children are held in memory while the directory is listed; each time that
+ * many more are found, they are sorted and spilled to a temporary file as a run.  The runs are merged
+ * as the children are handed out, so the file system is asked for the children of a directory once,
+ * and the memory used does not grow with the size of the directory.  The attributes of the children
+ * are read as they are handed out.
+ * <p>
+ * A listing must be closed, to delete the runs spilled to temporary files.
+ */
+final class DirectoryListing implements Closeable {
+
+    private static final String SPILL_PREFIX = "droid-listing";
+    private static final String SPILL_SUFFIX = ".tmp";
+    private static final String INODE = "unix:ino";
+
+    private final Path directory;
+    private final boolean inodeOrder;
+    private final int listingSize;
+    private final PriorityQueue<Run> runs = new PriorityQueue<>();
+    private final List<SpilledRun> spilledRuns = new ArrayList<>();
+    private Children next;
+
+    private DirectoryListing(final Path directory, final boolean inodeOrder, final int listingSize) {
+        this.directory = directory;
+        this.inodeOrder = inodeOrder;
+        this.listingSize = listingSize;
+    }
+
+    /**
+     * Lists a directory, and reads the attributes of the first listing size of its children.
+     *
+     * @param directory the directory to list.
+     * @param after the name of the child to list the children after, or null to list from the first child;
+     *        ignored in inode order.
+     * @param inodeOrder whether to hand out the children in inode order rather than name order; the file
+     *        system of the directory must support the "unix" file attribute view.
+     * @param listingSize the maximum number of children to hold in memory, and to hand out at a time.
+     * @param tempDir the directory to spill runs of children to, or null for the default temporary directory.
+     * @return the listing of the directory, which must be closed.
+     * @throws IOException if the directory could not be listed, or runs of its children could not be spilled.
+     */
+    static DirectoryListing list(final Path directory, final String after, final boolean inodeOrder,
+            final int listingSize, final Path tempDir) throws IOException {
+        final DirectoryListing listing = new DirectoryListing(directory, inodeOrder, listingSize);
+        boolean listed = false;
+        try {
+            listing.read(inodeOrder ? null : after, tempDir);
+            listing.next = listing.take();
+            checkNotInterrupted(directory);
+            listed = true;
+        } finally {
+            if (!listed) {
+                listing.close();
+            }
+        }
+        return listing;
+    }
+
+    /**
+     * @return true if there are children which have not been handed out yet.
+     */
+    boolean hasNext() {
+        return next == null ? !runs.isEmpty() : !next.isEmpty();
+    }
+
+    /**
+     * @return the next listing size of children in the order they are walked, mapped to their attributes
+     *         (null if they could not be read); empty once all the children have been handed out.
+     * @throws IOException if a run of children spilled to a temporary file could not be read.
+     */
+    Children next() throws IOException {
+        final Children children = next == null ? take() : next;
+        next = null;
+        return children;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (final SpilledRun run : spilledRuns) {
+            try {
+                run.close();
+            } catch (final IOException e) {
+                error = e;
+            }
+        }
+        spilledRuns.clear();
+        runs.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void read(final String after, final Path tempDir) throws IOException {
+        final List<Child> run = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (final Path path : stream) {
+                final String name = path.getFileName().toString();
+                if (after == null || name.compareTo(after) > 0) {
+                    if (run.size() >= listingSize) {
+                        spill(run, tempDir);
+                    }
+                    run.add(new Child(name, inodeOrder ? inodeOf(path) : 0));
+                }
+            }
+        }
+        Collections.sort(run);
+        addRun(run.iterator());
+    }
+
+    private void spill(final List<Child> run, final Path tempDir) throws IOException {
+        checkNotInterrupted(directory);
+        Collections.sort(run);
+        final SpilledRun spilled = new SpilledRun(tempDir == null
+                ? Files.createTempFile(SPILL_PREFIX, SPILL_SUFFIX)
+                : Files.createTempFile(tempDir, SPILL_PREFIX, SPILL_SUFFIX));
+        spilledRuns.add(spilled);
+        spilled.write(run);
+        run.clear();
+        addRun(spilled.read());
+    }
+
+    private void addRun(final Iterator<Child> children) throws IOException {
+        try {
+            if (children.hasNext()) {
+                runs.add(new Run(children));
+            }
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Children take() throws IOException {
+        final Children children = new Children(inodeOrder);
+        try {
+            while (children.size() < listingSize && !runs.isEmpty()) {
+                final Run run = runs.poll();
+                final Path path = directory.resolve(run.head.name);
+                children.put(path, FileWalker.readAttributesQuietly(path));
+                if (inodeOrder) {
+                    children.inodes.put(path, run.head.inode);
+                }
+                if (run.advance()) {
+                    runs.add(run);
+                }
+            }
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return children;
+    }
+
+    /**
+     * A listing no-one is waiting for any more, such as one cancelled when its walk was, does not go on
+     * writing runs, nor leave them behind.
+     * @param directory the directory being listed.
+     * @throws InterruptedIOException if the thread listing the directory has been interrupted.
+     */
+    private static void checkNotInterrupted(final Path directory) throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted while listing the directory " + directory);
+        }
+    }
+
+    /**
+     * @param path a file on a file system with the "unix" file attribute view.
+     * @return the inode number of the file, or Long.MAX_VALUE if it could not be read.
+     */
+    private static long inodeOf(final Path path) {
+        try {
+            return (Long) Files.getAttribute(path, INODE, LinkOption.NOFOLLOW_LINKS);
+        } catch (final IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Children of a directory in the order they are walked, with their inode numbers if they are
+     * walked in inode order.
+     */
+    static final class Children extends LinkedHashMap<Path, BasicFileAttributes> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Map<Path, Long> inodes;
+
+        /**
+         * @param inodeOrder whether the children are walked in inode order.
+         */
+        Children(final boolean inodeOrder) {
+            this.inodes = inodeOrder ? new HashMap<Path, Long>() : null;
+        }
+
+        /**
+         * @return the inode numbers of the children, or null if they are walked in name order.
+         */
+        Map<Path, Long> getInodes() {
+            return inodes;
+        }
+    }
+
+    /**
+     * The name of a child of the directory, and its inode number in inode order.
+     */
+    private static final class Child implements Comparable<Child> {
+
+        private final String name;
+        private final long inode;
+
+        Child(final String name, final long inode) {
+            this.name = name;
+            this.inode = inode;
+        }
+
+        @Override
+        public int compareTo(final Child other) {
+            final int order = Long.compare(inode, other.inode);
+            return order != 0 ? order : name.compareTo(other.name);
+        }
+    }
+
+    /**
+     * A sorted run of children being merged, ordered by the next child in it.
+     */
+    private static final class Run implements Comparable<Run> {
+
+        private final Iterator<Child> children;
+        private Child head;
+
+        Run(final Iterator<Child> children) {
+            this.children = children;
+            this.head = children.next();
+        }
+
+        /**
+         * @return true if the run has moved on to its next child, false if it has no more.
+         */
+        boolean advance() {
+            final boolean more = children.hasNext();
+            if (more) {
+                head = children.next();
+            }
+            return more;
+        }
+
+        @Override
+        public int compareTo(final Run other) {
+            return head.compareTo(other.head);
+        }
+    }
+
+    /**
+     * A sorted run of children spilled to a temporary file, which is deleted when the run is closed.
+     */
+    private static final class SpilledRun implements Iterator<Child>, Closeable {
+
+        private final Path file;
+        private DataInputStream in;
+        private int remaining;
+
+        SpilledRun(final Path file) {
+            this.file = file;
+        }
+
+        void write(final List<Child> run) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(run.size());
+                for (final Child child : run) {
+                    out.writeUTF(child.name);
+                    out.writeLong(child.inode);
+                }
+            }
+        }
+
+        Iterator<Child> read() throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            remaining = in.readInt();
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Child next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            try {
+                return new Child(in.readUTF(), in.readLong());
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
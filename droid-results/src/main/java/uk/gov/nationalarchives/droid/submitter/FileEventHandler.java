@@ -35,8 +35,11 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,12 +57,18 @@ import uk.gov.nationalarchives.droid.profile.throttle.SubmissionThrottle;
 import uk.gov.nationalarchives.droid.util.FileUtil;
 
 /**
+ * Submits the files found by a walk for identification.
+ * <p>
+ * If identification is deferred, new files are only recorded as pending, so a complete inventory
+ * of a profile is available quickly.  Files which already have a node id (e.g. pending files
+ * being identified afterwards) are always submitted.
  * @author rflitcroft
  * 
  */
 public class FileEventHandler {
 
     private static final int URI_STRING_BUILDER_CAPACITY = 1024;
+    private static final String THROTTLE_INTERRUPTED = "Interrupted while throttle active.";
 
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -68,6 +77,7 @@ public class FileEventHandler {
     private IdentificationRequestFactory<Path> requestFactory;
 
     private SubmissionThrottle submissionThrottle;
+    private boolean deferIdentification;
 
     private StringBuilder uriStringBuilder = new StringBuilder(URI_STRING_BUILDER_CAPACITY);
 
@@ -97,21 +107,36 @@ public class FileEventHandler {
      *            an optional node ID for the request.
      */
     public void onEvent(final Path file, ResourceId parentId, ResourceId nodeId) {
+        onEvent(file, null, parentId, nodeId);
+    }
 
-        URI uri = SubmitterUtils.toURI(file.toFile(), uriStringBuilder);
-        final FileTime lastModified = FileUtil.lastModifiedQuietly(file);
-        RequestMetaData metaData = new RequestMetaData(
-                FileUtil.sizeQuietly(file),
-                lastModified == null ? new Date(0).getTime() : new Date(lastModified.toMillis()).getTime(),
-                FileUtil.fileName(file));
+    /**
+     * Creates a job in the database and submits the job to the identification
+     * engine, using file attributes which have already been read.
+     *
+     * @param file
+     *            the node file to handle
+     * @param attributes
+     *            the attributes of the file, or null to read them from the file system
+     * @param parentId
+     *            the ID of the node's parent
+     * @param nodeId
+     *            an optional node ID for the request.
+     */
+    public void onEvent(final Path file, final BasicFileAttributes attributes, ResourceId parentId,
+            ResourceId nodeId) {
+
+        IdentificationRequest<Path> request = newRequest(file, attributes, parentId, nodeId);
+        if (deferIdentification && nodeId == null) {
+            resultHandler.handlePending(request);
+        } else {
+            submit(request, file);
+        }
+    }
 
-        RequestIdentifier identifier = new RequestIdentifier(uri);
-        identifier.setParentResourceId(parentId);
-        identifier.setResourceId(nodeId);
-        IdentificationRequest<Path> request = requestFactory.newRequest(metaData, identifier);
+    private void submit(final IdentificationRequest<Path> request, final Path file) {
         try {
-            request.open(file);
-            droidCore.submit(request);
+            droidCore.submit(request, file);
             submissionThrottle.apply();
         } catch (IOException e) {
             IdentificationErrorType error = Files.exists(file) ? IdentificationErrorType.ACCESS_DENIED
@@ -123,10 +148,62 @@ public class FileEventHandler {
             }
             resultHandler.handleError(new IdentificationException(request, error, e));
         } catch (InterruptedException e) {
-            log.debug("Interrupted while throttle active.", e);
+            log.debug(THROTTLE_INTERRUPTED, e);
         }
     }
 
+    /**
+     * Submits a batch of small files to the identification engine as a single task.
+     *
+     * @param files
+     *            the files to handle
+     * @param attributes
+     *            the attributes of each file
+     * @param parentId
+     *            the ID of the directory containing the files
+     */
+    public void onBatch(final List<Path> files, final List<BasicFileAttributes> attributes, ResourceId parentId) {
+        final int numFiles = files.size();
+        final List<IdentificationRequest<Path>> requests = new ArrayList<>(numFiles);
+        for (int i = 0; i < numFiles; i++) {
+            requests.add(newRequest(files.get(i), attributes.get(i), parentId, null));
+        }
+        if (deferIdentification) {
+            for (IdentificationRequest<Path> request : requests) {
+                resultHandler.handlePending(request);
+            }
+        } else {
+            submitBatch(requests, files);
+        }
+    }
+
+    private void submitBatch(final List<IdentificationRequest<Path>> requests, final List<Path> files) {
+        droidCore.submitBatch(requests, files);
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                submissionThrottle.apply();
+            }
+        } catch (InterruptedException e) {
+            log.debug(THROTTLE_INTERRUPTED, e);
+        }
+    }
+
+    private IdentificationRequest<Path> newRequest(final Path file, final BasicFileAttributes attributes,
+            ResourceId parentId, ResourceId nodeId) {
+        URI uri = SubmitterUtils.toURI(file.toFile(), uriStringBuilder);
+        final FileTime lastModified = attributes == null ? FileUtil.lastModifiedQuietly(file)
+                : attributes.lastModifiedTime();
+        RequestMetaData metaData = new RequestMetaData(
+                attributes == null ? FileUtil.sizeQuietly(file) : attributes.size(),
+                lastModified == null ? new Date(0).getTime() : new Date(lastModified.toMillis()).getTime(),
+                FileUtil.fileName(file));
+
+        RequestIdentifier identifier = new RequestIdentifier(uri);
+        identifier.setParentResourceId(parentId);
+        identifier.setResourceId(nodeId);
+        return requestFactory.newRequest(metaData, identifier);
+    }
+
     /**
      * @return the submission throttle
      */
@@ -141,6 +218,13 @@ public class FileEventHandler {
         this.submissionThrottle = submissionThrottle;
     }
     
+    /**
+     * @param deferIdentification whether new files are only recorded as pending, to be identified later.
+     */
+    public void setDeferIdentification(boolean deferIdentification) {
+        this.deferIdentification = deferIdentification;
+    }
+
     /**
      * @param droidCore the droidCore to set
      */
@@ -32,17 +32,28 @@
 package uk.gov.nationalarchives.droid.submitter;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
-import java.nio.file.DirectoryStream;
+import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
@@ -53,10 +64,37 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
-import uk.gov.nationalarchives.droid.util.FileUtil;
 
 /**
  * A file walker which supports resume.
+ * <p>
+ * The attributes of each file and directory are read once, as the directory containing
+ * them is listed, and are passed on to the handlers so they do not have to query the
+ * file system again.  The availability of the file system is checked once per directory.
+ * <p>
+ * If a prefetch executor is set, the directories below the one being walked are listed
+ * concurrently ahead of the walk, which hides the latency of slow storage.  The handlers are
+ * still called on the walking thread in depth-first order, so the progress used to resume
+ * a walk and the parent ids given to the handlers are the same as for a sequential walk.
+ * <p>
+ * If a batch handler is set, consecutive small files in a directory are handed to it together.
+ * A batch is handled before any other child of the directory, so the files in it are only
+ * recorded as processed once they have all been handled.
+ * <p>
+ * The children of a directory are walked in name order.  If file key order is set, they are walked
+ * in the order of their inode numbers instead, which reduces seeking on rotational media, and the
+ * progress through a directory is recorded as the inode number and name of the last child processed.
+ * Inode numbers are read through the "unix" file attribute view; on file systems without it,
+ * children are walked in name order.
+ * <p>
+ * Each directory is listed in a single pass.  At most a listing size of its children are held in memory
+ * and walked at a time, in either order: larger directories are sorted in runs spilled to temporary files,
+ * which are merged as the directory is walked (see {@link DirectoryListing}).  A walk which is resumed
+ * in name order only lists the children after the last one processed in a directory.  Memory used by the
+ * walk therefore does not grow with the size of a directory.
+ * <p>
+ * If a directory error handler is set, a directory which cannot be listed is handed to it
+ * and the walk carries on; otherwise the error ends the walk.
  * @author rflitcroft
  *
  */
@@ -65,6 +103,28 @@ public class FileWalker {
 
     private static final String FILE_SYSTEM_UNAVAILABLE = "File system appears to be unavailable for file: [%s]";
 
+    private static final String LISTING_FAILED = "Could not list the directory [%s]: %s";
+
+    /**
+     * The default maximum number of children of a directory listed at a time.
+     */
+    private static final int DEFAULT_LISTING_SIZE = 10000;
+
+    /**
+     * The order in which the children of a directory are walked.
+     */
+    private static final Comparator<Path> NAME_ORDER = new Comparator<Path>() {
+        @Override
+        public int compare(final Path path1, final Path path2) {
+            return path1.getFileName().toString().compareTo(path2.getFileName().toString());
+        }
+    };
+
+    /**
+     * The attribute view holding the inode numbers of files on a Unix file system.
+     */
+    private static final String UNIX_VIEW = "unix";
+
     private Logger log = LoggerFactory.getLogger(this.getClass());
     
 
@@ -72,6 +132,9 @@ public class FileWalker {
 
     @XmlAttribute(name = "Recursive")
     private boolean recursive;
+
+    @XmlAttribute(name = "FileKeyOrder")
+    private boolean fileKeyOrder;
     
     @XmlElementWrapper(name = "Progress")
     @XmlElement(name = "ProgressEntry")
@@ -81,8 +144,20 @@ public class FileWalker {
     private FileWalkerHandler fileHandler;
     private FileWalkerHandler directoryHandler;
     private FileWalkerHandler restrictedDirectoryHandler;
+    private FileWalkerHandler directoryErrorHandler;
     private boolean fastForward;
     private List<ProgressEntry> recoveryRoad;
+    private ExecutorService prefetchExecutor;
+    private int maxPrefetch;
+    private int listingSize = DEFAULT_LISTING_SIZE;
+    private Path listingTempDir;
+    private ProgressEstimator progressEstimator;
+    private FileWalkerBatchHandler batchHandler;
+    private long maxBatchFileSize;
+    private int maxBatchSize;
+    private final List<Path> batchFiles = new ArrayList<>();
+    private final List<BasicFileAttributes> batchAttributes = new ArrayList<>();
+    private int batchDepth;
     
     /**
      * Default Constructor.
@@ -130,7 +205,8 @@ public class FileWalker {
             progress = new ArrayDeque<>();
         }
         
-        walk(Paths.get(root), 0);
+        final Path rootPath = Paths.get(root);
+        walk(rootPath, readAttributesQuietly(rootPath), 0, null);
     }
 
     private static List<ProgressEntry> reverseProgress(final Deque<ProgressEntry> progress) {
@@ -142,26 +218,298 @@ public class FileWalker {
         return reversed;
     }
 
-    private void walk(final Path directory, final int depth) throws IOException {
+    private void walk(final Path directory, final BasicFileAttributes attributes, final int depth,
+            final Future<DirectoryListing> listing) throws IOException {
         if (handleDirectory(directory, depth)) {
-            final List<Path> children = FileUtil.listFiles(directory, false, (DirectoryStream.Filter<Path>) null);
-            if (children != null) {
-                handleDirectoryStart(directory, depth, children.toArray(new Path[children.size()]));
-                if (recursive || depth == 0) {
-                    final int childDepth = depth + 1;
-                    for (final Path child : children) {
-                        if (Files.isDirectory(child)) {
-                            walk(child, childDepth);
-                        } else {
-                            handleFile(child, childDepth);
-                        }
-                    }
+            walkListing(directory, attributes, depth, listing);
+        } else if (listing != null) {
+            discard(listing);
+        }
+    }
+
+    private void walkListing(final Path directory, final BasicFileAttributes attributes, final int depth,
+            final Future<DirectoryListing> prefetched) throws IOException {
+        final DirectoryListing listing;
+        try {
+            listing = prefetched == null ? listChildren(directory, resumeCursor(directory, depth))
+                    : awaitListing(prefetched);
+        } catch (final IOException e) {
+            if (!isWalkedPast(e)) {
+                throw e;
+            }
+            log.warn(String.format(LISTING_FAILED, directory.toAbsolutePath().toString(), e.getMessage()));
+            handleUnlistedDirectory(directory, attributes, depth, directoryErrorHandler);
+            return;
+        }
+        if (listing != null) {
+            try {
+                walkListing(directory, attributes, depth, listing);
+            } finally {
+                listing.close();
+            }
+        } else { // can't access children - restricted directory.
+            handleUnlistedDirectory(directory, attributes, depth, restrictedDirectoryHandler);
+        }
+    }
+
+    private void walkListing(final Path directory, final BasicFileAttributes attributes, final int depth,
+            final DirectoryListing listing) throws IOException {
+        final boolean childrenWalked = recursive || depth == 0;
+        handleDirectoryStart(directory, attributes, depth);
+        final DirectoryListing.Children children = listing.next();
+        recordInodes(children, depth);
+        directoryListed(depth, children, childrenWalked);
+        if (childrenWalked) {
+            walkChildren(children, depth);
+            walkRemainingChildren(directory, listing, depth);
+        }
+        handleDirectoryEnd(directory, depth);
+    }
+
+    /**
+     * @param listingError the error listing a directory.
+     * @return true if the directory can be handled as an error and the walk carry on,
+     *         false if the walk has to end with the error, as it has been interrupted.
+     */
+    private boolean isWalkedPast(final IOException listingError) {
+        return directoryErrorHandler != null && !(listingError instanceof InterruptedIOException)
+                && !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Walks the children of a directory which were not in its first listing size, a listing size at a time.
+     * @param directory the directory.
+     * @param listing the listing of the directory, whose first children have been walked.
+     * @param depth the depth of the directory.
+     * @throws IOException if a handler failed, or the rest of the listing could not be read and there is
+     *         no directory error handler.
+     */
+    private void walkRemainingChildren(final Path directory, final DirectoryListing listing, final int depth)
+        throws IOException {
+        while (listing.hasNext()) {
+            final DirectoryListing.Children children;
+            try {
+                children = listing.next();
+            } catch (final IOException e) {
+                if (!isWalkedPast(e)) {
+                    throw e;
                 }
-                handleDirectoryEnd(directory, depth);
-            } else { // can't access children - restricted directory.
-                handleRestrictedDirectory(directory, depth);
+                log.warn(String.format(LISTING_FAILED, directory.toAbsolutePath().toString(), e.getMessage()));
+                break;
+            }
+            recordInodes(children, depth);
+            moreChildrenListed(depth, children);
+            walkChildren(children, depth);
+        }
+    }
+
+    /**
+     * While fast forwarding, the children of a directory on the road to recovery up to the last one
+     * processed have all been processed, so they need not be listed again.
+     * @param directory the directory to list.
+     * @param depth the depth of the directory.
+     * @return the name of the last child of the directory which was processed, or null to list all its children.
+     */
+    private String resumeCursor(final Path directory, final int depth) {
+        String cursor = null;
+        if (fastForward && !fileKeyOrder && depth < recoveryRoad.size()) {
+            final ProgressEntry entry = recoveryRoad.get(depth);
+            if (entry.getFile().equals(directory) && !entry.hasChildList()) {
+                cursor = entry.getLastChild();
             }
         }
+        return cursor;
+    }
+
+    /**
+     * Records the inode numbers of some children of a directory in its progress, if they are walked in inode order.
+     * @param children the children, in the order they are walked.
+     * @param depth the depth of the directory.
+     */
+    private void recordInodes(final DirectoryListing.Children children, final int depth) {
+        if (children.getInodes() != null) {
+            final ProgressEntry entry = fastForward ? recoveryRoad.get(depth) : progress.peek();
+            entry.setInodes(children.getInodes());
+        }
+    }
+
+    /**
+     * Walks some of the children of a directory.
+     * @param children the children, in the order they are walked.
+     * @param depth the depth of the directory.
+     * @throws IOException if a handler failed.
+     */
+    private void walkChildren(final DirectoryListing.Children children, final int depth) throws IOException {
+        final int childDepth = depth + 1;
+        final Deque<Path> toPrefetch = new ArrayDeque<>();
+        final Map<Path, Future<DirectoryListing>> prefetched = new HashMap<>();
+        if (prefetchExecutor != null) {
+            for (final Map.Entry<Path, BasicFileAttributes> child : children.entrySet()) {
+                if (isDirectory(child.getValue())) {
+                    toPrefetch.add(child.getKey());
+                }
+            }
+        }
+        try {
+            prefetch(toPrefetch, prefetched, childDepth);
+            for (final Map.Entry<Path, BasicFileAttributes> child : children.entrySet()) {
+                final BasicFileAttributes childAttributes = child.getValue();
+                if (isDirectory(childAttributes)) {
+                    final Path childDirectory = child.getKey();
+                    handleBatch();
+                    walk(childDirectory, childAttributes, childDepth, prefetched.remove(childDirectory));
+                    prefetch(toPrefetch, prefetched, childDepth);
+                } else {
+                    handleFile(child.getKey(), childAttributes, childDepth);
+                }
+            }
+            handleBatch();
+        } finally {
+            for (final Future<DirectoryListing> listing : prefetched.values()) {
+                discard(listing);
+            }
+        }
+    }
+
+    private void directoryListed(final int depth, final Map<Path, BasicFileAttributes> children,
+            final boolean childrenWalked) {
+        if (progressEstimator != null) {
+            if (fastForward) {
+                unprocessedChildrenListed(depth, children);
+            } else {
+                progressEstimator.directoryListed(depth, children.size(), countDirectories(children), childrenWalked);
+            }
+        }
+    }
+
+    private void moreChildrenListed(final int depth, final Map<Path, BasicFileAttributes> children) {
+        if (progressEstimator != null) {
+            if (fastForward) {
+                unprocessedChildrenListed(depth, children);
+            } else {
+                progressEstimator.entriesListed(depth, children.size(), countDirectories(children));
+            }
+        }
+    }
+
+    /**
+     * Reports the children of a directory on the road to recovery which are still to be processed.
+     * The directory, its children processed before the walk was resumed, and the child the walk
+     * stopped in were all counted before then.
+     * @param depth the depth of the directory.
+     * @param children some children of the directory.
+     */
+    private void unprocessedChildrenListed(final int depth, final Map<Path, BasicFileAttributes> children) {
+        final int childDepth = depth + 1;
+        final Path stoppedIn = childDepth < recoveryRoad.size() ? recoveryRoad.get(childDepth).getFile() : null;
+        final Map<Path, BasicFileAttributes> unprocessed = new HashMap<>();
+        for (final Map.Entry<Path, BasicFileAttributes> child : children.entrySet()) {
+            if (!child.getKey().equals(stoppedIn) && isUnprocessed(child.getKey(), childDepth)) {
+                unprocessed.put(child.getKey(), child.getValue());
+            }
+        }
+        progressEstimator.entriesResumed(depth, unprocessed.size(), countDirectories(unprocessed));
+    }
+
+    private static int countDirectories(final Map<Path, BasicFileAttributes> children) {
+        int directories = 0;
+        for (final BasicFileAttributes childAttributes : children.values()) {
+            if (isDirectory(childAttributes)) {
+                directories++;
+            }
+        }
+        return directories;
+    }
+
+    private static boolean isDirectory(final BasicFileAttributes attributes) {
+        return attributes != null && attributes.isDirectory();
+    }
+
+    /**
+     * Submits listings of the next directories to walk, until the prefetch limit is reached.
+     *
+     * @param toPrefetch the directories still to be listed, in the order they will be walked.
+     * @param prefetched the listings already submitted but not yet walked.
+     * @param depth the depth of the directories.
+     */
+    private void prefetch(final Deque<Path> toPrefetch,
+            final Map<Path, Future<DirectoryListing>> prefetched, final int depth) {
+        while (prefetched.size() < maxPrefetch && !toPrefetch.isEmpty()) {
+            final Path directory = toPrefetch.poll();
+            final String cursor = resumeCursor(directory, depth);
+            prefetched.put(directory, prefetchExecutor.submit(new Callable<DirectoryListing>() {
+                @Override
+                public DirectoryListing call() throws IOException {
+                    return listChildren(directory, cursor);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Cancels a listing which will not be walked, closing it if it has already been made.
+     * @param listing the listing.
+     */
+    private void discard(final Future<DirectoryListing> listing) {
+        if (!listing.cancel(true) && !listing.isCancelled()) {
+            try {
+                final DirectoryListing children = awaitListing(listing);
+                if (children != null) {
+                    children.close();
+                }
+            } catch (final IOException e) {
+                log.debug(e.getMessage(), e);
+            }
+        }
+    }
+
+    private static DirectoryListing awaitListing(final Future<DirectoryListing> listing)
+        throws IOException {
+        try {
+            return listing.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a directory listing.");
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Lists the children of a directory after a cursor in a single pass over the directory.
+     * The children are walked in name order, so the progress through a directory can be recorded
+     * as the name of the last child processed, unless file key order is set, in which case they are
+     * walked in inode order where the file system has inode numbers.
+     *
+     * @param directory the directory to list.
+     * @param after the name of the child to list the children after, or null to list from the first child.
+     * @return the listing of the directory, which must be closed, or null if access to the directory was denied.
+     * @throws IOException if the directory could not be listed for any other reason.
+     */
+    private DirectoryListing listChildren(final Path directory, final String after) throws IOException {
+        final boolean inodeOrder = fileKeyOrder
+                && directory.getFileSystem().supportedFileAttributeViews().contains(UNIX_VIEW);
+        try {
+            return DirectoryListing.list(directory, after, inodeOrder, listingSize, listingTempDir);
+        } catch (final AccessDeniedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param path a file or directory.
+     * @return the attributes of the file or directory, or null if they could not be read.
+     */
+    static BasicFileAttributes readAttributesQuietly(final Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (final IOException e) {
+            return null;
+        }
     }
 
     /**
@@ -182,7 +530,7 @@ public class FileWalker {
         if (fastForward) {
             if (!(depth < recoveryRoad.size() && recoveryRoad.get(depth).getFile().equals(dir))) {
                 // This directory is NOT on our road to recovery.
-                if (recoveryRoad.get(depth - 1).containsChild(dir)) {
+                if (isUnprocessed(dir, depth)) {
                     // This directory is yet to be processed
                     fastForward = false;
                 } else {
@@ -194,15 +542,33 @@ public class FileWalker {
         return processDir;
     }
 
+    /**
+     * Decides whether a child of a directory on the road to recovery still has to be processed.
+     * If the walk stopped inside another child of the directory which is still there, only the
+     * children after that one are left; otherwise the children after the last one processed are left.
+     *
+     * @param child a file or directory found while fast forwarding
+     * @param depth the depth of the child
+     * @return true if the child has not been processed yet
+     */
+    private boolean isUnprocessed(final Path child, final int depth) {
+        final ProgressEntry parent = recoveryRoad.get(depth - 1);
+        final Path stoppedIn = depth < recoveryRoad.size() ? recoveryRoad.get(depth).getFile() : null;
+        if (stoppedIn != null && !parent.hasChildList() && parent.isOrdered(stoppedIn)) {
+            return parent.compareChildren(child, stoppedIn) > 0;
+        }
+        return parent.containsChild(child);
+    }
+
     /**
      *
      * @param directory directory to handle.
+     * @param attributes the attributes of the directory, or null if they could not be read
      * @param depth depth to which to check
-     * @param children array of files
      * @throws IOException An error occurs in accessing the resource
      */
-    protected void handleDirectoryStart(final Path directory, final int depth, final Path[] children)
-        throws IOException {
+    protected void handleDirectoryStart(final Path directory, final BasicFileAttributes attributes,
+            final int depth) throws IOException {
         
         // if we are fast forwarding, then just keep going...
         if (fastForward) {
@@ -210,26 +576,22 @@ public class FileWalker {
         }
 
         final ProgressEntry parent = progress.peek();
-        final ResourceId directoryId = directoryHandler.handle(directory, depth, parent);
-        progress.push(new ProgressEntry(directory, directoryId, children));
+        final ResourceId directoryId = directoryHandler.handle(directory, attributes, depth, parent);
+        progress.push(new ProgressEntry(directory, directoryId));
     }
 
     /**
      *
      * @param file file to hanndle.
+     * @param attributes the attributes of the file, or null if they could not be read
      * @param depth level to whhich to check
      * @throws IOException  An error occurs in accessing the resource
      */
-    protected void handleFile(final Path file, final int depth)
+    protected void handleFile(final Path file, final BasicFileAttributes attributes, final int depth)
         throws IOException {
 
-        if (!SubmitterUtils.isFileSystemAvailable(file, topLevelAbsolutePath)) {
-            log.error(String.format(FILE_SYSTEM_UNAVAILABLE, file.toAbsolutePath().toString()));
-            throw new IOException(file.toAbsolutePath().toString());
-        }
-
         if (fastForward) {
-            if (recoveryRoad.get(depth - 1).containsChild(file)) {
+            if (isUnprocessed(file, depth)) {
                 // FOUND IT!!
                 fastForward = false;
             } else {
@@ -237,11 +599,42 @@ public class FileWalker {
             }
         }
 
-        final ProgressEntry progressEntry = progress.peek();
-        if (!Files.isDirectory(file)) {
-            fileHandler.handle(file, depth, progressEntry);
+        if (isBatched(attributes)) {
+            batchFiles.add(file);
+            batchAttributes.add(attributes);
+            batchDepth = depth;
+            if (batchFiles.size() >= maxBatchSize) {
+                handleBatch();
+            }
+        } else {
+            handleBatch();
+            final ProgressEntry progressEntry = progress.peek();
+            fileHandler.handle(file, attributes, depth, progressEntry);
+            progressEntry.markProcessed(file);
+        }
+    }
+
+    private boolean isBatched(final BasicFileAttributes attributes) {
+        return batchHandler != null && attributes != null && attributes.isRegularFile()
+                && attributes.size() <= maxBatchFileSize;
+    }
+
+    /**
+     * Hands any files waiting to be batched to the batch handler.
+     * @throws IOException if the batch handler failed.
+     */
+    private void handleBatch() throws IOException {
+        if (!batchFiles.isEmpty()) {
+            final ProgressEntry progressEntry = progress.peek();
+            final List<Path> files = new ArrayList<>(batchFiles);
+            final List<BasicFileAttributes> attributes = new ArrayList<>(batchAttributes);
+            batchFiles.clear();
+            batchAttributes.clear();
+            batchHandler.handle(files, attributes, batchDepth, progressEntry);
+            for (final Path file : files) {
+                progressEntry.markProcessed(file);
+            }
         }
-        progressEntry.removeChild(file);
     }
 
     /**
@@ -263,21 +656,33 @@ public class FileWalker {
         
         progress.pop();
         if (!progress.isEmpty()) {
-            progress.peek().removeChild(directory);
+            progress.peek().markProcessed(directory);
         }
     }
 
 
-    private void handleRestrictedDirectory(final Path directory, final int depth) throws IOException {
+    /**
+     * Handles a directory whose children could not be listed, either because access to it was denied
+     * or because listing it failed.
+     * @param directory the directory.
+     * @param attributes the attributes of the directory, or null if they could not be read
+     * @param depth the depth of the directory.
+     * @param handler the handler for the directory.
+     * @throws IOException if the handler failed.
+     */
+    private void handleUnlistedDirectory(final Path directory, final BasicFileAttributes attributes,
+            final int depth, final FileWalkerHandler handler) throws IOException {
+        directoryListed(depth, Collections.<Path, BasicFileAttributes>emptyMap(), false);
+
         // if we are fast forwarding, then just keep going...
         if (fastForward) {
             return;
         }
 
         ProgressEntry parent = progress.peek();
-        restrictedDirectoryHandler.handle(directory, depth, parent);
+        handler.handle(directory, attributes, depth, parent);
         if (!progress.isEmpty()) {
-            progress.peek().removeChild(directory);
+            progress.peek().markProcessed(directory);
         }
     }
     
@@ -288,6 +693,18 @@ public class FileWalker {
         this.fileHandler = fileHandler;
     }
     
+    /**
+     * Groups small files in the same directory into batches.
+     * @param handler the handler of batches of files, or null to handle every file on its own.
+     * @param maxFileSize the largest file in bytes which is batched.
+     * @param maxFiles the maximum number of files in a batch.
+     */
+    public void setFileBatchHandler(final FileWalkerBatchHandler handler, final long maxFileSize, final int maxFiles) {
+        this.batchHandler = maxFiles > 1 ? handler : null;
+        this.maxBatchFileSize = maxFileSize;
+        this.maxBatchSize = maxFiles;
+    }
+
     /**
      * @param directoryHandler the directoryHandler to set
      */
@@ -301,7 +718,70 @@ public class FileWalker {
     public void setRestrictedDirectoryHandler(final FileWalkerHandler restrictedDirectoryHandler) {
         this.restrictedDirectoryHandler = restrictedDirectoryHandler;
     }
+
+    /**
+     * @param directoryErrorHandler the handler for directories which could not be listed,
+     *            or null to end the walk with the error instead.
+     */
+    public void setDirectoryErrorHandler(final FileWalkerHandler directoryErrorHandler) {
+        this.directoryErrorHandler = directoryErrorHandler;
+    }
     
+    /**
+     * Lists the directories below the one being walked concurrently, ahead of the walk.
+     * @param executor the executor to list directories on, or null to list them on the walking thread.
+     * @param maxDirectories the maximum number of sibling directories to list ahead of the walk.
+     */
+    public void setDirectoryPrefetch(final ExecutorService executor, final int maxDirectories) {
+        this.prefetchExecutor = executor;
+        this.maxPrefetch = maxDirectories;
+    }
+
+    /**
+     * @param size the maximum number of children of a directory to hold in memory, and to walk at a time.
+     */
+    void setListingSize(final int size) {
+        this.listingSize = size;
+    }
+
+    /**
+     * @param tempDir the directory to spill the children of large directories to while they are walked,
+     *            or null for the default temporary directory.
+     */
+    public void setListingTempDir(final Path tempDir) {
+        this.listingTempDir = tempDir;
+    }
+
+    /**
+     * @param progressEstimator the estimator to report the directories listed by the walk to, or null.
+     */
+    public void setProgressEstimator(final ProgressEstimator progressEstimator) {
+        this.progressEstimator = progressEstimator;
+    }
+
+    /**
+     * Walks the children of each directory in the order of their file keys (inode numbers), rather than by name.
+     * This must be set before the walk starts, and is kept with its progress, so a walk resumes in the same order.
+     * @param fileKeyOrder whether to walk children in file key order.
+     */
+    public void setFileKeyOrder(final boolean fileKeyOrder) {
+        this.fileKeyOrder = fileKeyOrder;
+    }
+
+    /**
+     * @return true if the children of directories are walked in file key order.
+     */
+    boolean isFileKeyOrder() {
+        return fileKeyOrder;
+    }
+
+    /**
+     * @return true if the walk recurses into sub-directories
+     */
+    boolean isRecursive() {
+        return recursive;
+    }
+
     /**
      * @return the progress
      */
@@ -318,7 +798,12 @@ public class FileWalker {
 
 
     /**
-     * A progress entry.
+     * A progress entry for a directory being walked.
+     * <p>
+     * Progress through the children of the directory is recorded as the name of the last child
+     * processed, as children are walked in name order, or as its inode number and name when they
+     * are walked in inode order.  Entries loaded from checkpoints written by older versions hold
+     * the list of children still to process instead.
      * @author rflitcroft
      *
      */
@@ -333,8 +818,19 @@ public class FileWalker {
         
         private Path directory;
 
+        private String lastChild;
+
+        private Long lastInode;
+
+        // the inode numbers of the children being walked, while they are walked in inode order:
+        private Map<Path, Long> inodes;
 
         private Path[] children;
+        private int nextChild;
+
+        @XmlElementWrapper(name = "Children")
+        @XmlElement(name = "ChildUri")
+        private List<URI> legacyChildUris;
 
         /**
          * Default constructor.
@@ -345,30 +841,40 @@ public class FileWalker {
          * @param directory the File of the directory
          * @param id the ID of the directory
          * @param prefix the prefix of the directory
-         * @param children the directory's children
+         * @param lastChild the name of the last child processed, or null if none have been
          */
-        ProgressEntry(final Path directory, final long id, final String prefix, final Path[] children) {
+        ProgressEntry(final Path directory, final long id, final String prefix, final String lastChild) {
+            this(directory, id, prefix, lastChild, null);
+        }
+
+        /**
+         * @param directory the File of the directory
+         * @param id the ID of the directory
+         * @param prefix the prefix of the directory
+         * @param lastChild the name of the last child processed, or null if none have been
+         * @param lastInode the inode number of the last child processed, or null if the children
+         *        are not walked in inode order
+         */
+        ProgressEntry(final Path directory, final long id, final String prefix, final String lastChild,
+                final Long lastInode) {
             this.directory = directory;
             this.id = id;
             this.prefix = prefix;
-            this.children = children;
+            this.lastChild = lastChild;
+            this.lastInode = lastInode;
         }
 
-
-        
         /**
          * @param directory the File of the directory
          * @param resourceId the ResourceId of the directory
-         * @param children the directory's children
          */
-        ProgressEntry(final Path directory, final ResourceId resourceId, final Path[] children) {
+        ProgressEntry(final Path directory, final ResourceId resourceId) {
             if (resourceId == null) {
                 throw new IllegalArgumentException("Cannot construct a ProgressEntry with a null ResourceId");
             }
             this.directory = directory;
             this.id = resourceId.getId();
             this.prefix = resourceId.getPath();
-            this.children = children;
         }
 
         /**
@@ -389,11 +895,9 @@ public class FileWalker {
         }
 
         /**
-         * Gets a list of child URIs.
+         * Gets the URIs of the children still to process, if this entry holds them.
          * @return   A list of child URIs
          */
-        @XmlElementWrapper(name = "Children")
-        @XmlElement(name = "ChildUri")
         public List<URI> getChildUri() {
             final List<URI> result = new ArrayList<>();
             if (children != null) {
@@ -419,6 +923,17 @@ public class FileWalker {
             }
         }
 
+        /**
+         * Sets the children of an entry read from a legacy XML checkpoint, which lists the URIs of
+         * the children still to process.
+         * @param unmarshaller the unmarshaller
+         * @param parent the parent object
+         */
+        void afterUnmarshal(final Unmarshaller unmarshaller, final Object parent) {
+            setChildUri(legacyChildUris);
+            legacyChildUris = null;
+        }
+
         /**
          * @return the id of the entry
          */
@@ -448,15 +963,81 @@ public class FileWalker {
         public Path getFile() {
             return directory;
         }
+
+        /**
+         * @return the name of the last child processed, or null if none have been.
+         */
+        public String getLastChild() {
+            return lastChild;
+        }
+
+        /**
+         * @return the inode number of the last child processed, or null if the children are
+         *         not walked in inode order or none have been processed.
+         */
+        Long getLastInode() {
+            return lastInode;
+        }
+
+        /**
+         * Records the progress through the directory by the inode number and name of the last child
+         * processed, for directories whose children are walked in inode order.
+         * @param childInodes the inode numbers of the children of the directory.
+         */
+        void setInodes(final Map<Path, Long> childInodes) {
+            this.inodes = childInodes;
+        }
+
+        /**
+         * @param child a child of the directory.
+         * @return true if the position of the child in the walk through the directory is known.
+         */
+        boolean isOrdered(final Path child) {
+            return inodes == null || inodes.containsKey(child);
+        }
+
+        /**
+         * @param child1 a child of the directory.
+         * @param child2 another child of the directory.
+         * @return a negative number, zero or a positive number as the first child is walked before,
+         *         at the same time as or after the second.
+         */
+        int compareChildren(final Path child1, final Path child2) {
+            int result = 0;
+            if (inodes != null) {
+                result = Long.compare(childInode(child1), childInode(child2));
+            }
+            return result != 0 ? result : NAME_ORDER.compare(child1, child2);
+        }
+
+        private long childInode(final Path child) {
+            final Long inode = inodes.get(child);
+            return inode == null ? Long.MAX_VALUE : inode;
+        }
+
+        /**
+         * @return true if this entry holds the list of children still to process,
+         *         rather than the last child processed.
+         */
+        boolean hasChildList() {
+            return children != null;
+        }
         
         /**
-         * @param child the child uri to remove
+         * @param child the child which has been processed
          */
-        private void removeChild(final Path child) {
+        private void markProcessed(final Path child) {
+            lastChild = child.getFileName().toString();
+            if (inodes != null) {
+                lastInode = childInode(child);
+            }
             if (children != null) {
+                // children are usually processed in the order they are listed, so look for the next one first:
                 for (int i = 0; i < children.length; i++) {
-                    if (child.equals(children[i])) {
-                        children[i] = null;
+                    final int index = (nextChild + i) % children.length;
+                    if (child.equals(children[index])) {
+                        children[index] = null;
+                        nextChild = index + 1;
                         break;
                     }
                 }
@@ -466,17 +1047,23 @@ public class FileWalker {
         /**
          * 
          * @param child the child file to check
-         * @return true if the progress entry contains the child specified.
+         * @return true if the child specified has not been processed yet.
          */
         public boolean containsChild(final Path child) {
+            boolean unprocessed = false;
             if (children != null) {
-                for (int i = 0; i < children.length; i++) {
-                    if (child.equals(children[i])) {
-                        return true;
-                    }
+                for (int i = 0; i < children.length && !unprocessed; i++) {
+                    unprocessed = child.equals(children[i]);
                 }
+            } else if (lastChild == null) {
+                unprocessed = true;
+            } else if (lastInode != null && inodes != null) {
+                final int order = Long.compare(childInode(child), lastInode);
+                unprocessed = order > 0 || order == 0 && child.getFileName().toString().compareTo(lastChild) > 0;
+            } else {
+                unprocessed = child.getFileName().toString().compareTo(lastChild) > 0;
             }
-            return false;
+            return unprocessed;
         }
     }
 }
@@ -33,6 +33,7 @@ package uk.gov.nationalarchives.droid.submitter;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.submitter.FileWalker.ProgressEntry;
@@ -46,10 +47,12 @@ public interface FileWalkerHandler {
     /**
      * Handles a file walk event.
      * @param file the file or directory being handled
+     * @param attributes the attributes of the file or directory read during the walk, or null if unavailable
      * @param depth the depth n the hierarchy
      * @param parent the parent of the file or directory
      * @return the ID assigned to the handled file or directory
      * @throws IOException if the file IO failed.
      */
-    ResourceId handle(final Path file, int depth, ProgressEntry parent) throws IOException;
+    ResourceId handle(final Path file, BasicFileAttributes attributes, int depth, ProgressEntry parent)
+        throws IOException;
 }
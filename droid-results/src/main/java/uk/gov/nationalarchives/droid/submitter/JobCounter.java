@@ -38,6 +38,10 @@ import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Utility class for DroidCore to count in-flight jobs.
+ * <p>
+ * Jobs are counted with atomic counters alone.  The lock is only taken by threads
+ * waiting for the counters to reach zero, and by the thread which brings a counter
+ * to zero to wake them, so counting jobs in and out does not contend for it.
  * @author rflitcroft
  *
  */
@@ -53,38 +57,40 @@ class JobCounter {
      * Increments the job counter.
      */
     void increment() {
-        lock.lock();
-        try {
-            jobCount.incrementAndGet();
-        } finally {
-            lock.unlock();
-        }
+        jobCount.incrementAndGet();
+    }
+    
+    /**
+     * Adds a number of jobs to the job counter.
+     * @param jobs the number of jobs to add
+     */
+    void increment(int jobs) {
+        jobCount.addAndGet(jobs);
     }
     
     /**
      * Increments the post-process job counter.
      */
     void incrementPostProcess() {
-        lock.lock();
-        try {
-            postProcessCount.incrementAndGet();
-        } finally {
-            lock.unlock();
-        }
+        postProcessCount.incrementAndGet();
     }
 
     /**
      * Decrements the job counter.
      */
     void decrement() {
-        lock.lock();
-        try {
-            int cnt = jobCount.decrementAndGet();
-            if (cnt == 0) {
-                idle.signalAll();
-            }
-        } finally {
-            lock.unlock();
+        if (jobCount.decrementAndGet() == 0) {
+            signalIdle();
+        }
+    }
+    
+    /**
+     * Removes a number of jobs from the job counter.
+     * @param jobs the number of jobs to remove
+     */
+    void decrement(int jobs) {
+        if (jobCount.addAndGet(-jobs) == 0) {
+            signalIdle();
         }
     }
     
@@ -92,12 +98,31 @@ class JobCounter {
      * Decrements the post-process job counter.
      */
     void decrementPostProcess() {
+        if (postProcessCount.decrementAndGet() == 0) {
+            signalIdle();
+        }
+    }
+
+    /**
+     * @return the number of jobs in flight.
+     */
+    int getJobCount() {
+        return jobCount.get();
+    }
+
+    /**
+     * @return the number of jobs still being post-processed.
+     */
+    int getPostProcessCount() {
+        return postProcessCount.get();
+    }
+
+    // Waiters check the counters while holding the lock, so taking it here
+    // ensures none of them can miss the signal.
+    private void signalIdle() {
         lock.lock();
         try {
-            int cnt = postProcessCount.decrementAndGet();
-            if (cnt == 0) {
-                idle.signalAll();
-            }
+            idle.signalAll();
         } finally {
             lock.unlock();
         }
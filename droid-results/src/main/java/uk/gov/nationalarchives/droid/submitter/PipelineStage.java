@@ -0,0 +1,415 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import uk.gov.nationalarchives.droid.core.interfaces.AdaptiveThreadPoolExecutor;
+import uk.gov.nationalarchives.droid.core.interfaces.UtilisationBudget;
+import uk.gov.nationalarchives.droid.core.interfaces.VirtualThreadExecutor;
+
+/**
+ * A stage of the identification pipeline, with its own threads and a bounded queue
+ * of tasks handed off to it.  The threads of a stage are an {@link AdaptiveThreadPoolExecutor},
+ * unless the stage is given a fixed number of threads.  A stage can instead run each task
+ * on its own virtual thread, with a limit on the tasks running at once, in which case
+ * hand-offs wait for a task to finish rather than for space in a queue.
+ * <p>
+ * A thread outside the pipeline (e.g. the profile walker) which hands off a task
+ * blocks while the queue is full, so the pipeline applies back-pressure to it.
+ * A thread belonging to any pipeline stage never blocks on a hand-off: if the queue is full
+ * it runs the task itself.  Stages can hand tasks to each other in a cycle (archive expansion
+ * submits new requests), so blocking there could deadlock the pipeline.
+ * <p>
+ * The one exception is an expanding stage (e.g. archive expansion), whose threads wait for space
+ * when handing off to other stages, so a large archive feeds its entries to the other stages
+ * rather than identifying them all itself.  This cannot deadlock, as the threads of the other
+ * stages never wait.  Tasks waiting for an expanding stage are run in order of priority, so the
+ * entries of nested archives can be expanded before new archives are started.
+ */
+public final class PipelineStage {
+
+    // set while a virtual thread runs a task of a stage, as virtual threads cannot be PipelineThreads:
+    // true if the stage is an expanding stage.
+    private static final ThreadLocal<Boolean> IN_VIRTUAL_STAGE = new ThreadLocal<>();
+
+    private static final String INVALID_SIZE =
+            "Stage %s must have at least one thread and a queue size of at least one.";
+
+    private final String name;
+    private final AdaptiveThreadPoolExecutor executor;
+    private final VirtualThreadExecutor virtualExecutor;
+    private final boolean expanding;
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final AtomicLong inlineCount = new AtomicLong();
+
+    /**
+     * Creates a stage with a fixed number of threads.
+     * @param name the name of the stage, used to name its threads.
+     * @param threads the number of threads processing tasks in the stage.
+     * @param queueSize the maximum number of tasks waiting for a thread.
+     */
+    public PipelineStage(final String name, final int threads, final int queueSize) {
+        this(name, threads, threads, queueSize, AdaptiveThreadPoolExecutor.DEFAULT_TARGET_UTILISATION);
+    }
+
+    /**
+     * Creates a stage whose threads adapt to hold a target CPU utilisation.
+     * @param name the name of the stage, used to name its threads.
+     * @param threads the initial number of threads processing tasks in the stage.
+     * @param maxThreads the maximum number of threads, or zero to choose it from the number of cores.
+     * @param queueSize the maximum number of tasks waiting for a thread.
+     * @param targetUtilisation the target CPU utilisation, as a percentage.
+     */
+    public PipelineStage(final String name, final int threads, final int maxThreads, final int queueSize,
+            final int targetUtilisation) {
+        checkSizes(name, threads, queueSize);
+        this.name = name;
+        this.executor = new AdaptiveThreadPoolExecutor(name, threads, maxThreads, queueSize,
+                targetUtilisation, new StageThreadFactory(name, false));
+        this.virtualExecutor = null;
+        this.expanding = false;
+    }
+
+    /**
+     * Creates a stage whose threads adapt to hold its share of a CPU utilisation budget.
+     * @param name the name of the stage, used to name its threads.
+     * @param threads the initial number of threads processing tasks in the stage.
+     * @param maxThreads the maximum number of threads, or zero to choose it from the number of cores.
+     * @param queueSize the maximum number of tasks waiting for a thread.
+     * @param budget the CPU utilisation budget the stage shares with other stages.
+     */
+    public PipelineStage(final String name, final int threads, final int maxThreads, final int queueSize,
+            final UtilisationBudget budget) {
+        checkSizes(name, threads, queueSize);
+        this.name = name;
+        this.executor = new AdaptiveThreadPoolExecutor(threads, maxThreads, queueSize,
+                budget, new StageThreadFactory(name, false));
+        this.virtualExecutor = null;
+        this.expanding = false;
+    }
+
+    private PipelineStage(final String name, final AdaptiveThreadPoolExecutor executor,
+            final VirtualThreadExecutor virtualExecutor, final boolean expanding) {
+        this.name = name;
+        this.executor = executor;
+        this.virtualExecutor = virtualExecutor;
+        this.expanding = expanding;
+    }
+
+    /**
+     * Creates an expanding stage whose threads adapt to hold a target CPU utilisation.
+     * Its threads wait for space when handing off to other stages, and its queue is ordered by priority.
+     * @param name the name of the stage, used to name its threads.
+     * @param threads the initial number of threads processing tasks in the stage.
+     * @param maxThreads the maximum number of threads, or zero to choose it from the number of cores.
+     * @param queueSize the maximum number of tasks waiting for a thread.
+     * @param targetUtilisation the target CPU utilisation, as a percentage.
+     * @return the new stage.
+     */
+    public static PipelineStage expanding(final String name, final int threads, final int maxThreads,
+            final int queueSize, final int targetUtilisation) {
+        checkSizes(name, threads, queueSize);
+        return new PipelineStage(name, new AdaptiveThreadPoolExecutor(threads, maxThreads,
+                new PriorityTaskQueue(queueSize), targetUtilisation, new StageThreadFactory(name, true)), null, true);
+    }
+
+    /**
+     * Creates an expanding stage whose threads adapt to hold its share of a CPU utilisation budget.
+     * Its threads wait for space when handing off to other stages, and its queue is ordered by priority.
+     * @param name the name of the stage, used to name its threads.
+     * @param threads the initial number of threads processing tasks in the stage.
+     * @param maxThreads the maximum number of threads, or zero to choose it from the number of cores.
+     * @param queueSize the maximum number of tasks waiting for a thread.
+     * @param budget the CPU utilisation budget the stage shares with other stages.
+     * @return the new stage.
+     */
+    public static PipelineStage expanding(final String name, final int threads, final int maxThreads,
+            final int queueSize, final UtilisationBudget budget) {
+        checkSizes(name, threads, queueSize);
+        return new PipelineStage(name, new AdaptiveThreadPoolExecutor(threads, maxThreads,
+                new PriorityTaskQueue(queueSize), budget, new StageThreadFactory(name, true)), null, true);
+    }
+
+    private static void checkSizes(final String name, final int threads, final int queueSize) {
+        if (threads < 1 || queueSize < 1) {
+            throw new IllegalArgumentException(String.format(INVALID_SIZE, name));
+        }
+    }
+
+    /**
+     * Creates a stage which runs each task on its own virtual thread.
+     * @param name the name of the stage, used to name its threads.
+     * @param maxConcurrency the maximum number of tasks running at once in the stage.
+     * @return the new stage.
+     * @throws UnsupportedOperationException if the JVM does not support virtual threads.
+     */
+    public static PipelineStage withVirtualThreads(final String name, final int maxConcurrency) {
+        return new PipelineStage(name, null, new VirtualThreadExecutor(name, maxConcurrency), false);
+    }
+
+    /**
+     * Creates an expanding stage which runs each task on its own virtual thread.  Its threads wait
+     * when handing off to other stages.  As it does not queue tasks, they are not ordered by priority.
+     * @param name the name of the stage, used to name its threads.
+     * @param maxConcurrency the maximum number of tasks running at once in the stage.
+     * @return the new stage.
+     * @throws UnsupportedOperationException if the JVM does not support virtual threads.
+     */
+    public static PipelineStage expandingWithVirtualThreads(final String name, final int maxConcurrency) {
+        return new PipelineStage(name, null, new VirtualThreadExecutor(name, maxConcurrency), true);
+    }
+
+    /**
+     * Hands a task to the stage.
+     * @param task the task to run.
+     * @throws InterruptedException if a thread outside the pipeline was interrupted while
+     *         waiting for space in the queue.
+     * @throws RejectedExecutionException if the stage has been shut down.
+     */
+    public void execute(final Runnable task) throws InterruptedException {
+        execute(task, 0);
+    }
+
+    /**
+     * Hands a task to the stage, to run before the tasks waiting with a lower priority,
+     * if the stage orders its queue by priority.
+     * @param task the task to run.
+     * @param priority the priority of the task.
+     * @throws InterruptedException if a thread outside the pipeline, or of an expanding stage,
+     *         was interrupted while waiting for space in the queue.
+     * @throws RejectedExecutionException if the stage has been shut down.
+     */
+    public void execute(final Runnable task, final int priority) throws InterruptedException {
+        if (isPipelineThread() && !isExpandingThread()) {
+            if (!offer(task, priority)) {
+                inlineCount.incrementAndGet();
+                task.run();
+            }
+        } else {
+            try {
+                // blocks while the queue is full, or the maximum number of virtual threads are running.
+                if (virtualExecutor == null) {
+                    executor.execute(prioritised(task, priority));
+                } else {
+                    virtualExecutor.execute(inVirtualStage(task));
+                }
+            } catch (RejectedExecutionException e) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException(e.getMessage());
+                }
+                throw e;
+            }
+            recordQueueDepth();
+        }
+    }
+
+    /**
+     * @return true if the current thread belongs to a pipeline stage.
+     */
+    static boolean isPipelineThread() {
+        return Thread.currentThread() instanceof PipelineThread || IN_VIRTUAL_STAGE.get() != null;
+    }
+
+    /**
+     * @return true if the current thread belongs to an expanding stage.
+     */
+    static boolean isExpandingThread() {
+        final Thread current = Thread.currentThread();
+        return current instanceof PipelineThread ? ((PipelineThread) current).expanding
+                : Boolean.TRUE.equals(IN_VIRTUAL_STAGE.get());
+    }
+
+    private Runnable inVirtualStage(final Runnable task) {
+        return () -> {
+            IN_VIRTUAL_STAGE.set(expanding);
+            try {
+                task.run();
+            } finally {
+                IN_VIRTUAL_STAGE.remove();
+            }
+        };
+    }
+
+    private Runnable prioritised(final Runnable task, final int priority) {
+        return expanding ? PriorityTaskQueue.prioritised(task, priority) : task;
+    }
+
+    private boolean offer(final Runnable task, final int priority) {
+        checkNotShutdown();
+        boolean queued;
+        if (virtualExecutor == null) {
+            queued = executor.getQueue().offer(prioritised(task, priority));
+            if (queued) {
+                recordQueueDepth();
+            }
+        } else {
+            queued = virtualExecutor.tryExecute(inVirtualStage(task));
+        }
+        return queued;
+    }
+
+    private void checkNotShutdown() {
+        if (virtualExecutor == null ? executor.isShutdown() : virtualExecutor.isShutdown()) {
+            throw new RejectedExecutionException(String.format("Stage %s has been shut down.", name));
+        }
+    }
+
+    private void recordQueueDepth() {
+        final int depth = getQueueDepth();
+        int peak = peakQueueDepth.get();
+        while (depth > peak && !peakQueueDepth.compareAndSet(peak, depth)) {
+            peak = peakQueueDepth.get();
+        }
+    }
+
+    /**
+     * Stops the threads of the stage, discarding any queued tasks.
+     */
+    public void shutdownNow() {
+        if (virtualExecutor == null) {
+            executor.shutdownNow();
+        } else {
+            virtualExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the name of the stage.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true if the stage runs each task on its own virtual thread.
+     */
+    public boolean isVirtual() {
+        return virtualExecutor != null;
+    }
+
+    /**
+     * @return the current number of threads in the stage.
+     */
+    public int getThreads() {
+        return virtualExecutor == null ? executor.getCorePoolSize() : virtualExecutor.getActiveCount();
+    }
+
+    /**
+     * @return the maximum number of threads in the stage.
+     */
+    public int getMaxThreads() {
+        return virtualExecutor == null ? executor.getMaxThreads() : virtualExecutor.getMaxConcurrency();
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread of the stage.
+     *         Stages running virtual threads do not queue tasks.
+     */
+    public int getQueueDepth() {
+        return virtualExecutor == null ? executor.getQueue().size() : 0;
+    }
+
+    /**
+     * @return the largest number of tasks seen waiting for a thread of the stage.
+     */
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    /**
+     * @return the number of tasks currently being run by threads of the stage.
+     */
+    public int getActiveCount() {
+        return virtualExecutor == null ? executor.getActiveCount() : virtualExecutor.getActiveCount();
+    }
+
+    /**
+     * @return the number of tasks completed by threads of the stage.
+     */
+    public long getCompletedCount() {
+        return virtualExecutor == null ? executor.getCompletedTaskCount() : virtualExecutor.getCompletedTaskCount();
+    }
+
+    /**
+     * @return the number of tasks run by threads of other stages, because the stage was full.
+     */
+    public long getInlineCount() {
+        return inlineCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[threads=%d, queued=%d, peak=%d, active=%d, completed=%d, inline=%d]",
+                name, getThreads(), getQueueDepth(), getPeakQueueDepth(), getActiveCount(),
+                getCompletedCount(), getInlineCount());
+    }
+
+    /**
+     * A thread belonging to a pipeline stage.
+     */
+    private static final class PipelineThread extends Thread {
+
+        private final boolean expanding;
+
+        PipelineThread(final ThreadGroup group, final Runnable task, final String name, final boolean expanding) {
+            super(group, task, name);
+            this.expanding = expanding;
+        }
+    }
+
+    private static final class StageThreadFactory implements ThreadFactory {
+
+        private final ThreadGroup group;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String namePrefix;
+        private final boolean expanding;
+
+        private StageThreadFactory(final String stageName, final boolean expanding) {
+            this.expanding = expanding;
+            SecurityManager s = System.getSecurityManager();
+            group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
+            namePrefix = stageName + "-thread-";
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new PipelineThread(group, r, namePrefix + threadNumber.getAndIncrement(), expanding);
+            t.setDaemon(false);
+            t.setPriority(Thread.NORM_PRIORITY);
+            return t;
+        }
+    }
+}
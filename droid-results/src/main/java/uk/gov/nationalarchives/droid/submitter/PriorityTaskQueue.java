@@ -0,0 +1,360 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue of tasks waiting for a thread of a pipeline stage, which hands out the task
+ * with the highest priority first, and tasks of the same priority in the order they were queued.
+ * Tasks which are not {@link PrioritisedTask}s have priority zero.
+ */
+final class PriorityTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private static final Comparator<Entry> HIGHEST_PRIORITY_FIRST =
+            Comparator.<Entry>comparingInt(entry -> entry.priority).reversed().thenComparingLong(entry -> entry.sequence);
+
+    private final int capacity;
+    private final PriorityQueue<Entry> tasks;
+    // the number of tasks queued so far, which orders tasks of the same priority.
+    private long sequence;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * @param capacity the maximum number of tasks in the queue.
+     */
+    PriorityTaskQueue(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity of the queue must be at least one.");
+        }
+        this.capacity = capacity;
+        this.tasks = new PriorityQueue<>(capacity, HIGHEST_PRIORITY_FIRST);
+    }
+
+    @Override
+    public boolean offer(final Runnable task) {
+        checkNotNull(task);
+        lock.lock();
+        try {
+            final boolean added = tasks.size() < capacity;
+            if (added) {
+                enqueue(task);
+            }
+            return added;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(final Runnable task, final long timeout, final TimeUnit unit) throws InterruptedException {
+        checkNotNull(task);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (tasks.size() >= capacity && nanos > 0) {
+                nanos = notFull.awaitNanos(nanos);
+            }
+            final boolean added = tasks.size() < capacity;
+            if (added) {
+                enqueue(task);
+            }
+            return added;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(final Runnable task) throws InterruptedException {
+        checkNotNull(task);
+        lock.lockInterruptibly();
+        try {
+            while (tasks.size() >= capacity) {
+                notFull.await();
+            }
+            enqueue(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(final Runnable task) {
+        final int priority = task instanceof PrioritisedTask ? ((PrioritisedTask) task).priority : 0;
+        tasks.add(new Entry(task, priority, sequence++));
+        notEmpty.signal();
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (tasks.isEmpty() && nanos > 0) {
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (tasks.isEmpty()) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Runnable dequeue() {
+        final Entry entry = tasks.poll();
+        Runnable task = null;
+        if (entry != null) {
+            task = entry.task;
+            notFull.signal();
+        }
+        return task;
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            final Entry entry = tasks.peek();
+            return entry == null ? null : entry.task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(final Object task) {
+        lock.lock();
+        try {
+            boolean removed = false;
+            final Iterator<Entry> entries = tasks.iterator();
+            while (!removed && entries.hasNext()) {
+                removed = entries.next().task == task;
+                if (removed) {
+                    entries.remove();
+                    notFull.signal();
+                }
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(final Collection<? super Runnable> drained) {
+        return drainTo(drained, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super Runnable> drained, final int maxElements) {
+        lock.lock();
+        try {
+            int count = 0;
+            while (count < maxElements && !tasks.isEmpty()) {
+                drained.add(tasks.poll().task);
+                count++;
+            }
+            if (count > 0) {
+                notFull.signalAll();
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Iterates over a copy of the tasks in the queue, in no particular order.  Removing a task
+     * through the iterator removes it from the queue if it is still there, as
+     * {@link java.util.concurrent.ThreadPoolExecutor#purge()} relies on.
+     * @return an iterator over a copy of the tasks in the queue.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        lock.lock();
+        try {
+            final List<Runnable> copy = new ArrayList<>(tasks.size());
+            for (Entry entry : tasks) {
+                copy.add(entry.task);
+            }
+            return new SnapshotIterator(copy);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void checkNotNull(final Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("A task cannot be null.");
+        }
+    }
+
+    /**
+     * An iterator over a copy of the tasks in the queue, which removes tasks from the queue itself.
+     */
+    private final class SnapshotIterator implements Iterator<Runnable> {
+
+        private final List<Runnable> snapshot;
+        private int next;
+        private Runnable last;
+
+        private SnapshotIterator(final List<Runnable> snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < snapshot.size();
+        }
+
+        @Override
+        public Runnable next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = snapshot.get(next++);
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException("No task to remove.");
+            }
+            PriorityTaskQueue.this.remove(last);
+            last = null;
+        }
+    }
+
+    /**
+     * A task in the queue, with the order it was queued in.
+     */
+    private static final class Entry {
+
+        private final Runnable task;
+        private final int priority;
+        private final long sequence;
+
+        private Entry(final Runnable task, final int priority, final long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * @param task the task to run.
+     * @param priority the priority of the task: higher priorities run first.
+     * @return the task with its priority.
+     */
+    static Runnable prioritised(final Runnable task, final int priority) {
+        return new PrioritisedTask(task, priority);
+    }
+
+    /**
+     * A task with a priority.
+     */
+    static final class PrioritisedTask implements Runnable {
+
+        private final Runnable task;
+        private final int priority;
+
+        /**
+         * @param task the task to run.
+         * @param priority the priority of the task: higher priorities run first.
+         */
+        PrioritisedTask(final Runnable task, final int priority) {
+            this.task = task;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+}
@@ -35,12 +35,18 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.core.interfaces.VirtualThreadExecutor;
 import uk.gov.nationalarchives.droid.profile.AbstractProfileResource;
 import uk.gov.nationalarchives.droid.profile.ProfileSpec;
 import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitor;
@@ -51,6 +57,9 @@ import uk.gov.nationalarchives.droid.submitter.ProfileWalkState.WalkStatus;
  * Iterates over all resources in the profile spec.
  * This is NOT thread safe, and you must instantiate a new instance for
  * any concurrent walking.
+ * <p>
+ * If more than one walker thread is configured, the directories of each resource
+ * are listed concurrently on a pool of that many threads while it is walked.
  * 
  * @author rflitcroft
  * 
@@ -64,6 +73,12 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
     private FileEventHandler fileEventHandler;
     private DirectoryEventHandler directoryEventHandler;
     private ProgressMonitor progressMonitor;
+    private int walkerThreads = 1;
+    private boolean virtualThreads;
+    private boolean fileKeyOrder;
+    private long batchFileSize;
+    private int batchSize;
+    private Path tempDirLocation;
     
     private transient volatile boolean cancelled;
 
@@ -75,6 +90,29 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
     @Override
     public void walk(final ProfileSpec profileSpec, final ProfileWalkState walkState) throws IOException {
         
+        // A walk which finished before the profile was saved, while deferred identifications
+        // were still being submitted, is not walked again.
+        if (walkState.getWalkStatus() != WalkStatus.FINISHED) {
+            final ExecutorService prefetchExecutor = walkerThreads > 1 ? newPrefetchExecutor() : null;
+            try {
+                walk(profileSpec, walkState, prefetchExecutor);
+            } finally {
+                if (prefetchExecutor != null) {
+                    prefetchExecutor.shutdownNow();
+                }
+            }
+        }
+    }
+
+    private ExecutorService newPrefetchExecutor() {
+        return virtualThreads && VirtualThreadExecutor.isSupported()
+                ? new VirtualThreadExecutor("walker", walkerThreads)
+                : Executors.newFixedThreadPool(walkerThreads, new WalkerThreadFactory());
+    }
+
+    private void walk(final ProfileSpec profileSpec, final ProfileWalkState walkState,
+            final ExecutorService prefetchExecutor) throws IOException {
+
         final List<AbstractProfileResource> resources = profileSpec.getResources();
 
         boolean fastForward = false;
@@ -84,7 +122,11 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
             fastForward = true;
             startIndex = resources.indexOf(walkState.getCurrentResource());
         }
-        
+
+        // The resource being resumed was counted when it was first started.
+        final ProgressEstimator progressEstimator =
+                newProgressEstimator(resources, fastForward ? startIndex + 1 : startIndex);
+
         for (int i = startIndex; i < resources.size(); i++) {
             AbstractProfileResource resource = resources.get(i);
             if (!fastForward) {
@@ -99,46 +141,47 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
             if (resource.isDirectory()) {
                 FileWalker fileWalker;
                 if (!fastForward) {
-                    walkState.setCurrentFileWalker(new FileWalker(resource.getUri(), resource.isRecursive()));
+                    walkState.setCurrentFileWalker(newFileWalker(resource));
                 }
                 
                 fileWalker = walkState.getCurrentFileWalker();
+                setListing(fileWalker, prefetchExecutor, progressEstimator);
                 
-                fileWalker.setFileHandler(new FileWalkerHandler() {
-
+                setFileHandlers(fileWalker);
+                
+                fileWalker.setDirectoryHandler(new FileWalkerHandler() {
                     @Override
-                    public ResourceId handle(final Path file, final int depth, final ProgressEntry parent) {
-                        if (ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT < 0
-                                || depth <= ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT) {
+                    public ResourceId handle(final Path file, final BasicFileAttributes attributes, final int depth,
+                            final ProgressEntry parent) {
+                        if (ProgressEstimator.isTracked(depth)) {
                             progressMonitor.startJob(toURI(file));
                         }
                         ResourceId parentId = parent == null ? null : parent.getResourceId();
-                        fileEventHandler.onEvent(file, parentId, null);
-                        return null;
+                        return directoryEventHandler.onEvent(file, attributes, parentId, depth, false);
                     }
                 });
                 
-                fileWalker.setDirectoryHandler(new FileWalkerHandler() {
+                fileWalker.setRestrictedDirectoryHandler(new FileWalkerHandler() {
                     @Override
-                    public ResourceId handle(final Path file, final int depth, final ProgressEntry parent) {
-                        if (ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT < 0
-                                || depth <= ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT) {
+                    public ResourceId handle(final Path file, final BasicFileAttributes attributes, final int depth,
+                            final ProgressEntry parent) {
+                        if (ProgressEstimator.isTracked(depth)) {
                             progressMonitor.startJob(toURI(file));
                         }
                         ResourceId parentId = parent == null ? null : parent.getResourceId();
-                        return directoryEventHandler.onEvent(file, parentId, depth, false);
+                        return directoryEventHandler.onEvent(file, attributes, parentId, depth, true);
                     }
                 });
                 
-                fileWalker.setRestrictedDirectoryHandler(new FileWalkerHandler() {
+                fileWalker.setDirectoryErrorHandler(new FileWalkerHandler() {
                     @Override
-                    public ResourceId handle(final Path file, final  int depth, final ProgressEntry parent) {
-                        if (ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT < 0
-                                || depth <= ProfileSpecJobCounter.PROGRESS_DEPTH_LIMIT) {
+                    public ResourceId handle(final Path file, final BasicFileAttributes attributes, final int depth,
+                            final ProgressEntry parent) {
+                        if (ProgressEstimator.isTracked(depth)) {
                             progressMonitor.startJob(toURI(file));
                         }
                         ResourceId parentId = parent == null ? null : parent.getResourceId();
-                        return directoryEventHandler.onEvent(file, parentId, depth, true);
+                        return directoryEventHandler.onError(file, attributes, parentId, depth);
                     }
                 });
                 
@@ -152,7 +195,64 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
             fastForward = false;
         }
         walkState.setWalkStatus(WalkStatus.FINISHED);
-        progressMonitor.setTargetCount(progressMonitor.getIdentificationCount());
+        progressEstimator.finish();
+    }
+
+    private FileWalker newFileWalker(final AbstractProfileResource resource) {
+        // set only on new walks, as a resumed walk keeps the order it was started in.
+        final FileWalker fileWalker = new FileWalker(resource.getUri(), resource.isRecursive());
+        fileWalker.setFileKeyOrder(fileKeyOrder);
+        return fileWalker;
+    }
+
+    private void setListing(final FileWalker fileWalker, final ExecutorService prefetchExecutor,
+            final ProgressEstimator progressEstimator) {
+        fileWalker.setDirectoryPrefetch(prefetchExecutor, walkerThreads);
+        fileWalker.setProgressEstimator(progressEstimator);
+        fileWalker.setListingTempDir(tempDirLocation);
+    }
+
+    private void setFileHandlers(final FileWalker fileWalker) {
+        fileWalker.setFileHandler(new FileWalkerHandler() {
+
+            @Override
+            public ResourceId handle(final Path file, final BasicFileAttributes attributes, final int depth,
+                    final ProgressEntry parent) {
+                if (ProgressEstimator.isTracked(depth)) {
+                    progressMonitor.startJob(toURI(file));
+                }
+                ResourceId parentId = parent == null ? null : parent.getResourceId();
+                fileEventHandler.onEvent(file, attributes, parentId, null);
+                return null;
+            }
+        });
+        
+        fileWalker.setFileBatchHandler(new FileWalkerBatchHandler() {
+            @Override
+            public void handle(final List<Path> files, final List<BasicFileAttributes> attributes,
+                    final int depth, final ProgressEntry parent) {
+                if (ProgressEstimator.isTracked(depth)) {
+                    for (final Path file : files) {
+                        progressMonitor.startJob(toURI(file));
+                    }
+                }
+                ResourceId parentId = parent == null ? null : parent.getResourceId();
+                fileEventHandler.onBatch(files, attributes, parentId);
+            }
+        }, batchFileSize, batchSize);
+    }
+
+    private ProgressEstimator newProgressEstimator(final List<AbstractProfileResource> resources,
+            final int firstIndex) {
+        final ProgressEstimator progressEstimator = new ProgressEstimator(progressMonitor);
+        for (int i = firstIndex; i < resources.size(); i++) {
+            if (resources.get(i).isDirectory()) {
+                progressEstimator.addDirectory();
+            } else {
+                progressEstimator.addFile();
+            }
+        }
+        return progressEstimator;
     }
     
     /**
@@ -172,6 +272,50 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
         this.directoryEventHandler = directoryEventHandler;
     }
 
+    /**
+     * @param walkerThreads the number of threads used to list directories while walking
+     *            (1 lists them on the walking thread only).
+     */
+    public void setWalkerThreads(int walkerThreads) {
+        this.walkerThreads = walkerThreads;
+    }
+
+    /**
+     * @param virtualThreads whether to list directories on virtual threads, if the JVM supports them.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @param tempDirLocation the directory to spill the children of large directories to while they are walked.
+     */
+    public void setTempDirLocation(Path tempDirLocation) {
+        this.tempDirLocation = tempDirLocation;
+    }
+
+    /**
+     * @param fileKeyOrder whether to walk the files in each directory in inode order rather than by name.
+     */
+    public void setFileKeyOrder(boolean fileKeyOrder) {
+        this.fileKeyOrder = fileKeyOrder;
+    }
+
+    /**
+     * @param batchFileSize the largest file in bytes which is identified in a batch with others.
+     */
+    public void setBatchFileSize(long batchFileSize) {
+        this.batchFileSize = batchFileSize;
+    }
+
+    /**
+     * @param batchSize the maximum number of small files identified together as a batch
+     *            (1 or less identifies every file on its own).
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
     /**
      *  To cancel Profile speck walker.
      */
@@ -208,4 +352,16 @@ public class ProfileSpecWalkerImpl implements ProfileSpecWalker {
         return SubmitterUtils.toURI(file.toFile(), uriBuilder);
     }
 
+    private static final class WalkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "walker-thread-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
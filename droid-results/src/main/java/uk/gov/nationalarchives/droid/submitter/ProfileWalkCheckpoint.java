@@ -0,0 +1,197 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import uk.gov.nationalarchives.droid.profile.AbstractProfileResource;
+import uk.gov.nationalarchives.droid.profile.DirectoryProfileResource;
+import uk.gov.nationalarchives.droid.profile.FileProfileResource;
+import uk.gov.nationalarchives.droid.submitter.FileWalker.ProgressEntry;
+import uk.gov.nationalarchives.droid.submitter.ProfileWalkState.WalkStatus;
+
+/**
+ * Binary encoding of a profile walk state, used by the {@link ProfileWalkerDao}.
+ * <p>
+ * Directory entries are written from the root of the walk down to the directory
+ * currently being walked.
+ */
+final class ProfileWalkCheckpoint {
+
+    private static final int CHECKPOINT_MAGIC = 0x44574B50; // "DWKP"
+    private static final int CHECKPOINT_VERSION = 3;
+    private static final int FIRST_VERSION = 1; // written before the file key order of a walk was saved
+    private static final int SECOND_VERSION = 2; // written before the inode cursor of a directory was saved
+    private static final int NONE = -1; // the count written for a missing list
+
+    private ProfileWalkCheckpoint() {
+    }
+
+    /**
+     * Writes a walk state.
+     * @param walkState the walk state to write
+     * @param out the stream to write to
+     * @throws IOException if the walk state could not be written
+     */
+    static void write(final ProfileWalkState walkState, final DataOutputStream out)
+        throws IOException {
+        out.writeInt(CHECKPOINT_MAGIC);
+        out.writeInt(CHECKPOINT_VERSION);
+        out.writeUTF(walkState.getWalkStatus().name());
+
+        final AbstractProfileResource resource = walkState.getCurrentResource();
+        out.writeBoolean(resource != null);
+        if (resource != null) {
+            out.writeUTF(resource.getUri().toString());
+            out.writeBoolean(resource.isDirectory());
+            out.writeBoolean(resource.isRecursive());
+        }
+
+        final FileWalker fileWalker = walkState.getCurrentFileWalker();
+        out.writeBoolean(fileWalker != null);
+        if (fileWalker != null) {
+            out.writeUTF(fileWalker.getRootUri().toString());
+            out.writeBoolean(fileWalker.isRecursive());
+            out.writeBoolean(fileWalker.isFileKeyOrder());
+            final Deque<ProgressEntry> progress = fileWalker.progress();
+            out.writeInt(progress == null ? NONE : progress.size());
+            if (progress != null) {
+                // Written from the root down, so it can be read back by pushing each entry.
+                for (final Iterator<ProgressEntry> it = progress.descendingIterator(); it.hasNext();) {
+                    writeProgressEntry(it.next(), out);
+                }
+            }
+        }
+    }
+
+    private static void writeProgressEntry(final ProgressEntry entry, final DataOutputStream out)
+        throws IOException {
+        out.writeUTF(entry.getUri().toString());
+        out.writeLong(entry.getId());
+        writeNullableString(entry.getPrefix(), out);
+        writeNullableString(entry.getLastChild(), out);
+        final Long lastInode = entry.getLastInode();
+        out.writeBoolean(lastInode != null);
+        if (lastInode != null) {
+            out.writeLong(lastInode);
+        }
+        if (entry.hasChildList()) {
+            final List<URI> children = entry.getChildUri();
+            out.writeInt(children.size());
+            for (final URI child : children) {
+                out.writeUTF(child.toString());
+            }
+        } else {
+            out.writeInt(NONE);
+        }
+    }
+
+    /**
+     * Reads a walk state.
+     * @param in the stream to read from
+     * @return the walk state read
+     * @throws IOException if the stream is not a valid checkpoint
+     */
+    static ProfileWalkState read(final DataInputStream in) throws IOException {
+        if (in.readInt() != CHECKPOINT_MAGIC) {
+            throw new IOException("Not a profile walk checkpoint.");
+        }
+        final int version = in.readInt();
+        if (version < FIRST_VERSION || version > CHECKPOINT_VERSION) {
+            throw new IOException("Unsupported profile walk checkpoint version: " + version);
+        }
+        final ProfileWalkState walkState = new ProfileWalkState();
+        walkState.setWalkStatus(WalkStatus.valueOf(in.readUTF()));
+
+        if (in.readBoolean()) {
+            final Path resource = Paths.get(URI.create(in.readUTF()));
+            final boolean directory = in.readBoolean();
+            final boolean recursive = in.readBoolean();
+            walkState.setCurrentResource(directory
+                    ? new DirectoryProfileResource(resource, recursive) : new FileProfileResource(resource));
+        }
+
+        if (in.readBoolean()) {
+            final FileWalker fileWalker = new FileWalker(URI.create(in.readUTF()), in.readBoolean());
+            fileWalker.setFileKeyOrder(version != FIRST_VERSION && in.readBoolean());
+            final int entries = in.readInt();
+            if (entries != NONE) {
+                final Deque<ProgressEntry> progress = new ArrayDeque<>(entries);
+                for (int i = 0; i < entries; i++) {
+                    progress.push(readProgressEntry(in, version));
+                }
+                fileWalker.setProgress(progress);
+            }
+            walkState.setCurrentFileWalker(fileWalker);
+        }
+        return walkState;
+    }
+
+    private static ProgressEntry readProgressEntry(final DataInputStream in, final int version) throws IOException {
+        final Path directory = Paths.get(URI.create(in.readUTF()));
+        final long id = in.readLong();
+        final String prefix = readNullableString(in);
+        final String lastChild = readNullableString(in);
+        final Long lastInode = version > SECOND_VERSION && in.readBoolean() ? in.readLong() : null;
+        final ProgressEntry entry = new ProgressEntry(directory, id, prefix, lastChild, lastInode);
+        final int numChildren = in.readInt();
+        if (numChildren != NONE) {
+            final List<URI> children = new ArrayList<>(numChildren);
+            for (int i = 0; i < numChildren; i++) {
+                children.add(URI.create(in.readUTF()));
+            }
+            entry.setChildUri(children);
+        }
+        return entry;
+    }
+
+    private static void writeNullableString(final String value, final DataOutputStream out) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
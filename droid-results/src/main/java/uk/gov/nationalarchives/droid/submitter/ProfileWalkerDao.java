@@ -31,13 +31,17 @@
  */
 package uk.gov.nationalarchives.droid.submitter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.PropertyException;
 import javax.xml.bind.Unmarshaller;
 
 import org.slf4j.Logger;
@@ -47,13 +51,21 @@ import uk.gov.nationalarchives.droid.util.FileUtil;
 
 
 /**
+ * Saves and loads the state of a profile walk as a compact binary checkpoint.
+ * <p>
+ * The checkpoint holds one small record per directory being walked, so its size does
+ * not depend on the number of files in a directory, except for walks in file key order,
+ * which record the children of each directory still to process.  Checkpoints written as XML by
+ * older versions can still be loaded.
+ *
  * @author rflitcroft
  *
  */
 public class ProfileWalkerDao {
 
-    
-    private static final String FILE_WALKER_XML = "profile_progress.xml";
+    private static final String WALK_CHECKPOINT = "profile_progress.bin";
+    private static final String LEGACY_WALK_XML = "profile_progress.xml";
+    private static final String TEMP_SUFFIX = ".tmp";
 
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final JAXBContext context;
@@ -70,44 +82,55 @@ public class ProfileWalkerDao {
     }
     
     /**
-     * Loads a walkState from persistent XML.
+     * Loads a walkState from its persistent checkpoint.
      * @return walk state
      */
     public ProfileWalkState load() {
         
-        final Path xml = profileHomeDir.resolve(FILE_WALKER_XML);
-        if (Files.exists(xml)) {
+        final Path checkpoint = profileHomeDir.resolve(WALK_CHECKPOINT);
+        final Path xml = profileHomeDir.resolve(LEGACY_WALK_XML);
+        ProfileWalkState walkState;
+        if (Files.exists(checkpoint)) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+                walkState = ProfileWalkCheckpoint.read(in);
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        } else if (Files.exists(xml)) {
             try {
                 Unmarshaller unmarshaller = context.createUnmarshaller();
-                ProfileWalkState walkState = (ProfileWalkState) unmarshaller.unmarshal(xml.toFile());
-                return walkState;
+                walkState = (ProfileWalkState) unmarshaller.unmarshal(xml.toFile());
             } catch (JAXBException e) {
                 log.error(e.getErrorCode(), e);
                 throw new RuntimeException(e.getMessage(), e);
             }
+        } else {
+            walkState = new ProfileWalkState();
         }
-        
-        return new ProfileWalkState();
+        return walkState;
     }
 
     /**
-     * Saves a file walker to XML.
-     * @param walkState the file walker to save
+     * Saves a walk state to its checkpoint.  The checkpoint is written to a temporary
+     * file first, so a failed save does not destroy the previous checkpoint.
+     * @param walkState the walk state to save
      */
     public void save(ProfileWalkState walkState) {
         
-        final Path xml = profileHomeDir.resolve(FILE_WALKER_XML);
-        
+        final Path checkpoint = profileHomeDir.resolve(WALK_CHECKPOINT);
+        final Path tempCheckpoint = profileHomeDir.resolve(WALK_CHECKPOINT + TEMP_SUFFIX);
         try {
-            Marshaller m = context.createMarshaller();
-            m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-            m.marshal(walkState, xml.toFile());
-        } catch (PropertyException e) {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempCheckpoint)))) {
+                ProfileWalkCheckpoint.write(walkState, out);
+            }
+            Files.move(tempCheckpoint, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+            FileUtil.deleteQuietly(profileHomeDir.resolve(LEGACY_WALK_XML));
+        } catch (IOException e) {
             log.error(e.getMessage(), e);
             throw new RuntimeException(e);
-        } catch (JAXBException e) {
-            log.error(e.getErrorCode(), e);
-            throw new RuntimeException(e);
         }
     }
 
@@ -115,15 +138,19 @@ public class ProfileWalkerDao {
      * 
      */
     public void delete() {
-        final Path xml = profileHomeDir.resolve(FILE_WALKER_XML);
-        if (!FileUtil.deleteQuietly(xml)) {
-            String message = String.format("Could not delete file walker xml file: %s. "
-                    + "Will try to delete on exit.", xml.toAbsolutePath().toString());
+        delete(profileHomeDir.resolve(WALK_CHECKPOINT));
+        delete(profileHomeDir.resolve(LEGACY_WALK_XML));
+    }
+
+    private void delete(final Path checkpoint) {
+        if (Files.exists(checkpoint) && !FileUtil.deleteQuietly(checkpoint)) {
+            String message = String.format("Could not delete file walker checkpoint file: %s. "
+                    + "Will try to delete on exit.", checkpoint.toAbsolutePath().toString());
             log.warn(message);
-            xml.toFile().deleteOnExit();
+            checkpoint.toFile().deleteOnExit();
         }
     }
-    
+
     /**
      * @param profileHomeDir the profileHomeDir to set
      */
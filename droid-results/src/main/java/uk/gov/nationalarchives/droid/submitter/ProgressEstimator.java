@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitor;
+
+/**
+ * Estimates the number of identification jobs in a profile while it is walked,
+ * and publishes the estimate as the target count of a progress monitor.
+ * <p>
+ * Only jobs down to {@link #PROGRESS_DEPTH_LIMIT} are counted, as only those
+ * are tracked by the progress monitor.  The file walker reports each directory it
+ * lists; the jobs in directories which have been found but not yet listed are
+ * extrapolated from the average number of entries and sub-directories of the
+ * directories already listed at the same depth.  The target of a previous run of
+ * the profile, if there was one, is used as a lower bound until the walk finishes.
+ * <p>
+ * This is NOT thread safe, and must only be fed from the walking thread.
+ */
+public class ProgressEstimator {
+
+    /**
+     * Limit of depth to progress.
+     */
+    public static final int PROGRESS_DEPTH_LIMIT = 4; // If set to -1, do all files and folders.
+
+    private final ProgressMonitor progressMonitor;
+    private final long baseCount;
+    private final long previousTarget;
+    private final List<DepthStatistics> depths = new ArrayList<>();
+
+    private long knownJobs;
+    private long publishedTarget = ProgressMonitor.INDETERMINATE_PROGRESS;
+
+    /**
+     * Creates an estimator which starts from the current state of the progress monitor:
+     * jobs already counted are added to the estimate, and any target already set is
+     * used as a lower bound.
+     *
+     * @param progressMonitor the progress monitor to publish the estimate to.
+     */
+    public ProgressEstimator(ProgressMonitor progressMonitor) {
+        this.progressMonitor = progressMonitor;
+        this.baseCount = progressMonitor.getIdentificationCount();
+        this.previousTarget = progressMonitor.getTargetCount();
+    }
+
+    /**
+     * @param depth the depth of a resource in the walk.
+     * @return true if the progress of jobs at this depth is tracked.
+     */
+    public static boolean isTracked(final int depth) {
+        return PROGRESS_DEPTH_LIMIT < 0 || depth <= PROGRESS_DEPTH_LIMIT;
+    }
+
+    /**
+     * Adds a file resource of the profile, still to be submitted.
+     */
+    public void addFile() {
+        knownJobs++;
+        publish();
+    }
+
+    /**
+     * Adds a directory resource of the profile, still to be walked.
+     */
+    public void addDirectory() {
+        knownJobs++;
+        getDepth(0).unlisted++;
+        publish();
+    }
+
+    /**
+     * Records a directory which has been listed by the walk.
+     *
+     * @param depth the depth of the directory.
+     * @param entries the number of files and directories in the directory.
+     * @param directories the number of sub-directories in the directory.
+     * @param childrenWalked true if the children of the directory will be walked.
+     */
+    public void directoryListed(final int depth, final int entries, final int directories,
+            final boolean childrenWalked) {
+        final DepthStatistics stats = getDepth(depth);
+        if (stats.unlisted > 0) {
+            stats.unlisted--;
+        }
+        if (childrenWalked && isTracked(depth + 1)) {
+            stats.listed++;
+            addEntries(depth, entries, directories);
+        }
+        publish();
+    }
+
+    /**
+     * Records more entries of a directory which has already been recorded as listed,
+     * for a directory listed in parts whose children are walked.
+     *
+     * @param depth the depth of the directory.
+     * @param entries the number of files and directories in this part of the directory.
+     * @param directories the number of sub-directories in this part of the directory.
+     */
+    public void entriesListed(final int depth, final int entries, final int directories) {
+        if (isTracked(depth + 1)) {
+            addEntries(depth, entries, directories);
+            publish();
+        }
+    }
+
+    /**
+     * Records the entries still to be walked in a directory on the way back to where a resumed walk stopped.
+     * The directory itself was counted before the walk was resumed, and only some of its entries are left,
+     * so it is not taken into the average entries of the directories listed at its depth.
+     *
+     * @param depth the depth of the directory.
+     * @param entries the number of files and directories still to be walked in the directory.
+     * @param directories the number of sub-directories still to be walked in the directory.
+     */
+    public void entriesResumed(final int depth, final int entries, final int directories) {
+        if (entries > 0 && isTracked(depth + 1)) {
+            knownJobs += entries;
+            getDepth(depth + 1).unlisted += directories;
+            publish();
+        }
+    }
+
+    private void addEntries(final int depth, final int entries, final int directories) {
+        final DepthStatistics stats = getDepth(depth);
+        stats.entries += entries;
+        stats.directories += directories;
+        knownJobs += entries;
+        getDepth(depth + 1).unlisted += directories;
+    }
+
+    /**
+     * Publishes the exact number of jobs found, once the walk has finished.
+     */
+    public void finish() {
+        publishedTarget = baseCount + knownJobs;
+        progressMonitor.setTargetCount(publishedTarget);
+    }
+
+    /**
+     * @return the current estimate of the number of jobs in the profile.
+     */
+    public long getEstimate() {
+        double remaining = 0;
+        double expectedBelow = 0;
+        for (int depth = depths.size() - 1; depth >= 0; depth--) {
+            final DepthStatistics stats = depths.get(depth);
+            // The expected number of jobs below a directory at this depth:
+            expectedBelow = stats.listed == 0 ? 0
+                    : (stats.entries + stats.directories * expectedBelow) / stats.listed;
+            remaining += stats.unlisted * expectedBelow;
+        }
+        return Math.max(baseCount + knownJobs + Math.round(remaining), previousTarget);
+    }
+
+    private void publish() {
+        final long estimate = getEstimate();
+        if (estimate != publishedTarget) {
+            publishedTarget = estimate;
+            progressMonitor.setTargetCount(estimate);
+        }
+    }
+
+    private DepthStatistics getDepth(final int depth) {
+        while (depths.size() <= depth) {
+            depths.add(new DepthStatistics());
+        }
+        return depths.get(depth);
+    }
+
+    /**
+     * The directories found and listed at a depth of the walk.
+     */
+    private static final class DepthStatistics {
+        private long unlisted;
+        private long listed;
+        private long entries;
+        private long directories;
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitor;
+import uk.gov.nationalarchives.droid.results.handlers.ResultHandlerDao;
+
+/**
+ * Re-submits the resources in a profile whose identification may have changed
+ * after a new signature file has been installed.
+ * <p>
+ * Nodes are re-identified in place, keeping their ids.  Resources inside archives
+ * cannot be submitted on their own, so the file which contains them is re-identified
+ * instead, after its old archive contents have been removed.
+ * <p>
+ * It also submits the nodes whose identification was deferred while a profile was walked,
+ * a page at a time, so the second phase of a deferred profile can resume from whichever
+ * nodes are still pending.
+ */
+public class ReidentificationSubmitter {
+
+    private static final int FIVE = 5;
+    private static final String FILE_SCHEME = "file";
+    private static final int PAGE_SIZE = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private FileEventHandler fileEventHandler;
+    private ResultHandlerDao resultHandlerDao;
+    private ProgressMonitor progressMonitor;
+
+    /**
+     * Re-submits all the nodes which may be affected by changes to a set of formats.
+     *
+     * @param changedPuids the PUIDs whose signatures, priorities or extensions changed.
+     * @param changedExtensions the upper-cased extensions of the changed formats.
+     * @return the number of resources submitted for re-identification.
+     */
+    public int reidentify(Collection<String> changedPuids, Collection<String> changedExtensions) {
+        if (changedPuids.isEmpty()) {
+            return 0;
+        }
+        resultHandlerDao.commit();
+        // Archive entries resolve to the file containing them, which is only submitted once:
+        final Set<Long> submittedContainers = new HashSet<Long>();
+        int submitted = 0;
+        long lastNodeId = 0;
+        List<ProfileResourceNode> affected =
+                resultHandlerDao.findNodesToReidentify(changedPuids, changedExtensions, lastNodeId, PAGE_SIZE);
+        while (!affected.isEmpty() && !Thread.currentThread().isInterrupted()) {
+            for (ProfileResourceNode node : affected) {
+                final ProfileResourceNode fileNode = getFileNode(node);
+                if (fileNode != null && !submittedContainers.contains(fileNode.getId())) {
+                    resubmit(fileNode, submittedContainers);
+                    submitted++;
+                }
+                lastNodeId = node.getId();
+            }
+            // The target grows as more affected nodes are found:
+            progressMonitor.setTargetCount(submitted);
+            affected = resultHandlerDao.findNodesToReidentify(changedPuids, changedExtensions, lastNodeId, PAGE_SIZE);
+        }
+        log.info(String.format("Re-identifying %d resources affected by %d changed formats.",
+                submitted, changedPuids.size()));
+        return submitted;
+    }
+
+    private void resubmit(ProfileResourceNode node, Set<Long> submittedContainers) {
+        if (node.getMetaData().getResourceType() == ResourceType.CONTAINER) {
+            submittedContainers.add(node.getId());
+            resultHandlerDao.deleteDescendants(node);
+        }
+        final Path file = Paths.get(node.getUri());
+        fileEventHandler.onEvent(file, getParentResourceId(node), new ResourceId(node.getId(), node.getPrefix()));
+    }
+
+    /**
+     * Submits all the nodes whose identification was deferred, keeping their ids.
+     *
+     * @return the number of resources submitted for identification.
+     */
+    public int identifyPending() {
+        resultHandlerDao.commit();
+        int submitted = 0;
+        long lastNodeId = 0;
+        List<ProfileResourceNode> pending = resultHandlerDao.findPendingNodes(lastNodeId, PAGE_SIZE);
+        while (!pending.isEmpty() && !Thread.currentThread().isInterrupted()) {
+            for (ProfileResourceNode node : pending) {
+                final Path file = Paths.get(node.getUri());
+                fileEventHandler.onEvent(file, getParentResourceId(node), new ResourceId(node.getId(), node.getPrefix()));
+                lastNodeId = node.getId();
+            }
+            submitted += pending.size();
+            pending = resultHandlerDao.findPendingNodes(lastNodeId, PAGE_SIZE);
+        }
+        if (submitted > 0) {
+            log.info(String.format("Submitted %d resources whose identification was deferred.", submitted));
+        }
+        return submitted;
+    }
+
+    private ProfileResourceNode getFileNode(ProfileResourceNode node) {
+        ProfileResourceNode fileNode = node;
+        while (fileNode != null && !FILE_SCHEME.equals(fileNode.getUri().getScheme())) {
+            final Long parentId = fileNode.getParentId();
+            fileNode = parentId == null ? null : resultHandlerDao.loadNode(parentId);
+        }
+        return fileNode;
+    }
+
+    private ResourceId getParentResourceId(ProfileResourceNode node) {
+        ResourceId id = null;
+        Long parentId = node.getParentId();
+        if (parentId != null) {
+            String parentPrefix = node.getPrefix();
+            if (parentPrefix.length() >= FIVE) {
+                parentPrefix = parentPrefix.substring(0, parentPrefix.length() - FIVE);
+            } else {
+                parentPrefix = "";
+            }
+            id = new ResourceId(parentId, parentPrefix);
+        }
+        return id;
+    }
+
+    /**
+     * @param fileEventHandler the fileEventHandler to set
+     */
+    public void setFileEventHandler(FileEventHandler fileEventHandler) {
+        this.fileEventHandler = fileEventHandler;
+    }
+
+    /**
+     * @param resultHandlerDao the resultHandlerDao to set
+     */
+    public void setResultHandlerDao(ResultHandlerDao resultHandlerDao) {
+        this.resultHandlerDao = resultHandlerDao;
+    }
+
+    /**
+     * @param progressMonitor the progress monitor to report the number of re-identified resources to
+     */
+    public void setProgressMonitor(ProgressMonitor progressMonitor) {
+        this.progressMonitor = progressMonitor;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lane through which requests enter the identification pipeline, admitting at most
+ * a fixed number of its requests into the pipeline at once.
+ * <p>
+ * Requests which cannot be admitted wait in the lane, without holding up requests in other lanes.
+ * A thread outside the pipeline blocks while the lane already has its maximum number of requests
+ * waiting.  A thread belonging to a pipeline stage (e.g. expanding an archive) never blocks.
+ * <p>
+ * The lane measures the latency of its requests, from entering the lane to finishing,
+ * and the rate at which it reads them.
+ */
+public final class SchedulingLane {
+
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private final String name;
+    private final int maxInFlight;
+    private final int maxWaiting;
+    private final Deque<Runnable> waiting = new ArrayDeque<>();
+    private int inFlight;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong firstAdmittedNanos = new AtomicLong();
+    private volatile long lastFinishedNanos;
+
+    /**
+     * @param name the name of the lane.
+     * @param maxInFlight the maximum number of requests of the lane in the pipeline at once.
+     * @param maxWaiting the number of waiting requests above which threads outside the pipeline block.
+     */
+    public SchedulingLane(final String name, final int maxInFlight, final int maxWaiting) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Lane %s must admit at least one request at once.", name));
+        }
+        this.name = name;
+        this.maxInFlight = maxInFlight;
+        this.maxWaiting = maxWaiting;
+    }
+
+    /**
+     * Admits a request into the pipeline, or queues it until a request of the lane finishes.
+     * @param admission hands the request to the first stage of the pipeline.
+     * @throws InterruptedException if a thread outside the pipeline was interrupted while
+     *         waiting for space in the lane.  The request has not been admitted.
+     */
+    public void submit(final Runnable admission) throws InterruptedException {
+        final boolean mayBlock = !PipelineStage.isPipelineThread();
+        boolean admit;
+        synchronized (this) {
+            while (mayBlock && inFlight >= maxInFlight && waiting.size() >= maxWaiting) {
+                wait();
+            }
+            admit = inFlight < maxInFlight;
+            if (admit) {
+                inFlight++;
+            } else {
+                waiting.add(admission);
+            }
+        }
+        if (admit) {
+            firstAdmittedNanos.compareAndSet(0, System.nanoTime());
+            admission.run();
+        }
+    }
+
+    /**
+     * Records that an admitted request has finished, and admits the next waiting request, if any.
+     * @param latencyNanos the time from the request entering the lane to finishing.
+     */
+    public void finished(final long latencyNanos) {
+        finished(latencyNanos, 0);
+    }
+
+    /**
+     * Records that an admitted request has finished, and admits the next waiting request, if any.
+     * @param latencyNanos the time from the request entering the lane to finishing.
+     * @param size the number of bytes in the request.
+     */
+    public void finished(final long latencyNanos, final long size) {
+        bytes.addAndGet(size);
+        lastFinishedNanos = System.nanoTime();
+        completed.incrementAndGet();
+        totalLatencyNanos.addAndGet(latencyNanos);
+        long max = maxLatencyNanos.get();
+        while (latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+            max = maxLatencyNanos.get();
+        }
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                inFlight--;
+            }
+            notifyAll();
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    /**
+     * @return the name of the lane.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the maximum number of requests of the lane in the pipeline at once.
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return the number of requests of the lane currently in the pipeline.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the number of requests waiting to enter the pipeline.
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * @return the number of requests of the lane which have finished.
+     */
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * @return the mean time in milliseconds from a request entering the lane to finishing.
+     */
+    public double getMeanLatencyMillis() {
+        final long count = completed.get();
+        return count == 0 ? 0 : totalLatencyNanos.get() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the longest time in milliseconds from a request entering the lane to finishing.
+     */
+    public long getMaxLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+    }
+
+    /**
+     * @return the number of bytes in the requests of the lane which have finished.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return the rate at which the lane's requests were read, in megabytes per second, from the first
+     *         request being admitted to the last finishing.
+     */
+    public double getMegabytesPerSecond() {
+        final long first = firstAdmittedNanos.get();
+        final long elapsed = lastFinishedNanos - first;
+        return first == 0 || elapsed <= 0 ? 0
+                : bytes.get() / MEGABYTE / ((double) elapsed / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[inFlight=%d, waiting=%d, completed=%d, meanLatencyMs=%.1f, maxLatencyMs=%d, "
+                + "MBps=%.1f]", name, getInFlight(), getWaiting(), getCompletedCount(), getMeanLatencyMillis(),
+                getMaxLatencyMillis(), getMegabytesPerSecond());
+    }
+}
@@ -33,20 +33,26 @@ package uk.gov.nationalarchives.droid.submitter;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import uk.gov.nationalarchives.droid.core.interfaces.AdaptiveThreadPoolExecutor;
 import uk.gov.nationalarchives.droid.core.interfaces.AsynchDroid;
+import uk.gov.nationalarchives.droid.core.interfaces.DeviceThroughput;
 import uk.gov.nationalarchives.droid.core.interfaces.DroidCore;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationErrorType;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationException;
@@ -56,18 +62,35 @@ import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollect
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
+import uk.gov.nationalarchives.droid.core.interfaces.UtilisationBudget;
+import uk.gov.nationalarchives.droid.core.interfaces.VirtualThreadExecutor;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveFormatResolver;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveHandlerFactory;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifierFactory;
+import uk.gov.nationalarchives.droid.core.interfaces.archive.RequestZipFiles;
 import uk.gov.nationalarchives.droid.core.interfaces.control.PauseBefore;
 import uk.gov.nationalarchives.droid.core.interfaces.hash.HashGenerator;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.profile.throttle.SubmissionThrottle;
 
 /**
  * Acts as a DroidCore proxy by keeping track of in-flight identification
  * requests. Requests are removed from the queue when the droid ID task finishes
  * All requests should come through this pipeline.
+ * <p>
+ * Requests pass through a pipeline of stages: opening, binary signature matching, hashing,
+ * container identification, archive expansion and persistence of the results.  Each stage has
+ * its own threads and a bounded queue, so I/O bound and CPU bound stages can be sized independently.
+ * The stages (other than persistence) start with their configured number of threads, and adapt it
+ * to hold the target CPU utilisation, up to the maximum number of threads.
+ * If virtual threads are enabled and the JVM supports them, these stages instead run each
+ * request on its own virtual thread, up to a limit of requests in each stage.
+ * Stages which a request does not need are skipped.
+ * <p>
+ * Requests enter the pipeline through a lane chosen by their size.  Only a few large files are
+ * identified at once, so they cannot occupy every thread of a stage while small files wait behind them.
  * @author rflitcroft
  * 
  *
@@ -84,12 +107,18 @@ public class SubmissionGateway implements AsynchDroid {
      */
     private static final String ARCHIVE_ERROR = "Could not process the archival format(%s): %s\t%s\t%s";
 
+    private static final int DEFAULT_IO_THREADS = 4;
+    private static final int DEFAULT_STAGE_THREADS = 2;
+    private static final int DEFAULT_STAGE_QUEUE_SIZE = 64;
+    private static final int DEFAULT_VIRTUAL_THREAD_LIMIT = 1024;
+    private static final long DEFAULT_LARGE_FILE_THRESHOLD = 100L * 1024 * 1024;
+    private static final int LARGE_FILE_SHARE = 4;
+
     //CHECKSTYLE:ON    
     private final Logger log = LoggerFactory.getLogger(getClass());
 
     private DroidCore droidCore;
     private ResultHandler resultHandler;
-    private ExecutorService executorService;
     private boolean processArchives;
     private boolean processWebArchives;
     private ArchiveFormatResolver archiveFormatResolver;
@@ -102,11 +131,31 @@ public class SubmissionGateway implements AsynchDroid {
     private boolean matchAllExtensions;
     private long maxBytesToScan = -1;
     
+    private int openThreads = DEFAULT_IO_THREADS;
+    private int matchThreads = Runtime.getRuntime().availableProcessors();
+    private int hashThreads = DEFAULT_STAGE_THREADS;
+    private int containerThreads = DEFAULT_STAGE_THREADS;
+    private int archiveThreads = DEFAULT_STAGE_THREADS;
+    private int persistThreads = 1;
+    private int stageQueueSize = DEFAULT_STAGE_QUEUE_SIZE;
+    private int maxThreads;
+    private int targetUtilisation = AdaptiveThreadPoolExecutor.DEFAULT_TARGET_UTILISATION;
+    private boolean virtualThreads;
+    private int virtualThreadLimit = DEFAULT_VIRTUAL_THREAD_LIMIT;
+    private long largeFileThreshold = DEFAULT_LARGE_FILE_THRESHOLD;
+    private int largeFileLimit;
+    private int deviceLimit;
+    private volatile Pipeline pipeline;
+
     private SubmissionQueue submissionQueue;
     private final JobCounter jobCounter = new JobCounter();
     private ReplaySubmitter replaySubmitter;
+    private SubmissionThrottle submissionThrottle;
     
-    private Set<IdentificationRequest> requests = Collections.synchronizedSet(new HashSet<IdentificationRequest>());
+    private final Set<IdentificationRequest> requests = ConcurrentHashMap.newKeySet();
+
+    // the archive job the current thread is expanding, if any.
+    private final ThreadLocal<Job<?>> expanding = new ThreadLocal<>();
 
     
     /**
@@ -115,24 +164,84 @@ public class SubmissionGateway implements AsynchDroid {
     @Override
     @PauseBefore
     public Future<IdentificationResultCollection> submit(final IdentificationRequest request) {
+        return start(new Job<Object>(request, null));
+    }
+
+    /**
+     * Opens the request on a thread of the open stage, then submits it.
+     * Errors opening the request are reported to the result handler.
+     * {@inheritDoc}
+     */
+    @Override
+    @PauseBefore
+    public <T> Future<IdentificationResultCollection> submit(final IdentificationRequest<T> request,
+            final T source) {
+        return start(new Job<T>(request, source));
+    }
+
+    /**
+     * Opens, matches and saves the requests together, on one thread of each stage.
+     * Requests which turn out to be containers or archives continue through the pipeline on their own.
+     * {@inheritDoc}
+     */
+    @Override
+    @PauseBefore
+    public <T> Future<List<IdentificationResultCollection>> submitBatch(
+            final List<IdentificationRequest<T>> batch, final List<T> sources) {
+        final int numRequests = batch.size();
+        final List<Job<T>> jobs = new ArrayList<>(numRequests);
+        for (int i = 0; i < numRequests; i++) {
+            jobs.add(new Job<T>(batch.get(i), sources.get(i)));
+        }
+        jobCounter.increment(numRequests);
+        for (Job<T> job : jobs) {
+            track(job.request);
+        }
+        final BatchJob<T> batchJob = new BatchJob<>(jobs);
+        // the files of a batch come from one directory, so are read from one device:
+        batchJob.enter(pipeline().smallFiles, jobs.isEmpty() ? null : pipeline().devices.laneFor(jobs.get(0).source));
+        return batchJob.future;
+    }
+
+    private Future<IdentificationResultCollection> start(final Job<?> job) {
+        final Job<?> parent = expanding.get();
+        if (parent != null) {
+            parent.retain();
+            job.parent = parent;
+            job.depth = parent.depth + 1;
+        }
         jobCounter.increment();
+        track(job.request);
+        job.enter(pipeline().laneFor(job.request), pipeline().devices.laneFor(job.source));
+        return job.future;
+    }
+
+    private void track(final IdentificationRequest<?> request) {
         requests.add(request);
-        
-        // old code blocking identification:
-        Callable<IdentificationResultCollection> callable = new Callable<IdentificationResultCollection>() {
-            @Override
-            public IdentificationResultCollection call() throws IOException {
-                droidCore.setMaxBytesToScan(maxBytesToScan);
-                IdentificationResultCollection results = droidCore.matchBinarySignatures(request);
-                return results;
-            }
-        };
-        
-        FutureTask<IdentificationResultCollection> task = new SubmissionFutureTask(callable, request);
-        executorService.submit(task);
-        return task;
+        if (submissionThrottle != null) {
+            submissionThrottle.started();
+        }
     }
-    
+
+    private void reportFinished(final IdentificationRequest<?> request, final long readNanos) {
+        if (submissionThrottle != null) {
+            submissionThrottle.finished(readNanos, Math.max(0, sizeOf(request)));
+        }
+    }
+
+    private long sizeOf(final IdentificationRequest<?> request) {
+        Long size = null;
+        try {
+            final RequestMetaData metaData = request.getRequestMetaData();
+            size = metaData == null ? null : metaData.getSize();
+        //CHECKSTYLE:OFF - a request whose size is unknown is treated as a small file.
+        } catch (RuntimeException e) {
+        //CHECKSTYLE:ON
+            log.debug(e.getMessage(), e);
+        }
+        return size == null ? -1 : size;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -140,89 +249,591 @@ public class SubmissionGateway implements AsynchDroid {
     public void replay() {
         replaySubmitter.replay();
     }
-    
-    private final class SubmissionFutureTask extends FutureTask<IdentificationResultCollection> {
 
-        private IdentificationRequest request;
-        
-        SubmissionFutureTask(Callable<IdentificationResultCollection> callable, IdentificationRequest request) {
-            super(callable);
+    /**
+     * @return the stages of the identification pipeline, which report their queue depths.
+     */
+    public List<PipelineStage> getStages() {
+        return pipeline().all();
+    }
+
+    /**
+     * @return the lanes through which requests enter the pipeline, which report their latencies,
+     *         followed by the lanes of each device read from so far.
+     */
+    public List<SchedulingLane> getLanes() {
+        final List<SchedulingLane> lanes = new ArrayList<>(pipeline().lanes());
+        lanes.addAll(pipeline().devices.lanes());
+        return lanes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<DeviceThroughput> getDeviceThroughput() {
+        final List<DeviceThroughput> devices = new ArrayList<>();
+        final Pipeline stages = pipeline;
+        if (stages != null) {
+            for (SchedulingLane device : stages.devices.lanes()) {
+                devices.add(new DeviceThroughput(device.getName(), device.getCompletedCount(), device.getBytes(),
+                        device.getMegabytesPerSecond(), device.getMeanLatencyMillis()));
+            }
+        }
+        return devices;
+    }
+
+    private Pipeline pipeline() {
+        Pipeline result = pipeline;
+        if (result == null) {
+            synchronized (this) {
+                result = pipeline;
+                if (result == null) {
+                    result = new Pipeline();
+                    pipeline = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The stages of the identification pipeline.
+     */
+    private final class Pipeline {
+        // initialised first, as the stages below depend on it:
+        private final boolean virtual = virtualThreads && VirtualThreadExecutor.isSupported();
+        // the stages aim for the target utilisation together, rather than each of them on its own:
+        private final UtilisationBudget budget = new UtilisationBudget(targetUtilisation);
+        private final PipelineStage open = newStage("open", openThreads);
+        private final PipelineStage match = newStage("match", matchThreads);
+        private final PipelineStage hash = newStage("hash", hashThreads);
+        private final PipelineStage container = newStage("container", containerThreads);
+        // archive threads wait to hand entries on, and expand the deepest nested archives first:
+        private final PipelineStage archive = newExpandingStage("archive", archiveThreads);
+        // results are written in batches, so more threads would only contend for them:
+        private final PipelineStage persist = new PipelineStage("persist", persistThreads, stageQueueSize);
+        private final SchedulingLane smallFiles = new SchedulingLane("small-files", Integer.MAX_VALUE, 0);
+        private final SchedulingLane largeFiles = new SchedulingLane("large-files",
+                largeFileLimit > 0 ? largeFileLimit : Math.max(1, matchThreads / LARGE_FILE_SHARE), stageQueueSize);
+        private final DeviceLanes devices = new DeviceLanes(deviceLimit, stageQueueSize);
+
+        Pipeline() {
+            if (virtualThreads && !virtual) {
+                log.warn("Virtual threads are not supported by this JVM: identifying files on platform threads.");
+            }
+        }
+
+        private SchedulingLane laneFor(final IdentificationRequest<?> request) {
+            return sizeOf(request) >= largeFileThreshold ? largeFiles : smallFiles;
+        }
+
+        private PipelineStage newStage(final String name, final int threads) {
+            return virtual ? PipelineStage.withVirtualThreads(name, virtualThreadLimit)
+                    : new PipelineStage(name, threads, maxThreads, stageQueueSize, budget);
+        }
+
+        private PipelineStage newExpandingStage(final String name, final int threads) {
+            return virtual ? PipelineStage.expandingWithVirtualThreads(name, virtualThreadLimit)
+                    : PipelineStage.expanding(name, threads, maxThreads, stageQueueSize, budget);
+        }
+
+        private List<PipelineStage> all() {
+            return Arrays.asList(open, match, hash, container, archive, persist);
+        }
+
+        private List<SchedulingLane> lanes() {
+            return Arrays.asList(smallFiles, largeFiles);
+        }
+    }
+
+    /**
+     * A request moving through the pipeline.  Each step runs on a thread of its stage,
+     * and hands the request off to the next stage it needs.
+     * @param <T> the type of source the request is opened from.
+     */
+    private final class Job<T> {
+
+        private final IdentificationRequest<T> request;
+        private final T source;
+        private final CompletableFuture<IdentificationResultCollection> future = new CompletableFuture<>();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        // the job itself, and any archive entries read lazily from its request, hold it open.
+        private final AtomicInteger holds = new AtomicInteger(1);
+        private IdentificationResultCollection results;
+        private boolean counted = true;
+        private int depth;
+        private Job<?> parent;
+        private SchedulingLane lane;
+        private SchedulingLane device;
+        private long entered;
+        private long readNanos;
+
+        Job(final IdentificationRequest<T> request, final T source) {
             this.request = request;
+            this.source = source;
         }
 
-        @Override
-        protected void done() {
-            boolean jobCountDecremented = false;
+        private void enter(final SchedulingLane toEnter, final SchedulingLane deviceToEnter) {
+            entered = System.nanoTime();
             try {
-                generateHash(request);
-                IdentificationResultCollection results = get();
-                IdentificationResultCollection containerResults = handleContainer(request, results);
-                if (containerResults == null) {
-                    // no container results - process the normal results.
-                    droidCore.removeLowerPriorityHits(results);
-                    results = handleExtensions(request, results);
-                    
-                    // Are we processing archive formats?
-                    if ((processArchives || processWebArchives) && archiveFormatResolver != null) {
-                        jobCountDecremented = handleArchive(request, results);
-                    } else { // just process the results so far:
-                        results.setArchive(getArchiveFormat(results) != null);
-                        ResourceId id = resultHandler.handle(results);
-                        request.getIdentifier().setResourceId(id);
-                    }
-                } else { // we have possible container formats:
-                    droidCore.removeLowerPriorityHits(containerResults);
-                    containerResults = handleExtensions(request, containerResults);
-                    ResourceId id = resultHandler.handle(containerResults);
-                    request.getIdentifier().setResourceId(id);
+                toEnter.submit(() -> {
+                    lane = toEnter;
+                    enterDevice(deviceToEnter);
+                });
+            } catch (InterruptedException e) {
+                interrupted(e);
+            }
+        }
+
+        private void enterDevice(final SchedulingLane deviceToEnter) {
+            if (deviceToEnter == null) {
+                begin();
+            } else {
+                try {
+                    deviceToEnter.submit(() -> {
+                        device = deviceToEnter;
+                        begin();
+                    });
+                } catch (InterruptedException e) {
+                    interrupted(e);
                 }
-            } catch (ExecutionException e) {
-                final Throwable cause = e.getCause();
-                log.error(cause.getStackTrace().toString(), cause);
-                resultHandler.handleError(new IdentificationException(
-                        request, IdentificationErrorType.OTHER, cause));
+            }
+        }
+
+        private void begin() {
+            if (source == null) {
+                handOff(pipeline.match, this::match);
+            } else {
+                handOff(pipeline.open, this::open);
+            }
+        }
+
+        private void interrupted(final InterruptedException e) {
+            log.debug(e.getMessage(), e);
+            Thread.currentThread().interrupt();
+            future.cancel(false);
+            finish();
+        }
+
+        private void handOff(final PipelineStage stage, final Runnable step) {
+            handOff(stage, 0, step);
+        }
+
+        private void handOff(final PipelineStage stage, final int priority, final Runnable step) {
+            try {
+                stage.execute(() -> run(step), priority);
             } catch (InterruptedException e) {
+                interrupted(e);
+            } catch (RejectedExecutionException e) {
                 log.debug(e.getMessage(), e);
+                future.cancel(false);
+                finish();
+            }
+        }
+
+        private void run(final Runnable step) {
+            try {
+                step.run();
+            //CHECKSTYLE:OFF - whatever goes wrong, the request must be closed and counted as done.
+            } catch (RuntimeException e) {
+            //CHECKSTYLE:ON
+                log.error(e.getMessage(), e);
+                future.completeExceptionally(e);
+                finish();
+            }
+        }
+
+        private void open() {
+            try {
+                openRequest();
+                handOff(pipeline.match, this::match);
             } catch (IOException e) {
+                handleOpenError(e);
+                future.completeExceptionally(e);
+                finish();
+            }
+        }
+
+        private void openRequest() throws IOException {
+            final long started = System.nanoTime();
+            try {
+                request.open(source);
+            } finally {
+                readNanos += System.nanoTime() - started;
+            }
+        }
+
+        private IdentificationResultCollection matchRequest() {
+            final long started = System.nanoTime();
+            try {
+                return droidCore.matchBinarySignatures(request);
+            } finally {
+                readNanos += System.nanoTime() - started;
+            }
+        }
+
+        private void handleOpenError(final IOException e) {
+            IdentificationErrorType error = IdentificationErrorType.ACCESS_DENIED;
+            if (source instanceof Path && !Files.exists((Path) source)) {
+                error = IdentificationErrorType.FILE_NOT_FOUND;
+                log.warn(String.format("File not found: [%s]", source));
+            } else {
+                log.warn(String.format("Access was denied to the file: [%s]", source));
+            }
+            resultHandler.handleError(new IdentificationException(request, error, e));
+        }
+
+        private void match() {
+            try {
+                droidCore.setMaxBytesToScan(maxBytesToScan);
+                results = matchRequest();
+                future.complete(results);
+            //CHECKSTYLE:OFF - failing to match a request must not stop the pipeline.
+            } catch (RuntimeException e) {
+            //CHECKSTYLE:ON
+                future.completeExceptionally(e);
+                log.error(e.getMessage(), e);
                 resultHandler.handleError(new IdentificationException(
                         request, IdentificationErrorType.OTHER, e));
-            } finally {
-                closeRequest();
-                if (!jobCountDecremented) {
-                    jobCounter.decrement();
+                finish();
+            }
+            if (results != null) {
+                if (generateHash) {
+                    handOff(pipeline.hash, this::hash);
+                } else {
+                    identifyContainer();
                 }
             }
         }
-        
-        private void closeRequest() {
-            requests.remove(request);
+
+        private void hash() {
+            generateHash(request);
+            identifyContainer();
+        }
+
+        private void identifyContainer() {
+            final String containerFormat = containerFormatResolver == null ? null : getContainerFormat(results);
+            if (containerFormat == null) {
+                identified(null);
+            } else {
+                handOff(pipeline.container, () -> identified(handleContainer(request, results, containerFormat)));
+            }
+        }
+
+        private void identified(final IdentificationResultCollection containerResults) {
+            if (containerResults == null) {
+                // no container results - process the normal results.
+                droidCore.removeLowerPriorityHits(results);
+                results = handleExtensions(request, results);
+                final String archiveFormat = archiveFormatResolver == null ? null : getArchiveFormat(results);
+                if (archiveFormat != null && (processArchives || processWebArchives)) {
+                    handOff(pipeline.archive, depth, () -> expandArchive(archiveFormat));
+                } else {
+                    results.setArchive(archiveFormat != null);
+                    handOff(pipeline.persist, () -> persist(results));
+                }
+            } else { // we have possible container formats:
+                droidCore.removeLowerPriorityHits(containerResults);
+                final IdentificationResultCollection extensionResults = handleExtensions(request, containerResults);
+                handOff(pipeline.persist, () -> persist(extensionResults));
+            }
+        }
+
+        private void persist(final IdentificationResultCollection toPersist) {
+            final ResourceId id = resultHandler.handle(toPersist);
+            request.getIdentifier().setResourceId(id);
+            finish();
+        }
+
+        private void expandArchive(final String archiveFormat) {
+            results.setArchive(true);
+            final ResourceId id = resultHandler.handle(results);
+            jobCounter.incrementPostProcess();
+            final RequestIdentifier identifier = request.getIdentifier();
+            identifier.setResourceId(id);
+            if (identifier.getAncestorId() == null) {
+                identifier.setAncestorId(id.getId());
+            }
+            submissionQueue.add(identifier);
+            countDone();
+            final Job<?> outer = expanding.get();
+            expanding.set(this);
             try {
-                request.close();
-            } catch (IOException e) {
-                log.error(String.format("Error closing request [%s]", request.getIdentifier().getUri()), e);
+                handleArchive(request, archiveFormat);
+            } finally {
+                expanding.set(outer);
+                submissionQueue.remove(identifier);
+                jobCounter.decrementPostProcess();
+                finish();
+            }
+        }
+
+        private void countDone() {
+            if (counted) {
+                counted = false;
+                jobCounter.decrement();
+            }
+        }
+
+        private void finish() {
+            if (finished.compareAndSet(false, true)) {
+                reportFinished(request, readNanos);
+                release();
+                final long latency = System.nanoTime() - entered;
+                if (lane != null) {
+                    lane.finished(latency);
+                }
+                if (device != null) {
+                    device.finished(latency, Math.max(0, sizeOf(request)));
+                }
+            }
+            countDone();
+        }
+
+        private void retain() {
+            holds.incrementAndGet();
+        }
+
+        /**
+         * Closes the request once the job and the entries submitted while expanding it have all finished,
+         * as entries may still be reading from the archive after it has been expanded.
+         */
+        private void release() {
+            if (holds.decrementAndGet() == 0) {
+                if (requests.remove(request)) {
+                    try {
+                        closeRequest(request);
+                    } catch (IOException e) {
+                        log.error(String.format("Error closing request [%s]", request.getIdentifier().getUri()), e);
+                    }
+                }
+                if (parent != null) {
+                    parent.release();
+                }
             }
         }
     }
     
-    private void generateHash(IdentificationRequest request) throws IOException {
-        if (generateHash) {
+    /**
+     * Small requests moving through the pipeline together, so they are scheduled
+     * and saved once rather than once per request.
+     * @param <T> the type of source the requests are opened from.
+     */
+    private final class BatchJob<T> {
+
+        private final List<Job<T>> all;
+        private final CompletableFuture<List<IdentificationResultCollection>> future = new CompletableFuture<>();
+        private List<Job<T>> jobs;
+        private SchedulingLane lane;
+        private SchedulingLane device;
+        private long entered;
+
+        BatchJob(final List<Job<T>> jobs) {
+            this.all = jobs;
+            this.jobs = jobs;
+        }
+
+        private void enter(final SchedulingLane toEnter, final SchedulingLane deviceToEnter) {
+            entered = System.nanoTime();
             try {
-                InputStream in = request.getSourceInputStream();
+                toEnter.submit(() -> {
+                    lane = toEnter;
+                    enterDevice(deviceToEnter);
+                });
+            } catch (InterruptedException e) {
+                log.debug(e.getMessage(), e);
+                Thread.currentThread().interrupt();
+                cancel();
+            }
+        }
+
+        private void enterDevice(final SchedulingLane deviceToEnter) {
+            try {
+                if (deviceToEnter == null) {
+                    handOff(pipeline.open, this::open);
+                } else {
+                    deviceToEnter.submit(() -> {
+                        device = deviceToEnter;
+                        handOff(pipeline.open, this::open);
+                    });
+                }
+            } catch (InterruptedException e) {
+                log.debug(e.getMessage(), e);
+                Thread.currentThread().interrupt();
+                cancel();
+            }
+        }
+
+        private void handOff(final PipelineStage stage, final Runnable step) {
+            try {
+                stage.execute(() -> run(step));
+            } catch (InterruptedException e) {
+                log.debug(e.getMessage(), e);
+                Thread.currentThread().interrupt();
+                cancel();
+            } catch (RejectedExecutionException e) {
+                log.debug(e.getMessage(), e);
+                cancel();
+            }
+        }
+
+        private void run(final Runnable step) {
+            try {
+                step.run();
+            //CHECKSTYLE:OFF - whatever goes wrong, the requests must be closed and counted as done.
+            } catch (RuntimeException e) {
+            //CHECKSTYLE:ON
+                log.error(e.getMessage(), e);
+                future.completeExceptionally(e);
+                for (Job<T> job : jobs) {
+                    job.future.completeExceptionally(e);
+                    job.finish();
+                }
+                finish();
+            }
+        }
+
+        private void cancel() {
+            future.cancel(false);
+            for (Job<T> job : jobs) {
+                job.future.cancel(false);
+                job.finish();
+            }
+            finish();
+        }
+
+        private void open() {
+            final List<Job<T>> opened = new ArrayList<>(jobs.size());
+            for (Job<T> job : jobs) {
                 try {
-                    String hash = hashGenerator.hash(in);
-                    request.getRequestMetaData().setHash(hash);
-                } finally {
-                    if (in != null) {
-                        in.close();
+                    job.openRequest();
+                    opened.add(job);
+                } catch (IOException e) {
+                    job.handleOpenError(e);
+                    job.future.completeExceptionally(e);
+                    job.finish();
+                }
+            }
+            jobs = opened;
+            handOff(pipeline.match, this::match);
+        }
+
+        private void match() {
+            final List<Job<T>> matched = new ArrayList<>(jobs.size());
+            droidCore.setMaxBytesToScan(maxBytesToScan);
+            for (Job<T> job : jobs) {
+                try {
+                    job.results = job.matchRequest();
+                    job.future.complete(job.results);
+                    matched.add(job);
+                //CHECKSTYLE:OFF - failing to match one request must not fail the others.
+                } catch (RuntimeException e) {
+                //CHECKSTYLE:ON
+                    job.future.completeExceptionally(e);
+                    log.error(e.getMessage(), e);
+                    resultHandler.handleError(new IdentificationException(
+                            job.request, IdentificationErrorType.OTHER, e));
+                    job.finish();
+                }
+            }
+            jobs = matched;
+            final List<IdentificationResultCollection> results = new ArrayList<>(all.size());
+            for (Job<T> job : all) {
+                results.add(job.results);
+            }
+            future.complete(results);
+            if (generateHash) {
+                handOff(pipeline.hash, this::hash);
+            } else {
+                identified();
+            }
+        }
+
+        private void hash() {
+            for (Job<T> job : jobs) {
+                generateHash(job.request);
+            }
+            identified();
+        }
+
+        private void identified() {
+            final List<Job<T>> toPersist = new ArrayList<>(jobs.size());
+            for (Job<T> job : jobs) {
+                if (containerFormatResolver != null && getContainerFormat(job.results) != null) {
+                    job.identifyContainer();
+                } else {
+                    droidCore.removeLowerPriorityHits(job.results);
+                    job.results = handleExtensions(job.request, job.results);
+                    final String archiveFormat = archiveFormatResolver == null ? null : getArchiveFormat(job.results);
+                    if (archiveFormat != null && (processArchives || processWebArchives)) {
+                        job.handOff(pipeline.archive, job.depth, () -> job.expandArchive(archiveFormat));
+                    } else {
+                        job.results.setArchive(archiveFormat != null);
+                        toPersist.add(job);
                     }
                 }
-            //CHECKSTYLE:OFF - generating a hash can't prejudice any other results
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
             }
-            //CHECKSTYLE:ON
+            // requests which went on alone are no longer part of the batch:
+            jobs = toPersist;
+            if (toPersist.isEmpty()) {
+                finish();
+            } else {
+                handOff(pipeline.persist, this::persist);
+            }
+        }
+
+        private void persist() {
+            final List<IdentificationResultCollection> toPersist = new ArrayList<>(jobs.size());
+            for (Job<T> job : jobs) {
+                toPersist.add(job.results);
+            }
+            final List<ResourceId> ids = resultHandler.handleBatch(toPersist);
+            for (int i = 0; i < jobs.size(); i++) {
+                final Job<T> job = jobs.get(i);
+                job.request.getIdentifier().setResourceId(ids == null || i >= ids.size() ? null : ids.get(i));
+                job.counted = false;
+                job.finish();
+            }
+            jobCounter.decrement(jobs.size());
+            jobs = Collections.emptyList();
+            finish();
+        }
+
+        private void finish() {
+            final long latency = System.nanoTime() - entered;
+            if (lane != null) {
+                lane.finished(latency);
+                lane = null;
+            }
+            if (device != null) {
+                long size = 0;
+                for (Job<T> job : all) {
+                    size += Math.max(0, sizeOf(job.request));
+                }
+                device.finished(latency, size);
+                device = null;
+            }
         }
     }
+    
+    private void generateHash(IdentificationRequest request) {
+        try {
+            InputStream in = request.getSourceInputStream();
+            try {
+                String hash = hashGenerator.hash(in);
+                request.getRequestMetaData().setHash(hash);
+            } finally {
+                if (in != null) {
+                    in.close();
+                }
+            }
+        //CHECKSTYLE:OFF - generating a hash can't prejudice any other results
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+        //CHECKSTYLE:ON
+    }
 
     private IdentificationResultCollection handleExtensions(IdentificationRequest request, 
             IdentificationResultCollection results) {
@@ -254,71 +865,41 @@ public class SubmissionGateway implements AsynchDroid {
 
     /**
      * @param request  The archive request to handle.
-     * @param results The previous identification results for the archive format.
-     * @return
+     * @param archiveFormat The archive format of the request.
      */
-    private boolean handleArchive(IdentificationRequest request, 
-            IdentificationResultCollection results) {
-        
-        boolean jobCountDecremented = false;
-        
-        String archiveFormat = getArchiveFormat(results);
-        if (archiveFormat != null) {
-            results.setArchive(true);
-            ResourceId id = resultHandler.handle(results); 
-            jobCounter.incrementPostProcess();
-            RequestIdentifier identifier = request.getIdentifier();
-            identifier.setResourceId(id);
-            if (identifier.getAncestorId() == null) {
-                identifier.setAncestorId(id.getId());
-            }
-            submissionQueue.add(request.getIdentifier());
-            jobCounter.decrement();
-            jobCountDecremented = true;
-            try {
-                //BNO: Does this always return the same archive handler for any given container format?
-                //And will it end up using the same submission gateway, or a new one with a different thread pool?
-                ArchiveHandler handler = archiveHandlerFactory.getHandler(archiveFormat);
-                handler.handle(request);
-                // CHECKSTYLE:OFF
-            } catch (Exception e) {
-                // CHECKSTYLE:ON
-                String causeMessage = "";
-                if (e.getCause() != null) {
-                    causeMessage = e.getCause().getMessage();
-                }
-                final String message = String.format(ARCHIVE_ERROR, 
-                        archiveFormat, request.getIdentifier().getUri().toString(), e.getMessage(), causeMessage);
-                log.warn(message, e);
-                resultHandler.handleError(new IdentificationException(
-                        request, IdentificationErrorType.OTHER, e));
-            } finally {
-                submissionQueue.remove(request.getIdentifier());
-                jobCounter.decrementPostProcess();
+    private void handleArchive(IdentificationRequest request, String archiveFormat) {
+        try {
+            //BNO: Does this always return the same archive handler for any given container format?
+            //And will it end up using the same submission gateway, or a new one with a different thread pool?
+            ArchiveHandler handler = archiveHandlerFactory.getHandler(archiveFormat);
+            handler.handle(request);
+            // CHECKSTYLE:OFF
+        } catch (Exception e) {
+            // CHECKSTYLE:ON
+            String causeMessage = "";
+            if (e.getCause() != null) {
+                causeMessage = e.getCause().getMessage();
             }
-        } else {
-            ResourceId id = resultHandler.handle(results);
-            request.getIdentifier().setNodeId(id.getId());
+            final String message = String.format(ARCHIVE_ERROR, 
+                    archiveFormat, request.getIdentifier().getUri().toString(), e.getMessage(), causeMessage);
+            log.warn(message, e);
+            resultHandler.handleError(new IdentificationException(
+                    request, IdentificationErrorType.OTHER, e));
         }
-        return jobCountDecremented;
     }
 
     private IdentificationResultCollection handleContainer(IdentificationRequest request, 
-            IdentificationResultCollection results)
-        throws IOException {
+            IdentificationResultCollection results, String containerFormat) {
         // process a container format (ole2, odf, ooxml etc)
-        String containerFormat = getContainerFormat(results);
         try {
-            if (containerFormatResolver != null && containerFormat != null) {
-                ContainerIdentifier containerIdentifier = containerIdentifierFactory.getIdentifier(containerFormat);
-                containerIdentifier.setMaxBytesToScan(maxBytesToScan);
-                IdentificationResultCollection containerResults = containerIdentifier.submit(request);
-                droidCore.removeLowerPriorityHits(containerResults);
-                droidCore.checkForExtensionsMismatches(containerResults, request.getExtension());
-                containerResults.setFileLength(request.size());
-                containerResults.setRequestMetaData(request.getRequestMetaData());
-                return containerResults.getResults().isEmpty() ? null : containerResults; 
-            }
+            ContainerIdentifier containerIdentifier = containerIdentifierFactory.getIdentifier(containerFormat);
+            containerIdentifier.setMaxBytesToScan(maxBytesToScan);
+            IdentificationResultCollection containerResults = containerIdentifier.submit(request);
+            droidCore.removeLowerPriorityHits(containerResults);
+            droidCore.checkForExtensionsMismatches(containerResults, request.getExtension());
+            containerResults.setFileLength(request.size());
+            containerResults.setRequestMetaData(request.getRequestMetaData());
+            return containerResults.getResults().isEmpty() ? null : containerResults; 
         //CHECKSTYLE:OFF - rules say don't catch this, but other code keeps on throwing them.
             // Don't prejudice any results so far because other code isn't following 'the rules'.
         } catch (Exception e) {
@@ -333,7 +914,6 @@ public class SubmissionGateway implements AsynchDroid {
         }
         return null;
     }
-    
     /**
      * @param results A previous identification of an archival format.
      * @return format or null
@@ -434,10 +1014,105 @@ public class SubmissionGateway implements AsynchDroid {
     }
     
     /**
-     * @param executorService the executorService to set
+     * @param maxThreads the maximum number of threads of each stage, or zero or less
+     *        to choose it from the number of cores
+     */
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * @param targetUtilisation the CPU utilisation the stages aim for together, as a percentage
+     */
+    public void setTargetUtilisation(int targetUtilisation) {
+        this.targetUtilisation = targetUtilisation;
+    }
+
+    /**
+     * @param virtualThreads whether to run the stages on virtual threads, if the JVM supports them
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @param virtualThreadLimit the maximum number of requests each stage works on at once
+     *        when running on virtual threads
+     */
+    public void setVirtualThreadLimit(int virtualThreadLimit) {
+        this.virtualThreadLimit = virtualThreadLimit;
+    }
+
+    /**
+     * @param largeFileThreshold the size in bytes from which requests enter the large file lane
+     */
+    public void setLargeFileThreshold(long largeFileThreshold) {
+        this.largeFileThreshold = largeFileThreshold;
+    }
+
+    /**
+     * @param largeFileLimit the maximum number of large files in the pipeline at once,
+     *        or zero or less for a quarter of the matching threads
+     */
+    public void setLargeFileLimit(int largeFileLimit) {
+        this.largeFileLimit = largeFileLimit;
+    }
+
+    /**
+     * @param deviceLimit the maximum number of requests read from each device at once,
+     *        or zero or less for no limit and no device lanes
      */
-    public void setExecutorService(ExecutorService executorService) {
-        this.executorService = executorService;
+    public void setDeviceLimit(int deviceLimit) {
+        this.deviceLimit = deviceLimit;
+    }
+
+    /**
+     * @param openThreads the initial number of threads opening requests
+     */
+    public void setOpenThreads(int openThreads) {
+        this.openThreads = openThreads;
+    }
+
+    /**
+     * @param matchThreads the initial number of threads matching binary signatures
+     */
+    public void setMatchThreads(int matchThreads) {
+        this.matchThreads = matchThreads;
+    }
+
+    /**
+     * @param hashThreads the initial number of threads generating hashes
+     */
+    public void setHashThreads(int hashThreads) {
+        this.hashThreads = hashThreads;
+    }
+
+    /**
+     * @param containerThreads the initial number of threads identifying container formats
+     */
+    public void setContainerThreads(int containerThreads) {
+        this.containerThreads = containerThreads;
+    }
+
+    /**
+     * @param archiveThreads the initial number of threads expanding archives
+     */
+    public void setArchiveThreads(int archiveThreads) {
+        this.archiveThreads = archiveThreads;
+    }
+
+    /**
+     * @param persistThreads the number of threads saving results
+     */
+    public void setPersistThreads(int persistThreads) {
+        this.persistThreads = persistThreads;
+    }
+
+    /**
+     * @param stageQueueSize the number of requests which can wait for each stage of the pipeline
+     */
+    public void setStageQueueSize(int stageQueueSize) {
+        this.stageQueueSize = stageQueueSize;
     }
     
     /**
@@ -462,6 +1137,13 @@ public class SubmissionGateway implements AsynchDroid {
         this.resultHandler = resultHandler;
     }
     
+    /**
+     * @param submissionThrottle the throttle told when requests start and finish, so it can adapt to them
+     */
+    public void setSubmissionThrottle(SubmissionThrottle submissionThrottle) {
+        this.submissionThrottle = submissionThrottle;
+    }
+
     /**
      * @param submissionQueue the submissionQueue to set
      */
@@ -507,12 +1189,37 @@ public class SubmissionGateway implements AsynchDroid {
     }
     
     /**
-     * Shuts down the executor service and closes any in-flight requests.
+     * Shuts down the pipeline and closes any in-flight requests.
      * @throws IOException if temp files could not be deleted.
      */
     public void close() throws IOException {
-        executorService.shutdownNow();
+        final Pipeline stages = pipeline;
+        if (stages != null) {
+            for (SchedulingLane lane : stages.lanes()) {
+                log.debug(lane.toString());
+            }
+            for (SchedulingLane device : stages.devices.lanes()) {
+                log.info(device.toString());
+            }
+            for (PipelineStage stage : stages.all()) {
+                log.debug(stage.toString());
+                stage.shutdownNow();
+            }
+        }
         for (IdentificationRequest request : requests) {
+            closeRequest(request);
+        }
+    }
+
+    /**
+     * Closes a request, and the zip file read from it by container identification or archive expansion.
+     * @param request the request.
+     * @throws IOException if the request could not be closed.
+     */
+    private static void closeRequest(IdentificationRequest<?> request) throws IOException {
+        try {
+            RequestZipFiles.release(request);
+        } finally {
             request.close();
         }
     }
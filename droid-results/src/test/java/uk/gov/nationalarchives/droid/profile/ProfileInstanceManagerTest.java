@@ -40,27 +40,34 @@ import java.util.List;
 import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureFileException;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
 import uk.gov.nationalarchives.droid.profile.referencedata.ReferenceDataServiceImpl;
 import uk.gov.nationalarchives.droid.profile.throttle.SubmissionThrottle;
+import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitor;
 import uk.gov.nationalarchives.droid.submitter.FileEventHandler;
 import uk.gov.nationalarchives.droid.submitter.ProfileSpecWalker;
 import uk.gov.nationalarchives.droid.submitter.ProfileSpecWalkerImpl;
 import uk.gov.nationalarchives.droid.submitter.ProfileWalkState;
 import uk.gov.nationalarchives.droid.submitter.ProfileWalkerDao;
+import uk.gov.nationalarchives.droid.submitter.ReidentificationSubmitter;
 import uk.gov.nationalarchives.droid.submitter.SubmissionGateway;
 
 /**
@@ -201,6 +208,92 @@ public class ProfileInstanceManagerTest {
         assertTrue(profileTask.isCancelled());
     }
     
+    @Test(expected = ProfileException.class)
+    public void testReidentifyIsRejectedWhileTheProfileIsRunning() throws Exception {
+        ProfileSpec profileSpec = new ProfileSpec();
+        ProfileInstance profile = new ProfileInstance(ProfileState.STOPPED);
+        profile.setProfileSpec(profileSpec);
+        profileInstanceManager.setProfile(profile);
+        profileInstanceManager.setSubmissionGateway(mock(SubmissionGateway.class));
+        profileInstanceManager.setProfileWalkerDao(mock(ProfileWalkerDao.class));
+
+        ProfileSpecWalker specWalker = mock(ProfileSpecWalker.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(500);
+                return null;
+            }
+        }).when(specWalker).walk(eq(profileSpec), nullable(ProfileWalkState.class));
+        profileInstanceManager.setSpecWalker(specWalker);
+
+        profileInstanceManager.start();
+        profileInstanceManager.reidentify(Collections.singleton("fmt/1"), Collections.<String>emptySet());
+    }
+
+    @Test
+    public void testReidentifyRunsAFinishedProfileAgain() throws Exception {
+        ProfileInstance profile = new ProfileInstance(ProfileState.FINISHED);
+        profileInstanceManager.setProfile(profile);
+        SubmissionGateway submissionGateway = mock(SubmissionGateway.class);
+        profileInstanceManager.setSubmissionGateway(submissionGateway);
+        ReidentificationSubmitter submitter = mock(ReidentificationSubmitter.class);
+        profileInstanceManager.setReidentificationSubmitter(submitter);
+        ProgressMonitor progressMonitor = mock(ProgressMonitor.class);
+        ProfileSpecWalker specWalker = mock(ProfileSpecWalker.class);
+        when(specWalker.getProgressMonitor()).thenReturn(progressMonitor);
+        profileInstanceManager.setSpecWalker(specWalker);
+
+        Collection<String> puids = Collections.singleton("fmt/1");
+        Collection<String> extensions = Collections.singleton("WAV");
+        profileInstanceManager.reidentify(puids, extensions).get();
+
+        verify(progressMonitor).initialise(ProgressMonitor.INDETERMINATE_PROGRESS, 0);
+        verify(submitter).reidentify(puids, extensions);
+        verify(submissionGateway).awaitFinished();
+        verify(submissionGateway).save();
+        assertEquals(ProfileState.FINISHED, profile.getState());
+    }
+
+    @Test
+    public void testPendingFilesAreOnlyIdentifiedAfterTheWalkWhenIdentificationIsDeferred() throws Exception {
+        ReidentificationSubmitter submitter = mock(ReidentificationSubmitter.class);
+        profileInstanceManager.setReidentificationSubmitter(submitter);
+        profileInstanceManager.setSubmissionGateway(mock(SubmissionGateway.class));
+        profileInstanceManager.setProfileWalkerDao(mock(ProfileWalkerDao.class));
+        profileInstanceManager.setSpecWalker(mock(ProfileSpecWalker.class));
+
+        ProfileInstance profile = new ProfileInstance(ProfileState.STOPPED);
+        profile.setProfileSpec(new ProfileSpec());
+        profileInstanceManager.setProfile(profile);
+        profileInstanceManager.start().get();
+        verify(submitter, never()).identifyPending();
+
+        profileInstanceManager.setDeferIdentification(true);
+        profile = new ProfileInstance(ProfileState.STOPPED);
+        profile.setProfileSpec(new ProfileSpec());
+        profileInstanceManager.setProfile(profile);
+        profileInstanceManager.start().get();
+        verify(submitter).identifyPending();
+    }
+
+    @Test
+    public void testUpdateFormatsOnlySavesFormatsTheProfileDoesNotHave() throws Exception {
+        ProfileDao profileDao = mock(ProfileDao.class);
+        profileInstanceManager.setProfileDao(profileDao);
+        Format existing = new Format();
+        existing.setPuid("x-fmt/1");
+        when(profileDao.getAllFormats()).thenReturn(Collections.singletonList(existing));
+
+        profileInstanceManager.updateFormats(Paths.get("test_sig_files/DROID_SignatureFile_V26.xml").toUri());
+
+        ArgumentCaptor<Format> saved = ArgumentCaptor.forClass(Format.class);
+        verify(profileDao, times(688)).saveFormat(saved.capture());
+        for (Format format : saved.getAllValues()) {
+            assertNotEquals("x-fmt/1", format.getPuid());
+        }
+    }
+
     @Test
     public void testSetThrottle() {
         
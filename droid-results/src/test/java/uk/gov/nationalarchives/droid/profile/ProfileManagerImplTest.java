@@ -39,10 +39,14 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -59,6 +63,8 @@ import org.junit.Test;
 
 import uk.gov.nationalarchives.droid.core.interfaces.config.DroidGlobalConfig;
 import uk.gov.nationalarchives.droid.core.interfaces.config.RuntimeConfig;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureChanges;
+import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureComparator;
 import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureFileInfo;
 import uk.gov.nationalarchives.droid.core.interfaces.signature.SignatureType;
 import uk.gov.nationalarchives.droid.results.handlers.ProgressObserver;
@@ -223,4 +229,66 @@ public class ProfileManagerImplTest {
         
         verify(profileInstanceManager).setThrottleValue(12345);
     }
+
+    @Test
+    public void testReidentifyMovesTheProfileOnToTheNewSignatureFiles() throws Exception {
+        final Path profilesDir = Files.createTempDirectory("profiles");
+        final Path sigDir = Files.createTempDirectory("signatures");
+        try {
+            final Path oldSigFile = Files.createDirectories(profilesDir.resolve("abc"))
+                    .resolve("DROID_SignatureFile_V1.xml");
+            Files.write(oldSigFile, "old".getBytes());
+            final Path newSigFile = Files.write(sigDir.resolve("DROID_SignatureFile_V2.xml"), "new".getBytes());
+
+            final ProfileInstance profileInstance = new ProfileInstance(ProfileState.FINISHED);
+            profileInstance.setUuid("abc");
+            profileInstance.setSignatureFileName("DROID_SignatureFile_V1.xml");
+            when(profileContextLocator.getProfileInstance("abc")).thenReturn(profileInstance);
+            final ProfileInstanceManager oldManager = mock(ProfileInstanceManager.class);
+            when(profileContextLocator.openProfileInstanceManager(profileInstance)).thenReturn(oldManager);
+            final ProfileInstanceManager newManager = mock(ProfileInstanceManager.class);
+            when(profileContextLocator.reopenProfileInstanceManager(profileInstance)).thenReturn(newManager);
+
+            final SignatureChanges changes = mock(SignatureChanges.class);
+            when(changes.getChangedPuids()).thenReturn(Collections.singleton("fmt/1"));
+            when(changes.getChangedExtensions()).thenReturn(Collections.singleton("EXT"));
+            final SignatureComparator comparator = mock(SignatureComparator.class);
+            when(comparator.compare(oldSigFile, newSigFile, null, null)).thenReturn(changes);
+            final Future future = mock(Future.class);
+            when(newManager.reidentify(changes.getChangedPuids(), changes.getChangedExtensions())).thenReturn(future);
+
+            final DroidGlobalConfig config = mock(DroidGlobalConfig.class);
+            when(config.getProfilesDir()).thenReturn(profilesDir);
+            profileManager.setConfig(config);
+            profileManager.setSignatureComparator(comparator);
+
+            final SignatureFileInfo binarySigFile = new SignatureFileInfo(2, false, SignatureType.BINARY);
+            binarySigFile.setFile(newSigFile);
+            final Map<SignatureType, SignatureFileInfo> sigs = new HashMap<SignatureType, SignatureFileInfo>();
+            sigs.put(SignatureType.BINARY, binarySigFile);
+
+            assertSame(future, profileManager.reidentify("abc", sigs));
+
+            verify(oldManager).updateFormats(newSigFile.toUri());
+            assertEquals("DROID_SignatureFile_V2.xml", profileInstance.getSignatureFileName());
+            assertEquals(2, profileInstance.getSignatureFileVersion().intValue());
+            assertFalse(Files.exists(oldSigFile));
+            assertTrue(Files.exists(profilesDir.resolve("abc/DROID_SignatureFile_V2.xml")));
+            verify(profileSpecDao).saveProfile(profileInstance, profilesDir.resolve("abc"));
+        } finally {
+            FileUtil.deleteQuietly(profilesDir);
+            FileUtil.deleteQuietly(sigDir);
+        }
+    }
+
+    @Test(expected = ProfileManagerException.class)
+    public void testReidentifyIsRejectedWhileTheProfileIsRunning() throws Exception {
+        final ProfileInstance profileInstance = new ProfileInstance(ProfileState.STOPPED);
+        profileInstance.start();
+        when(profileContextLocator.getProfileInstance("abc")).thenReturn(profileInstance);
+
+        final Map<SignatureType, SignatureFileInfo> sigs = new HashMap<SignatureType, SignatureFileInfo>();
+        sigs.put(SignatureType.BINARY, new SignatureFileInfo(2, false, SignatureType.BINARY));
+        profileManager.reidentify("abc", sigs);
+    }
 }
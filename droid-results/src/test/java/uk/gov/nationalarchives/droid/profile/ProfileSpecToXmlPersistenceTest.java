@@ -58,6 +58,7 @@ import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import uk.gov.nationalarchives.droid.core.interfaces.DeviceThroughput;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionFieldEnum;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.CriterionOperator;
 import uk.gov.nationalarchives.droid.core.interfaces.filter.FilterValue;
@@ -391,5 +392,27 @@ public class ProfileSpecToXmlPersistenceTest {
 
         XMLAssert.assertXMLEqual(new StringReader(control), new FileReader("tmp/profile.xml"));
     }
-    
+
+    @Test
+    public void testDeviceThroughputIsSavedAndLoaded() throws Exception {
+        ProfileInstance profile = new ProfileInstance(ProfileState.INITIALISING);
+        profile.setUuid("untitled-1");
+        profile.setProfileSpec(new ProfileSpec());
+        profile.setDeviceThroughput(Arrays.asList(new DeviceThroughput("device /", 3, 300, 1.5, 2.0)));
+
+        profileSpecJaxbDao.saveProfile(profile, Paths.get("profiles/untitled-1"));
+
+        final ProfileInstance loaded;
+        try (InputStream in = Files.newInputStream(Paths.get("profiles/untitled-1/profile.xml"))) {
+            loaded = profileSpecJaxbDao.loadProfile(in);
+        }
+        assertEquals(1, loaded.getDeviceThroughput().size());
+        final DeviceThroughput device = loaded.getDeviceThroughput().get(0);
+        assertEquals("device /", device.getName());
+        assertEquals(3, device.getCompletedCount());
+        assertEquals(300, device.getBytes());
+        assertEquals(1.5, device.getMegabytesPerSecond(), 0);
+        assertEquals(2.0, device.getMeanLatencyMillis(), 0);
+    }
+
 }
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.profile.throttle;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AdaptiveSubmissionThrottleTest {
+
+    private static final long INTERVAL_MILLIS = TimeUnit.NANOSECONDS.toMillis(AdaptiveSubmissionThrottle.INTERVAL_NANOS);
+
+    private AdaptiveSubmissionThrottle throttle;
+
+    @Before
+    public void setup() {
+        throttle = new AdaptiveSubmissionThrottle();
+    }
+
+    @Test
+    public void testRequestsInFlightAreNotLimitedWithoutATarget() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            throttle.started();
+            throttle.apply();
+        }
+        assertEquals(-1, throttle.getWindow());
+        assertEquals(100, throttle.getInFlight());
+    }
+
+    @Test
+    public void testWindowHalvesWhenReadsAreSlowerThanTheTarget() throws Exception {
+        throttle.setTargetLatencyMillis(10);
+        final int initialWindow = throttle.getWindow();
+        for (int i = 0; i < 4; i++) {
+            throttle.started();
+        }
+        Thread.sleep(INTERVAL_MILLIS + 50);
+        for (int i = 0; i < 4; i++) {
+            throttle.finished(TimeUnit.MILLISECONDS.toNanos(50), 1000);
+        }
+        assertEquals(initialWindow / 2, throttle.getWindow());
+        assertEquals(50.0, throttle.getMeanLatencyMillis(), 0.001);
+        assertEquals(0, throttle.getInFlight());
+    }
+
+    @Test
+    public void testWindowHalvesWhenReadsExceedTheMaximumRate() throws Exception {
+        throttle.setMaxMegabytesPerSecond(1);
+        final int initialWindow = throttle.getWindow();
+        throttle.started();
+        Thread.sleep(INTERVAL_MILLIS + 50);
+        throttle.finished(TimeUnit.MILLISECONDS.toNanos(1), 10L * 1024 * 1024);
+        assertEquals(initialWindow / 2, throttle.getWindow());
+        assertTrue(throttle.getMegabytesPerSecond() > 1);
+    }
+
+    @Test
+    public void testSubmissionWaitsForTheWindowWhichGrowsWhileReadsAreFast() throws Exception {
+        throttle.setTargetLatencyMillis(1000);
+        final int initialWindow = throttle.getWindow();
+        for (int i = 0; i < initialWindow; i++) {
+            throttle.started();
+        }
+        final CountDownLatch applied = new CountDownLatch(1);
+        final Thread submitter = new Thread(() -> {
+            try {
+                throttle.apply();
+                applied.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        assertFalse(applied.await(INTERVAL_MILLIS + 50, TimeUnit.MILLISECONDS));
+
+        throttle.finished(TimeUnit.MILLISECONDS.toNanos(1), 1000);
+        assertTrue(applied.await(5, TimeUnit.SECONDS));
+        assertEquals(initialWindow + 1, throttle.getWindow());
+        submitter.join();
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class DeviceLanesTest {
+
+    @Test
+    public void testFilesOnTheSameDeviceShareALane() {
+        final DeviceLanes devices = new DeviceLanes(2, 10);
+        final SchedulingLane lane = devices.laneFor(Paths.get("pom.xml"));
+        assertNotNull(lane);
+        assertEquals(2, lane.getMaxInFlight());
+        assertSame(lane, devices.laneFor(Paths.get("src", "test")));
+        assertSame(lane, devices.laneFor(Paths.get("pom.xml")));
+        assertEquals(1, devices.lanes().size());
+    }
+
+    @Test
+    public void testNoLanesWhenTheLimitIsZero() {
+        final DeviceLanes devices = new DeviceLanes(0, 10);
+        assertNull(devices.laneFor(Paths.get("pom.xml")));
+        assertEquals(0, devices.lanes().size());
+    }
+
+    @Test
+    public void testSourcesWhichAreNotFilesHaveNoLane() {
+        final DeviceLanes devices = new DeviceLanes(2, 10);
+        assertNull(devices.laneFor(null));
+        assertNull(devices.laneFor("not a file"));
+        assertEquals(0, devices.lanes().size());
+    }
+}
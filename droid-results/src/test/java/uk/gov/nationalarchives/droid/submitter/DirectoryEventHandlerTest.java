@@ -38,6 +38,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -49,7 +50,6 @@ import org.mockito.ArgumentCaptor;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
-import uk.gov.nationalarchives.droid.util.FileUtil;
 
 /**
  * @author rflitcroft
@@ -105,6 +105,24 @@ public class DirectoryEventHandlerTest {
         
     }
     
+    @Test
+    public void testResultHandlerHandlesErrorWhenDirectoryCannotBeListed() {
+        final Path file = Paths.get("tmp/fictional");
+        URI uri = file.toUri();
+        
+        ResourceId id = new ResourceId(123L, "");
+        
+        directoryEventHandler.onError(file, null, id, 1);
+        
+        ArgumentCaptor<IdentificationResult> captor = ArgumentCaptor.forClass(IdentificationResult.class);
+        verify(resultHandler).handleDirectoryError(captor.capture(), eq(id));
+        
+        IdentificationResult captured = captor.getValue();
+        assertEquals(uri, captured.getIdentifier().getUri());
+        assertEquals("fictional", captured.getMetaData().getName());
+        assertNull(captured.getMetaData().getSize());
+    }
+    
     @Test
     public void testDirectoryResultMetaDataWhenDepthOne() throws IOException {
         final Path dir = Paths.get(".");
@@ -119,7 +137,7 @@ public class DirectoryEventHandlerTest {
         
         IdentificationResult result = resultCaptor.getValue();
         assertEquals(dir.getFileName().toString(), result.getMetaData().getName());
-        assertEquals(FileUtil.sizeQuietly(dir), result.getMetaData().getSize().longValue());
+        assertNull(result.getMetaData().getSize());
         assertEquals(Files.getLastModifiedTime(dir).toMillis(), result.getMetaData().getTime().longValue());
         assertEquals(dir.toUri(), result.getIdentifier().getUri());
         assertEquals(1L, result.getIdentifier().getParentId().longValue());
@@ -138,7 +156,7 @@ public class DirectoryEventHandlerTest {
         
         IdentificationResult result = resultCaptor.getValue();
         assertEquals(dir.toAbsolutePath().toString(), result.getMetaData().getName());
-        assertEquals(FileUtil.sizeQuietly(dir), result.getMetaData().getSize().longValue());
+        assertNull(result.getMetaData().getSize());
         assertEquals(Files.getLastModifiedTime(dir).toMillis(), result.getMetaData().getTime().longValue());
         assertEquals(dir.toUri(), result.getIdentifier().getUri());
         assertEquals(1L, result.getIdentifier().getParentId().longValue());
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.util.FileUtil;
+
+public class DirectoryListingTest {
+
+    private static final Path TEST_ROOT = Paths.get("tmpDirectoryListing");
+    private static final int CHILDREN = 25;
+
+    private Path directory;
+    private Path spillDir;
+
+    @Before
+    public void setup() throws Exception {
+        directory = Files.createDirectories(TEST_ROOT.resolve("dir"));
+        spillDir = Files.createDirectories(TEST_ROOT.resolve("spills"));
+        // created out of name order, so name order and inode order differ:
+        for (int i = CHILDREN - 1; i >= 0; i--) {
+            Files.createFile(directory.resolve(String.format("file%02d.ext", i)));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.deleteQuietly(TEST_ROOT);
+    }
+
+    @Test
+    public void testChildrenAreHandedOutInNameOrderAListingSizeAtATime() throws Exception {
+        final List<String> names = new ArrayList<>();
+        try (DirectoryListing listing = DirectoryListing.list(directory, null, false, 4, spillDir)) {
+            while (listing.hasNext()) {
+                final DirectoryListing.Children children = listing.next();
+                assertTrue(children.size() <= 4);
+                assertNull(children.getInodes());
+                for (final Path child : children.keySet()) {
+                    assertTrue(children.get(child).isRegularFile());
+                    names.add(child.getFileName().toString());
+                }
+            }
+            assertTrue(listing.next().isEmpty());
+            // the children beyond the first listing size were spilled in runs:
+            assertEquals(CHILDREN / 4, countSpills());
+        }
+        assertEquals(CHILDREN, names.size());
+        for (int i = 0; i < CHILDREN; i++) {
+            assertEquals(String.format("file%02d.ext", i), names.get(i));
+        }
+        assertEquals(0, countSpills());
+    }
+
+    @Test
+    public void testOnlyChildrenAfterTheCursorAreListed() throws Exception {
+        try (DirectoryListing listing = DirectoryListing.list(directory, "file19.ext", false, 4, spillDir)) {
+            final DirectoryListing.Children children = listing.next();
+            assertEquals(4, children.size());
+            assertEquals(directory.resolve("file20.ext"), children.keySet().iterator().next());
+            assertEquals(1, listing.next().size());
+            assertFalse(listing.hasNext());
+        }
+    }
+
+    @Test
+    public void testChildrenAreHandedOutInInodeOrderWithTheirInodes() throws Exception {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("unix"));
+        long lastInode = -1;
+        int count = 0;
+        try (DirectoryListing listing = DirectoryListing.list(directory, "file19.ext", true, 4, spillDir)) {
+            while (listing.hasNext()) {
+                final DirectoryListing.Children children = listing.next();
+                for (final Path child : children.keySet()) {
+                    final long inode = (Long) Files.getAttribute(child, "unix:ino");
+                    assertEquals(Long.valueOf(inode), children.getInodes().get(child));
+                    assertTrue("Child out of inode order: " + child, inode > lastInode);
+                    lastInode = inode;
+                    count++;
+                }
+            }
+        }
+        // the name cursor is not used in inode order:
+        assertEquals(CHILDREN, count);
+        assertEquals(0, countSpills());
+    }
+
+    private int countSpills() throws Exception {
+        int spills = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(spillDir)) {
+            for (final Path spill : stream) {
+                spills++;
+            }
+        }
+        return spills;
+    }
+}
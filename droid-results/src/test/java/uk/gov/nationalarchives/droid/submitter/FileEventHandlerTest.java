@@ -36,14 +36,22 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -96,7 +104,7 @@ public class FileEventHandlerTest {
     }
     
     @Test
-    public void testFileEventHandlerSubmitsAJobToDroid() {
+    public void testFileEventHandlerSubmitsAJobToDroid() throws IOException {
         
         SubmissionThrottle throttle = mock(SubmissionThrottle.class);
         fileEventHandler.setSubmissionThrottle(throttle);
@@ -113,9 +121,28 @@ public class FileEventHandlerTest {
 
         fileEventHandler.onEvent(file, new ResourceId(1L, ""), null);
         
-        verify(identificationEngine).submit(requestCaptor.capture());
+        verify(identificationEngine).submit(requestCaptor.capture(), eq(file));
     }
     
+    @Test
+    public void testFileEventHandlerUsesAttributesReadDuringTheWalk() {
+
+        fileEventHandler.setSubmissionThrottle(mock(SubmissionThrottle.class));
+
+        final Path file = Paths.get("test_sig_files/DROID 5  Architecture.doc");
+        BasicFileAttributes attributes = mock(BasicFileAttributes.class);
+        when(attributes.size()).thenReturn(1234L);
+        when(attributes.lastModifiedTime()).thenReturn(FileTime.fromMillis(5678L));
+
+        fileEventHandler.onEvent(file, attributes, new ResourceId(1L, ""), null);
+
+        ArgumentCaptor<RequestMetaData> metaDataCaptor = ArgumentCaptor.forClass(RequestMetaData.class);
+        verify(requestFactory).newRequest(metaDataCaptor.capture(), any(RequestIdentifier.class));
+        assertEquals(Long.valueOf(1234L), metaDataCaptor.getValue().getSize());
+        assertEquals(Long.valueOf(5678L), metaDataCaptor.getValue().getTime());
+        assertEquals("DROID 5  Architecture.doc", metaDataCaptor.getValue().getName());
+    }
+
     @Test
     public void testFileEventHandlerAppliesThrottleAfterSubmittingAFile() throws Exception {
         
@@ -128,6 +155,66 @@ public class FileEventHandlerTest {
         verify(throttle).apply();
     }
 
+    @Test
+    public void testFileEventHandlerSubmitsABatchOfFilesAsOneTask() throws Exception {
+
+        SubmissionThrottle throttle = mock(SubmissionThrottle.class);
+        fileEventHandler.setSubmissionThrottle(throttle);
+
+        final List<Path> files = Arrays.asList(Paths.get("test_sig_files/sample.pdf"),
+                Paths.get("test_sig_files/DROID 5  Architecture.doc"));
+        final List<BasicFileAttributes> attributes = Arrays.asList(
+                Files.readAttributes(files.get(0), BasicFileAttributes.class),
+                Files.readAttributes(files.get(1), BasicFileAttributes.class));
+        fileEventHandler.onBatch(files, attributes, new ResourceId(1L, ""));
+
+        ArgumentCaptor<RequestIdentifier> identifierCaptor = ArgumentCaptor.forClass(RequestIdentifier.class);
+        verify(requestFactory, times(2)).newRequest(any(RequestMetaData.class), identifierCaptor.capture());
+        assertTrue(identifierCaptor.getAllValues().get(0).getUri().toString().endsWith("sample.pdf"));
+        assertEquals(Long.valueOf(1L), identifierCaptor.getAllValues().get(1).getParentId());
+        ArgumentCaptor<List> requestsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(identificationEngine).submitBatch(requestsCaptor.capture(), eq(files));
+        assertEquals(2, requestsCaptor.getValue().size());
+        verify(identificationEngine, never()).submit(any(IdentificationRequest.class), any(Path.class));
+        verify(throttle, times(2)).apply();
+    }
+
+    @Test
+    public void testDeferredFilesAreSavedAsPendingInsteadOfSubmitted() throws Exception {
+
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        fileEventHandler.setResultHandler(resultHandler);
+        fileEventHandler.setSubmissionThrottle(mock(SubmissionThrottle.class));
+        fileEventHandler.setDeferIdentification(true);
+
+        final List<Path> files = Arrays.asList(Paths.get("test_sig_files/sample.pdf"),
+                Paths.get("test_sig_files/DROID 5  Architecture.doc"));
+        final List<BasicFileAttributes> attributes = Arrays.asList(
+                Files.readAttributes(files.get(0), BasicFileAttributes.class),
+                Files.readAttributes(files.get(1), BasicFileAttributes.class));
+        fileEventHandler.onEvent(files.get(0), new ResourceId(1L, ""), null);
+        fileEventHandler.onBatch(files, attributes, new ResourceId(1L, ""));
+
+        verify(resultHandler, times(3)).handlePending(request);
+        verify(identificationEngine, never()).submit(any(IdentificationRequest.class), any(Path.class));
+        verify(identificationEngine, never()).submitBatch(any(List.class), any(List.class));
+    }
+
+    @Test
+    public void testDeferredFilesWithANodeIdAreSubmitted() throws Exception {
+
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        fileEventHandler.setResultHandler(resultHandler);
+        fileEventHandler.setSubmissionThrottle(mock(SubmissionThrottle.class));
+        fileEventHandler.setDeferIdentification(true);
+
+        final Path file = Paths.get("test_sig_files/sample.pdf");
+        fileEventHandler.onEvent(file, new ResourceId(1L, ""), new ResourceId(2L, "AAAAA"));
+
+        verify(identificationEngine).submit(request, file);
+        verify(resultHandler, never()).handlePending(any(IdentificationRequest.class));
+    }
+
     @Test
     public void testNonexistentFileSubmitsErrorToResultHandler() throws IOException {
         
@@ -32,36 +32,32 @@
 package uk.gov.nationalarchives.droid.submitter;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.Iterator;
 
 import javax.xml.bind.JAXBException;
 
-import org.custommonkey.xmlunit.Diff;
-import org.custommonkey.xmlunit.XMLUnit;
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import uk.gov.nationalarchives.droid.profile.DirectoryProfileResource;
 import uk.gov.nationalarchives.droid.submitter.FileWalker.ProgressEntry;
+import uk.gov.nationalarchives.droid.submitter.ProfileWalkState.WalkStatus;
+import uk.gov.nationalarchives.droid.util.FileUtil;
 
 /**
  * @author rflitcroft, boreilly
- * BNO: String control amended as follows after
- * JAXB changes to reduce littering
- * - Added </children> empty elements in <ProgressEntry>
- * - Moved <RootUri> element to after <Progress>
  */
 public class FileWalkerPersistenceTest {
 
@@ -70,16 +66,19 @@ public class FileWalkerPersistenceTest {
     
     @Before
     public void setup() throws JAXBException, IOException {
-        XMLUnit.setIgnoreWhitespace(true);
-        
         profileWalkerDao = new ProfileWalkerDao();
         testDir = Paths.get("tmp/" + getClass().getSimpleName());
         Files.createDirectories(testDir);
         profileWalkerDao.setProfileHomeDir(testDir);
     }
+
+    @After
+    public void tearDown() {
+        FileUtil.deleteQuietly(testDir);
+    }
     
     @Test
-    public void testSaveProfileWithSerializedPofileSpecWalker() throws Exception {
+    public void testSaveAndLoadProfileWalkState() throws Exception {
         
         final Path dirResource1 = Paths.get("root/dir");
         final Path dirResource2 = Paths.get("root/dir/subDir");
@@ -89,67 +88,132 @@ public class FileWalkerPersistenceTest {
         
         final Path root = Paths.get("root");
         FileWalker filewalker = new FileWalker(root.toUri(), true);
-        progress.push(new ProgressEntry(dirResource1, 1, "X", null));
+        progress.push(new ProgressEntry(dirResource1, 1, "X", "file1"));
         progress.push(new ProgressEntry(dirResource2, 2, "Y", null));
-        progress.push(new ProgressEntry(dirResource3, 3, "Z", null));
+        progress.push(new ProgressEntry(dirResource3, 3, "Z", "Ünïcödé"));
         
         filewalker.setProgress(progress);
         
         ProfileWalkState state = new ProfileWalkState();
+        state.setWalkStatus(WalkStatus.IN_PROGRESS);
         state.setCurrentFileWalker(filewalker);
         state.setCurrentResource(new DirectoryProfileResource(root, true));
         
         profileWalkerDao.save(state);
-        
-        DateTime testDateTime = new DateTime(0L);
-        DateTimeFormatter formatter = ISODateTimeFormat.dateTimeNoMillis();
-        String control = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
-            + "<ProfileWalk Status=\"NOT_STARTED\">\n"
-            + "    <Dir Recursive=\"true\">\n"
-            + "        <Size>-1</Size>\n"
-            + "        <LastModifiedDate>" + formatter.print(testDateTime) + "</LastModifiedDate>\n"
-            + "        <Extension></Extension>\n"
-            + "        <Name>root</Name>\n"
-            + "        <Uri>" + root.toUri() + "</Uri>\n"
-            + "        <Path>" + getPath(root) + "</Path>\n"
-            + "    </Dir>\n"
+        assertTrue(Files.exists(testDir.resolve("profile_progress.bin")));
+
+        ProfileWalkState loaded = profileWalkerDao.load();
+        assertEquals(WalkStatus.IN_PROGRESS, loaded.getWalkStatus());
+        assertEquals(state.getCurrentResource(), loaded.getCurrentResource());
+        assertTrue(loaded.getCurrentResource().isRecursive());
+
+        FileWalker loadedWalker = loaded.getCurrentFileWalker();
+        assertEquals(root.toUri(), loadedWalker.getRootUri());
+        assertTrue(loadedWalker.isRecursive());
+
+        Iterator<ProgressEntry> entries = loadedWalker.progress().iterator();
+        assertEntry(entries.next(), dirResource3, 3, "Z", "Ünïcödé");
+        assertEntry(entries.next(), dirResource2, 2, "Y", null);
+        assertEntry(entries.next(), dirResource1, 1, "X", "file1");
+        assertFalse(entries.hasNext());
+    }
+
+    @Test
+    public void testCheckpointDoesNotHoldChildren() throws Exception {
+        final Path root = Paths.get("root");
+        final Deque<ProgressEntry> progress = new ArrayDeque<ProgressEntry>();
+        progress.push(new ProgressEntry(root, 1, "", "file999999"));
+        FileWalker filewalker = new FileWalker(root.toUri(), false);
+        filewalker.setProgress(progress);
+        ProfileWalkState state = new ProfileWalkState();
+        state.setCurrentFileWalker(filewalker);
+
+        profileWalkerDao.save(state);
+
+        // the size of the checkpoint does not depend on the number of children processed.
+        assertTrue(Files.size(testDir.resolve("profile_progress.bin")) < 200);
+        ProgressEntry entry = profileWalkerDao.load().getCurrentFileWalker().progress().peek();
+        assertFalse(entry.containsChild(root.resolve("file100000")));
+        assertTrue(entry.containsChild(root.resolve("zzz")));
+    }
+
+    @Test
+    public void testCheckpointHoldsTheInodeCursor() throws Exception {
+        final Path root = Paths.get("root");
+        final Deque<ProgressEntry> progress = new ArrayDeque<ProgressEntry>();
+        progress.push(new ProgressEntry(root, 1, "", "file1", 12345L));
+        progress.push(new ProgressEntry(root.resolve("dir"), 2, "", "file2"));
+        FileWalker filewalker = new FileWalker(root.toUri(), true);
+        filewalker.setFileKeyOrder(true);
+        filewalker.setProgress(progress);
+        ProfileWalkState state = new ProfileWalkState();
+        state.setCurrentFileWalker(filewalker);
+
+        profileWalkerDao.save(state);
+
+        Iterator<ProgressEntry> entries = profileWalkerDao.load().getCurrentFileWalker().progress().iterator();
+        ProgressEntry entry = entries.next();
+        assertEquals("file2", entry.getLastChild());
+        assertNull(entry.getLastInode());
+        entry = entries.next();
+        assertEquals("file1", entry.getLastChild());
+        assertEquals(Long.valueOf(12345L), entry.getLastInode());
+        assertFalse(entry.hasChildList());
+    }
+
+    @Test
+    public void testLoadLegacyXmlCheckpoint() throws Exception {
+        final Path root = Paths.get("root");
+        final Path dir = Paths.get("root/dir");
+        final String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+            + "<ProfileWalk Status=\"IN_PROGRESS\">\n"
             + "    <FileWalker Recursive=\"true\">\n"
             + "        <Progress>\n"
-            + "            <ProgressEntry Id=\"3\" Prefix=\"Z\">\n"
-            + "                <Children/>\n"
-            + "                <Uri>" + dirResource3.toUri() + "</Uri>\n"
-            + "            </ProgressEntry>\n"
             + "            <ProgressEntry Id=\"2\" Prefix=\"Y\">\n"
-            + "                <Children/>\n"
-            + "                <Uri>" + dirResource2.toUri() + "</Uri>\n"
+            + "                <Children>\n"
+            + "                    <ChildUri>" + dir.resolve("b").toUri() + "</ChildUri>\n"
+            + "                </Children>\n"
+            + "                <Uri>" + dir.toUri() + "</Uri>\n"
             + "            </ProgressEntry>\n"
             + "            <ProgressEntry Id=\"1\" Prefix=\"X\">\n"
             + "                <Children/>\n"
-            + "                <Uri>" + dirResource1.toUri() + "</Uri>\n"
+            + "                <Uri>" + root.toUri() + "</Uri>\n"
             + "            </ProgressEntry>\n"
             + "        </Progress>\n"
             + "        <RootUri>" + root.toUri() + "</RootUri>\n"
             + "    </FileWalker>\n"
-            + "</ProfileWalk>"; 
+            + "</ProfileWalk>";
+        Files.write(testDir.resolve("profile_progress.xml"), xml.getBytes(UTF_8));
 
-        System.out.println("Outputting profile_progress.xml");
-        for(final String line : Files.readAllLines(testDir.resolve("profile_progress.xml"), UTF_8)) {
-            System.out.println(line);
-        }
+        ProfileWalkState loaded = profileWalkerDao.load();
+        assertEquals(WalkStatus.IN_PROGRESS, loaded.getWalkStatus());
+        ProgressEntry entry = loaded.getCurrentFileWalker().progress().peek();
+        assertEquals(2, entry.getId());
+        assertTrue(entry.containsChild(dir.resolve("b").toAbsolutePath()));
+        assertFalse(entry.containsChild(dir.resolve("c").toAbsolutePath()));
 
-        System.out.println(control);
+        // re-saving converts the checkpoint, keeping the legacy list of children.
+        profileWalkerDao.save(loaded);
+        assertFalse(Files.exists(testDir.resolve("profile_progress.xml")));
+        entry = profileWalkerDao.load().getCurrentFileWalker().progress().peek();
+        assertTrue(entry.containsChild(dir.resolve("b").toAbsolutePath()));
+        assertFalse(entry.containsChild(dir.resolve("c").toAbsolutePath()));
+    }
 
-        try(final Reader reader = Files.newBufferedReader(testDir.resolve("profile_progress.xml"), UTF_8)) {
-            final Diff diff = new Diff(new StringReader(control), reader);
-            assertTrue(diff.similar());
-        }
+    @Test
+    public void testDeleteRemovesCheckpoint() throws Exception {
+        ProfileWalkState state = new ProfileWalkState();
+        profileWalkerDao.save(state);
+        profileWalkerDao.delete();
+        assertFalse(Files.exists(testDir.resolve("profile_progress.bin")));
+        assertEquals(WalkStatus.NOT_STARTED, profileWalkerDao.load().getWalkStatus());
+        assertNull(profileWalkerDao.load().getCurrentFileWalker());
     }
 
-    public String getPath(final Path file) {
-        final String location = file.toUri().toString();
-        final String decodedLocation = java.net.URLDecoder.decode(location);
-        final int uriPrefix = decodedLocation.indexOf(":/");
-        return decodedLocation.substring(uriPrefix + 2);
-    }    
-    
+    private static void assertEntry(ProgressEntry entry, Path dir, long id, String prefix, String lastChild) {
+        assertEquals(dir.toAbsolutePath(), entry.getFile());
+        assertEquals(id, entry.getId());
+        assertEquals(prefix, entry.getPrefix());
+        assertEquals(lastChild, entry.getLastChild());
+    }
 }
@@ -31,21 +31,33 @@
  */
 package uk.gov.nationalarchives.droid.submitter;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -53,6 +65,7 @@ import static org.mockito.Mockito.when;
 import org.apache.commons.io.DirectoryWalker;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.Ignore;
@@ -63,6 +76,7 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
 import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitor;
 import uk.gov.nationalarchives.droid.submitter.FileWalker.ProgressEntry;
 import uk.gov.nationalarchives.droid.util.FileUtil;
 
@@ -114,6 +128,7 @@ public class FileWalkerTest {
             "dir2/subdir2/file224.ext",
             "dir2/subdir2/file225.ext",};
 
+      files.clear();
       Files.createDirectories(TEST_ROOT);
 
       for (final String fileName : fileNames) {
@@ -152,13 +167,13 @@ public class FileWalkerTest {
       fileWalker.setDirectoryHandler(directoryHandler);
       fileWalker.setFileHandler(fileHandler);
 
-      when(fileHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(fileHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
 
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
             final Path breakFile = files.get(FILES_TO_WALK);
             final Path thisFile = (Path) invocation.getArguments()[0];
-            int depth = (Integer) invocation.getArguments()[1];
+            int depth = (Integer) invocation.getArguments()[2];
             if (thisFile.equals(breakFile)) {
                throw new DirectoryWalker.CancelException(thisFile.toFile(), depth);
             }
@@ -170,7 +185,7 @@ public class FileWalkerTest {
          }
       });
 
-      when(directoryHandler.handle(any(Path.class), anyInt(), nullable(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(directoryHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), nullable(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
 
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
@@ -187,7 +202,7 @@ public class FileWalkerTest {
 
       FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class);
       
-      when(resumeHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(resumeHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
          
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
@@ -230,13 +245,13 @@ public class FileWalkerTest {
       fileWalker.setDirectoryHandler(directoryHandler);
       fileWalker.setFileHandler(fileHandler);
 
-      when(fileHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(fileHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
 
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
             final Path breakFile = files.get(FILES_TO_WALK);
             final Path thisFile = (Path) invocation.getArguments()[0];
-            int depth = (Integer) invocation.getArguments()[1];
+            int depth = (Integer) invocation.getArguments()[2];
             if (thisFile.equals(breakFile)) {
                throw new DirectoryWalker.CancelException(thisFile.toFile(), depth);
             }
@@ -247,7 +262,7 @@ public class FileWalkerTest {
             return new ResourceId(nextId.incrementAndGet(), "");
          }
       });
-      when(directoryHandler.handle(any(Path.class), anyInt(), nullable(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(directoryHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), nullable(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
 
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
@@ -272,7 +287,7 @@ public class FileWalkerTest {
          fail("Error deleting test file: " + files.get(FILES_TO_WALK).toUri());
       
       FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class);
-      when(resumeHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(resumeHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
          
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
@@ -315,13 +330,13 @@ public class FileWalkerTest {
       fileWalker.setDirectoryHandler(directoryHandler);
       fileWalker.setFileHandler(fileHandler);
 
-      when(fileHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(fileHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
 
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
             final Path breakFile = files.get(FILES_TO_WALK);
             final Path thisFile = (Path) invocation.getArguments()[0];
-            int depth = (Integer) invocation.getArguments()[1];
+            int depth = (Integer) invocation.getArguments()[2];
             if (thisFile.equals(breakFile)) {
                throw new DirectoryWalker.CancelException(thisFile.toFile(), depth);
             }
@@ -333,7 +348,7 @@ public class FileWalkerTest {
          }
       });
       
-      when(directoryHandler.handle(any(Path.class), anyInt(), nullable(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(directoryHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), nullable(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
 
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
@@ -367,7 +382,7 @@ public class FileWalkerTest {
       FileUtil.deleteQuietly(parentDir);
       
       FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class);
-      when(resumeHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(resumeHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
          
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
@@ -409,13 +424,13 @@ public class FileWalkerTest {
       fileWalker.setDirectoryHandler(directoryHandler);
       fileWalker.setFileHandler(fileHandler);
 
-      when(fileHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(fileHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
 
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
             final Path breakFile = files.get(FILES_TO_WALK);
             final Path thisFile = (Path) invocation.getArguments()[0];
-            int depth = (Integer) invocation.getArguments()[1];
+            int depth = (Integer) invocation.getArguments()[2];
             if (thisFile.equals(breakFile)) {
                throw new DirectoryWalker.CancelException(thisFile.toFile(), depth);
             }
@@ -426,7 +441,7 @@ public class FileWalkerTest {
             return new ResourceId(nextId.incrementAndGet(), "");
          }
       });
-      when(directoryHandler.handle(any(Path.class), anyInt(), nullable(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(directoryHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), nullable(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
 
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
@@ -452,7 +467,7 @@ public class FileWalkerTest {
       assertEquals(0, FileUtil.listFiles(directoryToEmpty, true, (DirectoryStream.Filter<Path>) null).size());
 
       FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class);
-      when(resumeHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(resumeHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
          
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
@@ -507,13 +522,13 @@ public class FileWalkerTest {
       fileWalker.setDirectoryHandler(directoryHandler);
       fileWalker.setFileHandler(fileHandler);
 
-      when(fileHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(fileHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
 
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
             final Path breakFile = files.get(FILES_TO_WALK);
             final Path thisFile = (Path) invocation.getArguments()[0];
-            int depth = (Integer) invocation.getArguments()[1];
+            int depth = (Integer) invocation.getArguments()[2];
             if (thisFile.equals(breakFile)) {
                throw new DirectoryWalker.CancelException(thisFile.toFile(), depth);
             }
@@ -524,7 +539,7 @@ public class FileWalkerTest {
             return new ResourceId(nextId.incrementAndGet(), "");
          }
       });
-      when(directoryHandler.handle(any(Path.class), anyInt(), nullable(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(directoryHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), nullable(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
 
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
@@ -545,7 +560,7 @@ public class FileWalkerTest {
       fileSet.add(newFile);   // represent the new file in the HashSet
 
       FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class);
-      when(resumeHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(resumeHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
          
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
@@ -589,13 +604,13 @@ public class FileWalkerTest {
       fileWalker.setDirectoryHandler(directoryHandler);
       fileWalker.setFileHandler(fileHandler);
 
-      when(fileHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(fileHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
 
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
             final Path breakFile = files.get(FILES_TO_WALK);
             final Path thisFile = (Path) invocation.getArguments()[0];
-            int depth = (Integer) invocation.getArguments()[1];
+            int depth = (Integer) invocation.getArguments()[2];
             if (thisFile.equals(breakFile)) {
                throw new DirectoryWalker.CancelException(thisFile.toFile(), depth);
             }
@@ -606,7 +621,7 @@ public class FileWalkerTest {
             return new ResourceId(nextId.incrementAndGet(), "");
          }
       });
-      when(directoryHandler.handle(any(Path.class), anyInt(), nullable(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(directoryHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), nullable(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
 
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
@@ -631,7 +646,7 @@ public class FileWalkerTest {
       assertTrue(FileUtil.mkdirsQuietly(newFile));
 
       FileWalkerHandler resumeHandler = mock(FileWalkerHandler.class);
-      when(resumeHandler.handle(any(Path.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
+      when(resumeHandler.handle(any(Path.class), nullable(BasicFileAttributes.class), anyInt(), any(ProgressEntry.class))).thenAnswer(new Answer<ResourceId>() {
          
          @Override
          public ResourceId answer(InvocationOnMock invocation) throws Throwable {
@@ -650,4 +665,331 @@ public class FileWalkerTest {
       // Check the files have all been processed even with addition of directory
       assertEquals(fileSet.isEmpty(), true);
    }
+
+   @Test
+   public void testPrefetchingWalkCallsHandlersInTheSameOrderAsSequentialWalk() throws Exception {
+      final List<String> sequentialEvents = new ArrayList<>();
+      walkRecording(new FileWalker(TEST_ROOT.toUri(), true), sequentialEvents);
+
+      final List<String> prefetchEvents = new ArrayList<>();
+      final ExecutorService executor = Executors.newFixedThreadPool(3);
+      try {
+         final FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
+         fileWalker.setDirectoryPrefetch(executor, 2);
+         walkRecording(fileWalker, prefetchEvents);
+      } finally {
+         executor.shutdownNow();
+      }
+
+      assertEquals(files.size() + 7, sequentialEvents.size());
+      assertEquals(sequentialEvents, prefetchEvents);
+   }
+
+   @Test
+   public void testBatchedFilesAreOnlyProcessedOnceTheirBatchIsHandled() throws Exception {
+      final Path breakFile = files.get(23);
+      final Set<Path> fileSet = new HashSet<>(files);
+      final AtomicLong nextId = new AtomicLong(0);
+      final FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
+      final FileWalkerHandler fileHandler = mock(FileWalkerHandler.class);
+      fileWalker.setFileHandler(fileHandler);
+      fileWalker.setDirectoryHandler(new FileWalkerHandler() {
+         @Override
+         public ResourceId handle(Path file, BasicFileAttributes attributes, int depth, ProgressEntry parent) {
+            return new ResourceId(nextId.incrementAndGet(), "");
+         }
+      });
+      fileWalker.setFileBatchHandler(new FileWalkerBatchHandler() {
+         @Override
+         public void handle(List<Path> batch, List<BasicFileAttributes> attributes, int depth, ProgressEntry parent)
+               throws IOException {
+            assertTrue(batch.size() <= 3);
+            assertEquals(batch.size(), attributes.size());
+            for (Path file : batch) {
+               assertEquals(parent.getFile(), file.getParent());
+            }
+            if (batch.contains(breakFile)) {
+               throw new DirectoryWalker.CancelException(breakFile.toFile(), depth);
+            }
+            for (Path file : batch) {
+               assertTrue("File handled twice: " + file, fileSet.remove(file));
+            }
+         }
+      }, 1024, 3);
+
+      try {
+         fileWalker.walk();
+         fail("Expected file walker to throw exception");
+      } catch (DirectoryWalker.CancelException e) {
+         assertEquals(breakFile, e.getFile().toPath());
+      }
+      assertTrue(fileSet.contains(breakFile));
+
+      final List<Path> resumed = new ArrayList<>();
+      fileWalker.setFileBatchHandler(new FileWalkerBatchHandler() {
+         @Override
+         public void handle(List<Path> batch, List<BasicFileAttributes> attributes, int depth, ProgressEntry parent) {
+            resumed.addAll(batch);
+         }
+      }, 1024, 3);
+      fileWalker.walk();
+
+      assertEquals(fileSet.size(), resumed.size());
+      assertEquals(fileSet, new HashSet<>(resumed));
+      verify(fileHandler, never()).handle(any(Path.class), nullable(BasicFileAttributes.class),
+            anyInt(), nullable(ProgressEntry.class));
+   }
+
+   @Test
+   public void testFileKeyOrderWalksFilesByInodeAndResumesFromACheckpoint() throws Exception {
+      Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("unix"));
+      // files created in reverse name order, so their inode order is unlikely to be their name order:
+      final Path dir = TEST_ROOT.resolve("dir3").toAbsolutePath();
+      Files.createDirectories(dir);
+      final List<Path> dirFiles = new ArrayList<>();
+      for (int i = 20; i > 0; i--) {
+         dirFiles.add(Files.createFile(dir.resolve(String.format("file3%02d.ext", i))));
+      }
+      final Set<Path> fileSet = new HashSet<>(files);
+      fileSet.addAll(dirFiles);
+      final int filesBeforeBreak = 40;
+
+      final AtomicLong nextId = new AtomicLong(0);
+      final List<Path> handled = new ArrayList<>();
+      final FileWalkerHandler directoryHandler = new FileWalkerHandler() {
+         @Override
+         public ResourceId handle(Path file, BasicFileAttributes attributes, int depth, ProgressEntry parent) {
+            return new ResourceId(nextId.incrementAndGet(), "");
+         }
+      };
+      final FileWalkerHandler fileHandler = new FileWalkerHandler() {
+         @Override
+         public ResourceId handle(Path file, BasicFileAttributes attributes, int depth, ProgressEntry parent)
+               throws IOException {
+            if (handled.size() == filesBeforeBreak) {
+               throw new DirectoryWalker.CancelException(file.toFile(), depth);
+            }
+            assertEquals(parent.getFile(), file.getParent());
+            assertTrue("File handled twice: " + file, fileSet.remove(file));
+            handled.add(file);
+            return new ResourceId(nextId.incrementAndGet(), "");
+         }
+      };
+
+      final FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
+      fileWalker.setFileKeyOrder(true);
+      fileWalker.setDirectoryHandler(directoryHandler);
+      fileWalker.setFileHandler(fileHandler);
+      try {
+         fileWalker.walk();
+         fail("Expected file walker to throw exception");
+      } catch (DirectoryWalker.CancelException e) {
+         assertEquals(filesBeforeBreak, handled.size());
+      }
+      // the progress through each directory is an inode cursor, not the list of its children:
+      final ProgressEntry current = fileWalker.progress().peek();
+      assertFalse(current.hasChildList());
+      assertEquals(Files.getAttribute(handled.get(filesBeforeBreak - 1), "unix:ino"), current.getLastInode());
+
+      final ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+      final ProfileWalkState state = new ProfileWalkState();
+      state.setCurrentFileWalker(fileWalker);
+      ProfileWalkCheckpoint.write(state, new DataOutputStream(checkpoint));
+      final FileWalker resumed = ProfileWalkCheckpoint.read(
+            new DataInputStream(new ByteArrayInputStream(checkpoint.toByteArray()))).getCurrentFileWalker();
+      assertTrue(resumed.isFileKeyOrder());
+      resumed.setDirectoryHandler(directoryHandler);
+      resumed.setFileHandler(fileHandler);
+      handled.add(null); // no more breaks.
+      resumed.walk();
+
+      assertTrue(fileSet.isEmpty());
+      long lastInode = -1;
+      Path lastParent = null;
+      for (Path file : handled) {
+         if (file != null) {
+            final long inode = (Long) Files.getAttribute(file, "unix:ino");
+            if (file.getParent().equals(lastParent)) {
+               assertTrue("File out of inode order: " + file, inode > lastInode);
+            }
+            lastInode = inode;
+            lastParent = file.getParent();
+         }
+      }
+   }
+
+   @Test
+   public void testListingAFewChildrenAtATimeCallsHandlersInTheSameOrder() throws Exception {
+      final List<String> wholeEvents = new ArrayList<>();
+      walkRecording(new FileWalker(TEST_ROOT.toUri(), true), wholeEvents);
+
+      final List<String> partEvents = new ArrayList<>();
+      final FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
+      fileWalker.setListingSize(2);
+      walkRecording(fileWalker, partEvents);
+
+      assertEquals(files.size() + 7, partEvents.size());
+      assertEquals(wholeEvents, partEvents);
+   }
+
+   @Test
+   public void testListingAFewChildrenAtATimeInInodeOrderCallsHandlersInTheSameOrder() throws Exception {
+      Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("unix"));
+      final Path walked = TEST_ROOT.resolve("dir1");
+      final List<String> wholeEvents = new ArrayList<>();
+      final FileWalker wholeWalker = new FileWalker(walked.toUri(), true);
+      wholeWalker.setFileKeyOrder(true);
+      walkRecording(wholeWalker, wholeEvents);
+
+      final Path spillDir = Files.createDirectories(TEST_ROOT.resolve("spills"));
+      final List<String> partEvents = new ArrayList<>();
+      final FileWalker fileWalker = new FileWalker(walked.toUri(), true);
+      fileWalker.setFileKeyOrder(true);
+      fileWalker.setListingSize(2);
+      fileWalker.setListingTempDir(spillDir);
+      walkRecording(fileWalker, partEvents);
+
+      assertEquals(1 + 5 + 2 + 2 * 5, partEvents.size());
+      assertEquals(wholeEvents, partEvents);
+      // the runs spilled while the larger directories were listed have all been deleted:
+      try (DirectoryStream<Path> spills = Files.newDirectoryStream(spillDir)) {
+         assertFalse(spills.iterator().hasNext());
+      }
+   }
+
+   @Test
+   public void testListingAFewChildrenAtATimeResumesFromACheckpoint() throws Exception {
+      final Path breakFile = TEST_ROOT.resolve("dir2/subdir1/file213.ext").toAbsolutePath();
+      final Set<Path> fileSet = new HashSet<>(files);
+      final AtomicLong nextId = new AtomicLong(0);
+      final List<Path> handled = new ArrayList<>();
+      final FileWalkerHandler directoryHandler = new FileWalkerHandler() {
+         @Override
+         public ResourceId handle(Path file, BasicFileAttributes attributes, int depth, ProgressEntry parent) {
+            return new ResourceId(nextId.incrementAndGet(), "");
+         }
+      };
+      final FileWalkerHandler fileHandler = new FileWalkerHandler() {
+         @Override
+         public ResourceId handle(Path file, BasicFileAttributes attributes, int depth, ProgressEntry parent)
+               throws IOException {
+            if (file.equals(breakFile) && !handled.contains(null)) {
+               throw new DirectoryWalker.CancelException(file.toFile(), depth);
+            }
+            assertEquals(parent.getFile(), file.getParent());
+            assertTrue("File handled twice: " + file, fileSet.remove(file));
+            handled.add(file);
+            return new ResourceId(nextId.incrementAndGet(), "");
+         }
+      };
+
+      final FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
+      fileWalker.setListingSize(2);
+      fileWalker.setDirectoryHandler(directoryHandler);
+      fileWalker.setFileHandler(fileHandler);
+      try {
+         fileWalker.walk();
+         fail("Expected file walker to throw exception");
+      } catch (DirectoryWalker.CancelException e) {
+         assertEquals(breakFile, e.getFile().toPath());
+      }
+
+      final ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+      final ProfileWalkState state = new ProfileWalkState();
+      state.setCurrentFileWalker(fileWalker);
+      ProfileWalkCheckpoint.write(state, new DataOutputStream(checkpoint));
+      final FileWalker resumed = ProfileWalkCheckpoint.read(
+            new DataInputStream(new ByteArrayInputStream(checkpoint.toByteArray()))).getCurrentFileWalker();
+      resumed.setListingSize(2);
+      resumed.setDirectoryHandler(directoryHandler);
+      resumed.setFileHandler(fileHandler);
+      handled.add(null); // no more breaks.
+      resumed.walk();
+
+      assertTrue(fileSet.isEmpty());
+      assertEquals(breakFile, handled.get(handled.indexOf(null) + 1));
+   }
+
+   @Test
+   public void testResumingInsideADirectoryEstimatesTheJobsLeftOnTheWayBackToIt() throws Exception {
+      final Path breakFile = TEST_ROOT.resolve("dir2/subdir1/file213.ext").toAbsolutePath();
+      final AtomicLong jobs = new AtomicLong(0);
+      final List<Path> breaks = new ArrayList<>(Collections.singletonList(breakFile));
+      final FileWalkerHandler handler = new FileWalkerHandler() {
+         @Override
+         public ResourceId handle(Path file, BasicFileAttributes attributes, int depth, ProgressEntry parent)
+               throws IOException {
+            if (breaks.remove(file)) {
+               throw new DirectoryWalker.CancelException(file.toFile(), depth);
+            }
+            return new ResourceId(jobs.incrementAndGet(), "");
+         }
+      };
+
+      final FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
+      fileWalker.setListingSize(2);
+      fileWalker.setDirectoryHandler(handler);
+      fileWalker.setFileHandler(handler);
+      try {
+         fileWalker.walk();
+         fail("Expected file walker to throw exception");
+      } catch (DirectoryWalker.CancelException e) {
+         assertEquals(breakFile, e.getFile().toPath());
+      }
+
+      final ProgressMonitor progressMonitor = mock(ProgressMonitor.class);
+      when(progressMonitor.getIdentificationCount()).thenReturn(jobs.get());
+      final ProgressEstimator estimator = new ProgressEstimator(progressMonitor);
+      fileWalker.setProgressEstimator(estimator);
+      fileWalker.walk();
+
+      // the root, 2 directories, 4 sub-directories and 30 files:
+      assertEquals(37, jobs.get());
+      assertEquals(37, estimator.getEstimate());
+   }
+
+   @Test
+   public void testDirectoryWhichCannotBeListedIsHandledAsAnErrorAndTheWalkCarriesOn() throws Exception {
+      final Path vanishing = TEST_ROOT.resolve("dir2").toAbsolutePath();
+      final AtomicLong nextId = new AtomicLong(0);
+      final FileWalker fileWalker = new FileWalker(TEST_ROOT.toUri(), true);
+      final FileWalkerHandler fileHandler = mock(FileWalkerHandler.class);
+      final FileWalkerHandler errorHandler = mock(FileWalkerHandler.class);
+      fileWalker.setFileHandler(fileHandler);
+      fileWalker.setDirectoryErrorHandler(errorHandler);
+      fileWalker.setDirectoryHandler(new FileWalkerHandler() {
+         @Override
+         public ResourceId handle(Path file, BasicFileAttributes attributes, int depth, ProgressEntry parent) {
+            // dir2 is listed with its parent, but is gone by the time it is walked:
+            if (file.getFileName().toString().equals("dir1")) {
+               FileUtil.deleteQuietly(vanishing);
+            }
+            return new ResourceId(nextId.incrementAndGet(), "");
+         }
+      });
+
+      fileWalker.walk();
+
+      final ArgumentCaptor<ProgressEntry> parentCaptor = ArgumentCaptor.forClass(ProgressEntry.class);
+      verify(errorHandler).handle(eq(vanishing), any(BasicFileAttributes.class), eq(1), parentCaptor.capture());
+      assertEquals(TEST_ROOT.toAbsolutePath(), parentCaptor.getValue().getFile().toAbsolutePath());
+      verify(fileHandler, times(15)).handle(any(Path.class), any(BasicFileAttributes.class), anyInt(),
+            any(ProgressEntry.class));
+   }
+
+   private static void walkRecording(final FileWalker fileWalker, final List<String> events) throws IOException {
+      final AtomicLong nextId = new AtomicLong(0);
+      final FileWalkerHandler handler = new FileWalkerHandler() {
+         @Override
+         public ResourceId handle(Path file, BasicFileAttributes attributes, int depth, ProgressEntry parent) {
+            final long id = nextId.incrementAndGet();
+            events.add(file.getFileName() + ":" + depth + ":" + (parent == null ? null : parent.getResourceId())
+                  + ":" + attributes.isDirectory() + ":" + id);
+            return new ResourceId(id, "");
+         }
+      };
+      fileWalker.setFileHandler(handler);
+      fileWalker.setDirectoryHandler(handler);
+      fileWalker.walk();
+   }
 }
\ No newline at end of file
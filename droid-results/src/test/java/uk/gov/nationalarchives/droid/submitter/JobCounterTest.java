@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class JobCounterTest {
+
+    private static final int THREADS = 8;
+    private static final int JOBS_PER_THREAD = 200000;
+
+    @Test
+    public void testAwaitFinishedWaitsForPostProcessing() throws Exception {
+        final JobCounter jobCounter = new JobCounter();
+        jobCounter.increment(2);
+        jobCounter.incrementPostProcess();
+
+        final CountDownLatch idle = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        startWaiter(idle, () -> jobCounter.awaitIdle());
+        startWaiter(finished, () -> jobCounter.awaitFinished());
+
+        jobCounter.decrement();
+        assertFalse(idle.await(100, TimeUnit.MILLISECONDS));
+        jobCounter.decrement();
+        assertTrue(idle.await(5, TimeUnit.SECONDS));
+        assertFalse(finished.await(100, TimeUnit.MILLISECONDS));
+        jobCounter.decrementPostProcess();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Many threads counting jobs in, then out, while others wait for them to finish.
+     */
+    @Test
+    public void testContendedCountingLosesNoCountsAndReleasesWaiters() throws Exception {
+        final JobCounter jobCounter = new JobCounter();
+        runConcurrently(() -> {
+            for (int j = 0; j < JOBS_PER_THREAD; j++) {
+                jobCounter.increment();
+                jobCounter.incrementPostProcess();
+            }
+        });
+        assertEquals(THREADS * JOBS_PER_THREAD, jobCounter.getJobCount());
+        assertEquals(THREADS * JOBS_PER_THREAD, jobCounter.getPostProcessCount());
+
+        final CountDownLatch idle = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        startWaiter(idle, () -> jobCounter.awaitIdle());
+        startWaiter(finished, () -> jobCounter.awaitFinished());
+        assertFalse(idle.await(100, TimeUnit.MILLISECONDS));
+
+        runConcurrently(() -> {
+            for (int j = 0; j < JOBS_PER_THREAD; j++) {
+                jobCounter.decrement();
+            }
+        });
+        assertEquals(0, jobCounter.getJobCount());
+        assertTrue(idle.await(5, TimeUnit.SECONDS));
+        assertFalse(finished.await(100, TimeUnit.MILLISECONDS));
+
+        runConcurrently(() -> {
+            for (int j = 0; j < JOBS_PER_THREAD; j++) {
+                jobCounter.decrementPostProcess();
+            }
+        });
+        assertEquals(0, jobCounter.getPostProcessCount());
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Many threads counting jobs in and out while another keeps waiting for them to finish,
+     * as the pipeline stages and the profile do.  The waiter must not miss the last signal.
+     */
+    @Test
+    public void testWaiterIsReleasedOnceContendedCountingStops() throws Exception {
+        final JobCounter jobCounter = new JobCounter();
+        final AtomicBoolean done = new AtomicBoolean();
+        final Thread waiter = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    jobCounter.awaitFinished();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+
+        runConcurrently(() -> {
+            for (int j = 0; j < JOBS_PER_THREAD; j++) {
+                jobCounter.increment();
+                jobCounter.incrementPostProcess();
+                jobCounter.decrement();
+                jobCounter.decrementPostProcess();
+            }
+        });
+        done.set(true);
+        waiter.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertFalse(waiter.isAlive());
+        assertEquals(0, jobCounter.getJobCount());
+        assertEquals(0, jobCounter.getPostProcessCount());
+    }
+
+    private static void runConcurrently(final Runnable counting) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    counting.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static void startWaiter(final CountDownLatch released, final Waiting waiting) {
+        final Thread thread = new Thread(() -> {
+            try {
+                waiting.await();
+                released.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private interface Waiting {
+        void await() throws InterruptedException;
+    }
+}
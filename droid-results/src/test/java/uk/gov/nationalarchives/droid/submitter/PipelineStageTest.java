@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.VirtualThreadExecutor;
+
+/**
+ * Tests the hand-off of tasks to a stage of the identification pipeline.
+ */
+public class PipelineStageTest {
+
+    private PipelineStage stage;
+    private PipelineStage otherStage;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (stage != null) {
+            stage.shutdownNow();
+        }
+        if (otherStage != null) {
+            otherStage.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExternalThreadBlocksWhileTheQueueIsFull() throws Exception {
+        stage = new PipelineStage("test", 1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        stage.execute(() -> {
+            started.countDown();
+            awaitRelease();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        stage.execute(() -> { });
+        assertEquals(1, stage.getQueueDepth());
+
+        final CountDownLatch handedOff = new CountDownLatch(1);
+        final Thread submitter = new Thread(() -> {
+            try {
+                stage.execute(() -> { });
+                handedOff.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        assertFalse(handedOff.await(300, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(handedOff.await(5, TimeUnit.SECONDS));
+        assertEquals(0, stage.getInlineCount());
+        assertEquals(1, stage.getPeakQueueDepth());
+    }
+
+    @Test
+    public void testPipelineThreadRunsTaskItselfWhileTheQueueIsFull() throws Exception {
+        stage = new PipelineStage("test", 1, 1);
+        otherStage = new PipelineStage("other", 1, 1);
+        stage.execute(this::awaitRelease);
+        stage.execute(() -> { });
+
+        final AtomicReference<String> ranOn = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        otherStage.execute(() -> {
+            try {
+                stage.execute(() -> ranOn.set(Thread.currentThread().getName()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("other-thread-1", ranOn.get());
+        assertEquals(1, stage.getInlineCount());
+    }
+
+    @Test
+    public void testVirtualStageBlocksExternalThreadsAndRunsPipelineTasksInlineAtItsLimit() throws Exception {
+        assumeTrue(VirtualThreadExecutor.isSupported());
+        stage = PipelineStage.withVirtualThreads("test", 1);
+        otherStage = new PipelineStage("other", 1, 1);
+        assertTrue(stage.isVirtual());
+        stage.execute(this::awaitRelease);
+        assertEquals(0, stage.getQueueDepth());
+
+        final AtomicReference<String> ranOn = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        otherStage.execute(() -> {
+            try {
+                stage.execute(() -> ranOn.set(Thread.currentThread().getName()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("other-thread-1", ranOn.get());
+
+        final CountDownLatch handedOff = new CountDownLatch(1);
+        final Thread submitter = new Thread(() -> {
+            try {
+                stage.execute(() -> ranOn.set(Thread.currentThread().getName()));
+                handedOff.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        assertFalse(handedOff.await(300, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(handedOff.await(5, TimeUnit.SECONDS));
+        assertEquals(1, stage.getInlineCount());
+    }
+
+    @Test
+    public void testExpandingStageThreadWaitsForSpaceInsteadOfRunningTaskItself() throws Exception {
+        stage = new PipelineStage("test", 1, 1);
+        otherStage = PipelineStage.expanding("archive", 1, 1, 1, 90);
+        stage.execute(this::awaitRelease);
+        stage.execute(() -> { });
+
+        final AtomicReference<String> ranOn = new AtomicReference<>();
+        final CountDownLatch handedOff = new CountDownLatch(1);
+        final CountDownLatch ran = new CountDownLatch(1);
+        otherStage.execute(() -> {
+            try {
+                stage.execute(() -> {
+                    ranOn.set(Thread.currentThread().getName());
+                    ran.countDown();
+                });
+                handedOff.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertFalse(handedOff.await(300, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(handedOff.await(5, TimeUnit.SECONDS));
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals("test-thread-1", ranOn.get());
+        assertEquals(0, stage.getInlineCount());
+    }
+
+    @Test
+    public void testExpandingStageRunsWaitingTasksInOrderOfPriority() throws Exception {
+        stage = PipelineStage.expanding("archive", 1, 1, 4, 90);
+        final CountDownLatch started = new CountDownLatch(1);
+        stage.execute(() -> {
+            started.countDown();
+            awaitRelease();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(4);
+        for (int priority : new int[] {0, 2, 1, 2}) {
+            stage.execute(() -> {
+                order.add(priority);
+                done.countDown();
+            }, priority);
+        }
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(2, 2, 1, 0), order);
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testShutdownStageRejectsTasks() throws Exception {
+        stage = new PipelineStage("test", 1, 1);
+        stage.shutdownNow();
+        stage.execute(() -> { });
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the order and bounds of the queue of tasks waiting for an expanding pipeline stage.
+ */
+public class PriorityTaskQueueTest {
+
+    @Test
+    public void testTasksAreTakenByPriorityThenInTheOrderTheyWereQueued() throws Exception {
+        final PriorityTaskQueue queue = new PriorityTaskQueue(4);
+        final Runnable plain = () -> { };
+        final Runnable low = PriorityTaskQueue.prioritised(() -> { }, 1);
+        final Runnable high1 = PriorityTaskQueue.prioritised(() -> { }, 3);
+        final Runnable high2 = PriorityTaskQueue.prioritised(() -> { }, 3);
+        queue.put(plain);
+        queue.put(high1);
+        queue.put(low);
+        queue.put(high2);
+
+        assertSame(high1, queue.take());
+        assertSame(high2, queue.poll());
+        assertSame(low, queue.poll(1, TimeUnit.MILLISECONDS));
+        assertSame(plain, queue.take());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testQueueIsBounded() throws Exception {
+        final PriorityTaskQueue queue = new PriorityTaskQueue(2);
+        assertTrue(queue.offer(() -> { }));
+        assertTrue(queue.offer(() -> { }, 1, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.remainingCapacity());
+        assertFalse(queue.offer(() -> { }));
+        assertFalse(queue.offer(PriorityTaskQueue.prioritised(() -> { }, 5), 10, TimeUnit.MILLISECONDS));
+
+        final List<Runnable> drained = new ArrayList<>();
+        assertEquals(2, queue.drainTo(drained));
+        assertEquals(2, queue.remainingCapacity());
+    }
+
+    @Test
+    public void testTaskCanBeRemoved() {
+        final PriorityTaskQueue queue = new PriorityTaskQueue(2);
+        final Runnable task = PriorityTaskQueue.prioritised(() -> { }, 1);
+        queue.offer(task);
+        assertTrue(queue.remove(task));
+        assertFalse(queue.remove(task));
+        assertEquals(0, queue.size());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullTaskIsRejected() {
+        new PriorityTaskQueue(2).offer(null);
+    }
+
+    @Test
+    public void testTaskCanBeRemovedThroughTheIterator() {
+        final PriorityTaskQueue queue = new PriorityTaskQueue(2);
+        final Runnable task = () -> { };
+        queue.offer(task);
+        queue.offer(() -> { });
+        final Iterator<Runnable> tasks = queue.iterator();
+        while (tasks.hasNext()) {
+            if (tasks.next() == task) {
+                tasks.remove();
+            }
+        }
+        assertEquals(1, queue.size());
+        assertFalse(queue.contains(task));
+    }
+
+    @Test
+    public void testPurgeRemovesCancelledTasks() throws Exception {
+        final PriorityTaskQueue queue = new PriorityTaskQueue(4);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            final Future<?> cancelled = executor.submit(() -> { });
+            executor.submit(() -> { });
+            assertTrue(cancelled.cancel(false));
+            assertEquals(2, queue.size());
+
+            executor.purge();
+            assertEquals(1, queue.size());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+}
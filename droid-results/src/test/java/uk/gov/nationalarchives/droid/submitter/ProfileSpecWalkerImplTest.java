@@ -35,11 +35,13 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -180,18 +182,18 @@ public class ProfileSpecWalkerImplTest {
         walker.setProgressMonitor(progressMonitor);
         FileEventHandler fileEventHandler = mock(FileEventHandler.class);
         DirectoryEventHandler dirEventhandler = mock(DirectoryEventHandler.class);
-        when(dirEventhandler.onEvent(locations[0],
-                null, 0, false)).thenReturn(new ResourceId(1L, ""));
-        when(dirEventhandler.onEvent(locations[1],
-                null, 0, false)).thenReturn(new ResourceId(2L, ""));
-        when(dirEventhandler.onEvent(canonicalFile(TEST_ROOT, "dir1/subdir1"), 
-                new ResourceId(1L, ""), 1, false)).thenReturn(new ResourceId(11L, ""));
-        when(dirEventhandler.onEvent(canonicalFile(TEST_ROOT, "dir1/subdir2"),
-                new ResourceId(1L, ""), 1, false)).thenReturn(new ResourceId(12L, ""));
-        when(dirEventhandler.onEvent(canonicalFile(TEST_ROOT, "dir2/subdir1"),
-                new ResourceId(2L, ""), 1, false)).thenReturn(new ResourceId(21L, ""));
-        when(dirEventhandler.onEvent(canonicalFile(TEST_ROOT, "dir2/subdir2"), 
-                new ResourceId(2L, ""), 1, false)).thenReturn(new ResourceId(22L, ""));
+        when(dirEventhandler.onEvent(eq(locations[0]), any(BasicFileAttributes.class),
+                (ResourceId) isNull(), eq(0), eq(false))).thenReturn(new ResourceId(1L, ""));
+        when(dirEventhandler.onEvent(eq(locations[1]), any(BasicFileAttributes.class),
+                (ResourceId) isNull(), eq(0), eq(false))).thenReturn(new ResourceId(2L, ""));
+        when(dirEventhandler.onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir1")), any(BasicFileAttributes.class),
+                eq(new ResourceId(1L, "")), eq(1), eq(false))).thenReturn(new ResourceId(11L, ""));
+        when(dirEventhandler.onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir2")), any(BasicFileAttributes.class),
+                eq(new ResourceId(1L, "")), eq(1), eq(false))).thenReturn(new ResourceId(12L, ""));
+        when(dirEventhandler.onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir1")), any(BasicFileAttributes.class),
+                eq(new ResourceId(2L, "")), eq(1), eq(false))).thenReturn(new ResourceId(21L, ""));
+        when(dirEventhandler.onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir2")), any(BasicFileAttributes.class),
+                eq(new ResourceId(2L, "")), eq(1), eq(false))).thenReturn(new ResourceId(22L, ""));
         
         walker.setDirectoryEventHandler(dirEventhandler);
         walker.setFileEventHandler(fileEventHandler);
@@ -199,28 +201,38 @@ public class ProfileSpecWalkerImplTest {
         walker.walk(profileSpec, new ProfileWalkState());
 
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir1/file11.ext"), new ResourceId(1L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir1/file11.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")),
+                (ResourceId) isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir1/file12.ext"), new ResourceId(1L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir1/file12.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")),
+                (ResourceId) isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir1/file13.ext"), new ResourceId(1L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir1/file13.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")),
+                (ResourceId) isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir1/file14.ext"), new ResourceId(1L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir1/file14.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")),
+                (ResourceId) isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir1/file15.ext"), new ResourceId(1L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir1/file15.ext")), any(BasicFileAttributes.class), eq(new ResourceId(1L, "")),
+                (ResourceId) isNull());
 
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")),
+                (ResourceId) isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")),
+                (ResourceId) isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")),
+                (ResourceId) isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")),
+                (ResourceId) isNull());
         verify(fileEventHandler).onEvent(
-                canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
+                eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class), eq(new ResourceId(2L, "")),
+                (ResourceId) isNull());
 
-        verify(fileEventHandler, times(10)).onEvent(any(Path.class), (ResourceId) any(),
+        verify(fileEventHandler, times(10)).onEvent(any(Path.class), any(BasicFileAttributes.class), (ResourceId) any(),
                 (ResourceId) isNull());
 
         verify(fileEventHandler, never()).onEvent(
@@ -234,7 +246,7 @@ public class ProfileSpecWalkerImplTest {
                         return "A Node with a File containing the String 'sub'";
                     }
 
-                }), (ResourceId) any(), (ResourceId) isNull());
+                }), any(BasicFileAttributes.class), (ResourceId) any(), (ResourceId) isNull());
     }
 
     private List<AbstractProfileResource> buildFileResources(String[] locations) {
@@ -328,79 +340,89 @@ public class ProfileSpecWalkerImplTest {
         walker.setFileEventHandler(fileEventHandler);
 
         DirectoryEventHandler dirEventhandler = mock(DirectoryEventHandler.class);
-        when(dirEventhandler.onEvent(canonicalFile(TEST_ROOT, "dir1"), 
-                null, 0, false)).thenReturn(new ResourceId(1L, ""));
-        when(dirEventhandler.onEvent(canonicalFile(TEST_ROOT, "dir2"), 
-                null, 0, false)).thenReturn(new ResourceId(2L, ""));
-        when(dirEventhandler.onEvent(canonicalFile(TEST_ROOT, "dir1/subdir1"), 
-                new ResourceId(1L, ""), 1, false)).thenReturn(new ResourceId(11L, ""));
-        when(dirEventhandler.onEvent(canonicalFile(TEST_ROOT, "dir1/subdir2"),
-                new ResourceId(1L, ""), 1, false)).thenReturn(new ResourceId(12L, ""));
-        when(dirEventhandler.onEvent(canonicalFile(TEST_ROOT, "dir2/subdir1"),
-                new ResourceId(2L, ""), 1, false)).thenReturn(new ResourceId(21L, ""));
-        when(dirEventhandler.onEvent(canonicalFile(TEST_ROOT, "dir2/subdir2"), 
-                new ResourceId(2L, ""), 1, false)).thenReturn(new ResourceId(22L, ""));
+        when(dirEventhandler.onEvent(eq(canonicalFile(TEST_ROOT, "dir1")), any(BasicFileAttributes.class),
+                (ResourceId) isNull(), eq(0), eq(false))).thenReturn(new ResourceId(1L, ""));
+        when(dirEventhandler.onEvent(eq(canonicalFile(TEST_ROOT, "dir2")), any(BasicFileAttributes.class),
+                (ResourceId) isNull(), eq(0), eq(false))).thenReturn(new ResourceId(2L, ""));
+        when(dirEventhandler.onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir1")), any(BasicFileAttributes.class),
+                eq(new ResourceId(1L, "")), eq(1), eq(false))).thenReturn(new ResourceId(11L, ""));
+        when(dirEventhandler.onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir2")), any(BasicFileAttributes.class),
+                eq(new ResourceId(1L, "")), eq(1), eq(false))).thenReturn(new ResourceId(12L, ""));
+        when(dirEventhandler.onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir1")), any(BasicFileAttributes.class),
+                eq(new ResourceId(2L, "")), eq(1), eq(false))).thenReturn(new ResourceId(21L, ""));
+        when(dirEventhandler.onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir2")), any(BasicFileAttributes.class),
+                eq(new ResourceId(2L, "")), eq(1), eq(false))).thenReturn(new ResourceId(22L, ""));
         walker.setDirectoryEventHandler(dirEventhandler);
 
         walker.walk(profileSpec, new ProfileWalkState());
 
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/file11.ext"), new ResourceId(1L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/file12.ext"), new ResourceId(1L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/file13.ext"), new ResourceId(1L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/file14.ext"), new ResourceId(1L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/file15.ext"), new ResourceId(1L, ""), null);
-
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir1/file111.ext"),
-                new ResourceId(11L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir1/file112.ext"), 
-                new ResourceId(11L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir1/file113.ext"),
-                new ResourceId(11L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir1/file114.ext"), 
-                new ResourceId(11L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir1/file115.ext"), 
-                new ResourceId(11L, ""), null);
-
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir2/file121.ext"), 
-                new ResourceId(12L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir2/file122.ext"), 
-                new ResourceId(12L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir2/file123.ext"), 
-                new ResourceId(12L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir2/file124.ext"), 
-                new ResourceId(12L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir1/subdir2/file125.ext"), 
-                new ResourceId(12L, ""), null);
-
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/file21.ext"), new ResourceId(2L, ""), null);
-
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir1/file211.ext"), 
-                new ResourceId(21L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir1/file212.ext"), 
-                new ResourceId(21L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir1/file213.ext"), 
-                new ResourceId(21L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir1/file214.ext"), 
-                new ResourceId(21L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir1/file215.ext"), 
-                new ResourceId(21L, ""), null);
-
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir2/file221.ext"), 
-                new ResourceId(22L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir2/file222.ext"), 
-                new ResourceId(22L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir2/file223.ext"), 
-                new ResourceId(22L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir2/file224.ext"), 
-                new ResourceId(22L, ""), null);
-        verify(fileEventHandler).onEvent(canonicalFile(TEST_ROOT, "dir2/subdir2/file225.ext"), 
-                new ResourceId(22L, ""), null);
-
-        verify(fileEventHandler, times(30)).onEvent(any(Path.class), (ResourceId) any(),
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/file11.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(1L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/file12.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(1L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/file13.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(1L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/file14.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(1L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/file15.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(1L, "")), (ResourceId) isNull());
+
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir1/file111.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(11L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir1/file112.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(11L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir1/file113.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(11L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir1/file114.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(11L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir1/file115.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(11L, "")), (ResourceId) isNull());
+
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir2/file121.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(12L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir2/file122.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(12L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir2/file123.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(12L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir2/file124.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(12L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir1/subdir2/file125.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(12L, "")), (ResourceId) isNull());
+
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(2L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(2L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(2L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(2L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/file21.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(2L, "")), (ResourceId) isNull());
+
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir1/file211.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(21L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir1/file212.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(21L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir1/file213.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(21L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir1/file214.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(21L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir1/file215.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(21L, "")), (ResourceId) isNull());
+
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir2/file221.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(22L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir2/file222.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(22L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir2/file223.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(22L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir2/file224.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(22L, "")), (ResourceId) isNull());
+        verify(fileEventHandler).onEvent(eq(canonicalFile(TEST_ROOT, "dir2/subdir2/file225.ext")), any(BasicFileAttributes.class),
+                eq(new ResourceId(22L, "")), (ResourceId) isNull());
+
+        verify(fileEventHandler, times(30)).onEvent(any(Path.class), any(BasicFileAttributes.class), (ResourceId) any(),
                 (ResourceId) isNull());
     }
 
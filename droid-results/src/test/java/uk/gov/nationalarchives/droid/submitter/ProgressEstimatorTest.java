@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitor;
+import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitorImpl;
+
+public class ProgressEstimatorTest {
+
+    private ProgressMonitorImpl progressMonitor;
+
+    @Before
+    public void setup() {
+        progressMonitor = new ProgressMonitorImpl();
+    }
+
+    @Test
+    public void testEstimateExtrapolatesUnlistedDirectoriesFromListedOnes() {
+        ProgressEstimator estimator = new ProgressEstimator(progressMonitor);
+
+        estimator.addDirectory();
+        assertEquals(1, progressMonitor.getTargetCount());
+
+        // root: 4 entries, 2 of which are directories.
+        estimator.directoryListed(0, 4, 2, true);
+        assertEquals(5, progressMonitor.getTargetCount());
+
+        // first sub-directory has 3 files, so the other is expected to have 3 too.
+        estimator.directoryListed(1, 3, 0, true);
+        assertEquals(11, progressMonitor.getTargetCount());
+
+        // second sub-directory only has 1 file.
+        estimator.directoryListed(1, 1, 0, true);
+        assertEquals(9, progressMonitor.getTargetCount());
+
+        estimator.finish();
+        assertEquals(9, progressMonitor.getTargetCount());
+    }
+
+    @Test
+    public void testEstimateExtrapolatesFromDeeperLevels() {
+        ProgressEstimator estimator = new ProgressEstimator(progressMonitor);
+
+        estimator.addDirectory();
+        estimator.addDirectory();
+        estimator.directoryListed(0, 2, 1, true);
+        estimator.directoryListed(1, 5, 0, true);
+
+        // the unlisted second root is expected to hold 2 entries and 5 more below its sub-directory.
+        assertEquals(2 + 2 + 5 + 7, progressMonitor.getTargetCount());
+        assertEquals(16, estimator.getEstimate());
+    }
+
+    @Test
+    public void testEntriesOfADirectoryListedInPartsAreAddedToIt() {
+        ProgressEstimator estimator = new ProgressEstimator(progressMonitor);
+
+        estimator.addDirectory();
+        estimator.addDirectory();
+        estimator.directoryListed(0, 2, 0, true);
+        estimator.entriesListed(0, 2, 0);
+
+        // the unlisted second root is expected to hold as many entries as both parts of the first.
+        assertEquals(2 + 2 + 2 + 4, progressMonitor.getTargetCount());
+
+        estimator.directoryListed(0, 1, 0, true);
+        estimator.finish();
+        assertEquals(2 + 4 + 1, progressMonitor.getTargetCount());
+    }
+
+    @Test
+    public void testEntriesBelowTheDepthLimitAreNotCounted() {
+        ProgressEstimator estimator = new ProgressEstimator(progressMonitor);
+
+        estimator.directoryListed(ProgressEstimator.PROGRESS_DEPTH_LIMIT, 10, 2, true);
+        estimator.finish();
+        assertEquals(0, progressMonitor.getTargetCount());
+    }
+
+    @Test
+    public void testChildrenWhichAreNotWalkedAreNotCounted() {
+        ProgressEstimator estimator = new ProgressEstimator(progressMonitor);
+
+        estimator.addDirectory();
+        estimator.directoryListed(0, 3, 1, true);
+        estimator.directoryListed(1, 10, 0, false);
+        estimator.finish();
+        assertEquals(4, progressMonitor.getTargetCount());
+    }
+
+    @Test
+    public void testPreviousTargetIsALowerBoundUntilTheWalkFinishes() {
+        progressMonitor.initialise(100, 40);
+        ProgressEstimator estimator = new ProgressEstimator(progressMonitor);
+
+        estimator.addFile();
+        assertEquals(100, progressMonitor.getTargetCount());
+
+        estimator.finish();
+        assertEquals(41, progressMonitor.getTargetCount());
+    }
+
+    @Test
+    public void testNoPreviousTargetIsIndeterminate() {
+        ProgressEstimator estimator = new ProgressEstimator(progressMonitor);
+        assertEquals(ProgressMonitor.INDETERMINATE_PROGRESS, progressMonitor.getTargetCount());
+        assertEquals(0, estimator.getEstimate());
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceType;
+import uk.gov.nationalarchives.droid.profile.NodeMetaData;
+import uk.gov.nationalarchives.droid.profile.ProfileResourceNode;
+import uk.gov.nationalarchives.droid.results.handlers.ProgressMonitor;
+import uk.gov.nationalarchives.droid.results.handlers.ResultHandlerDao;
+
+public class ReidentificationSubmitterTest {
+
+    private ReidentificationSubmitter submitter;
+    private FileEventHandler fileEventHandler;
+    private ResultHandlerDao resultHandlerDao;
+    private ProgressMonitor progressMonitor;
+    private Collection<String> puids;
+    private Collection<String> extensions;
+
+    @Before
+    public void setup() {
+        fileEventHandler = mock(FileEventHandler.class);
+        resultHandlerDao = mock(ResultHandlerDao.class);
+        submitter = new ReidentificationSubmitter();
+        submitter.setFileEventHandler(fileEventHandler);
+        submitter.setResultHandlerDao(resultHandlerDao);
+        progressMonitor = mock(ProgressMonitor.class);
+        submitter.setProgressMonitor(progressMonitor);
+        puids = Collections.singleton("fmt/1");
+        extensions = Collections.singleton("WAV");
+    }
+
+    @Test
+    public void testNothingIsSubmittedWhenThereAreNoDifferences() {
+        assertEquals(0, submitter.reidentify(Collections.<String>emptySet(), extensions));
+        verify(resultHandlerDao, never()).findNodesToReidentify(
+                anyCollectionOf(String.class), anyCollectionOf(String.class), anyLong(), anyInt());
+    }
+
+    @Test
+    public void testAffectedFilesAreResubmittedWithTheirExistingIds() {
+        Path file = Paths.get("/tmp/file.wav").toAbsolutePath();
+        ProfileResourceNode node = newNode(7L, 3L, "AAAAABBBBB", file.toUri(), ResourceType.FILE);
+        when(resultHandlerDao.findNodesToReidentify(any(Collection.class), any(Collection.class), eq(0L), anyInt()))
+            .thenReturn(Arrays.asList(node));
+
+        assertEquals(1, submitter.reidentify(puids, extensions));
+        verify(fileEventHandler).onEvent(file, new ResourceId(3L, "AAAAA"), new ResourceId(7L, "AAAAABBBBB"));
+        verify(resultHandlerDao).findNodesToReidentify(any(Collection.class), any(Collection.class), eq(7L), anyInt());
+        verify(resultHandlerDao, never()).deleteDescendants(any(ProfileResourceNode.class));
+    }
+
+    @Test
+    public void testArchiveEntriesResubmitTheirContainingFileOnce() {
+        Path file = Paths.get("/tmp/archive.zip").toAbsolutePath();
+        ProfileResourceNode archive = newNode(2L, null, "AAAAA", file.toUri(), ResourceType.CONTAINER);
+        ProfileResourceNode entry1 = newNode(3L, 2L, "AAAAABBBBB",
+                URI.create("zip:" + file.toUri() + "!/one.wav"), ResourceType.FILE);
+        ProfileResourceNode entry2 = newNode(4L, 2L, "AAAAACCCCC",
+                URI.create("zip:" + file.toUri() + "!/two.wav"), ResourceType.FILE);
+        when(resultHandlerDao.findNodesToReidentify(any(Collection.class), any(Collection.class), eq(0L), anyInt()))
+            .thenReturn(Arrays.asList(entry1));
+        when(resultHandlerDao.findNodesToReidentify(any(Collection.class), any(Collection.class), eq(3L), anyInt()))
+            .thenReturn(Arrays.asList(entry2));
+        when(resultHandlerDao.loadNode(2L)).thenReturn(archive);
+
+        assertEquals(1, submitter.reidentify(puids, extensions));
+        verify(resultHandlerDao).deleteDescendants(archive);
+        verify(progressMonitor, times(2)).setTargetCount(1L);
+        verify(fileEventHandler, times(1)).onEvent(eq(file), isNull(ResourceId.class), eq(new ResourceId(2L, "AAAAA")));
+    }
+
+    @Test
+    public void testPendingFilesAreSubmittedAPageAtATimeWithTheirExistingIds() {
+        Path file1 = Paths.get("/tmp/one.wav").toAbsolutePath();
+        Path file2 = Paths.get("/tmp/two.wav").toAbsolutePath();
+        ProfileResourceNode node1 = newNode(5L, 3L, "AAAAABBBBB", file1.toUri(), ResourceType.FILE);
+        ProfileResourceNode node2 = newNode(9L, null, "CCCCC", file2.toUri(), ResourceType.FILE);
+        when(resultHandlerDao.findPendingNodes(eq(0L), any(Integer.class))).thenReturn(Arrays.asList(node1));
+        when(resultHandlerDao.findPendingNodes(eq(5L), any(Integer.class))).thenReturn(Arrays.asList(node2));
+        when(resultHandlerDao.findPendingNodes(eq(9L), any(Integer.class)))
+            .thenReturn(Collections.<ProfileResourceNode>emptyList());
+
+        assertEquals(2, submitter.identifyPending());
+        verify(fileEventHandler).onEvent(file1, new ResourceId(3L, "AAAAA"), new ResourceId(5L, "AAAAABBBBB"));
+        verify(fileEventHandler).onEvent(eq(file2), isNull(ResourceId.class), eq(new ResourceId(9L, "CCCCC")));
+        verify(resultHandlerDao).commit();
+    }
+
+    private static ProfileResourceNode newNode(Long id, Long parentId, String prefix, URI uri, ResourceType type) {
+        ProfileResourceNode node = new ProfileResourceNode(uri);
+        node.setId(id);
+        node.setParentId(parentId);
+        node.setPrefix(prefix);
+        NodeMetaData metaData = new NodeMetaData();
+        metaData.setResourceType(type);
+        node.setMetaData(metaData);
+        return node;
+    }
+}
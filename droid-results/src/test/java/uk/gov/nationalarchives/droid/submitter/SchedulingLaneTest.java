@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2016, The National Archives <pronom@nationalarchives.gsi.gov.uk>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following
+ * conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ *  * Neither the name of the The National Archives nor the
+ *    names of its contributors may be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package uk.gov.nationalarchives.droid.submitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the admission of requests through a scheduling lane.
+ */
+public class SchedulingLaneTest {
+
+    @Test
+    public void testRequestsWaitUntilAnAdmittedRequestFinishes() throws Exception {
+        final SchedulingLane lane = new SchedulingLane("test", 2, 10);
+        final List<Integer> admitted = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int request = i;
+            lane.submit(() -> admitted.add(request));
+        }
+        assertEquals(2, admitted.size());
+        assertEquals(2, lane.getInFlight());
+        assertEquals(2, lane.getWaiting());
+
+        lane.finished(TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(3, admitted.size());
+        assertEquals(2, lane.getInFlight());
+
+        lane.finished(TimeUnit.MILLISECONDS.toNanos(30));
+        lane.finished(TimeUnit.MILLISECONDS.toNanos(20));
+        lane.finished(TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(4, admitted.size());
+        assertEquals(0, lane.getInFlight());
+        assertEquals(0, lane.getWaiting());
+        assertEquals(4, lane.getCompletedCount());
+        assertEquals(20.0, lane.getMeanLatencyMillis(), 0.001);
+        assertEquals(30, lane.getMaxLatencyMillis());
+    }
+
+    @Test
+    public void testExternalThreadBlocksWhileTooManyRequestsAreWaiting() throws Exception {
+        final SchedulingLane lane = new SchedulingLane("test", 1, 1);
+        lane.submit(() -> { });
+        lane.submit(() -> { });
+
+        final CountDownLatch submitted = new CountDownLatch(1);
+        final Thread submitter = new Thread(() -> {
+            try {
+                lane.submit(() -> { });
+                submitted.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        assertFalse(submitted.await(300, TimeUnit.MILLISECONDS));
+
+        lane.finished(0);
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, lane.getWaiting());
+    }
+}
@@ -31,38 +31,63 @@
  */
 package uk.gov.nationalarchives.droid.submitter;
 
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import uk.gov.nationalarchives.droid.core.BinarySignatureIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.DeviceThroughput;
+import uk.gov.nationalarchives.droid.core.interfaces.DroidCore;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationErrorType;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationException;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
 import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.ResourceId;
 import uk.gov.nationalarchives.droid.core.interfaces.ResultHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveFormatResolver;
+import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveHandlerFactory;
+import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifierFactory;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.TrueZipArchiveHandler;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ZipEntryRequestFactory;
+import uk.gov.nationalarchives.droid.core.interfaces.hash.MD5HashGenerator;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 import uk.gov.nationalarchives.droid.core.SignatureParseException;
@@ -85,7 +110,7 @@ public class SubmissionGatewayTest {
         submissionGateway.setResultHandler(resultHandler);
         submissionGateway.setProcessArchives(true);
         submissionGateway.setProcessWebArchives(false);
-        submissionGateway.setExecutorService(Executors.newFixedThreadPool(2));
+        submissionGateway.setMatchThreads(2);
         
         SubmissionQueue submissionQueue = mock(SubmissionQueue.class);
         submissionGateway.setSubmissionQueue(submissionQueue);
@@ -168,7 +193,7 @@ public class SubmissionGatewayTest {
         droid.setSignatureFile("test_sig_files/DROID_SignatureFile_V26.xml");
         ResultHandler resultHandler = mock(ResultHandler.class);
         submissionGateway.setResultHandler(resultHandler);
-        submissionGateway.setExecutorService(Executors.newFixedThreadPool(2));
+        submissionGateway.setMatchThreads(2);
         try {
             droid.init();
         } catch (SignatureParseException e) {
@@ -209,4 +234,351 @@ public class SubmissionGatewayTest {
         assertEquals("I failed", e.getCause().getMessage());
         */
     }
+    @Test
+    public void testFailureToOpenARequestIsReportedToResultHandler() throws Exception {
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        submissionGateway.setResultHandler(resultHandler);
+
+        final Path file = Paths.get("non-existent");
+        assertFalse(Files.exists(file));
+        IdentificationRequest<Path> request = mock(IdentificationRequest.class);
+        when(request.getIdentifier()).thenReturn(new RequestIdentifier(file.toUri()));
+        final IOException ioException = new IOException("Not found");
+        doThrow(ioException).when(request).open(file);
+
+        Future<IdentificationResultCollection> future = submissionGateway.submit(request, file);
+        try {
+            future.get();
+            fail("Expected Exception.");
+        } catch (ExecutionException e) {
+            assertSame(ioException, e.getCause());
+        }
+        submissionGateway.awaitIdle();
+
+        ArgumentCaptor<IdentificationException> captor = ArgumentCaptor.forClass(IdentificationException.class);
+        verify(resultHandler).handleError(captor.capture());
+        assertEquals(IdentificationErrorType.FILE_NOT_FOUND, captor.getValue().getErrorType());
+        verify(request).close();
+        submissionGateway.close();
+    }
+
+    @Test
+    public void testRequestPassesThroughTheStagesItNeeds() throws Exception {
+
+        BinarySignatureIdentifier droid = new BinarySignatureIdentifier();
+        droid.setSignatureFile("test_sig_files/DROID_SignatureFile_V26.xml");
+        droid.init();
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setDroidCore(droid);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handle(any(IdentificationResultCollection.class))).thenReturn(new ResourceId(2L, ""));
+        submissionGateway.setResultHandler(resultHandler);
+        submissionGateway.setContainerFormatResolver(mock(ArchiveFormatResolver.class));
+        submissionGateway.setGenerateHash(true);
+        submissionGateway.setHashGenerator(new MD5HashGenerator());
+
+        final Path file = Paths.get("test_sig_files/sample.pdf");
+        RequestMetaData metaData = new RequestMetaData(Files.size(file),
+                Files.getLastModifiedTime(file).toMillis(), "sample.pdf");
+        IdentificationRequest<Path> request = new FileSystemIdentificationRequest(metaData,
+                new RequestIdentifier(file.toUri()));
+
+        submissionGateway.submit(request, file).get();
+        submissionGateway.awaitIdle();
+
+        verify(resultHandler).handle(any(IdentificationResultCollection.class));
+        assertEquals(Long.valueOf(2L), request.getIdentifier().getNodeId());
+        assertNotNull(metaData.getHash());
+        for (PipelineStage stage : submissionGateway.getStages()) {
+            final long expected = "container".equals(stage.getName()) || "archive".equals(stage.getName()) ? 0 : 1;
+            assertEquals(stage.getName(), expected, tasksRun(stage, expected));
+        }
+        submissionGateway.close();
+    }
+
+    @Test
+    public void testSmallFilesAreNotHeldUpByLargeFiles() throws Exception {
+
+        final CountDownLatch releaseLargeFiles = new CountDownLatch(1);
+        DroidCore droid = mock(DroidCore.class);
+        when(droid.matchBinarySignatures(any(IdentificationRequest.class))).thenAnswer(invocation -> {
+            final IdentificationRequest request = invocation.getArgument(0);
+            if (request.getRequestMetaData().getSize() >= 1000) {
+                releaseLargeFiles.await();
+            }
+            return new IdentificationResultCollection(request);
+        });
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setDroidCore(droid);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handle(any(IdentificationResultCollection.class))).thenReturn(new ResourceId(2L, ""));
+        submissionGateway.setResultHandler(resultHandler);
+        submissionGateway.setMatchThreads(2);
+        submissionGateway.setLargeFileThreshold(1000);
+        submissionGateway.setLargeFileLimit(1);
+
+        final List<Future<IdentificationResultCollection>> largeFiles = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            largeFiles.add(submissionGateway.submit(newRequest("large" + i, 5000)));
+        }
+        for (int i = 0; i < 20; i++) {
+            submissionGateway.submit(newRequest("small" + i, 10)).get(5, TimeUnit.SECONDS);
+        }
+
+        final SchedulingLane smallLane = submissionGateway.getLanes().get(0);
+        final SchedulingLane largeLane = submissionGateway.getLanes().get(1);
+        assertEquals(1, largeLane.getInFlight());
+        assertEquals(2, largeLane.getWaiting());
+        for (Future<IdentificationResultCollection> future : largeFiles) {
+            assertFalse(future.isDone());
+        }
+
+        releaseLargeFiles.countDown();
+        for (Future<IdentificationResultCollection> future : largeFiles) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        submissionGateway.awaitIdle();
+        assertEquals(20, smallLane.getCompletedCount());
+        assertEquals(3, largeLane.getCompletedCount());
+        assertEquals(0, largeLane.getInFlight());
+        assertTrue(largeLane.getMaxLatencyMillis() >= smallLane.getMaxLatencyMillis());
+        submissionGateway.close();
+    }
+
+    @Test
+    public void testFilesOnOneDeviceAreLimitedByTheDeviceLimit() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        DroidCore droid = mock(DroidCore.class);
+        when(droid.matchBinarySignatures(any(IdentificationRequest.class))).thenAnswer(invocation -> {
+            release.await();
+            return new IdentificationResultCollection(invocation.getArgument(0));
+        });
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setDroidCore(droid);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handle(any(IdentificationResultCollection.class))).thenReturn(new ResourceId(2L, ""));
+        submissionGateway.setResultHandler(resultHandler);
+        submissionGateway.setMatchThreads(4);
+        submissionGateway.setDeviceLimit(1);
+
+        final Path dir = Files.createTempDirectory("device");
+        try {
+            final List<Future<IdentificationResultCollection>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                final Path file = Files.createFile(dir.resolve("file" + i));
+                futures.add(submissionGateway.submit(newRequest("file" + i, 100), file));
+            }
+
+            final List<SchedulingLane> lanes = submissionGateway.getLanes();
+            assertEquals(3, lanes.size());
+            final SchedulingLane device = lanes.get(2);
+            assertTrue(device.getName().startsWith("device"));
+            assertEquals(1, device.getInFlight());
+            assertEquals(2, device.getWaiting());
+
+            release.countDown();
+            for (Future<IdentificationResultCollection> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            submissionGateway.awaitIdle();
+            assertEquals(3, device.getCompletedCount());
+            assertEquals(300, device.getBytes());
+            assertEquals(0, device.getInFlight());
+
+            final List<DeviceThroughput> throughput = submissionGateway.getDeviceThroughput();
+            assertEquals(1, throughput.size());
+            assertEquals(device.getName(), throughput.get(0).getName());
+            assertEquals(3, throughput.get(0).getCompletedCount());
+            assertEquals(300, throughput.get(0).getBytes());
+        } finally {
+            submissionGateway.close();
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testBatchOfSmallFilesIsSavedTogetherAndContainersGoOnAlone() throws Exception {
+
+        final IdentificationResult containerResult = mock(IdentificationResult.class);
+        when(containerResult.getPuid()).thenReturn("fmt/container");
+        DroidCore droid = mock(DroidCore.class);
+        when(droid.matchBinarySignatures(any(IdentificationRequest.class))).thenAnswer(invocation -> {
+            final IdentificationRequest request = invocation.getArgument(0);
+            final IdentificationResultCollection results = new IdentificationResultCollection(request);
+            if ("container".equals(request.getRequestMetaData().getName())) {
+                results.addResult(containerResult);
+            }
+            return results;
+        });
+        ArchiveFormatResolver containerFormatResolver = mock(ArchiveFormatResolver.class);
+        when(containerFormatResolver.forPuid("fmt/container")).thenReturn("OLE2");
+        ContainerIdentifier containerIdentifier = mock(ContainerIdentifier.class);
+        when(containerIdentifier.submit(any(IdentificationRequest.class))).thenAnswer(
+            invocation -> new IdentificationResultCollection(invocation.getArgument(0)));
+        ContainerIdentifierFactory containerIdentifierFactory = mock(ContainerIdentifierFactory.class);
+        when(containerIdentifierFactory.getIdentifier("OLE2")).thenReturn(containerIdentifier);
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        submissionGateway.setDroidCore(droid);
+        submissionGateway.setContainerFormatResolver(containerFormatResolver);
+        submissionGateway.setContainerIdentifierFactory(containerIdentifierFactory);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handle(any(IdentificationResultCollection.class))).thenReturn(new ResourceId(3L, ""));
+        when(resultHandler.handleBatch(any(List.class))).thenReturn(
+            Arrays.asList(new ResourceId(1L, ""), new ResourceId(2L, "")));
+        submissionGateway.setResultHandler(resultHandler);
+
+        final List<IdentificationRequest<Path>> requests = Arrays.asList(
+            newRequest("small1", 10), newRequest("container", 10), newRequest("small2", 10));
+        final List<Path> sources = Arrays.asList(Paths.get("small1"), Paths.get("container"), Paths.get("small2"));
+        final List<IdentificationResultCollection> results =
+            submissionGateway.submitBatch(requests, sources).get(5, TimeUnit.SECONDS);
+        submissionGateway.awaitIdle();
+
+        assertEquals(3, results.size());
+        ArgumentCaptor<List> batchCaptor = ArgumentCaptor.forClass(List.class);
+        verify(resultHandler).handleBatch(batchCaptor.capture());
+        assertEquals(Arrays.asList(results.get(0), results.get(2)), batchCaptor.getValue());
+        verify(containerIdentifier).submit(requests.get(1));
+        verify(resultHandler).handle(results.get(1));
+        assertEquals(Long.valueOf(1L), requests.get(0).getIdentifier().getNodeId());
+        assertEquals(Long.valueOf(3L), requests.get(1).getIdentifier().getNodeId());
+        assertEquals(Long.valueOf(2L), requests.get(2).getIdentifier().getNodeId());
+        for (int i = 0; i < requests.size(); i++) {
+            verify(requests.get(i)).open(sources.get(i));
+            verify(requests.get(i)).close();
+        }
+        assertEquals(1, submissionGateway.getLanes().get(0).getCompletedCount());
+        submissionGateway.close();
+    }
+
+    @Test
+    public void testArchiveEntriesAreHandedToTheMatchStageRatherThanIdentifiedByTheArchiveThread() throws Exception {
+
+        final IdentificationResult archiveResult = mock(IdentificationResult.class);
+        when(archiveResult.getPuid()).thenReturn("fmt/archive");
+        final Set<String> entryThreads = ConcurrentHashMap.newKeySet();
+        DroidCore droid = mock(DroidCore.class);
+        when(droid.matchBinarySignatures(any(IdentificationRequest.class))).thenAnswer(invocation -> {
+            final IdentificationRequest request = invocation.getArgument(0);
+            final IdentificationResultCollection results = new IdentificationResultCollection(request);
+            if ("archive".equals(request.getRequestMetaData().getName())) {
+                results.addResult(archiveResult);
+            } else {
+                entryThreads.add(Thread.currentThread().getName());
+                Thread.sleep(5);
+            }
+            return results;
+        });
+        ArchiveFormatResolver archiveFormatResolver = mock(ArchiveFormatResolver.class);
+        when(archiveFormatResolver.forPuid("fmt/archive")).thenReturn("ZIP");
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        ArchiveHandler archiveHandler = mock(ArchiveHandler.class);
+        doAnswer(invocation -> {
+            for (int i = 0; i < 20; i++) {
+                submissionGateway.submit(newRequest("entry" + i, 10));
+            }
+            return null;
+        }).when(archiveHandler).handle(any(IdentificationRequest.class));
+        ArchiveHandlerFactory archiveHandlerFactory = mock(ArchiveHandlerFactory.class);
+        when(archiveHandlerFactory.getHandler("ZIP")).thenReturn(archiveHandler);
+
+        submissionGateway.setDroidCore(droid);
+        submissionGateway.setArchiveFormatResolver(archiveFormatResolver);
+        submissionGateway.setArchiveHandlerFactory(archiveHandlerFactory);
+        submissionGateway.setProcessArchives(true);
+        submissionGateway.setMatchThreads(1);
+        submissionGateway.setStageQueueSize(1);
+        SubmissionQueue submissionQueue = mock(SubmissionQueue.class);
+        submissionGateway.setSubmissionQueue(submissionQueue);
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handle(any(IdentificationResultCollection.class))).thenReturn(new ResourceId(2L, ""));
+        submissionGateway.setResultHandler(resultHandler);
+
+        final IdentificationRequest archive = newRequest("archive", 100);
+        submissionGateway.submit(archive).get(5, TimeUnit.SECONDS);
+        submissionGateway.awaitFinished();
+
+        verify(resultHandler, times(21)).handle(any(IdentificationResultCollection.class));
+        assertEquals(Collections.singleton("match-thread-1"), entryThreads);
+        verify(submissionQueue).add(archive.getIdentifier());
+        verify(submissionQueue).remove(archive.getIdentifier());
+        submissionGateway.close();
+    }
+
+    @Test
+    public void testArchiveIsClosedOnlyAfterItsEntriesHaveBeenIdentified() throws Exception {
+
+        final IdentificationResult archiveResult = mock(IdentificationResult.class);
+        when(archiveResult.getPuid()).thenReturn("fmt/archive");
+        final IdentificationRequest archive = newRequest("archive", 100);
+        final AtomicBoolean archiveClosed = new AtomicBoolean();
+        doAnswer(invocation -> {
+            archiveClosed.set(true);
+            return null;
+        }).when(archive).close();
+        final AtomicBoolean closedBeforeEntryRead = new AtomicBoolean();
+        DroidCore droid = mock(DroidCore.class);
+        when(droid.matchBinarySignatures(any(IdentificationRequest.class))).thenAnswer(invocation -> {
+            final IdentificationRequest request = invocation.getArgument(0);
+            final IdentificationResultCollection results = new IdentificationResultCollection(request);
+            if (request == archive) {
+                results.addResult(archiveResult);
+            } else {
+                // give the archive thread time to finish expanding the archive first:
+                Thread.sleep(100);
+                closedBeforeEntryRead.compareAndSet(false, archiveClosed.get());
+            }
+            return results;
+        });
+        ArchiveFormatResolver archiveFormatResolver = mock(ArchiveFormatResolver.class);
+        when(archiveFormatResolver.forPuid("fmt/archive")).thenReturn("ZIP");
+
+        SubmissionGateway submissionGateway = new SubmissionGateway();
+        ArchiveHandler archiveHandler = mock(ArchiveHandler.class);
+        doAnswer(invocation -> {
+            submissionGateway.submit(newRequest("entry", 10));
+            return null;
+        }).when(archiveHandler).handle(any(IdentificationRequest.class));
+        ArchiveHandlerFactory archiveHandlerFactory = mock(ArchiveHandlerFactory.class);
+        when(archiveHandlerFactory.getHandler("ZIP")).thenReturn(archiveHandler);
+
+        submissionGateway.setDroidCore(droid);
+        submissionGateway.setArchiveFormatResolver(archiveFormatResolver);
+        submissionGateway.setArchiveHandlerFactory(archiveHandlerFactory);
+        submissionGateway.setProcessArchives(true);
+        submissionGateway.setSubmissionQueue(mock(SubmissionQueue.class));
+        ResultHandler resultHandler = mock(ResultHandler.class);
+        when(resultHandler.handle(any(IdentificationResultCollection.class))).thenReturn(new ResourceId(2L, ""));
+        submissionGateway.setResultHandler(resultHandler);
+
+        submissionGateway.submit(archive).get(5, TimeUnit.SECONDS);
+        submissionGateway.awaitFinished();
+
+        assertFalse(closedBeforeEntryRead.get());
+        verify(archive, times(1)).close();
+        submissionGateway.close();
+    }
+
+    private static IdentificationRequest newRequest(String name, long size) {
+        IdentificationRequest request = mock(IdentificationRequest.class);
+        when(request.getIdentifier()).thenReturn(new RequestIdentifier(URI.create("file:/" + name)));
+        when(request.getRequestMetaData()).thenReturn(new RequestMetaData(size, 0L, name));
+        return request;
+    }
+
+    // a stage counts a task as completed just after it has handed the request on.
+    private static long tasksRun(PipelineStage stage, long expected) throws InterruptedException {
+        for (int i = 0; i < 100 && stage.getCompletedCount() + stage.getInlineCount() < expected; i++) {
+            Thread.sleep(50);
+        }
+        return stage.getCompletedCount() + stage.getInlineCount();
+    }
 }
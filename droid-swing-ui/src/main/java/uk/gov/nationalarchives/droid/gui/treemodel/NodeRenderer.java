@@ -194,6 +194,7 @@ public class NodeRenderer extends DefaultOutlineCellRenderer {
                 } else {
                     switch (status) {
                         case NOT_DONE:
+                        case PENDING:
                             icon = fileResourceTypeNotDoneIcon;
                             break;
                         case ACCESS_DENIED:
@@ -216,6 +217,7 @@ public class NodeRenderer extends DefaultOutlineCellRenderer {
                 } else {
                     switch (status) {
                         case NOT_DONE: // should be impossible, but implemented anyway.
+                        case PENDING:
                             icon = containerResourceTypeNotDoneIcon;
                             break;
                         case ACCESS_DENIED:
@@ -44,6 +44,7 @@ import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeNode;
 
+import org.openide.util.NbBundle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -113,9 +114,21 @@ public class DroidJob extends SwingWorker<Integer, ProfileResourceNode> {
             String decodedURI = java.net.URLDecoder.decode(chunks.get(0).getUri().toString());
             String abbreviatedUri = DroidStringUtils.abbreviate(decodedURI, profileForm.getProfileProgressBar());
             profileForm.getProfileProgressBar().setString(abbreviatedUri);
+            updateThrottleWindow();
         }
     }
 
+    /**
+     * Shows how many files the throttle currently lets be read at once in the progress bar tool tip.
+     */
+    private void updateThrottleWindow() {
+        final int window = profileManager.getThrottleWindow(profileForm.getProfile().getUuid());
+        final String toolTip = window < 0
+            ? NbBundle.getMessage(ProfileForm.class, "ProfileForm.profileProgressBar.toolTipText")
+            : NbBundle.getMessage(ProfileForm.class, "ProfileForm.profileProgressBar.throttledToolTipText", window);
+        profileForm.getProfileProgressBar().setToolTipText(toolTip);
+    }
+
     @Override
     protected Integer doInBackground() throws IOException {
 